@@ -0,0 +1,64 @@
+package com.tse.core_application.config;
+
+import com.tse.core_application.service.datasource.ReadRoutingDataSource;
+import com.tse.core_application.service.datasource.ReplicaRouting;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+/**
+ * Primary pool (spring.datasource.*, spring.datasource.hikari.*) and an optional read replica
+ * pool (spring.datasource.replica.*, bound like a HikariConfig) behind one routing DataSource.
+ * Read-only transactions use the replica while it is healthy, see {@link ReplicaRouting}.
+ * Without spring.datasource.replica.jdbc-url everything uses the primary.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConditionalOnProperty("spring.datasource.replica.jdbc-url")
+    @ConfigurationProperties("spring.datasource.replica")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRouting replicaRouting(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                         @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource) {
+        return new ReplicaRouting(primaryDataSource, replicaDataSource.getIfAvailable());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") HikariDataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource,
+                                 ReplicaRouting replicaRouting) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(
+                new ReadRoutingDataSource(primaryDataSource, replicaDataSource.getIfAvailable(), replicaRouting));
+        // Known up front, so the proxy never opens a connection just to find them out
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        return dataSource;
+    }
+}
@@ -0,0 +1,22 @@
+package com.tse.core_application.config;
+
+import com.tse.core_application.service.notification.NotificationSink;
+import com.tse.core_application.service.notification.impl.LoggingNotificationSink;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Falls back to the logging sink when the application defines no NotificationSink of its own.
+ * Declared here rather than on the sink class because the condition is only reliable on a
+ * bean method, which is evaluated after the scanned components are registered.
+ */
+@Configuration
+public class NotificationConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(NotificationSink.class)
+    public LoggingNotificationSink loggingNotificationSink() {
+        return new LoggingNotificationSink();
+    }
+}
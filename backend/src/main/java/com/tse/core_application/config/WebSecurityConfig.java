@@ -42,13 +42,15 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
                 // Policy endpoints
                 .antMatchers("/api/orgs/*/createGeoFencingPolicy", "/api/orgs/*/getGeoFencePolicy", "/api/orgs/*/updateGeoFencePolicy", "/api/orgs/getAllGeoFencePolicies").permitAll()
                 // Fence endpoints
-                .antMatchers("/api/orgs/*/createFence", "/api/orgs/*/updateFence", "/api/orgs/*/getFence", "/api/allFence").permitAll()
+                .antMatchers("/api/orgs/*/createFence", "/api/orgs/*/updateFence", "/api/orgs/*/getFence", "/api/orgs/*/fences/changes", "/api/orgs/*/fences/occupancy", "/api/orgs/*/fences/*/occupancy", "/api/allFence").permitAll()
                 // Assignment endpoints
-                .antMatchers("/api/orgs/*/assignFenceToEntity", "/api/orgs/*/getAssignedEntityOfFence").permitAll()
+                .antMatchers("/api/orgs/*/assignFenceToEntity", "/api/orgs/*/getAssignedEntityOfFence", "/api/orgs/*/getAssignedEntityOfFencePage").permitAll()
                 // User Fences endpoints
-                .antMatchers("/api/orgs/*/getUserFences").permitAll()
+                .antMatchers("/api/orgs/*/getUserFences", "/api/orgs/*/getUserFencesBulk").permitAll()
                 // Punch Request endpoints
                 .antMatchers("/api/orgs/*/requestPunchForEntity", "/api/orgs/*/getPendingRequest", "/api/orgs/*/getPunchRequestById", "/api/orgs/*/getPendingRequestHistory").permitAll()
+                // Push channel (WebSocket handshake, authenticated by PushHandshakeInterceptor)
+                .antMatchers("/api/orgs/*/push").permitAll()
                 // Attendance endpoints (Phase 6a placeholder)
                 .antMatchers("/api/orgs/*/attendance/**").permitAll()
                 .antMatchers("/h2-console/**").permitAll()
@@ -0,0 +1,33 @@
+package com.tse.core_application.config;
+
+import com.tse.core_application.controller.push.PushHandshakeInterceptor;
+import com.tse.core_application.controller.push.PushWebSocketHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final PushWebSocketHandler pushWebSocketHandler;
+    private final PushHandshakeInterceptor pushHandshakeInterceptor;
+
+    // Same-origin only unless origins are listed
+    @Value("${attendance.push.allowed-origins:}")
+    private String[] allowedOrigins;
+
+    public WebSocketConfig(PushWebSocketHandler pushWebSocketHandler, PushHandshakeInterceptor pushHandshakeInterceptor) {
+        this.pushWebSocketHandler = pushWebSocketHandler;
+        this.pushHandshakeInterceptor = pushHandshakeInterceptor;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(pushWebSocketHandler, "/api/orgs/*/push")
+                .addInterceptors(pushHandshakeInterceptor)
+                .setAllowedOrigins(allowedOrigins);
+    }
+}
@@ -2,6 +2,7 @@ package com.tse.core_application.controller.assignment;
 
 import com.tse.core_application.dto.assignment.AssignFenceRequest;
 import com.tse.core_application.dto.assignment.AssignFenceResult;
+import com.tse.core_application.dto.assignment.AssignedEntitiesPageResponse;
 import com.tse.core_application.dto.assignment.AssignedEntitiesResponse;
 import com.tse.core_application.service.assignment.FenceAssignmentService;
 import com.tse.core_application.service.preference.GeoFencingAccessService;
@@ -123,4 +124,51 @@ public class FenceAssignmentController {
             else throw e;
         }
     }
+
+    @GetMapping("/{orgId}/getAssignedEntityOfFencePage")
+    @Operation(summary = "Page through assigned or unassigned entities of a fence",
+            description = "Returns one page of assigned (view=ASSIGNED) or unassigned (view=UNASSIGNED) entities " +
+                    "of one entity type, ordered by entity ID. Pass nextCursor as cursor to get the next page.")
+    public ResponseEntity<Object> getAssignedEntitiesPage(
+            @PathVariable Long orgId,
+            @RequestParam Long fenceId,
+            @RequestParam Integer entityTypeId,
+            @RequestParam(required = false, defaultValue = "ASSIGNED") String view,
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(name = "screenName") String screenName,
+            @RequestHeader(name = "timeZone") String timeZone,
+            @RequestHeader(name = "accountIds") String accountIds,
+            HttpServletRequest httpRequest) {
+
+        long startTime = System.currentTimeMillis();
+        String jwtToken = httpRequest.getHeader("Authorization").substring(7);
+        String tokenUsername = jwtUtil.getUsernameFromToken(jwtToken);
+        User foundUser = userService.getUserByUserName(tokenUsername);
+        ThreadContext.put("accountId", requestHeaderHandler.getAccountIdFromRequestHeader(accountIds).toString());
+        ThreadContext.put("userId", foundUser.getUserId().toString());
+        ThreadContext.put("requestOriginatingPage", screenName);
+        logger.info("Entered" + '"' + " getAssignedEntitiesPage" + '"' + " method ...");
+
+        try {
+            // Validate geo-fencing access for the organization
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            AssignedEntitiesPageResponse response = assignmentService.getAssignedEntitiesPage(
+                    orgId, fenceId, entityTypeId, view, cursor, limit);
+            long estimatedTime = System.currentTimeMillis() - startTime;
+            ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
+            logger.info("Exited" + '"' + " getAssignedEntitiesPage" + '"' + " method because completed successfully ...");
+            ThreadContext.clearMap();
+            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String allStackTraces = StackTraceHandler.getAllStackTraces(e);
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get assigned entities page for username = "
+                    + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
+            ThreadContext.clearMap();
+            if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
+            else throw e;
+        }
+    }
 }
@@ -2,6 +2,8 @@ package com.tse.core_application.controller.attendance;
 
 import com.tse.core_application.dto.attendance.AttendanceDataRequest;
 import com.tse.core_application.dto.attendance.AttendanceDataResponse;
+import com.tse.core_application.dto.attendance.LocationPingBatchRequest;
+import com.tse.core_application.dto.attendance.LocationPingBatchResponse;
 import com.tse.core_application.dto.attendance.PunchCreateRequest;
 import com.tse.core_application.dto.attendance.PunchedEventRequest;
 import com.tse.core_application.dto.attendance.PunchResponse;
@@ -9,6 +11,7 @@ import com.tse.core_application.dto.attendance.TodayAttendanceRequest;
 import com.tse.core_application.dto.attendance.TodaySummaryResponse;
 import com.tse.core_application.service.attendance.AttendanceDataService;
 import com.tse.core_application.service.attendance.AttendanceService;
+import com.tse.core_application.service.location.LocationDwellEngine;
 import com.tse.core_application.service.preference.GeoFencingAccessService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -40,16 +43,18 @@ public class AttendanceController {
     private final AttendanceService attendanceService;
     private final AttendanceDataService attendanceDataService;
     private final GeoFencingAccessService geoFencingAccessService;
+    private final LocationDwellEngine locationDwellEngine;
 
     public AttendanceController(JwtUtil jwtUtil, UserService userService, RequestHeaderHandler requestHeaderHandler,
                                AttendanceService attendanceService, AttendanceDataService attendanceDataService,
-                               GeoFencingAccessService geoFencingAccessService) {
+                               GeoFencingAccessService geoFencingAccessService, LocationDwellEngine locationDwellEngine) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
         this.requestHeaderHandler = requestHeaderHandler;
         this.attendanceService = attendanceService;
         this.attendanceDataService = attendanceDataService;
         this.geoFencingAccessService = geoFencingAccessService;
+        this.locationDwellEngine = locationDwellEngine;
     }
 
     /**
@@ -152,6 +157,54 @@ public class AttendanceController {
         }
     }
 
+    /**
+     * POST /api/orgs/{orgId}/attendance/locationPings
+     * Ingest a batch of GPS fixes; dwell transitions are recorded as automatic CHECK_IN/CHECK_OUT events.
+     */
+    @PostMapping("/locationPings")
+    @Operation(summary = "Ingest location pings",
+               description = "Apply a batch of GPS fixes to the account's dwell state; confirmed fence entries and exits " +
+                       "are recorded as AUTO CHECK_IN/CHECK_OUT events")
+    public ResponseEntity<Object> ingestLocationPings(
+            @Parameter(description = "Organization ID", required = true)
+            @PathVariable("orgId") Long orgId,
+            @Parameter(description = "Location ping batch", required = true)
+            @RequestBody LocationPingBatchRequest request,
+            @RequestHeader(name = "screenName") String screenName,
+            @RequestHeader(name = "timeZone") String timeZone,
+            @RequestHeader(name = "accountIds") String accountIds,
+            HttpServletRequest httpRequest) {
+
+        long startTime = System.currentTimeMillis();
+        String jwtToken = httpRequest.getHeader("Authorization").substring(7);
+        String tokenUsername = jwtUtil.getUsernameFromToken(jwtToken);
+        User foundUser = userService.getUserByUserName(tokenUsername);
+        ThreadContext.put("accountId", requestHeaderHandler.getAccountIdFromRequestHeader(accountIds).toString());
+        ThreadContext.put("userId", foundUser.getUserId().toString());
+        ThreadContext.put("requestOriginatingPage", screenName);
+        logger.debug("Entered" + '"' + " ingestLocationPings" + '"' + " method ...");
+
+        try {
+            // Validate geo-fencing access for the organization
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            LocationPingBatchResponse response = locationDwellEngine.ingest(orgId, request);
+            long estimatedTime = System.currentTimeMillis() - startTime;
+            ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
+            logger.debug("Exited" + '"' + " ingestLocationPings" + '"' + " method because completed successfully ...");
+            ThreadContext.clearMap();
+            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String allStackTraces = StackTraceHandler.getAllStackTraces(e);
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to ingest location pings for username = "
+                    + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
+            ThreadContext.clearMap();
+            if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
+            else throw e;
+        }
+    }
+
     /**
      * POST /api/orgs/{orgId}/attendance/today
      * Get attendance summary for a specific user and date.
@@ -1,9 +1,12 @@
 package com.tse.core_application.controller.fence;
 
+import com.tse.core_application.dto.fence.FenceChangesResponse;
 import com.tse.core_application.dto.fence.FenceCreateRequest;
 import com.tse.core_application.dto.fence.FenceFilterRequest;
 import com.tse.core_application.dto.fence.FenceResponse;
 import com.tse.core_application.dto.fence.FenceUpdateRequest;
+import com.tse.core_application.service.etag.ConditionalResponseCache;
+import com.tse.core_application.service.fence.FenceReadVersions;
 import com.tse.core_application.service.fence.GeoFenceService;
 import com.tse.core_application.service.preference.GeoFencingAccessService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -14,7 +17,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
-import java.util.List;
 
 import com.tse.core_application.DummyClasses.*;
 import org.apache.logging.log4j.LogManager;
@@ -33,14 +35,19 @@ public class GeoFenceController {
     private final RequestHeaderHandler requestHeaderHandler;
     private final GeoFenceService fenceService;
     private final GeoFencingAccessService geoFencingAccessService;
+    private final FenceReadVersions fenceReadVersions;
+    private final ConditionalResponseCache conditionalResponseCache;
 
     public GeoFenceController(JwtUtil jwtUtil, UserService userService, RequestHeaderHandler requestHeaderHandler,
-                             GeoFenceService fenceService, GeoFencingAccessService geoFencingAccessService) {
+                             GeoFenceService fenceService, GeoFencingAccessService geoFencingAccessService,
+                             FenceReadVersions fenceReadVersions, ConditionalResponseCache conditionalResponseCache) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
         this.requestHeaderHandler = requestHeaderHandler;
         this.fenceService = fenceService;
         this.geoFencingAccessService = geoFencingAccessService;
+        this.fenceReadVersions = fenceReadVersions;
+        this.conditionalResponseCache = conditionalResponseCache;
     }
 
     @PostMapping("/orgs/{orgId}/createFence")
@@ -147,20 +154,30 @@ public class GeoFenceController {
             geoFencingAccessService.validateGeoFencingAccess(orgId);
 
             // Handle null filterRequest by creating a default instance
-            if (filterRequest == null) {
-                filterRequest = new FenceFilterRequest();
+            FenceFilterRequest filter = filterRequest != null ? filterRequest : new FenceFilterRequest();
+            String status = filter.getStatus() != null ? filter.getStatus() : "both";
+
+            // Answer an unchanged fence list from its version stamp, before loading any fence
+            String slot = "getFence|" + orgId + "|" + status + "|" + filter.getQ() + "|" + filter.getSiteCode() + "|" + timeZone;
+            String etag = conditionalResponseCache.etag(slot, fenceReadVersions.fenceListVersion(orgId));
+            if (conditionalResponseCache.isNotModified(httpRequest, etag)) {
+                logger.info("Exited" + '"' + " getFences" + '"' + " method because not modified ...");
+                ThreadContext.clearMap();
+                return conditionalResponseCache.notModified(etag);
             }
 
-            List<FenceResponse> fences = fenceService.listFences(orgId,
-                    filterRequest.getStatus() != null ? filterRequest.getStatus() : "both",
-                    filterRequest.getQ(),
-                    filterRequest.getSiteCode(),
-                    timeZone);
+            ResponseEntity<Object> response = conditionalResponseCache.ok(slot,
+                    () -> fenceReadVersions.fenceListVersion(orgId),
+                    () -> fenceService.listFences(orgId,
+                            status,
+                            filter.getQ(),
+                            filter.getSiteCode(),
+                            timeZone));
             long estimatedTime = System.currentTimeMillis() - startTime;
             ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
             logger.info("Exited" + '"' + " getFences" + '"' + " method because completed successfully ...");
             ThreadContext.clearMap();
-            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, fences);
+            return response;
         } catch (Exception e) {
             e.printStackTrace();
             String allStackTraces = StackTraceHandler.getAllStackTraces(e);
@@ -172,6 +189,49 @@ public class GeoFenceController {
         }
     }
 
+    @GetMapping("/orgs/{orgId}/fences/changes")
+    @Operation(summary = "Get geo-fence changes of an organization since a change sequence",
+               description = "Delta sync for local fence replicas: fences created or updated since 'since' as upserts, " +
+                       "deactivated fences as deletions, and the high-water mark to pass as the next 'since'.")
+    public ResponseEntity<Object> getFenceChanges(
+            @Parameter(description = "Organization ID") @PathVariable Long orgId,
+            @Parameter(description = "High-water mark of the previous sync; 0 for a full list")
+            @RequestParam(value = "since", required = false, defaultValue = "0") Long since,
+            @RequestHeader(name = "screenName") String screenName,
+            @RequestHeader(name = "timeZone") String timeZone,
+            @RequestHeader(name = "accountIds") String accountIds,
+            HttpServletRequest httpRequest) {
+
+        long startTime = System.currentTimeMillis();
+        String jwtToken = httpRequest.getHeader("Authorization").substring(7);
+        String tokenUsername = jwtUtil.getUsernameFromToken(jwtToken);
+        User foundUser = userService.getUserByUserName(tokenUsername);
+        ThreadContext.put("accountId", requestHeaderHandler.getAccountIdFromRequestHeader(accountIds).toString());
+        ThreadContext.put("userId", foundUser.getUserId().toString());
+        ThreadContext.put("requestOriginatingPage", screenName);
+        logger.info("Entered" + '"' + " getFenceChanges" + '"' + " method ...");
+
+        try {
+            // Validate geo-fencing access for the organization
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            FenceChangesResponse response = fenceService.getFenceChanges(orgId, since, timeZone);
+            long estimatedTime = System.currentTimeMillis() - startTime;
+            ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
+            logger.info("Exited" + '"' + " getFenceChanges" + '"' + " method because completed successfully ...");
+            ThreadContext.clearMap();
+            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String allStackTraces = StackTraceHandler.getAllStackTraces(e);
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get fence changes for username = "
+                    + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
+            ThreadContext.clearMap();
+            if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
+            else throw e;
+        }
+    }
+
     @GetMapping("/allFence")
     @Operation(summary = "Get all geo-fences across all organizations")
     public ResponseEntity<Object> getAllFences(
@@ -190,12 +250,21 @@ public class GeoFenceController {
         logger.info("Entered" + '"' + " getAllFences" + '"' + " method ...");
 
         try {
-            List<FenceResponse> fences = fenceService.getAllFences(timeZone);
+            String slot = "allFence|" + timeZone;
+            String etag = conditionalResponseCache.etag(slot, fenceReadVersions.allFencesVersion());
+            if (conditionalResponseCache.isNotModified(httpRequest, etag)) {
+                logger.info("Exited" + '"' + " getAllFences" + '"' + " method because not modified ...");
+                ThreadContext.clearMap();
+                return conditionalResponseCache.notModified(etag);
+            }
+
+            ResponseEntity<Object> response = conditionalResponseCache.ok(slot,
+                    fenceReadVersions::allFencesVersion, () -> fenceService.getAllFences(timeZone));
             long estimatedTime = System.currentTimeMillis() - startTime;
             ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
             logger.info("Exited" + '"' + " getAllFences" + '"' + " method because completed successfully ...");
             ThreadContext.clearMap();
-            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, fences);
+            return response;
         } catch (Exception e) {
             e.printStackTrace();
             String allStackTraces = StackTraceHandler.getAllStackTraces(e);
@@ -0,0 +1,139 @@
+package com.tse.core_application.controller.location;
+
+import com.tse.core_application.dto.fence.FenceOccupancyCountsResponse;
+import com.tse.core_application.dto.fence.FenceOccupancyResponse;
+import com.tse.core_application.service.location.FenceOccupancyService;
+import com.tse.core_application.service.preference.GeoFencingAccessService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import com.tse.core_application.DummyClasses.*;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.ThreadContext;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+
+/**
+ * REST controller for live fence occupancy from last known locations.
+ */
+@RestController
+@RequestMapping("/api/orgs")
+@Tag(name = "Fence Occupancy", description = "Endpoints for accounts currently inside fences")
+public class FenceOccupancyController {
+
+    private static final Logger logger = LogManager.getLogger(FenceOccupancyController.class);
+    private final JwtUtil jwtUtil;
+    private final UserService userService;
+    private final RequestHeaderHandler requestHeaderHandler;
+    private final FenceOccupancyService fenceOccupancyService;
+    private final GeoFencingAccessService geoFencingAccessService;
+
+    public FenceOccupancyController(JwtUtil jwtUtil, UserService userService, RequestHeaderHandler requestHeaderHandler,
+                                    FenceOccupancyService fenceOccupancyService,
+                                    GeoFencingAccessService geoFencingAccessService) {
+        this.jwtUtil = jwtUtil;
+        this.userService = userService;
+        this.requestHeaderHandler = requestHeaderHandler;
+        this.fenceOccupancyService = fenceOccupancyService;
+        this.geoFencingAccessService = geoFencingAccessService;
+    }
+
+    @GetMapping("/{orgId}/fences/{fenceId}/occupancy")
+    @Operation(
+            summary = "Get accounts currently inside a fence",
+            description = "Returns the accounts whose last known location (from location pings or punches) is inside the fence " +
+                    "and not older than the staleness window, most recently seen first."
+    )
+    public ResponseEntity<Object> getFenceOccupancy(
+            @PathVariable("orgId")
+            @Parameter(description = "Organization ID", required = true)
+            Long orgId,
+
+            @PathVariable("fenceId")
+            @Parameter(description = "Fence ID", required = true)
+            Long fenceId,
+
+            @RequestHeader(name = "screenName") String screenName,
+            @RequestHeader(name = "timeZone") String timeZone,
+            @RequestHeader(name = "accountIds") String accountIds,
+            HttpServletRequest httpRequest
+    ) {
+        long startTime = System.currentTimeMillis();
+        String jwtToken = httpRequest.getHeader("Authorization").substring(7);
+        String tokenUsername = jwtUtil.getUsernameFromToken(jwtToken);
+        User foundUser = userService.getUserByUserName(tokenUsername);
+        ThreadContext.put("accountId", requestHeaderHandler.getAccountIdFromRequestHeader(accountIds).toString());
+        ThreadContext.put("userId", foundUser.getUserId().toString());
+        ThreadContext.put("requestOriginatingPage", screenName);
+        logger.info("Entered" + '"' + " getFenceOccupancy" + '"' + " method ...");
+
+        try {
+            // Validate geo-fencing access for the organization
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            FenceOccupancyResponse response = fenceOccupancyService.getFenceOccupancy(orgId, fenceId);
+            long estimatedTime = System.currentTimeMillis() - startTime;
+            ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
+            logger.info("Exited" + '"' + " getFenceOccupancy" + '"' + " method because completed successfully ...");
+            ThreadContext.clearMap();
+            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String allStackTraces = StackTraceHandler.getAllStackTraces(e);
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get fence occupancy for username = "
+                    + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
+            ThreadContext.clearMap();
+            if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
+            else throw e;
+        }
+    }
+
+    @GetMapping("/{orgId}/fences/occupancy")
+    @Operation(
+            summary = "Get occupancy counts per fence of an org",
+            description = "Returns, for each fence of the org, how many accounts have a fresh last known location inside it."
+    )
+    public ResponseEntity<Object> getOrgOccupancy(
+            @PathVariable("orgId")
+            @Parameter(description = "Organization ID", required = true)
+            Long orgId,
+
+            @RequestHeader(name = "screenName") String screenName,
+            @RequestHeader(name = "timeZone") String timeZone,
+            @RequestHeader(name = "accountIds") String accountIds,
+            HttpServletRequest httpRequest
+    ) {
+        long startTime = System.currentTimeMillis();
+        String jwtToken = httpRequest.getHeader("Authorization").substring(7);
+        String tokenUsername = jwtUtil.getUsernameFromToken(jwtToken);
+        User foundUser = userService.getUserByUserName(tokenUsername);
+        ThreadContext.put("accountId", requestHeaderHandler.getAccountIdFromRequestHeader(accountIds).toString());
+        ThreadContext.put("userId", foundUser.getUserId().toString());
+        ThreadContext.put("requestOriginatingPage", screenName);
+        logger.info("Entered" + '"' + " getOrgOccupancy" + '"' + " method ...");
+
+        try {
+            // Validate geo-fencing access for the organization
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            FenceOccupancyCountsResponse response = fenceOccupancyService.getOrgOccupancy(orgId);
+            long estimatedTime = System.currentTimeMillis() - startTime;
+            ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
+            logger.info("Exited" + '"' + " getOrgOccupancy" + '"' + " method because completed successfully ...");
+            ThreadContext.clearMap();
+            return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            String allStackTraces = StackTraceHandler.getAllStackTraces(e);
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get org occupancy for username = "
+                    + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
+            ThreadContext.clearMap();
+            if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
+            else throw e;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.tse.core_application.controller.push;
+
+import com.tse.core_application.DummyClasses.JwtUtil;
+import com.tse.core_application.DummyClasses.RequestHeaderHandler;
+import com.tse.core_application.DummyClasses.User;
+import com.tse.core_application.DummyClasses.UserService;
+import com.tse.core_application.exception.ProblemException;
+import com.tse.core_application.service.dir.DirectoryProvider;
+import com.tse.core_application.service.preference.GeoFencingAccessService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriTemplate;
+
+import java.util.Map;
+
+/**
+ * Authenticates the push channel handshake the same way the REST endpoints authenticate a
+ * request (Authorization and accountIds headers, geo-fencing access of the org), checks that
+ * the account is the token user's account in the org, and stores the subscribing org, account
+ * and optional resume token as session attributes.
+ */
+@Component
+public class PushHandshakeInterceptor implements HandshakeInterceptor {
+
+    private static final Logger logger = LogManager.getLogger(PushHandshakeInterceptor.class);
+    private static final UriTemplate PUSH_PATH = new UriTemplate("/api/orgs/{orgId}/push");
+
+    static final String ATTR_ORG_ID = "orgId";
+    static final String ATTR_ACCOUNT_ID = "accountId";
+    static final String ATTR_RESUME_TOKEN = "resumeToken";
+
+    private final JwtUtil jwtUtil;
+    private final UserService userService;
+    private final RequestHeaderHandler requestHeaderHandler;
+    private final GeoFencingAccessService geoFencingAccessService;
+    private final DirectoryProvider directoryProvider;
+
+    public PushHandshakeInterceptor(JwtUtil jwtUtil, UserService userService, RequestHeaderHandler requestHeaderHandler,
+                                    GeoFencingAccessService geoFencingAccessService,
+                                    DirectoryProvider directoryProvider) {
+        this.jwtUtil = jwtUtil;
+        this.userService = userService;
+        this.requestHeaderHandler = requestHeaderHandler;
+        this.geoFencingAccessService = geoFencingAccessService;
+        this.directoryProvider = directoryProvider;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String authorization = request.getHeaders().getFirst("Authorization");
+        String accountIds = request.getHeaders().getFirst("accountIds");
+        if (authorization == null || !authorization.startsWith("Bearer ") || accountIds == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        try {
+            Long orgId = Long.valueOf(PUSH_PATH.match(request.getURI().getPath()).get("orgId"));
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            String tokenUsername = jwtUtil.getUsernameFromToken(authorization.substring(7));
+            User foundUser = userService.getUserByUserName(tokenUsername);
+            Long accountId = requestHeaderHandler.getAccountIdFromRequestHeader(accountIds);
+            if (foundUser == null || accountId == null
+                    || !directoryProvider.isAccountOfUser(orgId, foundUser.getUserId(), accountId)) {
+                throw new ProblemException(
+                        HttpStatus.FORBIDDEN,
+                        "ACCOUNT_NOT_AUTHORIZED",
+                        "Account not authorized",
+                        "Account " + accountId + " does not belong to the user in org " + orgId);
+            }
+
+            String resumeToken = UriComponentsBuilder.fromUri(request.getURI()).build()
+                    .getQueryParams().getFirst(ATTR_RESUME_TOKEN);
+
+            attributes.put(ATTR_ORG_ID, orgId);
+            attributes.put(ATTR_ACCOUNT_ID, accountId);
+            if (resumeToken != null && !resumeToken.isEmpty()) {
+                attributes.put(ATTR_RESUME_TOKEN, Long.valueOf(resumeToken));
+            }
+            logger.info("Push channel handshake accepted for orgId=" + orgId + ", accountId=" + accountId +
+                    ", userId=" + foundUser.getUserId());
+            return true;
+        } catch (ProblemException e) {
+            logger.warn("Push channel handshake rejected for " + request.getURI().getPath() + ": " + e.getMessage());
+            response.setStatusCode(e.getStatus());
+            return false;
+        } catch (RuntimeException e) {
+            logger.warn("Push channel handshake rejected for " + request.getURI().getPath() + ": " + e);
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.tse.core_application.controller.push;
+
+import com.tse.core_application.service.push.PushDispatcher;
+import com.tse.core_application.service.push.PushSession;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+/**
+ * Push channel: one WebSocket per client, subscribed to the account from the handshake.
+ * The channel is server-to-client only; inbound text is ignored (clients may use it as keep-alive).
+ */
+@Component
+public class PushWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LogManager.getLogger(PushWebSocketHandler.class);
+    private static final String ATTR_PUSH_SESSION = "pushSession";
+
+    private final PushDispatcher pushDispatcher;
+
+    @Value("${attendance.push.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${attendance.push.send-buffer-bytes:524288}")
+    private int sendBufferBytes;
+
+    public PushWebSocketHandler(PushDispatcher pushDispatcher) {
+        this.pushDispatcher = pushDispatcher;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        Long orgId = (Long) session.getAttributes().get(PushHandshakeInterceptor.ATTR_ORG_ID);
+        Long accountId = (Long) session.getAttributes().get(PushHandshakeInterceptor.ATTR_ACCOUNT_ID);
+        Long resumeToken = (Long) session.getAttributes().get(PushHandshakeInterceptor.ATTR_RESUME_TOKEN);
+
+        // Slow clients are cut off instead of blocking delivery to everyone else
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, sendBufferBytes);
+        PushSession pushSession = new PushSession(decorated, orgId, accountId);
+        session.getAttributes().put(ATTR_PUSH_SESSION, pushSession);
+
+        pushDispatcher.connect(pushSession, resumeToken);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        logger.warn("Push channel transport error on session " + session.getId() + ": " + exception.getMessage());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        PushSession pushSession = (PushSession) session.getAttributes().get(ATTR_PUSH_SESSION);
+        if (pushSession != null) {
+            pushDispatcher.disconnect(pushSession);
+        }
+    }
+}
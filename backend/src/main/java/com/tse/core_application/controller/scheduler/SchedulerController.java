@@ -1,16 +1,26 @@
 package com.tse.core_application.controller.scheduler;
 
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.service.preference.OrgEntitlementCache;
 import com.tse.core_application.service.scheduler.AttendanceSchedulerService;
+import com.tse.core_application.service.userfence.EffectiveFenceStore;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Internal scheduler controller for attendance automation.
  * Not exposed to frontend - only for internal/scheduled use.
@@ -22,9 +32,22 @@ public class SchedulerController {
 
     private static final Logger logger = LogManager.getLogger(SchedulerController.class);
     private final AttendanceSchedulerService attendanceSchedulerService;
+    private final EffectiveFenceStore effectiveFenceStore;
+    private final OrgEntitlementCache orgEntitlementCache;
+    private final Map<String, MetricsSource> metricsSources = new LinkedHashMap<>();
 
-    public SchedulerController(AttendanceSchedulerService attendanceSchedulerService) {
+    public SchedulerController(AttendanceSchedulerService attendanceSchedulerService,
+                               EffectiveFenceStore effectiveFenceStore,
+                               OrgEntitlementCache orgEntitlementCache,
+                               ObjectProvider<MetricsSource> metricsSources) {
         this.attendanceSchedulerService = attendanceSchedulerService;
+        this.effectiveFenceStore = effectiveFenceStore;
+        this.orgEntitlementCache = orgEntitlementCache;
+        metricsSources.orderedStream().forEach(source -> {
+            if (this.metricsSources.putIfAbsent(source.getMetricsName(), source) != null) {
+                throw new IllegalStateException("Duplicate metrics source name: " + source.getMetricsName());
+            }
+        });
     }
 
     /**
@@ -66,4 +89,82 @@ public class SchedulerController {
                     .body("Error processing auto-checkout: " + e.getMessage());
         }
     }
+
+    /**
+     * POST /internal/scheduler/rebuildEffectiveFences
+     * Full rebuild of the materialized effective fences of all orgs owned by this node.
+     * Runs nightly via @Scheduled annotation in EffectiveFenceStore.
+     */
+    @PostMapping("/rebuildEffectiveFences")
+    @Operation(summary = "Rebuild materialized effective fences",
+               description = "Internal scheduler endpoint to re-materialize effective fences of every account")
+    public ResponseEntity<String> rebuildEffectiveFences() {
+        try {
+            logger.info("Scheduler endpoint /rebuildEffectiveFences called");
+            effectiveFenceStore.rebuildAll();
+            return ResponseEntity.ok("Effective fence rebuild completed successfully");
+        } catch (Exception e) {
+            logger.error("Error in rebuildEffectiveFences scheduler: " + e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error rebuilding effective fences: " + e.getMessage());
+        }
+    }
+
+    /**
+     * POST /internal/scheduler/evictOrgEntitlement
+     * Drop the cached entitlement of one org (or of all orgs without orgId), e.g. after
+     * entity_preference was changed by the admin service.
+     */
+    @PostMapping("/evictOrgEntitlement")
+    @Operation(summary = "Evict cached org entitlements",
+               description = "Internal endpoint to drop cached geo-fencing entitlements so they are reloaded on next access")
+    public ResponseEntity<Map<String, Object>> evictOrgEntitlement(@RequestParam(value = "orgId", required = false) Long orgId) {
+        logger.info("Scheduler endpoint /evictOrgEntitlement called for orgId=" + orgId);
+        if (orgId != null) {
+            orgEntitlementCache.evict(orgId);
+        } else {
+            orgEntitlementCache.evictAll();
+        }
+        return ResponseEntity.ok(orgEntitlementCache.getMetrics());
+    }
+
+    /**
+     * GET /internal/scheduler/metrics
+     * Metrics of every registered MetricsSource, keyed by source name. A source that fails to
+     * report is listed with its error, so one broken source does not hide the others.
+     */
+    @GetMapping("/metrics")
+    @Operation(summary = "Internal metrics",
+               description = "Internal endpoint exposing the metrics of every component (scheduler executors, caches, " +
+                       "location engine, partitions, cold archive, data source routing), keyed by source name")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metricsSources.forEach((name, source) -> {
+            try {
+                metrics.put(name, source.getMetrics());
+            } catch (Exception e) {
+                logger.error("Error reading metrics of " + name + ": " + e.getMessage(), e);
+                Map<String, Object> error = new LinkedHashMap<>();
+                error.put("error", e.getMessage());
+                metrics.put(name, error);
+            }
+        });
+        return ResponseEntity.ok(metrics);
+    }
+
+    /**
+     * GET /internal/scheduler/metrics/{name}
+     * Metrics of one source, e.g. scheduler, coalescing, etag, location, partitions,
+     * coldArchive or dataSource.
+     */
+    @GetMapping("/metrics/{name}")
+    @Operation(summary = "Internal metrics of one component",
+               description = "Internal endpoint exposing the metrics of the named source; 404 if there is none")
+    public ResponseEntity<Map<String, ?>> metrics(@PathVariable("name") String name) {
+        MetricsSource source = metricsSources.get(name);
+        if (source == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(source.getMetrics());
+    }
 }
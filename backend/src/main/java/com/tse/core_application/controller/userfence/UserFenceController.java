@@ -1,6 +1,9 @@
 package com.tse.core_application.controller.userfence;
 
-import com.tse.core_application.dto.userfence.UserFencesResponse;
+import com.tse.core_application.dto.userfence.BulkUserFencesRequest;
+import com.tse.core_application.dto.userfence.BulkUserFencesResponse;
+import com.tse.core_application.service.etag.ConditionalResponseCache;
+import com.tse.core_application.service.fence.FenceReadVersions;
 import com.tse.core_application.service.userfence.UserFenceService;
 import com.tse.core_application.service.preference.GeoFencingAccessService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -14,6 +17,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.ThreadContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
 import org.springframework.http.HttpStatus;
 
 /**
@@ -30,14 +34,19 @@ public class UserFenceController {
     private final RequestHeaderHandler requestHeaderHandler;
     private final UserFenceService userFenceService;
     private final GeoFencingAccessService geoFencingAccessService;
+    private final FenceReadVersions fenceReadVersions;
+    private final ConditionalResponseCache conditionalResponseCache;
 
     public UserFenceController(JwtUtil jwtUtil, UserService userService, RequestHeaderHandler requestHeaderHandler,
-                              UserFenceService userFenceService, GeoFencingAccessService geoFencingAccessService) {
+                              UserFenceService userFenceService, GeoFencingAccessService geoFencingAccessService,
+                              FenceReadVersions fenceReadVersions, ConditionalResponseCache conditionalResponseCache) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
         this.requestHeaderHandler = requestHeaderHandler;
         this.userFenceService = userFenceService;
         this.geoFencingAccessService = geoFencingAccessService;
+        this.fenceReadVersions = fenceReadVersions;
+        this.conditionalResponseCache = conditionalResponseCache;
     }
 
     @GetMapping("/{orgId}/getUserFences")
@@ -77,20 +86,81 @@ public class UserFenceController {
             // Validate geo-fencing access for the organization
             geoFencingAccessService.validateGeoFencingAccess(orgId);
 
-            UserFencesResponse response = userFenceService.getUserFences(
+            boolean inactive = includeInactive != null ? includeInactive : false;
+
+            // Answer unchanged effective fences from the account's version stamp, before resolving them
+            String slot = "getUserFences|" + orgId + "|" + accountId + "|" + inactive;
+            String etag = conditionalResponseCache.etag(slot, fenceReadVersions.userFenceVersion(orgId, accountId));
+            if (conditionalResponseCache.isNotModified(httpRequest, etag)) {
+                logger.info("Exited" + '"' + " getUserFences" + '"' + " method because not modified ...");
+                ThreadContext.clearMap();
+                return conditionalResponseCache.notModified(etag);
+            }
+
+            ResponseEntity<Object> response = conditionalResponseCache.ok(slot,
+                    () -> fenceReadVersions.userFenceVersion(orgId, accountId),
+                    () -> userFenceService.getUserFences(orgId, accountId, inactive));
+            long estimatedTime = System.currentTimeMillis() - startTime;
+            ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
+            logger.info("Exited" + '"' + " getUserFences" + '"' + " method because completed successfully ...");
+            ThreadContext.clearMap();
+            return response;
+        } catch (Exception e) {
+            e.printStackTrace();
+            String allStackTraces = StackTraceHandler.getAllStackTraces(e);
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get user fences for username = "
+                    + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
+            ThreadContext.clearMap();
+            if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
+            else throw e;
+        }
+    }
+
+    @PostMapping("/{orgId}/getUserFencesBulk")
+    @Operation(
+            summary = "Get effective fences for many users in an org",
+            description = "Bulk variant of getUserFences for manager screens. Returns effective fences, default fence " +
+                    "and counts for each requested account, resolved with a fixed number of queries."
+    )
+    public ResponseEntity<Object> getUserFencesBulk(
+            @PathVariable("orgId")
+            @Parameter(description = "Organization ID", required = true)
+            Long orgId,
+
+            @Valid @RequestBody BulkUserFencesRequest request,
+
+            @RequestHeader(name = "screenName") String screenName,
+            @RequestHeader(name = "timeZone") String timeZone,
+            @RequestHeader(name = "accountIds") String accountIds,
+            HttpServletRequest httpRequest
+    ) {
+        long startTime = System.currentTimeMillis();
+        String jwtToken = httpRequest.getHeader("Authorization").substring(7);
+        String tokenUsername = jwtUtil.getUsernameFromToken(jwtToken);
+        User foundUser = userService.getUserByUserName(tokenUsername);
+        ThreadContext.put("accountId", requestHeaderHandler.getAccountIdFromRequestHeader(accountIds).toString());
+        ThreadContext.put("userId", foundUser.getUserId().toString());
+        ThreadContext.put("requestOriginatingPage", screenName);
+        logger.info("Entered" + '"' + " getUserFencesBulk" + '"' + " method ...");
+
+        try {
+            // Validate geo-fencing access for the organization
+            geoFencingAccessService.validateGeoFencingAccess(orgId);
+
+            BulkUserFencesResponse response = userFenceService.getUserFencesBulk(
                     orgId,
-                    accountId,
-                    includeInactive != null ? includeInactive : false
+                    request.getAccountIds(),
+                    request.getIncludeInactive() != null ? request.getIncludeInactive() : false
             );
             long estimatedTime = System.currentTimeMillis() - startTime;
             ThreadContext.put("systemResponseTime", String.valueOf(estimatedTime));
-            logger.info("Exited" + '"' + " getUserFences" + '"' + " method because completed successfully ...");
+            logger.info("Exited" + '"' + " getUserFencesBulk" + '"' + " method because completed successfully ...");
             ThreadContext.clearMap();
             return CustomResponseHandler.generateCustomResponse(HttpStatus.OK, Constants.FormattedResponse.SUCCESS, response);
         } catch (Exception e) {
             e.printStackTrace();
             String allStackTraces = StackTraceHandler.getAllStackTraces(e);
-            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get user fences for username = "
+            logger.error(httpRequest.getRequestURI() + " API: " + "Something went wrong: Not able to get bulk user fences for username = "
                     + foundUser.getPrimaryEmail() + "Caught Exception: " + e, new Throwable(allStackTraces));
             ThreadContext.clearMap();
             if (e.getMessage() == null) throw new InternalServerErrorException("Internal Server Error!");
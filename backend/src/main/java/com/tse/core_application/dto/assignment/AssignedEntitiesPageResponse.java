@@ -0,0 +1,27 @@
+package com.tse.core_application.dto.assignment;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * One page of assigned or unassigned entities of a single type for a fence.
+ * Pass nextCursor back as cursor to get the following page; it is absent on the last page.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AssignedEntitiesPageResponse {
+    private Long fenceId;
+    private Integer entityTypeId;
+    private String view;
+    private List<AssignedEntity> items;
+    private Long nextCursor;
+    private Long assignedTotal;
+}
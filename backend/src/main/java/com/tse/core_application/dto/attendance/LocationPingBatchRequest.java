@@ -0,0 +1,46 @@
+package com.tse.core_application.dto.attendance;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Request body for POST /api/orgs/{orgId}/attendance/locationPings
+ * GPS fixes a device collected since its previous upload.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocationPingBatchRequest {
+
+    @JsonProperty("accountId")
+    private Long accountId;
+
+    @JsonProperty("pings")
+    private List<LocationPing> pings = new ArrayList<>();
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class LocationPing {
+
+        @JsonProperty("lat")
+        private Double lat;
+
+        @JsonProperty("lon")
+        private Double lon;
+
+        @JsonProperty("accuracyM")
+        private Double accuracyM;
+
+        @JsonProperty("tsEpochMs")
+        private Long tsEpochMs; // fix time, epoch milliseconds; server receive time when absent
+    }
+}
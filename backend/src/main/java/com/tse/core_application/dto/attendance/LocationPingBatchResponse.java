@@ -0,0 +1,38 @@
+package com.tse.core_application.dto.attendance;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response for POST /api/orgs/{orgId}/attendance/locationPings
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocationPingBatchResponse {
+
+    @JsonProperty("accountId")
+    private Long accountId;
+
+    @JsonProperty("accepted")
+    private Integer accepted;
+
+    @JsonProperty("ignored")
+    private Integer ignored; // out of order, too old, or above the accuracy gate
+
+    @JsonProperty("state")
+    private String state; // OUTSIDE, ENTERING, INSIDE, EXITING
+
+    @JsonProperty("fenceId")
+    private Long fenceId;
+
+    @JsonProperty("recordedEvents")
+    private List<String> recordedEvents = new ArrayList<>(); // CHECK_IN / CHECK_OUT written by this batch
+}
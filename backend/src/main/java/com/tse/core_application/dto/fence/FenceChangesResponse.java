@@ -0,0 +1,34 @@
+package com.tse.core_application.dto.fence;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Fence changes of an organization since a change sequence, for clients keeping a local
+ * fence replica.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FenceChangesResponse {
+
+    /** Change sequence the changes start after; 0 when reset. */
+    private Long since;
+
+    /** Change sequence to pass as since on the next sync. */
+    private Long highWaterMark;
+
+    /** The requested since was unknown: drop the replica and take the upserts as the full list. */
+    private Boolean reset;
+
+    /** Active fences created or updated since the change sequence. */
+    private List<FenceResponse> upserts = new ArrayList<>();
+
+    /** Ids of fences deactivated since the change sequence. */
+    private List<Long> deletions = new ArrayList<>();
+}
@@ -0,0 +1,29 @@
+package com.tse.core_application.dto.fence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response for GET /api/orgs/{orgId}/fences/occupancy
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FenceOccupancyCountsResponse {
+
+    @JsonProperty("orgId")
+    private Long orgId;
+
+    @JsonProperty("trackedAccounts")
+    private Integer trackedAccounts; // accounts with a fresh last known location, inside a fence or not
+
+    @JsonProperty("countsByFence")
+    private Map<Long, Integer> countsByFence = new HashMap<>(); // fences nobody is inside are omitted
+}
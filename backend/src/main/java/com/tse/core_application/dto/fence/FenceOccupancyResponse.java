@@ -0,0 +1,54 @@
+package com.tse.core_application.dto.fence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Response for GET /api/orgs/{orgId}/fences/{fenceId}/occupancy
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FenceOccupancyResponse {
+
+    @JsonProperty("fenceId")
+    private Long fenceId;
+
+    @JsonProperty("count")
+    private Integer count;
+
+    @JsonProperty("occupants")
+    private List<Occupant> occupants = new ArrayList<>(); // most recently seen first
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Occupant {
+
+        @JsonProperty("accountId")
+        private Long accountId;
+
+        @JsonProperty("lat")
+        private Double lat;
+
+        @JsonProperty("lon")
+        private Double lon;
+
+        @JsonProperty("accuracyM")
+        private Double accuracyM;
+
+        @JsonProperty("lastSeenEpochMs")
+        private Long lastSeenEpochMs;
+
+        @JsonProperty("source")
+        private String source; // PING or PUNCH
+    }
+}
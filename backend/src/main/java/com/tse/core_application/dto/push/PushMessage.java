@@ -0,0 +1,37 @@
+package com.tse.core_application.dto.push;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+
+/**
+ * Message sent over the push channel.
+ *
+ * type is PUNCH_REQUEST or ATTENDANCE for changes, READY once the channel is live (after any
+ * resume replay) and RESYNC when the resume token is too old to replay; the client should
+ * then poll once. resumeToken is the value to reconnect with.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PushMessage {
+
+    public static final String TYPE_READY = "READY";
+    public static final String TYPE_RESYNC = "RESYNC";
+
+    private String type;
+
+    private String change;
+
+    private String resumeToken;
+
+    private Long orgId;
+
+    private Long aggregateId;
+
+    private Map<String, Object> data;
+}
@@ -0,0 +1,26 @@
+package com.tse.core_application.dto.userfence;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * Request DTO for POST /api/orgs/{orgId}/getUserFencesBulk.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkUserFencesRequest {
+
+    @NotNull(message = "accountIds is required")
+    @Size(min = 1, message = "At least one accountId is required")
+    private List<Long> accountIds;
+
+    private Boolean includeInactive = false;
+}
@@ -0,0 +1,26 @@
+package com.tse.core_application.dto.userfence;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Effective fences for several users of an organization, one entry per requested account.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkUserFencesResponse {
+
+    @JsonProperty("orgId")
+    private Long orgId;
+
+    @JsonProperty("users")
+    private List<UserFencesResponse> users = new ArrayList<>();
+}
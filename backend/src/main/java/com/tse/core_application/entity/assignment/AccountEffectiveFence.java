@@ -0,0 +1,61 @@
+package com.tse.core_application.entity.assignment;
+
+import com.tse.core_application.dto.userfence.SourceRef;
+import com.vladmihalcea.hibernate.type.json.JsonBinaryType;
+import org.hibernate.annotations.Type;
+import org.hibernate.annotations.TypeDef;
+
+import javax.persistence.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Materialized effective fence of an account: one row per (org, account, fence).
+ * Maintained by EffectiveFenceStore; written with JDBC batches, read through JPA.
+ */
+@Entity
+@Table(name = "account_effective_fence")
+@TypeDef(name = "jsonb", typeClass = JsonBinaryType.class)
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccountEffectiveFence {
+
+    public static final int SOURCE_USER = 1;
+    public static final int SOURCE_TEAM = 2;
+    public static final int SOURCE_PROJECT = 4;
+    public static final int SOURCE_ORG = 8;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "org_id", nullable = false)
+    private Long orgId;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @Column(name = "fence_id", nullable = false)
+    private Long fenceId;
+
+    @Column(name = "source_mask", nullable = false)
+    private Short sourceMask;
+
+    @Column(name = "is_default_resolved", nullable = false)
+    private Boolean isDefaultResolved = false;
+
+    @Type(type = "jsonb")
+    @Column(name = "sources", columnDefinition = "jsonb", nullable = false)
+    private List<SourceRef> sources = new ArrayList<>();
+
+    public boolean hasSource(int sourceBit) {
+        return sourceMask != null && (sourceMask & sourceBit) != 0;
+    }
+}
@@ -19,7 +19,8 @@ import org.hibernate.annotations.UpdateTimestamp;
 public class FenceAssignment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "fence_assignment_id_gen")
+    @SequenceGenerator(name = "fence_assignment_id_gen", sequenceName = "fence_assignment_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "org_id", nullable = false)
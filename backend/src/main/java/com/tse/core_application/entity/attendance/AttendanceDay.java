@@ -30,7 +30,8 @@ import lombok.Setter;
 public class AttendanceDay {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "attendance_day_id_gen")
+    @SequenceGenerator(name = "attendance_day_id_gen", sequenceName = "attendance_day_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "org_id", nullable = false)
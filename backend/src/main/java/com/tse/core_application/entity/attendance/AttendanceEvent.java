@@ -22,6 +22,7 @@ import org.hibernate.annotations.CreationTimestamp;
 /**
  * Represents a punch event (CHECK_IN, CHECK_OUT, BREAK_START, BREAK_END, PUNCHED).
  * Phase 6a: Basic entity structure for foundational infrastructure.
+ * Stored in monthly partitions by tsUtc; the table's primary key is (id, ts_utc).
  */
 @Entity
 @Table(name = "attendance_event")
@@ -33,7 +34,8 @@ import org.hibernate.annotations.CreationTimestamp;
 public class AttendanceEvent {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "attendance_event_id_gen")
+    @SequenceGenerator(name = "attendance_event_id_gen", sequenceName = "attendance_event_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "org_id", nullable = false)
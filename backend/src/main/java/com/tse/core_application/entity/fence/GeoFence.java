@@ -51,6 +51,10 @@ public class GeoFence {
     @Column(name = "is_active", nullable = false)
     private Boolean isActive = true;
 
+    // Org's fence version at the last create/update, for delta sync
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq = 0L;
+
     // Audit fields
     @Column(name = "created_by")
     private Long createdBy;
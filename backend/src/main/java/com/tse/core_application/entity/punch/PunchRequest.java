@@ -23,7 +23,8 @@ import org.hibernate.annotations.UpdateTimestamp;
 public class PunchRequest {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "punch_request_id_gen")
+    @SequenceGenerator(name = "punch_request_id_gen", sequenceName = "punch_request_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "org_id", nullable = false)
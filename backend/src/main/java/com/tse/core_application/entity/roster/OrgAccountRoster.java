@@ -0,0 +1,37 @@
+package com.tse.core_application.entity.roster;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * Membership of an account in an org's attendance roster.
+ * Written once, on the account's first attendance event in the org.
+ */
+@Entity
+@Table(name = "org_account_roster")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrgAccountRoster {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "org_id", nullable = false)
+    private Long orgId;
+
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+
+    @CreationTimestamp
+    @Column(name = "created_datetime", nullable = false, updatable = false)
+    private LocalDateTime createdDatetime;
+}
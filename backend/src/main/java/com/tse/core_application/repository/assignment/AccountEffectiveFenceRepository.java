@@ -0,0 +1,14 @@
+package com.tse.core_application.repository.assignment;
+
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AccountEffectiveFenceRepository extends JpaRepository<AccountEffectiveFence, Long> {
+
+    List<AccountEffectiveFence> findByOrgIdAndAccountIdIn(Long orgId, Collection<Long> accountIds);
+}
@@ -1,6 +1,7 @@
 package com.tse.core_application.repository.assignment;
 
 import com.tse.core_application.entity.assignment.FenceAssignment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -31,7 +32,7 @@ public interface FenceAssignmentRepository extends JpaRepository<FenceAssignment
                                @Param("entityId") Long entityId);
 
     @Query("SELECT fa.fenceId FROM FenceAssignment fa " +
-           "WHERE fa.orgId = :orgId AND fa.entityTypeId = :entityTypeId AND fa.entityId = :entityId")
+           "WHERE fa.orgId = :orgId AND fa.entityTypeId = :entityTypeId AND fa.entityId = :entityId ORDER BY fa.id")
     List<Long> findFenceIdsByEntity(@Param("orgId") Long orgId,
                                      @Param("entityTypeId") Integer entityTypeId,
                                      @Param("entityId") Long entityId);
@@ -50,4 +51,48 @@ public interface FenceAssignmentRepository extends JpaRepository<FenceAssignment
             @Param("entityIds") Collection<Long> entityIds);
 
     List<FenceAssignment> findByOrgIdAndFenceIdIn(Long orgId, Collection<Long> fenceIds);
+
+    /**
+     * All assignments of the given users, teams and projects plus the org itself, in one query.
+     * Each list must be non-empty (pass a placeholder such as -1 when there is nothing to match).
+     */
+    @Query("SELECT fa FROM FenceAssignment fa WHERE fa.orgId = :orgId AND (" +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.USER AND fa.entityId IN :userIds) OR " +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.TEAM AND fa.entityId IN :teamIds) OR " +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.PROJECT AND fa.entityId IN :projectIds) OR " +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.ORG AND fa.entityId = :orgId))")
+    List<FenceAssignment> findForEntities(@Param("orgId") Long orgId,
+                                          @Param("userIds") Collection<Long> userIds,
+                                          @Param("teamIds") Collection<Long> teamIds,
+                                          @Param("projectIds") Collection<Long> projectIds);
+
+    /**
+     * All assignments (any fence) of the given users, teams, projects and orgs, in one query,
+     * ordered by ID. Each list must be non-empty (pass a placeholder such as -1 when there is
+     * nothing to match).
+     */
+    @Query("SELECT fa FROM FenceAssignment fa WHERE fa.orgId = :orgId AND (" +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.USER AND fa.entityId IN :userIds) OR " +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.TEAM AND fa.entityId IN :teamIds) OR " +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.PROJECT AND fa.entityId IN :projectIds) OR " +
+           "(fa.entityTypeId = com.tse.core_application.constants.EntityTypes.ORG AND fa.entityId IN :orgIds)) " +
+           "ORDER BY fa.id")
+    List<FenceAssignment> findForEntityLists(@Param("orgId") Long orgId,
+                                             @Param("userIds") Collection<Long> userIds,
+                                             @Param("teamIds") Collection<Long> teamIds,
+                                             @Param("projectIds") Collection<Long> projectIds,
+                                             @Param("orgIds") Collection<Long> orgIds);
+
+    /**
+     * Keyset page of a fence's assignments of one entity type, ordered by entity ID.
+     */
+    @Query("SELECT fa FROM FenceAssignment fa WHERE fa.orgId = :orgId AND fa.fenceId = :fenceId " +
+           "AND fa.entityTypeId = :entityTypeId AND fa.entityId > :afterId ORDER BY fa.entityId")
+    List<FenceAssignment> findPageByFenceAndType(@Param("orgId") Long orgId,
+                                                 @Param("fenceId") Long fenceId,
+                                                 @Param("entityTypeId") Integer entityTypeId,
+                                                 @Param("afterId") Long afterId,
+                                                 Pageable pageable);
+
+    long countByOrgIdAndFenceIdAndEntityTypeId(Long orgId, Long fenceId, Integer entityTypeId);
 }
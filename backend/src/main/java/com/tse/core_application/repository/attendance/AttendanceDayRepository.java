@@ -2,6 +2,8 @@ package com.tse.core_application.repository.attendance;
 
 import com.tse.core_application.entity.attendance.AttendanceDay;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
@@ -19,4 +21,18 @@ public interface AttendanceDayRepository extends JpaRepository<AttendanceDay, Lo
 
     List<AttendanceDay> findByOrgIdAndAccountIdAndDateKeyBetween(
             Long orgId, Long accountId, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Days of an org on the given date that have a check-in but no check-out yet.
+     */
+    @Query("SELECT d FROM AttendanceDay d WHERE d.orgId = :orgId AND d.dateKey = :dateKey " +
+           "AND d.firstInUtc IS NOT NULL AND d.lastOutUtc IS NULL")
+    List<AttendanceDay> findOpenDays(@Param("orgId") Long orgId, @Param("dateKey") LocalDate dateKey);
+
+    /**
+     * Accounts of an org that have checked in on the given date.
+     */
+    @Query("SELECT d.accountId FROM AttendanceDay d WHERE d.orgId = :orgId AND d.dateKey = :dateKey " +
+           "AND d.firstInUtc IS NOT NULL")
+    List<Long> findCheckedInAccountIds(@Param("orgId") Long orgId, @Param("dateKey") LocalDate dateKey);
 }
@@ -5,17 +5,22 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Repository for AttendanceEvent.
  * Phase 6a: Basic CRUD operations.
+ *
+ * attendance_event is partitioned by month on ts_utc (V16). Every query bounds tsUtc so that
+ * it only touches the partitions of its range.
  */
 @Repository
 public interface AttendanceEventRepository extends JpaRepository<AttendanceEvent, Long> {
 
-    List<AttendanceEvent> findByOrgIdAndAccountIdOrderByTsUtcDesc(Long orgId, Long accountId);
-
     List<AttendanceEvent> findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
             Long orgId, Long accountId, LocalDateTime start, LocalDateTime end);
+
+    List<AttendanceEvent> findByOrgIdAndAccountIdInAndTsUtcBetweenOrderByTsUtcAsc(
+            Long orgId, Collection<Long> accountIds, LocalDateTime start, LocalDateTime end);
 }
@@ -3,6 +3,8 @@ package com.tse.core_application.repository.fence;
 import com.tse.core_application.entity.fence.GeoFence;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
@@ -19,4 +21,22 @@ public interface GeoFenceRepository extends JpaRepository<GeoFence, Long>, JpaSp
     List<GeoFence> findByOrgIdAndIdInAndIsActiveTrue(Long orgId, Collection<Long> ids);
 
     List<GeoFence> findByOrgId(Long orgId);
+
+    /**
+     * Read-only label data of a fence; not a managed entity, so it can be shared across threads.
+     */
+    interface FenceLabelView {
+        Long getId();
+        String getName();
+        Double getCenterLat();
+        Double getCenterLng();
+    }
+
+    @Query("SELECT f.id AS id, f.name AS name, f.centerLat AS centerLat, f.centerLng AS centerLng " +
+           "FROM GeoFence f WHERE f.orgId = :orgId")
+    List<FenceLabelView> findLabelsByOrgId(@Param("orgId") Long orgId);
+
+    @Query("SELECT f FROM GeoFence f WHERE f.orgId = :orgId AND f.changeSeq > :since AND f.changeSeq <= :upTo " +
+           "ORDER BY f.changeSeq, f.id")
+    List<GeoFence> findChangedBetween(@Param("orgId") Long orgId, @Param("since") Long since, @Param("upTo") Long upTo);
 }
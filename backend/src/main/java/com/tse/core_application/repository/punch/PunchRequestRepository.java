@@ -2,6 +2,7 @@ package com.tse.core_application.repository.punch;
 
 import com.tse.core_application.entity.punch.PunchRequest;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -64,4 +65,35 @@ public interface PunchRequestRepository extends JpaRepository<PunchRequest, Long
             @Param("orgId") Long orgId,
             @Param("now") LocalDateTime now
     );
+
+    /**
+     * Lightweight projection used to rebuild the expiry queue without loading full rows.
+     */
+    interface PendingExpiryView {
+        Long getId();
+        Long getOrgId();
+        LocalDateTime getExpiresAt();
+    }
+
+    List<PendingExpiryView> findByState(PunchRequest.State state);
+
+    List<PendingExpiryView> findByStateAndExpiresAtLessThanEqual(PunchRequest.State state, LocalDateTime expiresAt);
+
+    List<PunchRequest> findByIdInAndState(Collection<Long> ids, PunchRequest.State state);
+
+    /**
+     * Requests in the given state expiring after the given instant (active registry load).
+     */
+    List<PunchRequest> findByStateAndExpiresAtAfter(PunchRequest.State state, LocalDateTime expiresAt);
+
+    /**
+     * Set-based transition of a batch of requests from PENDING to EXPIRED.
+     * Rows that were fulfilled or cancelled in the meantime are left untouched.
+     */
+    @Modifying
+    @Query("UPDATE PunchRequest pr " +
+           "SET pr.state = com.tse.core_application.entity.punch.PunchRequest.State.EXPIRED, " +
+           "pr.updatedDatetime = :now " +
+           "WHERE pr.id IN :ids AND pr.state = 'PENDING'")
+    int markExpired(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
 }
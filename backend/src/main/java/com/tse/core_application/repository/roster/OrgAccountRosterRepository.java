@@ -0,0 +1,25 @@
+package com.tse.core_application.repository.roster;
+
+import com.tse.core_application.entity.roster.OrgAccountRoster;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OrgAccountRosterRepository extends JpaRepository<OrgAccountRoster, Long> {
+
+    @Query("SELECT r.accountId FROM OrgAccountRoster r WHERE r.orgId = :orgId")
+    List<Long> findAccountIdsByOrgId(@Param("orgId") Long orgId);
+
+    /**
+     * Idempotent insert; returns 1 if the account was new to the org, 0 otherwise.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO org_account_roster (org_id, account_id) VALUES (:orgId, :accountId) " +
+                   "ON CONFLICT (org_id, account_id) DO NOTHING", nativeQuery = true)
+    int upsert(@Param("orgId") Long orgId, @Param("accountId") Long accountId);
+}
@@ -0,0 +1,37 @@
+package com.tse.core_application.service.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Storage of archived data outside the attendance tables: cold archive files and partition
+ * exports, addressed by slash-separated keys. Every node must see the same objects.
+ *
+ * Selected with attendance.archive.store: directory (default), an object store bucket or
+ * network share mounted at attendance.archive.store-dir on every node, so archived data frees
+ * its space in Postgres; or database, which keeps the objects in archive_store_chunk for
+ * deployments without such a mount.
+ */
+public interface ArchiveStore {
+
+    String getStoreName();
+
+    /**
+     * Store the content under the key, replacing any object stored there. A reader sees the
+     * old object or the new one, never part of it.
+     */
+    void put(String key, InputStream content) throws IOException;
+
+    /**
+     * Copy the object to target, replacing it.
+     *
+     * @return false if no object is stored under the key
+     */
+    boolean get(String key, Path target) throws IOException;
+
+    /**
+     * Delete the object, if there is one.
+     */
+    void delete(String key) throws IOException;
+}
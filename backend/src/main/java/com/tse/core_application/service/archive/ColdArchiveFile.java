@@ -0,0 +1,363 @@
+package com.tse.core_application.service.archive;
+
+import com.tse.core_application.constants.attendance.AttendanceStatus;
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.tse.core_application.service.archive.ColdArchiveFormat.NO_CODE;
+
+/**
+ * One memory-mapped cold archive file (see {@link ColdArchiveFormat}).
+ *
+ * Opening reads only the header, dictionaries and account directories; column values are read
+ * with absolute gets on the shared mapping, so one instance is safe to use from many threads.
+ * Strings are decoded on first use and kept.
+ */
+final class ColdArchiveFile {
+
+    private final ByteBuffer buffer;
+    private final long orgId;
+    private final long monthStartMs;
+
+    private final EventKind[] eventKinds;
+    private final EventSource[] eventSources;
+    private final EventAction[] eventActions;
+    private final IntegrityVerdict[] verdicts;
+    private final AttendanceStatus[] statuses;
+
+    private final int[] stringOffsets;
+    private final String[] strings;
+    private final long[] fenceIds;
+
+    private final int eventCount;
+    private final long[] eventAccountIds;
+    private final int[] eventRowStarts;
+    private final int[] eventTsStarts;
+    private final int tsOffset;
+    private final int eventIdOffset;
+    private final int kindOffset;
+    private final int sourceOffset;
+    private final int actionOffset;
+    private final int verdictOffset;
+    private final int bitsOffset;
+    private final int latOffset;
+    private final int lonOffset;
+    private final int accuracyOffset;
+    private final int fenceOffset;
+    private final int failReasonOffset;
+    private final int flagsOffset;
+    private final int punchRequestOffset;
+    private final int requesterOffset;
+    private final int clientTzOffset;
+    private final int clientLocalTsOffset;
+
+    private final int dayCount;
+    private final long[] dayAccountIds;
+    private final int[] dayRowStarts;
+    private final int dayIdOffset;
+    private final int dayOfMonthOffset;
+    private final int firstInOffset;
+    private final int lastOutOffset;
+    private final int workedOffset;
+    private final int breakOffset;
+    private final int statusOffset;
+    private final int anomaliesOffset;
+
+    private ColdArchiveFile(ByteBuffer buffer) {
+        this.buffer = buffer;
+        ByteBuffer in = buffer.duplicate();
+
+        if (in.getInt() != ColdArchiveFormat.MAGIC) {
+            throw new IllegalStateException("Not a cold archive file");
+        }
+        int version = in.getInt();
+        if (version != ColdArchiveFormat.VERSION) {
+            throw new IllegalStateException("Unsupported cold archive version " + version);
+        }
+        orgId = in.getLong();
+        monthStartMs = in.getLong();
+
+        eventKinds = readNames(in, EventKind.class, new EventKind[0]);
+        eventSources = readNames(in, EventSource.class, new EventSource[0]);
+        eventActions = readNames(in, EventAction.class, new EventAction[0]);
+        verdicts = readNames(in, IntegrityVerdict.class, new IntegrityVerdict[0]);
+        statuses = readNames(in, AttendanceStatus.class, new AttendanceStatus[0]);
+
+        int stringCount = in.getInt();
+        stringOffsets = new int[stringCount];
+        strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            stringOffsets[i] = in.position();
+            in.position(in.position() + 4 + in.getInt());
+        }
+        fenceIds = new long[in.getInt()];
+        for (int i = 0; i < fenceIds.length; i++) {
+            fenceIds[i] = in.getLong();
+        }
+
+        eventCount = in.getInt();
+        int eventAccounts = in.getInt();
+        eventAccountIds = new long[eventAccounts];
+        eventRowStarts = new int[eventAccounts];
+        eventTsStarts = new int[eventAccounts];
+        for (int i = 0; i < eventAccounts; i++) {
+            eventAccountIds[i] = in.getLong();
+            eventRowStarts[i] = in.getInt();
+            eventTsStarts[i] = in.getInt();
+        }
+        int tsLength = in.getInt();
+        tsOffset = in.position();
+        eventIdOffset = tsOffset + tsLength;
+        kindOffset = eventIdOffset + eventCount * 8;
+        sourceOffset = kindOffset + eventCount;
+        actionOffset = sourceOffset + eventCount;
+        verdictOffset = actionOffset + eventCount;
+        bitsOffset = verdictOffset + eventCount;
+        latOffset = bitsOffset + eventCount;
+        lonOffset = latOffset + eventCount * 4;
+        accuracyOffset = lonOffset + eventCount * 4;
+        fenceOffset = accuracyOffset + eventCount * 4;
+        failReasonOffset = fenceOffset + eventCount * 4;
+        flagsOffset = failReasonOffset + eventCount * 4;
+        punchRequestOffset = flagsOffset + eventCount * 4;
+        requesterOffset = punchRequestOffset + eventCount * 8;
+        clientTzOffset = requesterOffset + eventCount * 8;
+        clientLocalTsOffset = clientTzOffset + eventCount * 4;
+        in.position(clientLocalTsOffset + eventCount * 8);
+
+        dayCount = in.getInt();
+        int dayAccounts = in.getInt();
+        dayAccountIds = new long[dayAccounts];
+        dayRowStarts = new int[dayAccounts];
+        for (int i = 0; i < dayAccounts; i++) {
+            dayAccountIds[i] = in.getLong();
+            dayRowStarts[i] = in.getInt();
+        }
+        dayIdOffset = in.position();
+        dayOfMonthOffset = dayIdOffset + dayCount * 8;
+        firstInOffset = dayOfMonthOffset + dayCount;
+        lastOutOffset = firstInOffset + dayCount * 8;
+        workedOffset = lastOutOffset + dayCount * 8;
+        breakOffset = workedOffset + dayCount * 4;
+        statusOffset = breakOffset + dayCount * 4;
+        anomaliesOffset = statusOffset + dayCount;
+        if (anomaliesOffset + dayCount * 4 != buffer.limit()) {
+            throw new IllegalStateException("Truncated cold archive file");
+        }
+    }
+
+    static ColdArchiveFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ColdArchiveFile(mapped);
+        }
+    }
+
+    long orgId() {
+        return orgId;
+    }
+
+    long monthStartMs() {
+        return monthStartMs;
+    }
+
+    int eventCount() {
+        return eventCount;
+    }
+
+    int dayCount() {
+        return dayCount;
+    }
+
+    /**
+     * Row range [start, end) of the account's events, null if the account has none.
+     */
+    int[] eventRows(long accountId) {
+        int index = Arrays.binarySearch(eventAccountIds, accountId);
+        if (index < 0) {
+            return null;
+        }
+        int end = index + 1 < eventRowStarts.length ? eventRowStarts[index + 1] : eventCount;
+        return new int[]{eventRowStarts[index], end};
+    }
+
+    /**
+     * Event times (epoch ms) of the account, in row order, decoded from the delta column.
+     */
+    long[] eventTimes(long accountId) {
+        int index = Arrays.binarySearch(eventAccountIds, accountId);
+        if (index < 0) {
+            return new long[0];
+        }
+        int end = index + 1 < eventRowStarts.length ? eventRowStarts[index + 1] : eventCount;
+        long[] times = new long[end - eventRowStarts[index]];
+        int position = tsOffset + eventTsStarts[index];
+        long ts = monthStartMs;
+        for (int i = 0; i < times.length; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            ts += delta;
+            times[i] = ts;
+        }
+        return times;
+    }
+
+    long eventId(int row) {
+        return buffer.getLong(eventIdOffset + row * 8);
+    }
+
+    EventKind eventKind(int row) {
+        return eventKinds[buffer.get(kindOffset + row)];
+    }
+
+    EventSource eventSource(int row) {
+        return eventSources[buffer.get(sourceOffset + row)];
+    }
+
+    EventAction eventAction(int row) {
+        return eventActions[buffer.get(actionOffset + row)];
+    }
+
+    IntegrityVerdict verdict(int row) {
+        return verdicts[buffer.get(verdictOffset + row)];
+    }
+
+    int eventBits(int row) {
+        return buffer.get(bitsOffset + row);
+    }
+
+    double lat(int row) {
+        return ColdArchiveFormat.unpackCoordinate(buffer.getInt(latOffset + row * 4));
+    }
+
+    double lon(int row) {
+        return ColdArchiveFormat.unpackCoordinate(buffer.getInt(lonOffset + row * 4));
+    }
+
+    double accuracyM(int row) {
+        return buffer.getFloat(accuracyOffset + row * 4);
+    }
+
+    Long fenceId(int row) {
+        int code = buffer.getInt(fenceOffset + row * 4);
+        return code == NO_CODE ? null : fenceIds[code];
+    }
+
+    String failReason(int row) {
+        return string(buffer.getInt(failReasonOffset + row * 4));
+    }
+
+    String flagsJson(int row) {
+        return string(buffer.getInt(flagsOffset + row * 4));
+    }
+
+    long punchRequestId(int row) {
+        return buffer.getLong(punchRequestOffset + row * 8);
+    }
+
+    long requesterAccountId(int row) {
+        return buffer.getLong(requesterOffset + row * 8);
+    }
+
+    String clientTz(int row) {
+        return string(buffer.getInt(clientTzOffset + row * 4));
+    }
+
+    long clientLocalTsMs(int row) {
+        return buffer.getLong(clientLocalTsOffset + row * 8);
+    }
+
+    /**
+     * Row range [start, end) of the account's days, null if the account has none.
+     */
+    int[] dayRows(long accountId) {
+        int index = Arrays.binarySearch(dayAccountIds, accountId);
+        if (index < 0) {
+            return null;
+        }
+        int end = index + 1 < dayRowStarts.length ? dayRowStarts[index + 1] : dayCount;
+        return new int[]{dayRowStarts[index], end};
+    }
+
+    long dayId(int row) {
+        return buffer.getLong(dayIdOffset + row * 8);
+    }
+
+    int dayOfMonth(int row) {
+        return buffer.get(dayOfMonthOffset + row);
+    }
+
+    long firstInMs(int row) {
+        return buffer.getLong(firstInOffset + row * 8);
+    }
+
+    long lastOutMs(int row) {
+        return buffer.getLong(lastOutOffset + row * 8);
+    }
+
+    int workedSeconds(int row) {
+        return buffer.getInt(workedOffset + row * 4);
+    }
+
+    int breakSeconds(int row) {
+        return buffer.getInt(breakOffset + row * 4);
+    }
+
+    AttendanceStatus status(int row) {
+        return statuses[buffer.get(statusOffset + row)];
+    }
+
+    String anomaliesJson(int row) {
+        return string(buffer.getInt(anomaliesOffset + row * 4));
+    }
+
+    private String string(int code) {
+        if (code == NO_CODE) {
+            return null;
+        }
+        String value = strings[code];
+        if (value == null) {
+            int offset = stringOffsets[code];
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(offset + 4 + i);
+            }
+            // Racing threads decode the same value, so the unsynchronized cache is harmless
+            value = new String(bytes, StandardCharsets.UTF_8);
+            strings[code] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Map the names written in the file to the constants of this build, so adding enum
+     * constants later does not invalidate existing files.
+     */
+    private static <E extends Enum<E>> E[] readNames(ByteBuffer in, Class<E> type, E[] empty) {
+        E[] values = Arrays.copyOf(empty, in.getInt());
+        for (int i = 0; i < values.length; i++) {
+            byte[] bytes = new byte[in.getShort() & 0xFFFF];
+            in.get(bytes);
+            values[i] = Enum.valueOf(type, new String(bytes, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,330 @@
+package com.tse.core_application.service.archive;
+
+import com.tse.core_application.constants.attendance.AttendanceStatus;
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layout of one cold archive file: the events and day rollups of one org in one UTC month,
+ * stored column by column so a reader can map the file and decode only the accounts it needs.
+ *
+ * <pre>
+ * header      magic, version, orgId, month start (epoch ms)
+ * dictionaries enum names (kind, source, action, verdict, status), strings, fence ids
+ * events      count, account directory (accountId, first row, first ts byte), ts varints,
+ *             then fixed-width columns: id, kind, source, action, verdict, bits, lat, lon,
+ *             accuracy, fence, failReason, flags, punchRequestId, requesterAccountId,
+ *             clientTz, clientLocalTs
+ * days        count, account directory (accountId, first row), then fixed-width columns:
+ *             id, dayOfMonth, firstIn, lastOut, worked, break, status, anomalies
+ * </pre>
+ *
+ * Rows are sorted by account, then time. Timestamps are varint deltas from the previous row of
+ * the same account (the first row from the month start); enums are one-byte codes into the
+ * name dictionaries; lat/lon are packed into 32-bit fixed point (1e-7 degrees); repeated
+ * strings (fail reason, flags and anomalies JSON, client time zone) and fence ids are codes
+ * into file-level dictionaries, -1 meaning null. Missing longs are stored as {@link #NONE}.
+ * Big-endian throughout.
+ */
+final class ColdArchiveFormat {
+
+    static final int MAGIC = 0x47464341; // "GFCA"
+    static final int VERSION = 1;
+
+    static final double COORDINATE_SCALE = 1e7;
+    static final long NONE = Long.MIN_VALUE;
+    static final int NO_CODE = -1;
+
+    static final int BIT_SUCCESS = 1;
+    static final int BIT_UNDER_RANGE = 1 << 1;
+    static final int BIT_UNDER_RANGE_SET = 1 << 2;
+    static final int BIT_LOCATION = 1 << 3;
+    static final int BIT_ACCURACY = 1 << 4;
+
+    static final String FILE_SUFFIX = ".gfca";
+
+    private ColdArchiveFormat() {
+    }
+
+    static String fileName(long orgId) {
+        return "org-" + orgId + FILE_SUFFIX;
+    }
+
+    /**
+     * One attendance_event row as read by the writer. Timestamps are epoch millis.
+     */
+    static final class EventRow {
+        long id;
+        long accountId;
+        EventKind eventKind;
+        EventSource eventSource;
+        EventAction eventAction;
+        long tsMs;
+        long clientLocalTsMs = NONE;
+        String clientTz;
+        Long fenceId;
+        Double lat;
+        Double lon;
+        Double accuracyM;
+        Boolean underRange;
+        boolean success;
+        IntegrityVerdict verdict;
+        String failReason;
+        String flagsJson;
+        long punchRequestId = NONE;
+        long requesterAccountId = NONE;
+    }
+
+    /**
+     * One attendance_day row as read by the writer. Timestamps are epoch millis.
+     */
+    static final class DayRow {
+        long id;
+        long accountId;
+        int dayOfMonth;
+        long firstInMs = NONE;
+        long lastOutMs = NONE;
+        int workedSeconds;
+        int breakSeconds;
+        AttendanceStatus status;
+        String anomaliesJson;
+    }
+
+    /**
+     * Encode the rows of one org and month. Both lists must be sorted by account, then time.
+     */
+    static void write(OutputStream target, long orgId, long monthStartMs,
+                      List<EventRow> events, List<DayRow> days) throws IOException {
+        StringDictionary strings = new StringDictionary();
+        Map<Long, Integer> fenceCodes = new HashMap<>();
+        List<Long> fenceIds = new ArrayList<>();
+
+        // Event columns
+        ByteArrayOutputStream tsBytes = new ByteArrayOutputStream(events.size() * 3);
+        ByteBuffer eventColumns = ByteBuffer.allocate(events.size() * eventFixedWidth());
+        List<long[]> eventAccounts = new ArrayList<>();
+        long previousAccount = NONE;
+        long previousTs = monthStartMs;
+        for (int row = 0; row < events.size(); row++) {
+            EventRow event = events.get(row);
+            if (event.accountId != previousAccount) {
+                eventAccounts.add(new long[]{event.accountId, row, tsBytes.size()});
+                previousAccount = event.accountId;
+                previousTs = monthStartMs;
+            }
+            writeVarLong(tsBytes, event.tsMs - previousTs);
+            previousTs = event.tsMs;
+        }
+        for (EventRow event : events) {
+            eventColumns.putLong(event.id);
+        }
+        for (EventRow event : events) {
+            eventColumns.put((byte) event.eventKind.ordinal());
+        }
+        for (EventRow event : events) {
+            eventColumns.put((byte) event.eventSource.ordinal());
+        }
+        for (EventRow event : events) {
+            eventColumns.put((byte) event.eventAction.ordinal());
+        }
+        for (EventRow event : events) {
+            eventColumns.put((byte) event.verdict.ordinal());
+        }
+        for (EventRow event : events) {
+            int bits = event.success ? BIT_SUCCESS : 0;
+            if (event.underRange != null) {
+                bits |= BIT_UNDER_RANGE_SET | (event.underRange ? BIT_UNDER_RANGE : 0);
+            }
+            if (event.lat != null && event.lon != null) {
+                bits |= BIT_LOCATION;
+            }
+            if (event.accuracyM != null) {
+                bits |= BIT_ACCURACY;
+            }
+            eventColumns.put((byte) bits);
+        }
+        for (EventRow event : events) {
+            eventColumns.putInt(event.lat != null && event.lon != null ? packCoordinate(event.lat) : 0);
+        }
+        for (EventRow event : events) {
+            eventColumns.putInt(event.lat != null && event.lon != null ? packCoordinate(event.lon) : 0);
+        }
+        for (EventRow event : events) {
+            eventColumns.putFloat(event.accuracyM != null ? event.accuracyM.floatValue() : 0f);
+        }
+        for (EventRow event : events) {
+            int code = NO_CODE;
+            if (event.fenceId != null) {
+                code = fenceCodes.computeIfAbsent(event.fenceId, id -> {
+                    fenceIds.add(id);
+                    return fenceIds.size() - 1;
+                });
+            }
+            eventColumns.putInt(code);
+        }
+        for (EventRow event : events) {
+            eventColumns.putInt(strings.code(event.failReason));
+        }
+        for (EventRow event : events) {
+            eventColumns.putInt(strings.code(event.flagsJson));
+        }
+        for (EventRow event : events) {
+            eventColumns.putLong(event.punchRequestId);
+        }
+        for (EventRow event : events) {
+            eventColumns.putLong(event.requesterAccountId);
+        }
+        for (EventRow event : events) {
+            eventColumns.putInt(strings.code(event.clientTz));
+        }
+        for (EventRow event : events) {
+            eventColumns.putLong(event.clientLocalTsMs);
+        }
+
+        // Day columns
+        ByteBuffer dayColumns = ByteBuffer.allocate(days.size() * dayFixedWidth());
+        List<long[]> dayAccounts = new ArrayList<>();
+        previousAccount = NONE;
+        for (int row = 0; row < days.size(); row++) {
+            if (days.get(row).accountId != previousAccount) {
+                previousAccount = days.get(row).accountId;
+                dayAccounts.add(new long[]{previousAccount, row});
+            }
+        }
+        for (DayRow day : days) {
+            dayColumns.putLong(day.id);
+        }
+        for (DayRow day : days) {
+            dayColumns.put((byte) day.dayOfMonth);
+        }
+        for (DayRow day : days) {
+            dayColumns.putLong(day.firstInMs);
+        }
+        for (DayRow day : days) {
+            dayColumns.putLong(day.lastOutMs);
+        }
+        for (DayRow day : days) {
+            dayColumns.putInt(day.workedSeconds);
+        }
+        for (DayRow day : days) {
+            dayColumns.putInt(day.breakSeconds);
+        }
+        for (DayRow day : days) {
+            dayColumns.put((byte) day.status.ordinal());
+        }
+        for (DayRow day : days) {
+            dayColumns.putInt(strings.code(day.anomaliesJson));
+        }
+
+        DataOutputStream out = new DataOutputStream(target);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(orgId);
+        out.writeLong(monthStartMs);
+
+        writeNames(out, EventKind.values());
+        writeNames(out, EventSource.values());
+        writeNames(out, EventAction.values());
+        writeNames(out, IntegrityVerdict.values());
+        writeNames(out, AttendanceStatus.values());
+
+        out.writeInt(strings.values.size());
+        for (String value : strings.values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(fenceIds.size());
+        for (Long fenceId : fenceIds) {
+            out.writeLong(fenceId);
+        }
+
+        out.writeInt(events.size());
+        out.writeInt(eventAccounts.size());
+        for (long[] account : eventAccounts) {
+            out.writeLong(account[0]);
+            out.writeInt((int) account[1]);
+            out.writeInt((int) account[2]);
+        }
+        out.writeInt(tsBytes.size());
+        tsBytes.writeTo(out);
+        out.write(eventColumns.array(), 0, eventColumns.position());
+
+        out.writeInt(days.size());
+        out.writeInt(dayAccounts.size());
+        for (long[] account : dayAccounts) {
+            out.writeLong(account[0]);
+            out.writeInt((int) account[1]);
+        }
+        out.write(dayColumns.array(), 0, dayColumns.position());
+        out.flush();
+    }
+
+    /**
+     * Bytes per event row in the fixed-width columns.
+     */
+    static int eventFixedWidth() {
+        // id, kind, source, action, verdict, bits, lat, lon, accuracy, fence, failReason,
+        // flags, punchRequestId, requesterAccountId, clientTz, clientLocalTs
+        return 8 + 1 + 1 + 1 + 1 + 1 + 4 + 4 + 4 + 4 + 4 + 4 + 8 + 8 + 4 + 8;
+    }
+
+    /**
+     * Bytes per day row in the fixed-width columns.
+     */
+    static int dayFixedWidth() {
+        // id, dayOfMonth, firstIn, lastOut, worked, break, status, anomalies
+        return 8 + 1 + 8 + 8 + 4 + 4 + 1 + 4;
+    }
+
+    static int packCoordinate(double degrees) {
+        return (int) Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    static double unpackCoordinate(int packed) {
+        return packed / COORDINATE_SCALE;
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeNames(DataOutputStream out, Enum<?>[] values) throws IOException {
+        out.writeInt(values.length);
+        for (Enum<?> value : values) {
+            out.writeUTF(value.name());
+        }
+    }
+
+    private static final class StringDictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int code(String value) {
+            if (value == null) {
+                return NO_CODE;
+            }
+            return codes.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size() - 1;
+            });
+        }
+    }
+}
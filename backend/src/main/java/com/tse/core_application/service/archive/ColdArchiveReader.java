@@ -0,0 +1,493 @@
+package com.tse.core_application.service.archive;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.entity.attendance.AttendanceDay;
+import com.tse.core_application.entity.attendance.AttendanceEvent;
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.service.outbox.ChangeConsumer;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.tse.core_application.service.archive.ColdArchiveFormat.BIT_ACCURACY;
+import static com.tse.core_application.service.archive.ColdArchiveFormat.BIT_LOCATION;
+import static com.tse.core_application.service.archive.ColdArchiveFormat.BIT_SUCCESS;
+import static com.tse.core_application.service.archive.ColdArchiveFormat.BIT_UNDER_RANGE;
+import static com.tse.core_application.service.archive.ColdArchiveFormat.BIT_UNDER_RANGE_SET;
+import static com.tse.core_application.service.archive.ColdArchiveFormat.NONE;
+
+/**
+ * Serves attendance events and days of archived months from the cold archive files written by
+ * {@link ColdArchiveWriter}, so historical reports do not touch Postgres.
+ *
+ * Only months before the hot cutoff (hot-months back from the current UTC month) that have a
+ * completed version in attendance_cold_archive_month are served from here; callers ask
+ * {@link #archivedUntil(Instant)} where the archive stops and read the rest from the database.
+ * Event months are UTC months of ts_utc, day months are calendar months of date_key.
+ *
+ * The files live in the {@link ArchiveStore}, so every node serves the same months. A node
+ * copies the files it reads to cache-dir/yyyy-MM/{version}/, memory-maps them and keeps the
+ * mappings in an LRU of max-open-files entries. An evicted mapping is released by the garbage
+ * collector once no reader holds it. A month found not archived is remembered for
+ * negative-ttl-seconds, so reports over recent months do not ask the database for it on every
+ * call. A COLD_ARCHIVE change from the writer of any node drops what this node cached of the
+ * month, either way.
+ */
+@Component
+public class ColdArchiveReader implements ChangeConsumer, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColdArchiveReader.class);
+    private static final TypeReference<Map<String, Object>> JSON_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ArchiveStore archiveStore;
+
+    // A new version of an archived month evicts its entry through a COLD_ARCHIVE change
+    private final Map<YearMonth, ArchivedMonth> archivedMonths = new ConcurrentHashMap<>();
+    // Months found not archived, with when that answer expires in epoch millis; the change of a
+    // write on any node evicts the entry before it expires
+    private final Map<YearMonth, Long> unarchivedMonths = new ConcurrentHashMap<>();
+    private final Map<Path, ColdArchiveFile> openFiles = new LinkedHashMap<Path, ColdArchiveFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, ColdArchiveFile> eldest) {
+            return size() > maxOpenFiles;
+        }
+    };
+
+    private final AtomicLong fileOpens = new AtomicLong();
+    private final AtomicLong fileDownloads = new AtomicLong();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong eventsServed = new AtomicLong();
+    private final AtomicLong daysServed = new AtomicLong();
+    private final AtomicLong readFailures = new AtomicLong();
+
+    @Value("${attendance.cold-archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${attendance.cold-archive.cache-dir:archive/cold}")
+    private String cacheDir;
+
+    @Value("${attendance.cold-archive.hot-months:13}")
+    private int hotMonths;
+
+    @Value("${attendance.cold-archive.max-open-files:256}")
+    private int maxOpenFiles;
+
+    @Value("${attendance.cold-archive.negative-ttl-seconds:60}")
+    private long negativeTtlSeconds;
+
+    private static final class ArchivedMonth {
+        final int version;
+        final Set<Long> orgIds;
+
+        ArchivedMonth(int version, Set<Long> orgIds) {
+            this.version = version;
+            this.orgIds = orgIds;
+        }
+    }
+
+    public ColdArchiveReader(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, ArchiveStore archiveStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.archiveStore = archiveStore;
+    }
+
+    public int getHotMonths() {
+        return hotMonths;
+    }
+
+    /**
+     * First month that is always read from the database.
+     */
+    public YearMonth hotCutoff() {
+        return YearMonth.now(ZoneOffset.UTC).minusMonths(hotMonths);
+    }
+
+    public boolean isMonthArchived(YearMonth month) {
+        return archivedMonth(month) != null;
+    }
+
+    /**
+     * Events in the current version of the month, read from the database, or null if the
+     * month is not archived.
+     */
+    public Long archivedEventCount(YearMonth month) {
+        List<Long> counts = jdbcTemplate.queryForList(
+                "SELECT event_count FROM attendance_cold_archive_month WHERE archive_month = ?",
+                Long.class, Date.valueOf(month.atDay(1)));
+        return counts.isEmpty() ? null : counts.get(0);
+    }
+
+    /**
+     * End (exclusive) of the archived range of events starting at from: the start of the first
+     * UTC month from there on that is hot or not archived, or from itself if its own month is.
+     */
+    public Instant archivedUntil(Instant from) {
+        YearMonth first = YearMonth.from(from.atOffset(ZoneOffset.UTC));
+        YearMonth month = firstUnarchived(first);
+        return month.equals(first) ? from : month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    }
+
+    /**
+     * End (exclusive) of the archived range of days starting at from, like
+     * {@link #archivedUntil(Instant)} for calendar months of date_key.
+     */
+    public LocalDate archivedUntil(LocalDate from) {
+        YearMonth first = YearMonth.from(from);
+        YearMonth month = firstUnarchived(first);
+        return month.equals(first) ? from : month.atDay(1);
+    }
+
+    /**
+     * Archived events of the account with fromInclusive <= ts < toExclusive, oldest first.
+     * The range must lie within {@link #archivedUntil(Instant)}.
+     */
+    public List<AttendanceEvent> readEvents(long orgId, long accountId, Instant fromInclusive, Instant toExclusive) {
+        List<AttendanceEvent> events = new ArrayList<>();
+        if (!fromInclusive.isBefore(toExclusive)) {
+            return events;
+        }
+        long fromMs = fromInclusive.toEpochMilli();
+        long toMs = toExclusive.toEpochMilli();
+        YearMonth last = YearMonth.from(toExclusive.minusMillis(1).atOffset(ZoneOffset.UTC));
+        for (YearMonth month = YearMonth.from(fromInclusive.atOffset(ZoneOffset.UTC));
+             !month.isAfter(last); month = month.plusMonths(1)) {
+            ColdArchiveFile file = file(month, orgId);
+            if (file == null) {
+                continue;
+            }
+            int[] rows = file.eventRows(accountId);
+            if (rows == null) {
+                continue;
+            }
+            long[] times = file.eventTimes(accountId);
+            for (int row = rows[0]; row < rows[1]; row++) {
+                long tsMs = times[row - rows[0]];
+                if (tsMs >= fromMs && tsMs < toMs) {
+                    events.add(toEvent(file, row, accountId, tsMs));
+                }
+            }
+        }
+        eventsServed.addAndGet(events.size());
+        return events;
+    }
+
+    /**
+     * Archived days of the account with from <= date_key <= toInclusive, oldest first.
+     * The range must lie within {@link #archivedUntil(LocalDate)}.
+     */
+    public List<AttendanceDay> readDays(long orgId, long accountId, LocalDate from, LocalDate toInclusive) {
+        List<AttendanceDay> days = new ArrayList<>();
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(toInclusive)); month = month.plusMonths(1)) {
+            ColdArchiveFile file = file(month, orgId);
+            if (file == null) {
+                continue;
+            }
+            int[] rows = file.dayRows(accountId);
+            if (rows == null) {
+                continue;
+            }
+            for (int row = rows[0]; row < rows[1]; row++) {
+                LocalDate dateKey = month.atDay(file.dayOfMonth(row));
+                if (!dateKey.isBefore(from) && !dateKey.isAfter(toInclusive)) {
+                    days.add(toDay(file, row, accountId, dateKey));
+                }
+            }
+        }
+        daysServed.addAndGet(days.size());
+        return days;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "coldArchiveReader";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        int open;
+        synchronized (openFiles) {
+            open = openFiles.size();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("hotCutoff", hotCutoff().toString());
+        metrics.put("knownArchivedMonths", archivedMonths.size());
+        metrics.put("knownUnarchivedMonths", unarchivedMonths.size());
+        metrics.put("store", archiveStore.getStoreName());
+        metrics.put("openFiles", open);
+        metrics.put("fileOpens", fileOpens.get());
+        metrics.put("fileDownloads", fileDownloads.get());
+        metrics.put("bytesDownloaded", bytesDownloaded.get());
+        metrics.put("eventsServed", eventsServed.get());
+        metrics.put("daysServed", daysServed.get());
+        metrics.put("readFailures", readFailures.get());
+        return metrics;
+    }
+
+    @Override
+    public String getConsumerName() {
+        return "cold-archive";
+    }
+
+    @Override
+    public void onChanges(List<ChangeRecord> records) {
+        for (ChangeRecord record : records) {
+            if (ChangeOutbox.AGGREGATE_COLD_ARCHIVE.equals(record.getAggregateType())) {
+                long id = record.getAggregateId();
+                invalidate(YearMonth.of((int) (id / 100), (int) (id % 100)));
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        archivedMonths.clear();
+        unarchivedMonths.clear();
+        synchronized (openFiles) {
+            openFiles.clear();
+        }
+    }
+
+    /**
+     * Aggregate ID of the month in COLD_ARCHIVE changes: yyyyMM.
+     */
+    static long aggregateId(YearMonth month) {
+        return month.getYear() * 100L + month.getMonthValue();
+    }
+
+    /**
+     * Key of the org's file of the month and version in the archive store.
+     */
+    static String objectKey(YearMonth month, int version, long orgId) {
+        return "cold-archive/" + month + "/" + version + "/" + ColdArchiveFormat.fileName(orgId);
+    }
+
+    /**
+     * Forget cached state of the month after a new version of it was written.
+     */
+    void invalidate(YearMonth month) {
+        archivedMonths.remove(month);
+        unarchivedMonths.remove(month);
+        Path dir = monthDir(month);
+        synchronized (openFiles) {
+            openFiles.keySet().removeIf(path -> path.startsWith(dir));
+        }
+    }
+
+    private Path monthDir(YearMonth month) {
+        return Paths.get(cacheDir, month.toString());
+    }
+
+    /**
+     * Current version of the month and the orgs that have a file in it, null if the month is
+     * not archived. Read in one statement, so a concurrent version switch is seen whole.
+     */
+    private ArchivedMonth archivedMonth(YearMonth month) {
+        ArchivedMonth archived = archivedMonths.get(month);
+        if (archived != null) {
+            return archived;
+        }
+        long now = System.currentTimeMillis();
+        Long unarchivedUntil = unarchivedMonths.get(month);
+        if (unarchivedUntil != null && unarchivedUntil > now) {
+            return null;
+        }
+        int[] version = {0};
+        Set<Long> orgIds = new HashSet<>();
+        jdbcTemplate.query("SELECT m.version, f.org_id FROM attendance_cold_archive_month m " +
+                        "LEFT JOIN attendance_cold_archive_file f " +
+                        "ON f.archive_month = m.archive_month AND f.version = m.version " +
+                        "WHERE m.archive_month = ?",
+                (RowCallbackHandler) rs -> {
+                    version[0] = rs.getInt("version");
+                    long orgId = rs.getLong("org_id");
+                    if (!rs.wasNull()) {
+                        orgIds.add(orgId);
+                    }
+                }, Date.valueOf(month.atDay(1)));
+        if (version[0] == 0) {
+            unarchivedMonths.put(month, now + negativeTtlSeconds * 1000L);
+            return null;
+        }
+        archived = new ArchivedMonth(version[0], orgIds);
+        archivedMonths.put(month, archived);
+        return archived;
+    }
+
+    private YearMonth firstUnarchived(YearMonth month) {
+        if (!enabled) {
+            return month;
+        }
+        YearMonth cutoff = hotCutoff();
+        while (month.isBefore(cutoff) && isMonthArchived(month)) {
+            month = month.plusMonths(1);
+        }
+        return month;
+    }
+
+    /**
+     * The org's file of the month, null if the org had no data that month.
+     */
+    private ColdArchiveFile file(YearMonth month, long orgId) {
+        return file(month, orgId, true);
+    }
+
+    private ColdArchiveFile file(YearMonth month, long orgId, boolean retry) {
+        ArchivedMonth archived = archivedMonth(month);
+        if (archived == null || !archived.orgIds.contains(orgId)) {
+            return null;
+        }
+        Path path = monthDir(month).resolve(String.valueOf(archived.version)).resolve(ColdArchiveFormat.fileName(orgId));
+        synchronized (openFiles) {
+            ColdArchiveFile file = openFiles.get(path);
+            if (file != null) {
+                return file;
+            }
+        }
+        try {
+            if (!Files.exists(path) && !download(month, archived.version, orgId, path)) {
+                // A newer version replaced the one this node knew before its change arrived
+                invalidate(month);
+                if (retry) {
+                    return file(month, orgId, false);
+                }
+                throw new IllegalStateException("Cold archive of " + month + " changed while it was read");
+            }
+            ColdArchiveFile file = ColdArchiveFile.open(path);
+            fileOpens.incrementAndGet();
+            synchronized (openFiles) {
+                openFiles.put(path, file);
+            }
+            return file;
+        } catch (IOException | RuntimeException e) {
+            readFailures.incrementAndGet();
+            logger.error("Failed to open cold archive file {}: {}", path, e.getMessage(), e);
+            throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Copy the file from the archive store to the local cache, written next to its final name
+     * and moved into place. Files written before the archive store kept their content in
+     * attendance_cold_archive_file and are read from there.
+     *
+     * @return false if the version no longer has the file
+     */
+    private boolean download(YearMonth month, int version, long orgId, Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path partial = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".partial");
+        try {
+            if (!archiveStore.get(objectKey(month, version, orgId), partial)) {
+                List<byte[]> contents = jdbcTemplate.queryForList(
+                        "SELECT content FROM attendance_cold_archive_file " +
+                        "WHERE archive_month = ? AND version = ? AND org_id = ? AND content IS NOT NULL",
+                        byte[].class, Date.valueOf(month.atDay(1)), version, orgId);
+                if (contents.isEmpty()) {
+                    return false;
+                }
+                Files.write(partial, contents.get(0));
+            }
+            long size = Files.size(partial);
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            fileDownloads.incrementAndGet();
+            bytesDownloaded.addAndGet(size);
+            return true;
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    private AttendanceEvent toEvent(ColdArchiveFile file, int row, long accountId, long tsMs) {
+        int bits = file.eventBits(row);
+
+        AttendanceEvent event = new AttendanceEvent();
+        event.setId(file.eventId(row));
+        event.setOrgId(file.orgId());
+        event.setAccountId(accountId);
+        event.setEventKind(file.eventKind(row));
+        event.setEventSource(file.eventSource(row));
+        event.setEventAction(file.eventAction(row));
+        event.setTsUtc(new Timestamp(tsMs).toLocalDateTime());
+        long clientLocalTsMs = file.clientLocalTsMs(row);
+        event.setClientLocalTs(clientLocalTsMs != NONE ? new Timestamp(clientLocalTsMs).toLocalDateTime() : null);
+        event.setClientTz(file.clientTz(row));
+        event.setFenceId(file.fenceId(row));
+        if ((bits & BIT_LOCATION) != 0) {
+            event.setLat(file.lat(row));
+            event.setLon(file.lon(row));
+        }
+        if ((bits & BIT_ACCURACY) != 0) {
+            event.setAccuracyM(file.accuracyM(row));
+        }
+        if ((bits & BIT_UNDER_RANGE_SET) != 0) {
+            event.setUnderRange((bits & BIT_UNDER_RANGE) != 0);
+        }
+        event.setSuccess((bits & BIT_SUCCESS) != 0);
+        event.setVerdict(file.verdict(row));
+        event.setFailReason(file.failReason(row));
+        event.setFlags(parseJson(file.flagsJson(row)));
+        long punchRequestId = file.punchRequestId(row);
+        event.setPunchRequestId(punchRequestId != NONE ? punchRequestId : null);
+        long requesterAccountId = file.requesterAccountId(row);
+        event.setRequesterAccountId(requesterAccountId != NONE ? requesterAccountId : null);
+        return event;
+    }
+
+    private AttendanceDay toDay(ColdArchiveFile file, int row, long accountId, LocalDate dateKey) {
+        AttendanceDay day = new AttendanceDay();
+        day.setId(file.dayId(row));
+        day.setOrgId(file.orgId());
+        day.setAccountId(accountId);
+        day.setDateKey(dateKey);
+        long firstInMs = file.firstInMs(row);
+        day.setFirstInUtc(firstInMs != NONE ? new Timestamp(firstInMs).toLocalDateTime() : null);
+        long lastOutMs = file.lastOutMs(row);
+        day.setLastOutUtc(lastOutMs != NONE ? new Timestamp(lastOutMs).toLocalDateTime() : null);
+        day.setWorkedSeconds(file.workedSeconds(row));
+        day.setBreakSeconds(file.breakSeconds(row));
+        day.setStatus(file.status(row));
+        day.setAnomalies(parseJson(file.anomaliesJson(row)));
+        return day;
+    }
+
+    private Map<String, Object> parseJson(String json) {
+        if (json == null) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(json, JSON_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
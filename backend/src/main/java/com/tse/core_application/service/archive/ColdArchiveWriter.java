@@ -0,0 +1,355 @@
+package com.tse.core_application.service.archive;
+
+import com.tse.core_application.constants.attendance.AttendanceStatus;
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.scheduler.AttendanceEventPartitionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes closed months of attendance_event and attendance_day into cold archive files, one
+ * per org and month (see {@link ColdArchiveFormat}), stored in the {@link ArchiveStore} so
+ * that every node reads the same archive and dropped partitions free their space in Postgres.
+ * attendance_cold_archive_file lists the orgs that have a file in each version.
+ *
+ * Each write of a month is a new version. Its files are stored first, each followed by its row;
+ * then, in one transaction, attendance_cold_archive_month is switched to the version, the rows
+ * of other versions are deleted and a COLD_ARCHIVE change tells the readers of every node to
+ * drop what they cached of the month. Only then does {@link ColdArchiveReader} serve the
+ * version, and an org without a file had no data that month. The files of the other versions
+ * are deleted from the store after the commit; a reader still on an old version finds its file
+ * gone and reloads the month. An interrupted run leaves files of a version no reader uses; the
+ * next run writes that version again.
+ *
+ * Runs daily under its own lease for every month before the hot cutoff, and is called by
+ * {@link AttendanceEventPartitionManager} before a partition is dropped. Rows stay in
+ * Postgres until the partition retention drops them.
+ */
+@Component
+public class ColdArchiveWriter implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColdArchiveWriter.class);
+
+    /**
+     * Lease key in scheduler_org_lease. The change relay uses 0, the partition manager -1.
+     */
+    static final long COLD_ARCHIVE_LEASE_KEY = -2L;
+
+    private static final String EVENT_COLUMNS =
+            "SELECT id, account_id, event_kind, event_source, event_action, ts_utc, client_local_ts, client_tz, " +
+            "fence_id, lat, lon, accuracy_m, under_range, success, verdict, fail_reason, flags::text AS flags, " +
+            "punch_request_id, requester_account_id FROM ";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterCoordinator clusterCoordinator;
+    private final ColdArchiveReader coldArchiveReader;
+    private final ChangeOutbox changeOutbox;
+    private final ArchiveStore archiveStore;
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicLong monthsArchived = new AtomicLong();
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong eventsArchived = new AtomicLong();
+    private final AtomicLong daysArchived = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LocalDateTime lastRunAt;
+
+    @Value("${attendance.cold-archive.enabled:true}")
+    private boolean enabled;
+
+    public ColdArchiveWriter(JdbcTemplate jdbcTemplate,
+                             ClusterCoordinator clusterCoordinator,
+                             ColdArchiveReader coldArchiveReader,
+                             ChangeOutbox changeOutbox,
+                             ArchiveStore archiveStore,
+                             PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterCoordinator = clusterCoordinator;
+        this.coldArchiveReader = coldArchiveReader;
+        this.changeOutbox = changeOutbox;
+        this.archiveStore = archiveStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Scheduled job: archive every month before the hot cutoff that is not archived yet.
+     * Runs daily at 02:00, before partition maintenance.
+     */
+    @Scheduled(cron = "${attendance.cold-archive.cron:0 0 2 * * ?}")
+    public void archiveClosedMonths() {
+        if (!enabled || !clusterCoordinator.tryAcquire(COLD_ARCHIVE_LEASE_KEY)) {
+            return;
+        }
+
+        lastRunAt = LocalDateTime.now();
+        YearMonth cutoff = coldArchiveReader.hotCutoff();
+        for (YearMonth month : monthsWithData()) {
+            if (!month.isBefore(cutoff)) {
+                break;
+            }
+            try {
+                archiveMonth(month);
+            } catch (Exception e) {
+                failures.incrementAndGet();
+                logger.error("Failed to write cold archive of {}: {}", month, e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write the archive files of every org with events or days in the month, unless the month
+     * is archived already or the archive is disabled.
+     *
+     * @return true if the month was written by this call
+     */
+    public boolean archiveMonth(YearMonth month) throws IOException {
+        if (!enabled || coldArchiveReader.isMonthArchived(month)) {
+            return false;
+        }
+        writeMonth(month);
+        return true;
+    }
+
+    /**
+     * Write a new version of the month even if it is archived already, e.g. because rows were
+     * added to it afterwards. Does nothing if the archive is disabled.
+     */
+    public void rewriteMonth(YearMonth month) throws IOException {
+        if (enabled) {
+            writeMonth(month);
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "coldArchive";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("monthsArchived", monthsArchived.get());
+        metrics.put("filesWritten", filesWritten.get());
+        metrics.put("eventsArchived", eventsArchived.get());
+        metrics.put("daysArchived", daysArchived.get());
+        metrics.put("bytesWritten", bytesWritten.get());
+        metrics.put("failures", failures.get());
+        metrics.put("lastRunAt", lastRunAt);
+        return metrics;
+    }
+
+    private void writeMonth(YearMonth month) throws IOException {
+        String source = eventSource(month);
+        Timestamp rangeStart = Timestamp.from(month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+        Timestamp rangeEnd = Timestamp.from(month.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+        Date firstDay = Date.valueOf(month.atDay(1));
+        Date lastDay = Date.valueOf(month.atEndOfMonth());
+
+        Integer current = jdbcTemplate.queryForObject(
+                "SELECT MAX(version) FROM attendance_cold_archive_month WHERE archive_month = ?", Integer.class, firstDay);
+        int version = current != null ? current + 1 : 1;
+        // Left behind by an interrupted write of the same version
+        jdbcTemplate.update("DELETE FROM attendance_cold_archive_file WHERE archive_month = ? AND version = ?",
+                firstDay, version);
+
+        TreeSet<Long> orgIds = new TreeSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT org_id FROM " + source + " WHERE ts_utc >= ? AND ts_utc < ?",
+                Long.class, rangeStart, rangeEnd));
+        orgIds.addAll(jdbcTemplate.queryForList(
+                "SELECT DISTINCT org_id FROM attendance_day WHERE date_key BETWEEN ? AND ?",
+                Long.class, firstDay, lastDay));
+
+        long monthStartMs = rangeStart.getTime();
+        long events = 0;
+        long days = 0;
+        for (Long orgId : orgIds) {
+            List<ColdArchiveFormat.EventRow> eventRows = new ArrayList<>();
+            jdbcTemplate.query(EVENT_COLUMNS + source +
+                            " WHERE org_id = ? AND ts_utc >= ? AND ts_utc < ? ORDER BY account_id, ts_utc, id",
+                    (RowCallbackHandler) rs -> eventRows.add(toEventRow(rs)), orgId, rangeStart, rangeEnd);
+            List<ColdArchiveFormat.DayRow> dayRows = new ArrayList<>();
+            jdbcTemplate.query("SELECT id, account_id, date_key, first_in_utc, last_out_utc, worked_seconds, " +
+                            "break_seconds, status, anomalies::text AS anomalies FROM attendance_day " +
+                            "WHERE org_id = ? AND date_key BETWEEN ? AND ? ORDER BY account_id, date_key",
+                    (RowCallbackHandler) rs -> dayRows.add(toDayRow(rs)), orgId, firstDay, lastDay);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ColdArchiveFormat.write(out, orgId, monthStartMs, eventRows, dayRows);
+            byte[] content = out.toByteArray();
+            archiveStore.put(ColdArchiveReader.objectKey(month, version, orgId), new ByteArrayInputStream(content));
+            jdbcTemplate.update("INSERT INTO attendance_cold_archive_file (archive_month, version, org_id, size_bytes) " +
+                    "VALUES (?, ?, ?, ?)", firstDay, version, orgId, content.length);
+            bytesWritten.addAndGet(content.length);
+            filesWritten.incrementAndGet();
+            events += eventRows.size();
+            days += dayRows.size();
+        }
+
+        long eventCount = events;
+        long dayCount = days;
+        List<Map<String, Object>> replaced = transactionTemplate.execute(status -> {
+            jdbcTemplate.update(
+                    "INSERT INTO attendance_cold_archive_month (archive_month, version, org_count, event_count, day_count) " +
+                    "VALUES (?, ?, ?, ?, ?) ON CONFLICT (archive_month) DO UPDATE SET version = EXCLUDED.version, " +
+                    "org_count = EXCLUDED.org_count, event_count = EXCLUDED.event_count, " +
+                    "day_count = EXCLUDED.day_count, completed_at = NOW()",
+                    firstDay, version, orgIds.size(), eventCount, dayCount);
+            List<Map<String, Object>> otherVersions = jdbcTemplate.queryForList(
+                    "SELECT version, org_id FROM attendance_cold_archive_file WHERE archive_month = ? AND version <> ?",
+                    firstDay, version);
+            jdbcTemplate.update("DELETE FROM attendance_cold_archive_file WHERE archive_month = ? AND version <> ?",
+                    firstDay, version);
+            changeOutbox.append(0L, ChangeOutbox.AGGREGATE_COLD_ARCHIVE, ColdArchiveReader.aggregateId(month),
+                    ChangeOutbox.CHANGE_UPDATED, Collections.singletonMap("version", version));
+            return otherVersions;
+        });
+        coldArchiveReader.invalidate(month);
+        deleteFiles(month, replaced);
+
+        monthsArchived.incrementAndGet();
+        eventsArchived.addAndGet(events);
+        daysArchived.addAndGet(days);
+        logger.info("Wrote cold archive of {} (version {}): {} orgs, {} events, {} days",
+                month, version, orgIds.size(), events, days);
+    }
+
+    /**
+     * Delete replaced files from the store. A file left behind by a failed delete is no longer
+     * listed anywhere and only takes space.
+     */
+    private void deleteFiles(YearMonth month, List<Map<String, Object>> files) {
+        for (Map<String, Object> file : files) {
+            String key = ColdArchiveReader.objectKey(month, ((Number) file.get("version")).intValue(),
+                    ((Number) file.get("org_id")).longValue());
+            try {
+                archiveStore.delete(key);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to delete replaced cold archive file {} from the {} store: {}",
+                        key, archiveStore.getStoreName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * UTC months that have events or days, oldest first.
+     */
+    private TreeSet<YearMonth> monthsWithData() {
+        TreeSet<YearMonth> months = new TreeSet<>();
+        // ts_utc is read as an instant and its month taken in UTC here, as everywhere else; the
+        // database session time zone plays no part
+        Timestamp firstEventTs = jdbcTemplate.queryForObject("SELECT MIN(ts_utc) FROM attendance_event", Timestamp.class);
+        LocalDate firstEvent = firstEventTs != null
+                ? firstEventTs.toInstant().atOffset(ZoneOffset.UTC).toLocalDate()
+                : null;
+        LocalDate firstDay = jdbcTemplate.queryForObject(
+                "SELECT MIN(date_key) FROM attendance_day", LocalDate.class);
+        YearMonth cutoff = coldArchiveReader.hotCutoff();
+        for (LocalDate first : new LocalDate[]{firstEvent, firstDay}) {
+            if (first == null) {
+                continue;
+            }
+            for (YearMonth month = YearMonth.from(first); month.isBefore(cutoff); month = month.plusMonths(1)) {
+                months.add(month);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * The month's partition, attached or left detached by the partition manager, or the
+     * parent table if the month has none.
+     */
+    private String eventSource(YearMonth month) {
+        String partition = AttendanceEventPartitionManager.partitionName(month);
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+        // Partition names are generated, so they are safe to inline
+        return Boolean.TRUE.equals(exists) ? partition : "attendance_event";
+    }
+
+    private ColdArchiveFormat.EventRow toEventRow(ResultSet rs) throws SQLException {
+        ColdArchiveFormat.EventRow row = new ColdArchiveFormat.EventRow();
+        row.id = rs.getLong("id");
+        row.accountId = rs.getLong("account_id");
+        row.eventKind = EventKind.valueOf(rs.getString("event_kind"));
+        row.eventSource = EventSource.valueOf(rs.getString("event_source"));
+        row.eventAction = EventAction.valueOf(rs.getString("event_action"));
+        row.tsMs = rs.getTimestamp("ts_utc").getTime();
+        Timestamp clientLocalTs = rs.getTimestamp("client_local_ts");
+        if (clientLocalTs != null) {
+            row.clientLocalTsMs = clientLocalTs.getTime();
+        }
+        row.clientTz = rs.getString("client_tz");
+        row.fenceId = rs.getObject("fence_id", Long.class);
+        row.lat = rs.getObject("lat", Double.class);
+        row.lon = rs.getObject("lon", Double.class);
+        row.accuracyM = rs.getObject("accuracy_m", Double.class);
+        row.underRange = rs.getObject("under_range", Boolean.class);
+        row.success = rs.getBoolean("success");
+        row.verdict = IntegrityVerdict.valueOf(rs.getString("verdict"));
+        row.failReason = rs.getString("fail_reason");
+        row.flagsJson = rs.getString("flags");
+        long punchRequestId = rs.getLong("punch_request_id");
+        if (!rs.wasNull()) {
+            row.punchRequestId = punchRequestId;
+        }
+        long requesterAccountId = rs.getLong("requester_account_id");
+        if (!rs.wasNull()) {
+            row.requesterAccountId = requesterAccountId;
+        }
+        return row;
+    }
+
+    private ColdArchiveFormat.DayRow toDayRow(ResultSet rs) throws SQLException {
+        ColdArchiveFormat.DayRow row = new ColdArchiveFormat.DayRow();
+        row.id = rs.getLong("id");
+        row.accountId = rs.getLong("account_id");
+        row.dayOfMonth = rs.getDate("date_key").toLocalDate().getDayOfMonth();
+        Timestamp firstIn = rs.getTimestamp("first_in_utc");
+        if (firstIn != null) {
+            row.firstInMs = firstIn.getTime();
+        }
+        Timestamp lastOut = rs.getTimestamp("last_out_utc");
+        if (lastOut != null) {
+            row.lastOutMs = lastOut.getTime();
+        }
+        row.workedSeconds = rs.getInt("worked_seconds");
+        row.breakSeconds = rs.getInt("break_seconds");
+        row.status = AttendanceStatus.valueOf(rs.getString("status"));
+        row.anomaliesJson = rs.getString("anomalies");
+        return row;
+    }
+}
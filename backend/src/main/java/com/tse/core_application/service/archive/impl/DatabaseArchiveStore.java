@@ -0,0 +1,112 @@
+package com.tse.core_application.service.archive.impl;
+
+import com.tse.core_application.service.archive.ArchiveStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Fallback store for deployments without a shared mount: objects are kept in
+ * archive_store_chunk as chunks of at most chunk-bytes. Every node reads the same objects,
+ * but archived data keeps taking space in Postgres.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.archive.store", havingValue = "database")
+public class DatabaseArchiveStore implements ArchiveStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseArchiveStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${attendance.archive.store-chunk-bytes:8388608}")
+    private int chunkBytes;
+
+    public DatabaseArchiveStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void logStore() {
+        logger.warn("Archive store: database; archived data is not removed from Postgres");
+    }
+
+    @Override
+    public String getStoreName() {
+        return "database";
+    }
+
+    /**
+     * The old chunks are replaced in one transaction, so a reader sees either object whole.
+     */
+    @Override
+    public void put(String key, InputStream content) throws IOException {
+        try {
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.update("DELETE FROM archive_store_chunk WHERE object_key = ?", key);
+                byte[] buffer = new byte[chunkBytes];
+                int chunkNo = 0;
+                int read;
+                try {
+                    do {
+                        read = content.readNBytes(buffer, 0, buffer.length);
+                        // An empty object still gets its chunk 0, so it is told apart from a missing one
+                        if (read > 0 || chunkNo == 0) {
+                            jdbcTemplate.update("INSERT INTO archive_store_chunk (object_key, chunk_no, data) VALUES (?, ?, ?)",
+                                    key, chunkNo, Arrays.copyOf(buffer, read));
+                        }
+                        chunkNo++;
+                    } while (read == buffer.length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Chunks are read one row at a time, so an object is never held in memory whole.
+     */
+    @Override
+    public boolean get(String key, Path target) throws IOException {
+        int[] chunks = {0};
+        try (OutputStream out = Files.newOutputStream(target)) {
+            jdbcTemplate.query("SELECT data FROM archive_store_chunk WHERE object_key = ? ORDER BY chunk_no",
+                    (RowCallbackHandler) rs -> {
+                        try {
+                            out.write(rs.getBytes("data"));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        chunks[0]++;
+                    }, key);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return chunks[0] > 0;
+    }
+
+    @Override
+    public void delete(String key) {
+        jdbcTemplate.update("DELETE FROM archive_store_chunk WHERE object_key = ?", key);
+    }
+}
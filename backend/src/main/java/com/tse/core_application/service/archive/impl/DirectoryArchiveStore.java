@@ -0,0 +1,86 @@
+package com.tse.core_application.service.archive.impl;
+
+import com.tse.core_application.service.archive.ArchiveStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Default store: one file per key under store-dir, which is meant to be an object store bucket
+ * or network share mounted on every node. A node-local directory only suits a single node.
+ *
+ * An object is written next to its final name and moved into place. Mounts that cannot rename
+ * atomically get a plain move, which such mounts implement as a copy.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.archive.store", havingValue = "directory", matchIfMissing = true)
+public class DirectoryArchiveStore implements ArchiveStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryArchiveStore.class);
+
+    @Value("${attendance.archive.store-dir:archive/store}")
+    private String storeDir;
+
+    @PostConstruct
+    public void logStoreDir() {
+        logger.info("Archive store: {}", Paths.get(storeDir).toAbsolutePath());
+    }
+
+    @Override
+    public String getStoreName() {
+        return "directory";
+    }
+
+    @Override
+    public void put(String key, InputStream content) throws IOException {
+        Path path = resolve(key);
+        Files.createDirectories(path.getParent());
+        Path partial = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".partial");
+        try {
+            Files.copy(content, partial, StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+    }
+
+    @Override
+    public boolean get(String key, Path target) throws IOException {
+        try {
+            Files.copy(resolve(key), target, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    private Path resolve(String key) {
+        Path root = Paths.get(storeDir).toAbsolutePath().normalize();
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Archive key outside the store: " + key);
+        }
+        return path;
+    }
+}
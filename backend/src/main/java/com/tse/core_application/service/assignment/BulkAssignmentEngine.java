@@ -0,0 +1,290 @@
+package com.tse.core_application.service.assignment;
+
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.dto.assignment.AssignmentSummary;
+import com.tse.core_application.dto.assignment.EntityActionItem;
+import com.tse.core_application.dto.assignment.EntityResult;
+import com.tse.core_application.entity.assignment.FenceAssignment;
+import com.tse.core_application.repository.assignment.FenceAssignmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set-based engine for large assign/unassign requests.
+ *
+ * Loads every assignment of every entity in the request with one query, replays the add and
+ * remove items in order against that in-memory state (same rules and same EntityResults as
+ * the per-item path in FenceAssignmentService) and then writes the net difference as JDBC
+ * batches: deletes, default unsets, default sets, inserts. Unsetting defaults before setting
+ * new ones keeps at most one default per entity after every statement, as required by
+ * uq_fence_assignment_entity_default. Audit columns follow the per-item path too: a plain unset
+ * (a bulk JPQL update there) leaves updated_by and updated_datetime alone, an explicit
+ * makeDefault sets both, and promoting the last remaining fence only moves updated_datetime.
+ *
+ * Must run inside the caller's transaction.
+ */
+@Component
+public class BulkAssignmentEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkAssignmentEngine.class);
+
+    private static final String DELETE_SQL = "DELETE FROM fence_assignment WHERE id = ?";
+
+    private static final String UPDATE_DEFAULT_SQL =
+            "UPDATE fence_assignment SET is_default = ?, " +
+            "updated_by = CASE WHEN ? THEN ? ELSE updated_by END, " +
+            "updated_datetime = CASE WHEN ? THEN now() ELSE updated_datetime END WHERE id = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO fence_assignment (org_id, fence_id, entity_type_id, entity_id, is_default, created_by, updated_by) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final FenceAssignmentRepository assignmentRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public BulkAssignmentEngine(FenceAssignmentRepository assignmentRepository, JdbcTemplate jdbcTemplate) {
+        this.assignmentRepository = assignmentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Apply the add and remove items for one fence and return one result per item, adds first.
+     */
+    public List<EntityResult> apply(Long orgId, Long fenceId, List<EntityActionItem> add, List<EntityActionItem> remove,
+                                    Long updatedBy, AssignmentSummary summary) {
+        List<EntityActionItem> adds = add != null ? add : Collections.emptyList();
+        List<EntityActionItem> removes = remove != null ? remove : Collections.emptyList();
+
+        Map<Integer, Map<Long, EntityState>> states = load(orgId, adds, removes);
+
+        List<EntityResult> results = new ArrayList<>(adds.size() + removes.size());
+        for (EntityActionItem item : adds) {
+            results.add(replayAdd(fenceId, item, states, summary));
+        }
+        for (EntityActionItem item : removes) {
+            results.add(replayRemove(fenceId, item, states, summary));
+        }
+
+        write(orgId, updatedBy, states);
+        return results;
+    }
+
+    private Map<Integer, Map<Long, EntityState>> load(Long orgId, List<EntityActionItem> adds, List<EntityActionItem> removes) {
+        Map<Integer, Set<Long>> idsByType = new HashMap<>();
+        for (List<EntityActionItem> items : Arrays.asList(adds, removes)) {
+            for (EntityActionItem item : items) {
+                if (EntityTypes.isValid(item.getEntityTypeId()) && item.getEntityId() != null) {
+                    idsByType.computeIfAbsent(item.getEntityTypeId(), type -> new HashSet<>()).add(item.getEntityId());
+                }
+            }
+        }
+
+        List<FenceAssignment> existing = assignmentRepository.findForEntityLists(orgId,
+                idsOf(idsByType, EntityTypes.USER),
+                idsOf(idsByType, EntityTypes.TEAM),
+                idsOf(idsByType, EntityTypes.PROJECT),
+                idsOf(idsByType, EntityTypes.ORG));
+
+        Map<Integer, Map<Long, EntityState>> states = new HashMap<>();
+        for (FenceAssignment assignment : existing) {
+            stateOf(states, assignment.getEntityTypeId(), assignment.getEntityId()).rows.put(assignment.getFenceId(),
+                    new Row(assignment.getId(), Boolean.TRUE.equals(assignment.getIsDefault())));
+        }
+
+        logger.debug("Loaded {} existing assignments for bulk assignment in org {}", existing.size(), orgId);
+        return states;
+    }
+
+    private EntityResult replayAdd(Long fenceId, EntityActionItem item, Map<Integer, Map<Long, EntityState>> states,
+                                   AssignmentSummary summary) {
+        // Validate entity type
+        if (!EntityTypes.isValid(item.getEntityTypeId())) {
+            summary.incrementErrors();
+            return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "ERROR", false,
+                    Collections.emptyList(), "Invalid entity type: " + item.getEntityTypeId());
+        }
+
+        if (item.getEntityId() == null || item.getEntityId() <= 0) {
+            summary.incrementErrors();
+            return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "ERROR", false,
+                    Collections.emptyList(), "Invalid entity ID");
+        }
+
+        EntityState state = stateOf(states, item.getEntityTypeId(), item.getEntityId());
+        Row existing = state.rows.get(fenceId);
+
+        if (existing != null) {
+            if (Boolean.TRUE.equals(item.getMakeDefault()) && !existing.isDefault) {
+                state.unsetDefault();
+                existing.isDefault = true;
+                existing.touched = true;
+                summary.incrementUpdatedDefault();
+                return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "UPDATED_DEFAULT", true,
+                        state.fenceIds(), "Set as default.");
+            }
+
+            summary.incrementNoops();
+            return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "NOOP",
+                    existing.isDefault, state.fenceIds(), "Already assigned.");
+        }
+
+        // An entity's first fence becomes its default
+        boolean makeDefault = Boolean.TRUE.equals(item.getMakeDefault()) || state.rows.isEmpty();
+        if (makeDefault) {
+            state.unsetDefault();
+            summary.incrementUpdatedDefault();
+        }
+
+        Row created = new Row(null, false);
+        created.isDefault = makeDefault;
+        state.rows.put(fenceId, created);
+        summary.incrementAdded();
+
+        String message = makeDefault ? "Assigned and set as default." : "Assigned.";
+        return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "ADDED", makeDefault,
+                state.fenceIds(), message);
+    }
+
+    private EntityResult replayRemove(Long fenceId, EntityActionItem item, Map<Integer, Map<Long, EntityState>> states,
+                                      AssignmentSummary summary) {
+        // Validate entity type
+        if (!EntityTypes.isValid(item.getEntityTypeId())) {
+            summary.incrementErrors();
+            return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "ERROR", false,
+                    Collections.emptyList(), "Invalid entity type: " + item.getEntityTypeId());
+        }
+
+        EntityState state = stateOf(states, item.getEntityTypeId(), item.getEntityId());
+        Row existing = state.rows.remove(fenceId);
+
+        if (existing == null) {
+            summary.incrementNoops();
+            return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "NOOP", false,
+                    state.fenceIds(), "Fence not assigned previously.");
+        }
+
+        if (existing.id != null) {
+            state.deletedIds.add(existing.id);
+        }
+
+        // A removed default passes to the only remaining fence; with several left there is no default
+        if (existing.isDefault && state.rows.size() == 1) {
+            Row remaining = state.rows.values().iterator().next();
+            remaining.isDefault = true;
+            remaining.promoted = true;
+        }
+
+        summary.incrementRemoved();
+        return new EntityResult(item.getEntityTypeId(), item.getEntityId(), "REMOVED", false,
+                state.fenceIds(), "Removed; assignment deleted.");
+    }
+
+    private void write(Long orgId, Long updatedBy, Map<Integer, Map<Long, EntityState>> states) {
+        List<Long> deletes = new ArrayList<>();
+        List<Row> unsets = new ArrayList<>();
+        List<Row> sets = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+
+        states.forEach((entityTypeId, byId) -> byId.forEach((entityId, state) -> {
+            deletes.addAll(state.deletedIds);
+            state.rows.forEach((fenceId, row) -> {
+                if (row.id == null) {
+                    inserts.add(new Object[]{orgId, fenceId, entityTypeId, entityId, row.isDefault, updatedBy, updatedBy});
+                } else if (row.isDefault != row.originalDefault || row.touched || row.promoted) {
+                    (row.isDefault ? sets : unsets).add(row);
+                }
+            });
+        }));
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, deletes, deletes.size(), (ps, id) -> ps.setLong(1, id));
+        }
+
+        // Unsets strictly before sets so no entity ever has two defaults
+        for (List<Row> rows : Arrays.asList(unsets, sets)) {
+            if (rows.isEmpty()) {
+                continue;
+            }
+            jdbcTemplate.batchUpdate(UPDATE_DEFAULT_SQL, rows, rows.size(), (ps, row) -> {
+                ps.setBoolean(1, row.isDefault);
+                ps.setBoolean(2, row.touched);
+                if (updatedBy != null) {
+                    ps.setLong(3, updatedBy);
+                } else {
+                    ps.setNull(3, Types.BIGINT);
+                }
+                ps.setBoolean(4, row.touched || row.promoted);
+                ps.setLong(5, row.id);
+            });
+        }
+
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts,
+                    new int[]{Types.BIGINT, Types.BIGINT, Types.INTEGER, Types.BIGINT, Types.BOOLEAN, Types.BIGINT, Types.BIGINT});
+        }
+
+        logger.info("Bulk assignment in org {}: {} inserted, {} deleted, {} defaults unset, {} defaults set",
+                orgId, inserts.size(), deletes.size(), unsets.size(), sets.size());
+    }
+
+    private static EntityState stateOf(Map<Integer, Map<Long, EntityState>> states, Integer entityTypeId, Long entityId) {
+        return states.computeIfAbsent(entityTypeId, type -> new HashMap<>())
+                .computeIfAbsent(entityId, id -> new EntityState());
+    }
+
+    /**
+     * An empty IN list is invalid SQL, so empty sets are replaced by an ID that never matches.
+     */
+    private static Collection<Long> idsOf(Map<Integer, Set<Long>> idsByType, int entityTypeId) {
+        Set<Long> ids = idsByType.get(entityTypeId);
+        return ids == null || ids.isEmpty() ? Collections.singletonList(-1L) : ids;
+    }
+
+    /**
+     * In-memory assignments of one entity, keyed by fence ID. Iteration order is the order
+     * findFenceIdsByEntity returns after the write: loaded rows in assignment-ID order, then rows
+     * added by this request in request order (they get the next IDs).
+     */
+    private static final class EntityState {
+        private final LinkedHashMap<Long, Row> rows = new LinkedHashMap<>();
+        private final List<Long> deletedIds = new ArrayList<>();
+
+        void unsetDefault() {
+            rows.values().forEach(row -> row.isDefault = false);
+        }
+
+        List<Long> fenceIds() {
+            return new ArrayList<>(rows.keySet());
+        }
+    }
+
+    private static final class Row {
+        private final Long id;
+        private final boolean originalDefault;
+        private boolean isDefault;
+        // Set as default by an explicit makeDefault (moves updated_by)
+        private boolean touched;
+        // Became default as the last remaining fence after a removal
+        private boolean promoted;
+
+        Row(Long id, boolean originalDefault) {
+            this.id = id;
+            this.originalDefault = originalDefault;
+            this.isDefault = originalDefault;
+        }
+    }
+}
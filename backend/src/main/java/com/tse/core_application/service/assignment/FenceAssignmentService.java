@@ -10,6 +10,10 @@ import com.tse.core_application.repository.assignment.FenceAssignmentRepository;
 import com.tse.core_application.repository.fence.GeoFenceRepository;
 import com.tse.core_application.service.dir.DirectoryProvider;
 import com.tse.core_application.service.dir.EntityRef;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.userfence.EffectiveFenceStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,16 +24,40 @@ import java.util.stream.Collectors;
 @Service
 public class FenceAssignmentService {
 
+    public static final String VIEW_ASSIGNED = "ASSIGNED";
+    public static final String VIEW_UNASSIGNED = "UNASSIGNED";
+
     private final FenceAssignmentRepository assignmentRepository;
     private final GeoFenceRepository fenceRepository;
     private final DirectoryProvider directoryProvider;
+    private final EffectiveFenceStore effectiveFenceStore;
+    private final BulkAssignmentEngine bulkAssignmentEngine;
+    private final ChangeOutbox changeOutbox;
+
+    @Value("${attendance.assignment.bulk-threshold:50}")
+    private int bulkThreshold;
+
+    @Value("${attendance.assignment.page-default-size:100}")
+    private int pageDefaultSize;
+
+    @Value("${attendance.assignment.page-max-size:500}")
+    private int pageMaxSize;
+
+    @Value("${attendance.assignment.merge-chunk-size:500}")
+    private int mergeChunkSize;
 
     public FenceAssignmentService(FenceAssignmentRepository assignmentRepository,
                                   GeoFenceRepository fenceRepository,
-                                  DirectoryProvider directoryProvider) {
+                                  DirectoryProvider directoryProvider,
+                                  EffectiveFenceStore effectiveFenceStore,
+                                  BulkAssignmentEngine bulkAssignmentEngine,
+                                  ChangeOutbox changeOutbox) {
         this.assignmentRepository = assignmentRepository;
         this.fenceRepository = fenceRepository;
         this.directoryProvider = directoryProvider;
+        this.effectiveFenceStore = effectiveFenceStore;
+        this.bulkAssignmentEngine = bulkAssignmentEngine;
+        this.changeOutbox = changeOutbox;
     }
 
     @Transactional
@@ -62,28 +90,82 @@ public class FenceAssignmentService {
         AssignmentSummary summary = new AssignmentSummary();
         List<EntityResult> results = new ArrayList<>();
 
-        // Process add items
-        if (request.getAdd() != null) {
-            for (EntityActionItem item : request.getAdd()) {
-                EntityResult entityResult = processAdd(orgId, request.getFenceId(), item, request.getUpdatedBy(), summary);
-                results.add(entityResult);
+        int itemCount = (request.getAdd() != null ? request.getAdd().size() : 0)
+                + (request.getRemove() != null ? request.getRemove().size() : 0);
+
+        if (itemCount >= bulkThreshold) {
+            // Large requests: one diff query and batched writes instead of several statements per item
+            results.addAll(bulkAssignmentEngine.apply(orgId, request.getFenceId(), request.getAdd(),
+                    request.getRemove(), request.getUpdatedBy(), summary));
+        } else {
+            // Process add items
+            if (request.getAdd() != null) {
+                for (EntityActionItem item : request.getAdd()) {
+                    EntityResult entityResult = processAdd(orgId, request.getFenceId(), item, request.getUpdatedBy(), summary);
+                    results.add(entityResult);
+                }
             }
-        }
 
-        // Process remove items
-        if (request.getRemove() != null) {
-            for (EntityActionItem item : request.getRemove()) {
-                EntityResult entityResult = processRemove(orgId, request.getFenceId(), item, summary);
-                results.add(entityResult);
+            // Process remove items
+            if (request.getRemove() != null) {
+                for (EntityActionItem item : request.getRemove()) {
+                    EntityResult entityResult = processRemove(orgId, request.getFenceId(), item, summary);
+                    results.add(entityResult);
+                }
             }
         }
 
         result.setSummary(summary);
         result.setResults(results);
 
+        invalidateEffectiveFences(orgId, results);
+        appendChange(orgId, request.getFenceId(), results);
+
         return result;
     }
 
+    /**
+     * Invalidate materialized effective fences of every entity whose assignments changed,
+     * in this transaction.
+     */
+    private void invalidateEffectiveFences(Long orgId, List<EntityResult> results) {
+        Map<Integer, Set<Long>> changed = new HashMap<>();
+        for (EntityResult entityResult : results) {
+            String action = entityResult.getAction();
+            if ("ADDED".equals(action) || "UPDATED_DEFAULT".equals(action) || "REMOVED".equals(action)) {
+                changed.computeIfAbsent(entityResult.getEntityTypeId(), type -> new HashSet<>())
+                        .add(entityResult.getEntityId());
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            effectiveFenceStore.invalidateEntities(orgId, changed);
+        }
+    }
+
+    /**
+     * Record the changed entities of this fence in the change outbox, in this transaction.
+     */
+    private void appendChange(Long orgId, Long fenceId, List<EntityResult> results) {
+        List<Map<String, Object>> entities = new ArrayList<>();
+        for (EntityResult entityResult : results) {
+            String action = entityResult.getAction();
+            if ("ADDED".equals(action) || "UPDATED_DEFAULT".equals(action) || "REMOVED".equals(action)) {
+                Map<String, Object> entity = new HashMap<>();
+                entity.put("entityTypeId", entityResult.getEntityTypeId());
+                entity.put("entityId", entityResult.getEntityId());
+                entity.put("action", action);
+                entities.add(entity);
+            }
+        }
+
+        if (!entities.isEmpty()) {
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("entities", entities);
+            changeOutbox.append(orgId, ChangeOutbox.AGGREGATE_ASSIGNMENT, fenceId, ChangeOutbox.CHANGE_ASSIGNMENTS, payload);
+        }
+    }
+
     private EntityResult processAdd(Long orgId, Long fenceId, EntityActionItem item, Long updatedBy, AssignmentSummary summary) {
         // Validate entity type
         if (!EntityTypes.isValid(item.getEntityTypeId())) {
@@ -248,6 +330,113 @@ public class FenceAssignmentService {
         return response;
     }
 
+    /**
+     * One page of the assigned or unassigned entities of one type for a fence.
+     *
+     * Directory entities and the fence's assignments are both read in ID-sorted keyset chunks
+     * starting after the cursor and merge-joined, so neither side is ever loaded in full:
+     * ASSIGNED walks the assignments and picks names from the directory, UNASSIGNED walks the
+     * directory and skips IDs present in the assignments.
+     */
+    @Transactional(readOnly = true)
+    public AssignedEntitiesPageResponse getAssignedEntitiesPage(Long orgId, Long fenceId, Integer entityTypeId,
+                                                                String view, Long cursor, Integer limit) {
+        if (entityTypeId == null || !EntityTypes.isValid(entityTypeId)) {
+            throw new ProblemException(
+                    org.springframework.http.HttpStatus.BAD_REQUEST,
+                    "VALIDATION_FAILED",
+                    "Invalid entityTypeId",
+                    "Invalid entity type: " + entityTypeId);
+        }
+
+        String normalizedView = view != null ? view.toUpperCase() : VIEW_ASSIGNED;
+        if (!VIEW_ASSIGNED.equals(normalizedView) && !VIEW_UNASSIGNED.equals(normalizedView)) {
+            throw new ProblemException(
+                    org.springframework.http.HttpStatus.BAD_REQUEST,
+                    "VALIDATION_FAILED",
+                    "Invalid view",
+                    "view must be ASSIGNED or UNASSIGNED");
+        }
+
+        int pageSize = limit != null ? limit : pageDefaultSize;
+        if (pageSize < 1 || pageSize > pageMaxSize) {
+            throw new ProblemException(
+                    org.springframework.http.HttpStatus.BAD_REQUEST,
+                    "VALIDATION_FAILED",
+                    "Invalid limit",
+                    "limit must be between 1 and " + pageMaxSize);
+        }
+
+        fenceRepository.findByIdAndOrgId(fenceId, orgId)
+                .orElseThrow(() -> new FenceNotFoundException(fenceId, orgId));
+
+        long afterId = cursor != null ? cursor : 0L;
+        int chunkSize = Math.max(pageSize + 1, mergeChunkSize);
+
+        SortedChunkIterator<FenceAssignment> assignments = new SortedChunkIterator<>(afterId, chunkSize,
+                (after, n) -> assignmentRepository.findPageByFenceAndType(orgId, fenceId, entityTypeId, after,
+                        PageRequest.of(0, n)),
+                FenceAssignment::getEntityId);
+        SortedChunkIterator<EntityRef> directory = new SortedChunkIterator<>(afterId, chunkSize,
+                (after, n) -> directoryProvider.listEntitiesAfter(orgId, entityTypeId, after, n),
+                EntityRef::getId);
+
+        List<AssignedEntity> items = new ArrayList<>(pageSize);
+        boolean hasMore;
+
+        if (VIEW_ASSIGNED.equals(normalizedView)) {
+            FenceAssignment assignment;
+            while (items.size() < pageSize && (assignment = assignments.next()) != null) {
+                EntityRef entity = directory.advanceTo(assignment.getEntityId());
+                String name = entity != null && entity.getId() == assignment.getEntityId()
+                        ? entity.getName()
+                        : getEntityName(entityTypeId, assignment.getEntityId());
+                items.add(new AssignedEntity(assignment.getEntityId(), name, assignment.getIsDefault(), null));
+            }
+            hasMore = assignments.peek() != null;
+        } else {
+            EntityRef entity;
+            while (items.size() < pageSize && (entity = directory.next()) != null) {
+                FenceAssignment assignment = assignments.advanceTo(entity.getId());
+                if (assignment != null && assignment.getEntityId() == entity.getId()) {
+                    continue;
+                }
+                items.add(new AssignedEntity(entity.getId(), entity.getName(), false, null));
+            }
+            hasMore = directory.peek() != null;
+        }
+
+        fillFenceIds(orgId, entityTypeId, items);
+
+        AssignedEntitiesPageResponse response = new AssignedEntitiesPageResponse();
+        response.setFenceId(fenceId);
+        response.setEntityTypeId(entityTypeId);
+        response.setView(normalizedView);
+        response.setItems(items);
+        response.setNextCursor(hasMore && !items.isEmpty() ? items.get(items.size() - 1).getEntityId() : null);
+        response.setAssignedTotal(assignmentRepository.countByOrgIdAndFenceIdAndEntityTypeId(orgId, fenceId, entityTypeId));
+        return response;
+    }
+
+    /**
+     * All fence IDs of every entity on the page, with one query.
+     */
+    private void fillFenceIds(Long orgId, Integer entityTypeId, List<AssignedEntity> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        List<Long> entityIds = items.stream().map(AssignedEntity::getEntityId).collect(Collectors.toList());
+        Map<Long, List<Long>> fenceIdsByEntity = assignmentRepository
+                .findByOrgIdAndEntityTypeIdAndEntityIdIn(orgId, entityTypeId, entityIds).stream()
+                .collect(Collectors.groupingBy(FenceAssignment::getEntityId,
+                        Collectors.mapping(FenceAssignment::getFenceId, Collectors.toList())));
+
+        for (AssignedEntity item : items) {
+            item.setFenceIds(fenceIdsByEntity.getOrDefault(item.getEntityId(), Collections.emptyList()));
+        }
+    }
+
     private EntityLists buildAssignedLists(Long orgId, List<FenceAssignment> assignments) {
         EntityLists lists = new EntityLists();
 
@@ -0,0 +1,78 @@
+package com.tse.core_application.service.assignment;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Peeking iterator over an ID-sorted source that is read in keyset chunks
+ * (IDs greater than the last fetched one), so only one chunk is held at a time.
+ */
+final class SortedChunkIterator<T> {
+
+    /**
+     * Fetches up to limit items with ID greater than afterId, ascending.
+     */
+    interface ChunkSource<T> {
+        List<T> fetch(long afterId, int limit);
+    }
+
+    private final ChunkSource<T> source;
+    private final ToLongFunction<T> idOf;
+    private final int chunkSize;
+
+    private List<T> chunk = Collections.emptyList();
+    private int index;
+    private long fetchedUpTo;
+    private boolean exhausted;
+
+    SortedChunkIterator(long afterId, int chunkSize, ChunkSource<T> source, ToLongFunction<T> idOf) {
+        this.fetchedUpTo = afterId;
+        this.chunkSize = chunkSize;
+        this.source = source;
+        this.idOf = idOf;
+    }
+
+    /**
+     * Next item without consuming it, or null at the end.
+     */
+    T peek() {
+        if (index >= chunk.size()) {
+            if (exhausted) {
+                return null;
+            }
+            chunk = source.fetch(fetchedUpTo, chunkSize);
+            index = 0;
+            if (chunk.size() < chunkSize) {
+                exhausted = true;
+            }
+            if (chunk.isEmpty()) {
+                return null;
+            }
+            fetchedUpTo = idOf.applyAsLong(chunk.get(chunk.size() - 1));
+        }
+        return chunk.get(index);
+    }
+
+    /**
+     * Consume and return the next item, or null at the end.
+     */
+    T next() {
+        T item = peek();
+        if (item != null) {
+            index++;
+        }
+        return item;
+    }
+
+    /**
+     * Skip items with ID lower than the given one and return the first remaining item, or null.
+     */
+    T advanceTo(long id) {
+        T item;
+        while ((item = peek()) != null && idOf.applyAsLong(item) < id) {
+            index++;
+        }
+        return item;
+    }
+}
@@ -6,23 +6,28 @@ import com.tse.core_application.dto.attendance.AttendanceDataRequest;
 import com.tse.core_application.dto.attendance.AttendanceDataResponse;
 import com.tse.core_application.entity.attendance.AttendanceDay;
 import com.tse.core_application.entity.attendance.AttendanceEvent;
-import com.tse.core_application.entity.fence.GeoFence;
 import com.tse.core_application.entity.policy.AttendancePolicy;
 import com.tse.core_application.entity.preference.EntityPreference;
 import com.tse.core_application.exception.ProblemException;
 import com.tse.core_application.repository.attendance.AttendanceDayRepository;
 import com.tse.core_application.repository.attendance.AttendanceEventRepository;
 import com.tse.core_application.repository.fence.GeoFenceRepository;
+import com.tse.core_application.repository.fence.GeoFenceRepository.FenceLabelView;
 import com.tse.core_application.repository.policy.AttendancePolicyRepository;
 import com.tse.core_application.repository.preference.EntityPreferenceRepository;
+import com.tse.core_application.service.archive.ColdArchiveReader;
+import com.tse.core_application.service.coalescing.RequestCoalescer;
+import com.tse.core_application.service.datasource.ReplicaRouting;
 import com.tse.core_application.util.DateTimeUtils;
 import com.tse.core_application.util.GeoMath;
+import com.tse.core_application.util.concurrent.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -51,6 +56,9 @@ public class AttendanceDataService {
     private final GeoFenceRepository fenceRepository;
     private final EntityPreferenceRepository entityPreferenceRepository;
     private final OfficePolicyProvider officePolicyProvider;
+    private final ColdArchiveReader coldArchiveReader;
+    private final ReplicaRouting replicaRouting;
+    private final SingleFlight<Long, Map<Long, FenceLabelView>> orgFencesFlight;
     // TODO: Add LeaveApplicationRepository when available
     // private final LeaveApplicationRepository leaveApplicationRepository;
 
@@ -60,13 +68,19 @@ public class AttendanceDataService {
             AttendancePolicyRepository policyRepository,
             GeoFenceRepository fenceRepository,
             EntityPreferenceRepository entityPreferenceRepository,
-            OfficePolicyProvider officePolicyProvider) {
+            OfficePolicyProvider officePolicyProvider,
+            ColdArchiveReader coldArchiveReader,
+            ReplicaRouting replicaRouting,
+            RequestCoalescer requestCoalescer) {
         this.eventRepository = eventRepository;
         this.dayRepository = dayRepository;
         this.policyRepository = policyRepository;
         this.fenceRepository = fenceRepository;
         this.entityPreferenceRepository = entityPreferenceRepository;
         this.officePolicyProvider = officePolicyProvider;
+        this.coldArchiveReader = coldArchiveReader;
+        this.replicaRouting = replicaRouting;
+        this.orgFencesFlight = requestCoalescer.group("orgFences");
     }
 
     /**
@@ -80,6 +94,7 @@ public class AttendanceDataService {
     public AttendanceDataResponse getAttendanceData(AttendanceDataRequest request, String userTimeZone) {
         // 1. Validate request
         validateRequest(request);
+        replicaRouting.readYourWrites(request.getOrgId(), request.getAccountIds());
 
         // 2. Parse dates
         LocalDate fromDate = parseDate(request.getFromDate());
@@ -115,7 +130,7 @@ public class AttendanceDataService {
                 request.getOrgId(), request.getAccountIds(), fromDate, toDate);
 
         // 7. Load fences for location labels
-        Map<Long, GeoFence> fenceMap = loadFences(request.getOrgId());
+        Map<Long, FenceLabelView> fenceMap = loadFences(request.getOrgId());
 
         // 8. Build response
         AttendanceDataResponse response = new AttendanceDataResponse();
@@ -143,6 +158,7 @@ public class AttendanceDataService {
     @Transactional(readOnly = true)
     public AttendanceDataResponse.UserAttendanceData getSingleUserAttendanceData(
             Long orgId, Long accountId, String date, String userTimeZone) {
+        replicaRouting.readYourWrites(orgId, Collections.singletonList(accountId));
 
         // Parse date
         LocalDate targetDate = parseDate(date);
@@ -165,7 +181,7 @@ public class AttendanceDataService {
                 orgId, Collections.singletonList(accountId), targetDate, targetDate);
 
         // Load fences for location labels
-        Map<Long, GeoFence> fenceMap = loadFences(orgId);
+        Map<Long, FenceLabelView> fenceMap = loadFences(orgId);
 
         // Get user name
         Map<Long, String> userNamesMap = getUserNamesMap(Collections.singletonList(accountId));
@@ -253,8 +269,7 @@ public class AttendanceDataService {
                 userEndOfDay, userTimeZone);
 
         for (Long accountId : accountIds) {
-            List<AttendanceEvent> events = eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
-                    orgId, accountId, serverStart, serverEnd);
+            List<AttendanceEvent> events = loadAccountEvents(orgId, accountId, serverStart, serverEnd);
 
             // Group events by USER's local date (not server's date)
             Map<LocalDate, List<AttendanceEvent>> dateMap = events.stream()
@@ -276,8 +291,7 @@ public class AttendanceDataService {
         Map<Long, Map<LocalDate, AttendanceDay>> result = new HashMap<>();
 
         for (Long accountId : accountIds) {
-            List<AttendanceDay> days = dayRepository.findByOrgIdAndAccountIdAndDateKeyBetween(
-                    orgId, accountId, fromDate, toDate);
+            List<AttendanceDay> days = loadAccountDays(orgId, accountId, fromDate, toDate);
 
             Map<LocalDate, AttendanceDay> dateMap = days.stream()
                     .collect(Collectors.toMap(AttendanceDay::getDateKey, d -> d));
@@ -288,10 +302,57 @@ public class AttendanceDataService {
         return result;
     }
 
-    private Map<Long, GeoFence> loadFences(Long orgId) {
-        List<GeoFence> fences = fenceRepository.findByOrgId(orgId);
-        return fences.stream()
-                .collect(Collectors.toMap(GeoFence::getId, f -> f));
+    /**
+     * Events of the account with start <= tsUtc <= end, oldest first. Months before the hot
+     * cutoff that are in the cold archive are read from there, the rest from the database.
+     */
+    private List<AttendanceEvent> loadAccountEvents(Long orgId, Long accountId, LocalDateTime start, LocalDateTime end) {
+        Instant from = start.atZone(ZoneId.systemDefault()).toInstant();
+        Instant to = end.atZone(ZoneId.systemDefault()).toInstant();
+        Instant archivedUntil = coldArchiveReader.archivedUntil(from);
+        if (!archivedUntil.isAfter(from)) {
+            return eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(orgId, accountId, start, end);
+        }
+
+        Instant archiveEnd = archivedUntil.isAfter(to) ? to.plusMillis(1) : archivedUntil;
+        List<AttendanceEvent> events = new ArrayList<>(
+                coldArchiveReader.readEvents(orgId, accountId, from, archiveEnd));
+        if (!archivedUntil.isAfter(to)) {
+            LocalDateTime hotStart = LocalDateTime.ofInstant(archivedUntil, ZoneId.systemDefault());
+            events.addAll(eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
+                    orgId, accountId, hotStart, end));
+        }
+        return events;
+    }
+
+    /**
+     * Days of the account with fromDate <= dateKey <= toDate, split between the cold archive
+     * and the database like {@link #loadAccountEvents}.
+     */
+    private List<AttendanceDay> loadAccountDays(Long orgId, Long accountId, LocalDate fromDate, LocalDate toDate) {
+        LocalDate archivedUntil = coldArchiveReader.archivedUntil(fromDate);
+        if (!archivedUntil.isAfter(fromDate)) {
+            return dayRepository.findByOrgIdAndAccountIdAndDateKeyBetween(orgId, accountId, fromDate, toDate);
+        }
+
+        LocalDate archiveTo = archivedUntil.isAfter(toDate) ? toDate : archivedUntil.minusDays(1);
+        List<AttendanceDay> days = new ArrayList<>(coldArchiveReader.readDays(orgId, accountId, fromDate, archiveTo));
+        if (!archivedUntil.isAfter(toDate)) {
+            days.addAll(dayRepository.findByOrgIdAndAccountIdAndDateKeyBetween(orgId, accountId, archivedUntil, toDate));
+        }
+        return days;
+    }
+
+    /**
+     * Fence labels of the org by ID. Concurrent callers for the same org share one query, so
+     * the map holds read-only projections rather than entities of the leader's persistence context.
+     */
+    private Map<Long, FenceLabelView> loadFences(Long orgId) {
+        return orgFencesFlight.execute(orgId, () -> {
+            List<FenceLabelView> fences = fenceRepository.findLabelsByOrgId(orgId);
+            return Collections.unmodifiableMap(fences.stream()
+                    .collect(Collectors.toMap(FenceLabelView::getId, f -> f)));
+        });
     }
 
     private AttendanceDataResponse.SummarySection buildSummarySection(
@@ -421,7 +482,7 @@ public class AttendanceDataService {
             AttendanceDataRequest request, LocalDate fromDate, LocalDate toDate,
             Map<Long, Map<LocalDate, List<AttendanceEvent>>> eventsMap,
             Map<Long, Map<LocalDate, AttendanceDay>> daysMap,
-            Map<Long, GeoFence> fenceMap,
+            Map<Long, FenceLabelView> fenceMap,
             AttendancePolicy policy,
             Map<Long, String> userNamesMap,
             String userTimeZone) {
@@ -480,7 +541,7 @@ public class AttendanceDataService {
             Long orgId, Long accountId, LocalDate date,
             Map<Long, Map<LocalDate, List<AttendanceEvent>>> eventsMap,
             Map<Long, Map<LocalDate, AttendanceDay>> daysMap,
-            Map<Long, GeoFence> fenceMap,
+            Map<Long, FenceLabelView> fenceMap,
             AttendancePolicy policy,
             Map<Long, String> userNamesMap,
             String userTimeZone) {
@@ -583,7 +644,7 @@ public class AttendanceDataService {
 
         // Location
         if (checkInEvent != null && checkInEvent.getFenceId() != null) {
-            GeoFence fence = fenceMap.get(checkInEvent.getFenceId());
+            FenceLabelView fence = fenceMap.get(checkInEvent.getFenceId());
             userData.setPrimaryFenceName(fence != null ? fence.getName() : "Unknown");
         } else {
             userData.setPrimaryFenceName(null);
@@ -606,7 +667,7 @@ public class AttendanceDataService {
     }
 
     private List<AttendanceDataResponse.PunchEvent> buildTimeline(
-            List<AttendanceEvent> events, Map<Long, GeoFence> fenceMap,
+            List<AttendanceEvent> events, Map<Long, FenceLabelView> fenceMap,
             AttendancePolicy policy, LocalDate date,
             AttendanceEvent checkInEvent, AttendanceEvent checkOutEvent,
             String userTimeZone, Long orgId) {
@@ -637,7 +698,7 @@ public class AttendanceDataService {
 
             // Location label
             if (event.getFenceId() != null) {
-                GeoFence fence = fenceMap.get(event.getFenceId());
+                FenceLabelView fence = fenceMap.get(event.getFenceId());
                 if (fence != null && event.getLat() != null && event.getLon() != null) {
                     double distance = GeoMath.distanceMeters(
                             event.getLat(), event.getLon(),
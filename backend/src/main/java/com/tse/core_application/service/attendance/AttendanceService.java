@@ -1,6 +1,5 @@
 package com.tse.core_application.service.attendance;
 
-import com.tse.core_application.constants.EntityTypes;
 import com.tse.core_application.constants.attendance.EventAction;
 import com.tse.core_application.constants.attendance.EventKind;
 import com.tse.core_application.constants.attendance.EventSource;
@@ -9,27 +8,35 @@ import com.tse.core_application.dto.attendance.PunchCreateRequest;
 import com.tse.core_application.dto.attendance.PunchResponse;
 import com.tse.core_application.dto.attendance.TodayAttendanceRequest;
 import com.tse.core_application.dto.attendance.TodaySummaryResponse;
-import com.tse.core_application.entity.assignment.FenceAssignment;
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
 import com.tse.core_application.entity.attendance.AttendanceDay;
 import com.tse.core_application.entity.attendance.AttendanceEvent;
 import com.tse.core_application.entity.fence.GeoFence;
 import com.tse.core_application.entity.policy.AttendancePolicy;
 import com.tse.core_application.entity.punch.PunchRequest;
 import com.tse.core_application.exception.ProblemException;
-import com.tse.core_application.repository.assignment.FenceAssignmentRepository;
 import com.tse.core_application.repository.attendance.AttendanceDayRepository;
 import com.tse.core_application.repository.attendance.AttendanceEventRepository;
 import com.tse.core_application.repository.fence.GeoFenceRepository;
 import com.tse.core_application.repository.policy.AttendancePolicyRepository;
 import com.tse.core_application.repository.punch.PunchRequestRepository;
-import com.tse.core_application.service.membership.MembershipProvider;
+import com.tse.core_application.service.datasource.ReplicaRouting;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.location.LastKnownLocation;
+import com.tse.core_application.service.location.LastKnownLocationStore;
 import com.tse.core_application.service.policy.PolicyGate;
+import com.tse.core_application.service.punch.ActivePunchRequestRegistry;
+import com.tse.core_application.service.push.PushChangeRecorder;
+import com.tse.core_application.service.roster.OrgRosterService;
+import com.tse.core_application.service.userfence.EffectiveFenceStore;
 import com.tse.core_application.util.DateTimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.*;
 import java.time.format.DateTimeFormatter;
@@ -47,41 +54,53 @@ public class AttendanceService {
     private final AttendanceEventRepository eventRepository;
     private final AttendanceDayRepository dayRepository;
     private final AttendancePolicyRepository policyRepository;
-    private final FenceAssignmentRepository assignmentRepository;
     private final GeoFenceRepository fenceRepository;
     private final PunchRequestRepository punchRequestRepository;
-    private final MembershipProvider membershipProvider;
+    private final EffectiveFenceStore effectiveFenceStore;
     private final PolicyGate policyGate;
     private final AcceptanceRules acceptanceRules;
     private final DayRollupService dayRollupService;
     private final OfficePolicyProvider officePolicyProvider;
     private final AttendanceDataService attendanceDataService;
+    private final OrgRosterService orgRosterService;
+    private final PushChangeRecorder pushChangeRecorder;
+    private final ActivePunchRequestRegistry activePunchRequestRegistry;
+    private final LastKnownLocationStore lastKnownLocationStore;
+    private final ReplicaRouting replicaRouting;
 
     public AttendanceService(
             AttendanceEventRepository eventRepository,
             AttendanceDayRepository dayRepository,
             AttendancePolicyRepository policyRepository,
-            FenceAssignmentRepository assignmentRepository,
             GeoFenceRepository fenceRepository,
             PunchRequestRepository punchRequestRepository,
-            MembershipProvider membershipProvider,
+            EffectiveFenceStore effectiveFenceStore,
             PolicyGate policyGate,
             AcceptanceRules acceptanceRules,
             DayRollupService dayRollupService,
             OfficePolicyProvider officePolicyProvider,
-            AttendanceDataService attendanceDataService) {
+            AttendanceDataService attendanceDataService,
+            OrgRosterService orgRosterService,
+            PushChangeRecorder pushChangeRecorder,
+            ActivePunchRequestRegistry activePunchRequestRegistry,
+            LastKnownLocationStore lastKnownLocationStore,
+            ReplicaRouting replicaRouting) {
         this.eventRepository = eventRepository;
         this.dayRepository = dayRepository;
         this.policyRepository = policyRepository;
-        this.assignmentRepository = assignmentRepository;
         this.fenceRepository = fenceRepository;
         this.punchRequestRepository = punchRequestRepository;
-        this.membershipProvider = membershipProvider;
+        this.effectiveFenceStore = effectiveFenceStore;
         this.policyGate = policyGate;
         this.acceptanceRules = acceptanceRules;
         this.dayRollupService = dayRollupService;
         this.officePolicyProvider = officePolicyProvider;
         this.attendanceDataService = attendanceDataService;
+        this.orgRosterService = orgRosterService;
+        this.pushChangeRecorder = pushChangeRecorder;
+        this.activePunchRequestRegistry = activePunchRequestRegistry;
+        this.lastKnownLocationStore = lastKnownLocationStore;
+        this.replicaRouting = replicaRouting;
     }
 
     /**
@@ -196,11 +215,15 @@ public class AttendanceService {
 
         // 10. Save event
         AttendanceEvent savedEvent = eventRepository.save(event);
+        orgRosterService.recordAccount(orgId, request.getAccountId());
+        recordLastKnownLocation(savedEvent);
+        replicaRouting.recordWrite(orgId, savedEvent.getAccountId());
 
         // 11. Update day rollup
         List<AttendanceEvent> updatedEvents = new ArrayList<>(todayEvents);
         updatedEvents.add(savedEvent);
         dayRollupService.updateDayRollup(orgId, request.getAccountId(), dateKey, updatedEvents);
+        pushChangeRecorder.attendanceEventRecorded(savedEvent, dateKey);
 
         // 12. Return response
         return mapToResponse(savedEvent, timeZone);
@@ -305,10 +328,15 @@ public class AttendanceService {
         if (validation.isSuccess()) {
             punchRequest.setState(PunchRequest.State.FULFILLED);
             punchRequestRepository.save(punchRequest);
+            pushChangeRecorder.punchRequestChanged(punchRequest, PunchRequest.State.FULFILLED, ChangeOutbox.CHANGE_FULFILLED);
+            activePunchRequestRegistry.unregister(punchRequest);
         }
 
         // 9. Save event
         AttendanceEvent savedEvent = eventRepository.save(event);
+        orgRosterService.recordAccount(orgId, accountId);
+        recordLastKnownLocation(savedEvent);
+        replicaRouting.recordWrite(orgId, savedEvent.getAccountId());
 
         // 10. Update day rollup if successful
         if (validation.isSuccess()) {
@@ -316,6 +344,7 @@ public class AttendanceService {
             updatedEvents.add(savedEvent);
             dayRollupService.updateDayRollup(orgId, accountId, dateKey, updatedEvents);
         }
+        pushChangeRecorder.attendanceEventRecorded(savedEvent, dateKey);
 
         // 11. Return response
         return mapToResponse(savedEvent, timeZone);
@@ -332,6 +361,9 @@ public class AttendanceService {
      */
     @Transactional(readOnly = true)
     public TodaySummaryResponse getTodaySummary(long orgId, TodayAttendanceRequest request, String timeZone) {
+        // Right after a punch the account's own summary must include it
+        replicaRouting.readYourWrites(orgId, Collections.singletonList(request.getAccountId()));
+
         // Use AttendanceDataService to get single user data with all the /data API logic
         com.tse.core_application.dto.attendance.AttendanceDataResponse.UserAttendanceData userData =
                 attendanceDataService.getSingleUserAttendanceData(orgId, request.getAccountId(), request.getDate(), timeZone);
@@ -404,6 +436,38 @@ public class AttendanceService {
         return dayOfWeek == java.time.DayOfWeek.SATURDAY || dayOfWeek == java.time.DayOfWeek.SUNDAY;
     }
 
+    /**
+     * Feed the punch position to the last known location store; inside its fence if under range.
+     * Applied once the punch commits, so a rolled back punch moves no one.
+     */
+    private void recordLastKnownLocation(AttendanceEvent event) {
+        if (event.getLat() == null || event.getLon() == null) {
+            return;
+        }
+        long orgId = event.getOrgId();
+        long accountId = event.getAccountId();
+        double lat = event.getLat();
+        double lon = event.getLon();
+        Double accuracyM = event.getAccuracyM();
+        long tsMs = System.currentTimeMillis();
+        Long insideFenceId = Boolean.TRUE.equals(event.getUnderRange()) ? event.getFenceId() : null;
+        afterCommit(() -> lastKnownLocationStore.update(orgId, accountId, lat, lon, accuracyM, tsMs,
+                insideFenceId, LastKnownLocation.SOURCE_PUNCH));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     private void validatePunchRequest(PunchCreateRequest request) {
         if (request.getAccountId() == null || request.getAccountId() <= 0) {
             throw new ProblemException(
@@ -444,33 +508,16 @@ public class AttendanceService {
      * @return The nearest GeoFence, or null if no fences are assigned
      */
     private GeoFence getNearestFenceForUser(long orgId, long accountId, double userLat, double userLon) {
-        // Expand memberships
-        Set<EntityRef> entities = expandMemberships(orgId, accountId);
+        List<AccountEffectiveFence> effective = getEffectiveFences(orgId, accountId);
 
-        // Get assignments for all entities
-        List<Integer> entityTypeIds = entities.stream()
-                .map(e -> e.entityTypeId)
-                .distinct()
-                .collect(Collectors.toList());
-        List<Long> entityIds = entities.stream()
-                .map(e -> e.entityId)
-                .distinct()
-                .collect(Collectors.toList());
-
-        List<FenceAssignment> assignments = assignmentRepository
-                .findByOrgIdAndEntityTypeIdInAndEntityIdIn(orgId, entityTypeIds, entityIds);
-
-        if (assignments.isEmpty()) {
+        if (effective.isEmpty()) {
             return null;
         }
 
-        // Get all unique fence IDs from assignments
-        List<Long> fenceIds = assignments.stream()
-                .map(FenceAssignment::getFenceId)
-                .distinct()
-                .collect(Collectors.toList());
-
         // Fetch all fences
+        List<Long> fenceIds = effective.stream()
+                .map(AccountEffectiveFence::getFenceId)
+                .collect(Collectors.toList());
         List<GeoFence> fences = fenceRepository.findAllById(fenceIds);
 
         if (fences.isEmpty()) {
@@ -496,70 +543,20 @@ public class AttendanceService {
      */
     @Deprecated
     private GeoFence getDefaultFenceForUser(long orgId, long accountId) {
-        // Expand memberships
-        Set<EntityRef> entities = expandMemberships(orgId, accountId);
+        List<AccountEffectiveFence> effective = getEffectiveFences(orgId, accountId);
 
-        // Get assignments for all entities
-        List<Integer> entityTypeIds = entities.stream()
-                .map(e -> e.entityTypeId)
-                .distinct()
-                .collect(Collectors.toList());
-        List<Long> entityIds = entities.stream()
-                .map(e -> e.entityId)
-                .distinct()
-                .collect(Collectors.toList());
-
-        List<FenceAssignment> assignments = assignmentRepository
-                .findByOrgIdAndEntityTypeIdInAndEntityIdIn(orgId, entityTypeIds, entityIds);
+        AccountEffectiveFence defaultFence = EffectiveFenceStore.preferredFence(effective);
 
-        if (assignments.isEmpty()) {
+        if (defaultFence == null) {
             return null;
         }
 
-        // Compute default fence with precedence: USER > TEAM > PROJECT > ORG
-        FenceAssignment defaultAssignment = assignments.stream()
-                .min(Comparator
-                        .comparingInt((FenceAssignment a) -> precedence(a.getEntityTypeId()))
-                        .thenComparing(FenceAssignment::getCreatedDatetime))
-                .orElse(null);
-
-        if (defaultAssignment == null) {
-            return null;
-        }
-
-        return fenceRepository.findById(defaultAssignment.getFenceId()).orElse(null);
-    }
-
-    private Set<EntityRef> expandMemberships(long orgId, long accountId) {
-        Set<EntityRef> entities = new HashSet<>();
-
-        // Add USER entity
-        entities.add(new EntityRef(EntityTypes.USER, accountId));
-
-        // Add TEAMs
-        List<Long> teamIds = membershipProvider.listTeamsForUser(orgId, accountId);
-        for (Long teamId : teamIds) {
-            entities.add(new EntityRef(EntityTypes.TEAM, teamId));
-        }
-
-        // Add PROJECTs
-        List<Long> projectIds = membershipProvider.listProjectsForUser(orgId, accountId);
-        for (Long projectId : projectIds) {
-            entities.add(new EntityRef(EntityTypes.PROJECT, projectId));
-        }
-
-        // Add ORG entity
-        entities.add(new EntityRef(EntityTypes.ORG, orgId));
-
-        return entities;
+        return fenceRepository.findById(defaultFence.getFenceId()).orElse(null);
     }
 
-    private int precedence(int entityTypeId) {
-        if (entityTypeId == EntityTypes.USER) return 1;
-        if (entityTypeId == EntityTypes.TEAM) return 2;
-        if (entityTypeId == EntityTypes.PROJECT) return 3;
-        if (entityTypeId == EntityTypes.ORG) return 4;
-        return 99;
+    private List<AccountEffectiveFence> getEffectiveFences(long orgId, long accountId) {
+        return effectiveFenceStore.getEffectiveFences(orgId, Collections.singletonList(accountId))
+                .getOrDefault(accountId, Collections.emptyList());
     }
 
     private PunchResponse mapToResponse(AttendanceEvent event, String timeZone) {
@@ -578,27 +575,4 @@ public class AttendanceService {
         response.setFlags(event.getFlags());
         return response;
     }
-
-    private static class EntityRef {
-        final int entityTypeId;
-        final long entityId;
-
-        EntityRef(int entityTypeId, long entityId) {
-            this.entityTypeId = entityTypeId;
-            this.entityId = entityId;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            EntityRef entityRef = (EntityRef) o;
-            return entityTypeId == entityRef.entityTypeId && entityId == entityRef.entityId;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(entityTypeId, entityId);
-        }
-    }
 }
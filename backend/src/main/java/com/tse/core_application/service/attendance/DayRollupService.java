@@ -60,6 +60,17 @@ public class DayRollupService {
         dayRepository.save(day);
     }
 
+    /**
+     * Recompute the rollup fields of a day in memory without touching the database.
+     * Used by bulk paths that persist the result themselves.
+     *
+     * @param day    Day record to update
+     * @param events All events for this date (ordered by timestamp)
+     */
+    public void applyRollup(AttendanceDay day, List<AttendanceEvent> events) {
+        computeRollup(day, events);
+    }
+
     private void computeRollup(AttendanceDay day, List<AttendanceEvent> events) {
         if (events == null || events.isEmpty()) {
             day.setStatus(AttendanceStatus.ABSENT);
@@ -0,0 +1,252 @@
+package com.tse.core_application.service.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates scheduled jobs across replicas without an external coordinator.
+ *
+ * Every node heartbeats into scheduler_node. Orgs are partitioned over the live nodes with a
+ * consistent-hash ring, and a node only runs an org's jobs while it holds that org's row in
+ * scheduler_org_lease. The ring spreads the load; the lease guarantees that at most one node
+ * works on an org even while nodes disagree about membership during a rebalance.
+ *
+ * Leases are renewed on every heartbeat. A node releases leases of orgs the ring has moved
+ * away from it; leases of a dead node are taken over once they expire.
+ * Node clocks are assumed to be in sync to well within the lease duration.
+ *
+ * Off by default (attendance.cluster.enabled); a single node then runs every org. When on, every
+ * node needs a stable attendance.cluster.node-id: leases and per-node consumer offsets are keyed
+ * by it and must survive a restart.
+ */
+@Component
+public class ClusterCoordinator {
+
+    private static final Logger logger = LogManager.getLogger(ClusterCoordinator.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ConcurrentHashMap<Long, Instant> heldLeases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "scheduler-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${attendance.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${attendance.cluster.node-id:}")
+    private String configuredNodeId;
+
+    @Value("${attendance.cluster.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    @Value("${attendance.cluster.node-ttl-seconds:30}")
+    private long nodeTtlSeconds;
+
+    @Value("${attendance.cluster.lease-seconds:90}")
+    private long leaseSeconds;
+
+    @Value("${attendance.cluster.virtual-nodes:64}")
+    private int virtualNodes;
+
+    private String nodeId;
+    private volatile List<String> liveNodes = Collections.emptyList();
+    private volatile ConsistentHashRing ring;
+
+    public ClusterCoordinator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        boolean configured = configuredNodeId != null && !configuredNodeId.isEmpty();
+        if (enabled && !configured) {
+            throw new IllegalStateException(
+                    "attendance.cluster.node-id must be set to a stable, unique id when attendance.cluster.enabled=true");
+        }
+        nodeId = configured ? configuredNodeId : defaultNodeId();
+        if (!enabled) {
+            logger.info("Scheduler clustering disabled; node " + nodeId + " runs all orgs");
+            return;
+        }
+
+        // Own thread so long-running jobs on the Spring scheduler thread never delay heartbeats
+        heartbeatExecutor.scheduleWithFixedDelay(this::heartbeatSafely, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+        logger.info("Scheduler node " + nodeId + " joining cluster");
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeatExecutor.shutdownNow();
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            // Leave immediately so the remaining nodes rebalance without waiting for expiry
+            jdbcTemplate.update("DELETE FROM scheduler_org_lease WHERE node_id = ?", nodeId);
+            jdbcTemplate.update("DELETE FROM scheduler_node WHERE node_id = ?", nodeId);
+            heldLeases.clear();
+            logger.info("Scheduler node " + nodeId + " left cluster");
+        } catch (Exception e) {
+            logger.warn("Failed to deregister scheduler node " + nodeId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Whether this node should run the scheduled jobs of the org right now.
+     * Always true when clustering is disabled.
+     */
+    public boolean tryAcquire(long orgId) {
+        if (!enabled) {
+            return true;
+        }
+
+        if (ring == null) {
+            heartbeat();
+        }
+
+        if (!nodeId.equals(ring.ownerOf(orgId))) {
+            return false;
+        }
+
+        Instant now = Instant.now();
+        Instant held = heldLeases.get(orgId);
+        if (held != null && held.isAfter(now.plusSeconds(leaseSeconds / 2))) {
+            return true;
+        }
+
+        Instant until = now.plusSeconds(leaseSeconds);
+        int acquired = jdbcTemplate.update(
+                "UPDATE scheduler_org_lease SET node_id = ?, lease_until = ? " +
+                "WHERE org_id = ? AND (node_id = ? OR lease_until < ?)",
+                nodeId, Timestamp.from(until), orgId, nodeId, Timestamp.from(now));
+
+        if (acquired == 0) {
+            try {
+                acquired = jdbcTemplate.update(
+                        "INSERT INTO scheduler_org_lease (org_id, node_id, lease_until) VALUES (?, ?, ?)",
+                        orgId, nodeId, Timestamp.from(until));
+            } catch (DuplicateKeyException e) {
+                // Still held by another node (its lease has not expired yet)
+                acquired = 0;
+            }
+        }
+
+        if (acquired > 0) {
+            heldLeases.put(orgId, until);
+            return true;
+        }
+
+        heldLeases.remove(orgId);
+        return false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * This node's id. Stable across restarts when clustering is enabled; otherwise only a label
+     * for logs.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public List<String> getLiveNodes() {
+        return liveNodes;
+    }
+
+    private void heartbeatSafely() {
+        try {
+            heartbeat();
+        } catch (Exception e) {
+            logger.error("Scheduler heartbeat failed for node " + nodeId + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Record liveness, refresh the ring, hand back moved orgs and renew the remaining leases.
+     */
+    synchronized void heartbeat() {
+        Instant now = Instant.now();
+        Timestamp nowTs = Timestamp.from(now);
+
+        int updated = jdbcTemplate.update("UPDATE scheduler_node SET heartbeat_at = ? WHERE node_id = ?", nowTs, nodeId);
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update("INSERT INTO scheduler_node (node_id, started_at, heartbeat_at) VALUES (?, ?, ?)",
+                        nodeId, nowTs, nowTs);
+            } catch (DuplicateKeyException e) {
+                jdbcTemplate.update("UPDATE scheduler_node SET heartbeat_at = ? WHERE node_id = ?", nowTs, nodeId);
+            }
+        }
+
+        List<String> live = new ArrayList<>(jdbcTemplate.queryForList(
+                "SELECT node_id FROM scheduler_node WHERE heartbeat_at >= ?",
+                String.class, Timestamp.from(now.minusSeconds(nodeTtlSeconds))));
+        if (!live.contains(nodeId)) {
+            live.add(nodeId);
+        }
+        Collections.sort(live);
+
+        if (ring == null || !live.equals(liveNodes)) {
+            ring = new ConsistentHashRing(live, virtualNodes);
+            logger.info("Scheduler ring rebalanced on node " + nodeId + ": live nodes " + live +
+                       " (previously " + liveNodes + ")");
+            liveNodes = Collections.unmodifiableList(live);
+        }
+
+        // Release orgs that now hash to another node so it can take over right away
+        for (Long orgId : new ArrayList<>(heldLeases.keySet())) {
+            if (!nodeId.equals(ring.ownerOf(orgId))) {
+                jdbcTemplate.update("DELETE FROM scheduler_org_lease WHERE org_id = ? AND node_id = ?", orgId, nodeId);
+                heldLeases.remove(orgId);
+            }
+        }
+
+        // Renew everything still held in one statement
+        Instant until = now.plusSeconds(leaseSeconds);
+        jdbcTemplate.update("UPDATE scheduler_org_lease SET lease_until = ? WHERE node_id = ?",
+                Timestamp.from(until), nodeId);
+        // Forget leases another node took over (e.g. after this node stalled past its lease)
+        List<Long> stillHeld = jdbcTemplate.queryForList(
+                "SELECT org_id FROM scheduler_org_lease WHERE node_id = ?", Long.class, nodeId);
+        heldLeases.keySet().retainAll(stillHeld);
+        heldLeases.replaceAll((orgId, previous) -> until);
+
+        // Housekeeping: forget nodes that have been dead for a long time
+        jdbcTemplate.update("DELETE FROM scheduler_node WHERE heartbeat_at < ?",
+                Timestamp.from(now.minusSeconds(nodeTtlSeconds * 10)));
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,53 @@
+package com.tse.core_application.service.coalescing;
+
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.util.concurrent.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named single-flight groups for read paths hit by many identical requests at once
+ * (shift-start stampedes), plus their coalescing metrics.
+ */
+@Component
+public class RequestCoalescer implements MetricsSource {
+
+    private final ConcurrentHashMap<String, SingleFlight<?, ?>> groups = new ConcurrentHashMap<>();
+    private final long followerTimeoutMs;
+
+    public RequestCoalescer(@Value("${attendance.coalescing.follower-timeout-ms:5000}") long followerTimeoutMs) {
+        this.followerTimeoutMs = followerTimeoutMs;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K, V> SingleFlight<K, V> group(String name) {
+        return (SingleFlight<K, V>) groups.computeIfAbsent(name, n -> new SingleFlight<>(n, followerTimeoutMs));
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "coalescing";
+    }
+
+    /**
+     * Calls, coalesced calls, coalescing ratio, follower timeouts and in-flight keys per group.
+     */
+    @Override
+    public Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        groups.values().forEach(group -> {
+            Map<String, Object> groupMetrics = new LinkedHashMap<>();
+            groupMetrics.put("calls", group.getCalls());
+            groupMetrics.put("coalesced", group.getCoalesced());
+            groupMetrics.put("coalescingRatio", group.getCoalescingRatio());
+            groupMetrics.put("followerTimeouts", group.getFollowerTimeouts());
+            groupMetrics.put("inFlight", group.getInFlight());
+            metrics.put(group.getName(), groupMetrics);
+        });
+        return metrics;
+    }
+}
@@ -0,0 +1,43 @@
+package com.tse.core_application.service.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out primary or replica connections as {@link ReplicaRouting} decides.
+ *
+ * The transaction managers fetch a connection before the transaction is marked read-only, so
+ * this has to sit behind a LazyConnectionDataSourceProxy: the target is then picked at the
+ * first statement, when the read-only flag is known.
+ */
+public class ReadRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final ReplicaRouting replicaRouting;
+
+    /**
+     * @param replica replica pool, null to send everything to the primary
+     */
+    public ReadRoutingDataSource(DataSource primary, DataSource replica, ReplicaRouting replicaRouting) {
+        this.replicaRouting = replicaRouting;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        if (replica != null) {
+            targets.put(REPLICA, replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return replicaRouting.useReplica() ? REPLICA : PRIMARY;
+    }
+}
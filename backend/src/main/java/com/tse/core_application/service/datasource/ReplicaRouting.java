@@ -0,0 +1,299 @@
+package com.tse.core_application.service.datasource;
+
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.service.outbox.ChangeConsumer;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which pool a connection of {@link ReadRoutingDataSource} comes from.
+ *
+ * Read-only transactions go to the replica pool when one is configured and its measured lag
+ * is within max-lag-ms; everything else, and every read while the lag is unknown or too high,
+ * goes to the primary. The lag is probed on the replica every lag-probe-ms.
+ *
+ * Read-your-writes: punches record the account they wrote, and read paths of an account call
+ * {@link #readYourWrites} before their first query; called later it throws, since the
+ * transaction's connection is already chosen. While the write is younger than
+ * read-your-writes-ms plus the current lag, that transaction reads from the primary. The node
+ * that took the punch records it once the punch commits; the other nodes record it when its ATTENDANCE change
+ * reaches them through the outbox, so a read on another node within the relay delay of the
+ * punch can still be served by the replica.
+ */
+public class ReplicaRouting implements ChangeConsumer, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRouting.class);
+
+    /**
+     * Replay lag in ms; 0 on a caught-up standby or on a database that is not a standby (two
+     * plain local databases).
+     */
+    static final String LAG_SQL =
+            "SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE CAST(EXTRACT(EPOCH FROM (clock_timestamp() - pg_last_xact_replay_timestamp())) * 1000 AS BIGINT) END";
+
+    private static final long LAG_UNKNOWN = Long.MAX_VALUE;
+
+    private final HikariDataSource primaryDataSource;
+    private final HikariDataSource replicaDataSource;
+    private final JdbcTemplate replicaJdbcTemplate;
+
+    // Per transaction: pinned by readYourWrites, and whether its connection went to the replica
+    // (null until the first query)
+    private final ThreadLocal<Boolean> pinnedToPrimary = new ThreadLocal<>();
+    private final ThreadLocal<Boolean> routedToReplica = new ThreadLocal<>();
+    // orgId -> accountId -> time of the last write (ms)
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, Long>> recentWrites = new ConcurrentHashMap<>();
+    private volatile long lagMs = LAG_UNKNOWN;
+    private volatile long lagMeasuredAtMs;
+
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong pinnedReads = new AtomicLong();
+    private final AtomicLong laggingReads = new AtomicLong();
+    private final AtomicLong writesRecorded = new AtomicLong();
+    private final AtomicLong lagProbeFailures = new AtomicLong();
+
+    @Value("${attendance.datasource.replica.max-lag-ms:5000}")
+    private long maxLagMs;
+
+    @Value("${attendance.datasource.replica.read-your-writes-ms:10000}")
+    private long readYourWritesMs;
+
+    /**
+     * @param replicaDataSource replica pool, null if no replica is configured
+     */
+    public ReplicaRouting(HikariDataSource primaryDataSource, HikariDataSource replicaDataSource) {
+        this.primaryDataSource = primaryDataSource;
+        this.replicaDataSource = replicaDataSource;
+        this.replicaJdbcTemplate = replicaDataSource != null ? new JdbcTemplate(replicaDataSource) : null;
+    }
+
+    /**
+     * Whether the connection being opened for the current transaction should come from the
+     * replica.
+     */
+    boolean useReplica() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return false;
+        }
+        boolean replica = chooseReplica();
+        if (TransactionSynchronizationManager.isSynchronizationActive() && routedToReplica.get() == null) {
+            bindToTransaction();
+            routedToReplica.set(replica);
+        }
+        return replica;
+    }
+
+    /**
+     * The account's attendance was just written; its reads stay on the primary until the
+     * replica has caught up. Called inside a transaction, the write is recorded once it
+     * commits, so the window starts when the write becomes visible and a rollback records
+     * nothing.
+     */
+    public void recordWrite(long orgId, long accountId) {
+        if (replicaDataSource == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    putWrite(orgId, accountId);
+                }
+            });
+        } else {
+            putWrite(orgId, accountId);
+        }
+    }
+
+    private void putWrite(long orgId, long accountId) {
+        // Inside compute, so purgeWrites cannot drop the org's map between lookup and put
+        recentWrites.compute(orgId, (id, writes) -> {
+            ConcurrentHashMap<Long, Long> accountWrites = writes != null ? writes : new ConcurrentHashMap<>();
+            accountWrites.put(accountId, System.currentTimeMillis());
+            return accountWrites;
+        });
+        writesRecorded.incrementAndGet();
+    }
+
+    /**
+     * Read the current read-only transaction from the primary if any of the accounts was
+     * written recently. Has to be called before the transaction's first query; the pin ends
+     * with the transaction.
+     */
+    public void readYourWrites(long orgId, Collection<Long> accountIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || Boolean.TRUE.equals(pinnedToPrimary.get())) {
+            return;
+        }
+        if (routedToReplica.get() != null) {
+            // Checked with or without a replica, so a misplaced call shows up in any environment
+            throw new IllegalStateException("readYourWrites must be called before the first query of the transaction");
+        }
+        if (replicaDataSource == null) {
+            return;
+        }
+        Map<Long, Long> writes = recentWrites.get(orgId);
+        if (writes == null) {
+            return;
+        }
+        long writtenAfter = System.currentTimeMillis() - window();
+        for (Long accountId : accountIds) {
+            Long writtenAt = writes.get(accountId);
+            if (writtenAt != null && writtenAt > writtenAfter) {
+                bindToTransaction();
+                pinnedToPrimary.set(Boolean.TRUE);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String getConsumerName() {
+        return "replica-read-your-writes";
+    }
+
+    /**
+     * Attendance written on any node, including this one (recorded again, harmlessly).
+     */
+    @Override
+    public void onChanges(List<ChangeRecord> records) {
+        for (ChangeRecord record : records) {
+            if (ChangeOutbox.AGGREGATE_ATTENDANCE.equals(record.getAggregateType())) {
+                recordWrite(record.getOrgId(), record.getAggregateId());
+            }
+        }
+    }
+
+    /**
+     * Scheduled job: measure the replica's replay lag. A failed probe makes the lag unknown,
+     * so reads fall back to the primary until the replica answers again.
+     */
+    @Scheduled(fixedDelayString = "${attendance.datasource.replica.lag-probe-ms:1000}")
+    public void probeLag() {
+        if (replicaJdbcTemplate == null) {
+            return;
+        }
+        try {
+            Long lag = replicaJdbcTemplate.queryForObject(LAG_SQL, Long.class);
+            recordLag(lag != null ? Math.max(lag, 0L) : LAG_UNKNOWN);
+        } catch (Exception e) {
+            if (lagMs != LAG_UNKNOWN) {
+                logger.warn("Replica lag probe failed, reading from primary: {}", e.getMessage());
+            }
+            lagProbeFailures.incrementAndGet();
+            recordLag(LAG_UNKNOWN);
+        }
+    }
+
+    /**
+     * Scheduled job: forget writes older than the read-your-writes window.
+     */
+    @Scheduled(fixedDelayString = "${attendance.datasource.replica.purge-ms:60000}")
+    public void purgeWrites() {
+        long writtenAfter = System.currentTimeMillis() - window();
+        for (Long orgId : recentWrites.keySet()) {
+            recentWrites.computeIfPresent(orgId, (id, writes) -> {
+                writes.values().removeIf(writtenAt -> writtenAt <= writtenAfter);
+                return writes.isEmpty() ? null : writes;
+            });
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "dataSource";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("replicaConfigured", replicaDataSource != null);
+        metrics.put("replicaLagMs", lagMs == LAG_UNKNOWN ? null : lagMs);
+        metrics.put("lagMeasuredAtMs", lagMeasuredAtMs);
+        metrics.put("replicaReads", replicaReads.get());
+        metrics.put("primaryReads", primaryReads.get());
+        metrics.put("pinnedReads", pinnedReads.get());
+        metrics.put("laggingReads", laggingReads.get());
+        metrics.put("writesRecorded", writesRecorded.get());
+        metrics.put("lagProbeFailures", lagProbeFailures.get());
+        metrics.put("primaryPool", poolMetrics(primaryDataSource));
+        metrics.put("replicaPool", replicaDataSource != null ? poolMetrics(replicaDataSource) : null);
+        return metrics;
+    }
+
+    void recordLag(long lagMs) {
+        this.lagMs = lagMs;
+        this.lagMeasuredAtMs = System.currentTimeMillis();
+    }
+
+    private boolean chooseReplica() {
+        if (replicaDataSource == null) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(pinnedToPrimary.get())) {
+            pinnedReads.incrementAndGet();
+            primaryReads.incrementAndGet();
+            return false;
+        }
+        if (lagMs > maxLagMs) {
+            laggingReads.incrementAndGet();
+            primaryReads.incrementAndGet();
+            return false;
+        }
+        replicaReads.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Clear the per-transaction state when the transaction ends. Registered once, by whichever
+     * of the two is set first.
+     */
+    private void bindToTransaction() {
+        if (pinnedToPrimary.get() != null || routedToReplica.get() != null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                pinnedToPrimary.remove();
+                routedToReplica.remove();
+            }
+        });
+    }
+
+    private long window() {
+        return readYourWritesMs + Math.min(lagMs, maxLagMs);
+    }
+
+    private static Map<String, Object> poolMetrics(HikariDataSource dataSource) {
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("poolName", dataSource.getPoolName());
+        pool.put("maximumPoolSize", dataSource.getMaximumPoolSize());
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        if (mxBean != null) {
+            pool.put("activeConnections", mxBean.getActiveConnections());
+            pool.put("idleConnections", mxBean.getIdleConnections());
+            pool.put("totalConnections", mxBean.getTotalConnections());
+            pool.put("threadsAwaitingConnection", mxBean.getThreadsAwaitingConnection());
+        }
+        return pool;
+    }
+}
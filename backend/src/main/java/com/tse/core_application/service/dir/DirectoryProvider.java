@@ -7,4 +7,18 @@ public interface DirectoryProvider {
     List<EntityRef> listTeamsByOrg(long orgId);
     List<EntityRef> listProjectsByOrg(long orgId);
     EntityRef getOrgRef(long orgId);
+
+    /**
+     * Keyset page of entities of one type: IDs greater than afterId, ascending, at most limit.
+     * Called once per chunk while merging with fence assignments, so implementations must read
+     * only the page (WHERE id > afterId ORDER BY id LIMIT limit), never the whole org.
+     */
+    List<EntityRef> listEntitiesAfter(long orgId, int entityTypeId, long afterId, int limit);
+
+    /**
+     * Whether accountId is the given user's account in the org. Used to authorize
+     * client-supplied account IDs; providers that cannot tell must answer false unless configured
+     * to trust the client (see NoopDirectoryProvider).
+     */
+    boolean isAccountOfUser(long orgId, long userId, long accountId);
 }
@@ -1,15 +1,29 @@
 package com.tse.core_application.service.dir.impl;
 
+import com.tse.core_application.constants.EntityTypes;
 import com.tse.core_application.service.dir.DirectoryProvider;
 import com.tse.core_application.service.dir.EntityRef;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Directory used until a real directory is integrated: no users, teams or projects, and the org
+ * as its own single entity.
+ *
+ * With no account directory to check against, isAccountOfUser follows the config toggle
+ * attendance.directory.trust-account-header. When true (demo mode, the default) the account the
+ * accountIds header resolves to is taken as the user's, exactly as the REST endpoints take it;
+ * when false every account is refused.
+ */
 @Service
 public class NoopDirectoryProvider implements DirectoryProvider {
 
+    @Value("${attendance.directory.trust-account-header:true}")
+    private boolean trustAccountHeader;
+
     @Override
     public List<EntityRef> listUsersByOrg(long orgId) {
         return Collections.emptyList();
@@ -29,4 +43,18 @@ public class NoopDirectoryProvider implements DirectoryProvider {
     public EntityRef getOrgRef(long orgId) {
         return new EntityRef(orgId, "Org " + orgId);
     }
+
+    @Override
+    public List<EntityRef> listEntitiesAfter(long orgId, int entityTypeId, long afterId, int limit) {
+        // Users, teams and projects are empty here; the org is its own single entity
+        if (entityTypeId == EntityTypes.ORG && orgId > afterId && limit > 0) {
+            return Collections.singletonList(getOrgRef(orgId));
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isAccountOfUser(long orgId, long userId, long accountId) {
+        return trustAccountHeader;
+    }
 }
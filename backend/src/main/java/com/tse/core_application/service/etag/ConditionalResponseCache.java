@@ -0,0 +1,173 @@
+package com.tse.core_application.service.etag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.DummyClasses.Constants;
+import com.tse.core_application.DummyClasses.CustomResponseHandler;
+import com.tse.core_application.service.metrics.MetricsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Strong ETags and pre-serialized response bodies for version-stamped reads.
+ *
+ * A representation is identified by a slot (endpoint plus every input that shapes the body:
+ * path, filters, time zone) and a version stamp that moves with the underlying data. The ETag
+ * is derived from both, so a matching If-None-Match is answered with 304 before the caller
+ * loads anything; that check may read the stamp from the primary, since a client only holds
+ * ETags of bodies that were loaded at their stamp. The last serialized body of each slot is kept with its ETag and reused
+ * byte for byte while the stamp is unchanged; a new stamp replaces it.
+ */
+@Component
+public class ConditionalResponseCache implements MetricsSource {
+
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate snapshotRead;
+    private final Map<String, CachedBody> bodies;
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Value("${attendance.etag.max-entries:20000}")
+    private int maxEntries;
+
+    public ConditionalResponseCache(ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.objectMapper = objectMapper;
+        this.snapshotRead = new TransactionTemplate(transactionManager);
+        this.snapshotRead.setReadOnly(true);
+        this.snapshotRead.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.bodies = Collections.synchronizedMap(new LinkedHashMap<String, CachedBody>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedBody> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Quoted strong ETag of a slot at a version.
+     */
+    public String etag(String slot, String version) {
+        return "\"" + version + "-" + digest(slot) + "\"";
+    }
+
+    /**
+     * Whether the request's If-None-Match already names this ETag (weak comparison, as
+     * RFC 7232 prescribes for If-None-Match).
+     */
+    public boolean isNotModified(HttpServletRequest request, String etag) {
+        String header = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (header == null || header.isEmpty()) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ResponseEntity<Object> notModified(String etag) {
+        notModified.incrementAndGet();
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    /**
+     * 200 with the standard response envelope around the loaded data, served from the cached
+     * bytes of the slot when they were serialized for the same ETag.
+     *
+     * The version stamp and the body are read in one read-only repeatable-read transaction,
+     * so both come from the same pool and the same snapshot: a body served by a lagging
+     * replica is tagged with the replica's stamp, never with a newer one read elsewhere. The
+     * loader's own read-only transaction joins it.
+     */
+    public ResponseEntity<Object> ok(String slot, Supplier<String> version, Supplier<Object> loader) {
+        return snapshotRead.execute(status -> {
+            String etag = etag(slot, version.get());
+            CachedBody cached = bodies.get(slot);
+            if (cached != null && cached.etag.equals(etag)) {
+                hits.incrementAndGet();
+                return body(etag, cached.bytes);
+            }
+
+            misses.incrementAndGet();
+            Object envelope = CustomResponseHandler.generateCustomResponse(
+                    HttpStatus.OK, Constants.FormattedResponse.SUCCESS, loader.get()).getBody();
+            byte[] bytes;
+            try {
+                bytes = objectMapper.writeValueAsBytes(envelope);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Failed to serialize response of " + slot, e);
+            }
+            bodies.put(slot, new CachedBody(etag, bytes));
+            return body(etag, bytes);
+        });
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "etag";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", bodies.size());
+        metrics.put("notModified", notModified.get());
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        return metrics;
+    }
+
+    private static ResponseEntity<Object> body(String etag, byte[] bytes) {
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(bytes);
+    }
+
+    private static String digest(String slot) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(slot.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class CachedBody {
+        private final String etag;
+        private final byte[] bytes;
+
+        private CachedBody(String etag, byte[] bytes) {
+            this.etag = etag;
+            this.bytes = bytes;
+        }
+    }
+}
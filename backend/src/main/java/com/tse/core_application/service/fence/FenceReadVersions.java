@@ -0,0 +1,131 @@
+package com.tse.core_application.service.fence;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Version stamps of fence reads (org_fence_read_version, account_fence_read_version).
+ *
+ * Writers bump them in the transaction of their change, so a stamp never moves before the
+ * change it stands for is visible. Readers compare stamps with one primary-key lookup and can
+ * answer a conditional request without loading any fence.
+ */
+@Component
+public class FenceReadVersions {
+
+    private static final String BUMP_FENCE_SQL =
+            "INSERT INTO org_fence_read_version (org_id, fence_version) VALUES (:orgId, 1) " +
+            "ON CONFLICT (org_id) DO UPDATE SET fence_version = org_fence_read_version.fence_version + 1 " +
+            "RETURNING fence_version";
+
+    private static final String BUMP_ASSIGNMENT_SQL =
+            "INSERT INTO org_fence_read_version (org_id, assignment_version) VALUES (:orgId, 1) " +
+            "ON CONFLICT (org_id) DO UPDATE SET assignment_version = org_fence_read_version.assignment_version + 1";
+
+    private static final String BUMP_MEMBERSHIP_SQL =
+            "INSERT INTO org_fence_read_version (org_id, membership_version) VALUES (:orgId, 1) " +
+            "ON CONFLICT (org_id) DO UPDATE SET membership_version = org_fence_read_version.membership_version + 1";
+
+    private static final String BUMP_ACCOUNT_SQL =
+            "INSERT INTO account_fence_read_version (org_id, account_id, version) VALUES (:orgId, :accountId, 1) " +
+            "ON CONFLICT (org_id, account_id) DO UPDATE SET version = account_fence_read_version.version + 1";
+
+    private static final String USER_FENCE_VERSION_SQL =
+            "SELECT COALESCE(o.fence_version, 0) AS fence_version, " +
+            "COALESCE(o.assignment_version, 0) AS assignment_version, " +
+            "COALESCE(o.membership_version, 0) AS membership_version, " +
+            "COALESCE(a.version, 0) AS account_version " +
+            "FROM (SELECT CAST(:orgId AS BIGINT) AS org_id) k " +
+            "LEFT JOIN org_fence_read_version o ON o.org_id = k.org_id " +
+            "LEFT JOIN account_fence_read_version a ON a.org_id = k.org_id AND a.account_id = :accountId";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public FenceReadVersions(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * A fence of the org was created or updated. Joins the caller's transaction and holds the
+     * org's version row lock until it ends, so fence writes of one org commit in version order.
+     *
+     * @return the new fence version, used as the fence's change_seq
+     */
+    public long bumpFenceVersion(long orgId) {
+        Long version = jdbcTemplate.queryForObject(BUMP_FENCE_SQL,
+                new MapSqlParameterSource("orgId", orgId), Long.class);
+        return version == null ? 0L : version;
+    }
+
+    /**
+     * Effective fences of the given accounts changed; an empty collection means every account
+     * of the org. Joins the caller's transaction.
+     */
+    public void bumpAccountVersions(long orgId, Collection<Long> accountIds) {
+        if (accountIds.isEmpty()) {
+            jdbcTemplate.update(BUMP_ASSIGNMENT_SQL, new MapSqlParameterSource("orgId", orgId));
+            return;
+        }
+
+        // Ascending order, so concurrent writers lock overlapping rows in the same order
+        List<SqlParameterSource> params = new ArrayList<>();
+        for (Long accountId : new TreeSet<>(accountIds)) {
+            params.add(new MapSqlParameterSource("orgId", orgId).addValue("accountId", accountId));
+        }
+        jdbcTemplate.batchUpdate(BUMP_ACCOUNT_SQL, params.toArray(new SqlParameterSource[0]));
+    }
+
+    /**
+     * Team, project or roster membership of the org changed. Joins the caller's transaction.
+     */
+    public void bumpMembershipVersion(long orgId) {
+        jdbcTemplate.update(BUMP_MEMBERSHIP_SQL, new MapSqlParameterSource("orgId", orgId));
+    }
+
+    /**
+     * Stamp of the org's fence list.
+     */
+    public String fenceListVersion(long orgId) {
+        return "f" + currentFenceVersion(orgId);
+    }
+
+    /**
+     * Current fence version of the org, 0 if none of its fences was ever written.
+     */
+    public long currentFenceVersion(long orgId) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "SELECT fence_version FROM org_fence_read_version WHERE org_id = :orgId",
+                new MapSqlParameterSource("orgId", orgId), Long.class);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+
+    /**
+     * Stamp of the fence list of every org. The sum of monotonic counters grows with any of them.
+     */
+    public String allFencesVersion() {
+        Long sum = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(fence_version), 0) FROM org_fence_read_version",
+                new MapSqlParameterSource(), Long.class);
+        return "a" + (sum == null ? 0L : sum);
+    }
+
+    /**
+     * Stamp of an account's effective fences: fence details, org-wide assignments, the org's
+     * memberships and roster, and the account's own assignments.
+     */
+    public String userFenceVersion(long orgId, long accountId) {
+        return jdbcTemplate.queryForObject(USER_FENCE_VERSION_SQL,
+                new MapSqlParameterSource("orgId", orgId).addValue("accountId", accountId),
+                (rs, rowNum) -> "u" + rs.getLong("fence_version")
+                        + "." + rs.getLong("assignment_version")
+                        + "." + rs.getLong("membership_version")
+                        + "." + rs.getLong("account_version"));
+    }
+}
@@ -1,27 +1,38 @@
 package com.tse.core_application.service.fence;
 
+import com.tse.core_application.dto.fence.FenceChangesResponse;
 import com.tse.core_application.dto.fence.FenceCreateRequest;
 import com.tse.core_application.dto.fence.FenceResponse;
 import com.tse.core_application.dto.fence.FenceUpdateRequest;
 import com.tse.core_application.entity.fence.GeoFence;
 import com.tse.core_application.exception.FenceNotFoundException;
+import com.tse.core_application.exception.ProblemException;
 import com.tse.core_application.repository.fence.GeoFenceRepository;
+import com.tse.core_application.service.outbox.ChangeOutbox;
 import org.springframework.data.jpa.domain.Specification;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.criteria.Predicate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class GeoFenceService {
 
     private final GeoFenceRepository fenceRepository;
+    private final ChangeOutbox changeOutbox;
+    private final FenceReadVersions fenceReadVersions;
 
-    public GeoFenceService(GeoFenceRepository fenceRepository) {
+    public GeoFenceService(GeoFenceRepository fenceRepository, ChangeOutbox changeOutbox,
+                           FenceReadVersions fenceReadVersions) {
         this.fenceRepository = fenceRepository;
+        this.changeOutbox = changeOutbox;
+        this.fenceReadVersions = fenceReadVersions;
     }
 
     @Transactional
@@ -41,7 +52,9 @@ public class GeoFenceService {
             fence.setCreatedBy(request.getCreatedBy());
         }
 
+        fence.setChangeSeq(fenceReadVersions.bumpFenceVersion(orgId));
         fence = fenceRepository.save(fence);
+        appendChange(fence, ChangeOutbox.CHANGE_CREATED);
         return FenceResponse.fromEntity(fence, timeZone);
     }
 
@@ -64,10 +77,18 @@ public class GeoFenceService {
             fence.setUpdatedBy(request.getUpdatedBy());
         }
 
+        fence.setChangeSeq(fenceReadVersions.bumpFenceVersion(orgId));
         fence = fenceRepository.save(fence);
+        appendChange(fence, ChangeOutbox.CHANGE_UPDATED);
         return FenceResponse.fromEntity(fence, timeZone);
     }
 
+    private void appendChange(GeoFence fence, String changeType) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("isActive", fence.getIsActive());
+        changeOutbox.append(fence.getOrgId(), ChangeOutbox.AGGREGATE_FENCE, fence.getId(), changeType, payload);
+    }
+
     @Transactional(readOnly = true)
     public List<FenceResponse> listFences(Long orgId, String status, String q, String siteCode, String timeZone) {
         Specification<GeoFence> spec = (root, query, criteriaBuilder) -> {
@@ -107,6 +128,39 @@ public class GeoFenceService {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Fences of the org created or updated after change sequence {@code since}: active ones as
+     * upserts, deactivated ones as deletions, plus the high-water mark to pass as the next
+     * {@code since}. A {@code since} ahead of the org's version (e.g. a replica of another
+     * environment) resets the client to a full list.
+     */
+    @Transactional(readOnly = true)
+    public FenceChangesResponse getFenceChanges(Long orgId, long since, String timeZone) {
+        if (since < 0) {
+            throw new ProblemException(HttpStatus.BAD_REQUEST, "VALIDATION_FAILED",
+                    "Invalid since", "since must not be negative");
+        }
+
+        // Read the version first: every fence stamped at or below it has already committed
+        long highWaterMark = fenceReadVersions.currentFenceVersion(orgId);
+        boolean reset = since > highWaterMark;
+        long from = reset ? 0L : since;
+
+        List<FenceResponse> upserts = new ArrayList<>();
+        List<Long> deletions = new ArrayList<>();
+        if (from < highWaterMark) {
+            for (GeoFence fence : fenceRepository.findChangedBetween(orgId, from, highWaterMark)) {
+                if (Boolean.TRUE.equals(fence.getIsActive())) {
+                    upserts.add(FenceResponse.fromEntity(fence, timeZone));
+                } else {
+                    deletions.add(fence.getId());
+                }
+            }
+        }
+
+        return new FenceChangesResponse(from, highWaterMark, reset, upserts, deletions);
+    }
+
     @Transactional(readOnly = true)
     public List<FenceResponse> getAllFences(String timeZone) {
         List<GeoFence> fences = fenceRepository.findAll();
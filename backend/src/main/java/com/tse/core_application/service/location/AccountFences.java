@@ -0,0 +1,46 @@
+package com.tse.core_application.service.location;
+
+import com.tse.core_application.util.GeoMath;
+
+/**
+ * Centers of the active fences assigned to one account. Immutable.
+ */
+final class AccountFences {
+
+    static final AccountFences NONE = new AccountFences(new long[0], new double[0], new double[0]);
+
+    private final long[] fenceIds;
+    private final double[] lats;
+    private final double[] lons;
+
+    AccountFences(long[] fenceIds, double[] lats, double[] lons) {
+        this.fenceIds = fenceIds;
+        this.lats = lats;
+        this.lons = lons;
+    }
+
+    boolean isEmpty() {
+        return fenceIds.length == 0;
+    }
+
+    /**
+     * Index of the fence whose center is nearest to the point, -1 if there is none.
+     */
+    int nearest(double lat, double lon, double[] distanceOut) {
+        int nearest = -1;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < fenceIds.length; i++) {
+            double distance = GeoMath.distanceMeters(lat, lon, lats[i], lons[i]);
+            if (distance < best) {
+                best = distance;
+                nearest = i;
+            }
+        }
+        distanceOut[0] = best;
+        return nearest;
+    }
+
+    long fenceId(int index) {
+        return fenceIds[index];
+    }
+}
@@ -0,0 +1,148 @@
+package com.tse.core_application.service.location;
+
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+import com.tse.core_application.entity.attendance.AttendanceEvent;
+import com.tse.core_application.repository.attendance.AttendanceEventRepository;
+import com.tse.core_application.service.attendance.DayRollupService;
+import com.tse.core_application.service.datasource.ReplicaRouting;
+import com.tse.core_application.service.push.PushChangeRecorder;
+import com.tse.core_application.service.roster.OrgRosterService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the CHECK_IN / CHECK_OUT events decided by the dwell engine (GEOFENCE source, AUTO
+ * action) and updates the day rollup, like a manual punch would.
+ *
+ * The engine's in-memory state only proposes a transition; the account's events of the day
+ * decide whether it is written. A check-in is skipped while the day is already open, a
+ * check-out while it is not, so manual punches and auto events never contradict each other.
+ */
+@Service
+public class DwellEventRecorder {
+
+    private final AttendanceEventRepository eventRepository;
+    private final DayRollupService dayRollupService;
+    private final OrgRosterService orgRosterService;
+    private final PushChangeRecorder pushChangeRecorder;
+    private final ReplicaRouting replicaRouting;
+
+    public DwellEventRecorder(AttendanceEventRepository eventRepository,
+                              DayRollupService dayRollupService,
+                              OrgRosterService orgRosterService,
+                              PushChangeRecorder pushChangeRecorder,
+                              ReplicaRouting replicaRouting) {
+        this.eventRepository = eventRepository;
+        this.dayRollupService = dayRollupService;
+        this.orgRosterService = orgRosterService;
+        this.pushChangeRecorder = pushChangeRecorder;
+        this.replicaRouting = replicaRouting;
+    }
+
+    /**
+     * Record a dwell transition.
+     *
+     * @param sinceMs       start of the dwell (entry or exit time), used as the event time
+     * @param dwellSeconds  how long the account dwelt before the transition was confirmed
+     * @param maxSuccessful the policy's successful punch limit per day
+     * @return true if an event was written
+     */
+    @Transactional
+    public boolean record(long orgId, long accountId, EventKind eventKind, long fenceId, long sinceMs,
+                          double lat, double lon, double accuracyM, long dwellSeconds, int maxSuccessful) {
+        LocalDateTime ts = LocalDateTime.ofInstant(Instant.ofEpochMilli(sinceMs), ZoneId.systemDefault());
+        LocalDate dateKey = dayRollupService.getDateKey(orgId, ts);
+        LocalDateTime dayStart = dateKey.atStartOfDay();
+        LocalDateTime dayEnd = dateKey.plusDays(1).atStartOfDay();
+
+        List<AttendanceEvent> todayEvents = eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
+                orgId, accountId, dayStart, dayEnd);
+
+        // The same dwell decided twice (retried batch, another node) is written once
+        String idempotencyKey = "dwell:" + eventKind + ":" + sinceMs;
+        EventKind lastSuccessful = null;
+        LocalDateTime lastTs = null;
+        int successful = 0;
+        for (AttendanceEvent event : todayEvents) {
+            if (idempotencyKey.equals(event.getIdempotencyKey())) {
+                return false;
+            }
+            if (Boolean.TRUE.equals(event.getSuccess())) {
+                lastSuccessful = event.getEventKind();
+                lastTs = event.getTsUtc();
+                successful++;
+            }
+        }
+
+        boolean open = lastSuccessful == EventKind.CHECK_IN
+                || lastSuccessful == EventKind.BREAK_START
+                || lastSuccessful == EventKind.BREAK_END;
+        if (eventKind == EventKind.CHECK_IN && (open || successful >= maxSuccessful)) {
+            return false;
+        }
+        if (eventKind == EventKind.CHECK_OUT && !open) {
+            return false;
+        }
+
+        // Never place the event before the punch it follows
+        if (lastTs != null && !ts.isAfter(lastTs)) {
+            ts = lastTs.plusNanos(1_000_000);
+        }
+
+        List<AttendanceEvent> dayEvents = new ArrayList<>(todayEvents);
+        if (eventKind == EventKind.CHECK_OUT && lastSuccessful == EventKind.BREAK_START) {
+            AttendanceEvent breakEnd = eventRepository.save(
+                    buildEvent(orgId, accountId, EventKind.BREAK_END, fenceId, ts, lat, lon, accuracyM, dwellSeconds, null));
+            dayEvents.add(breakEnd);
+            ts = ts.plusNanos(1_000_000);
+        }
+
+        AttendanceEvent savedEvent = eventRepository.save(
+                buildEvent(orgId, accountId, eventKind, fenceId, ts, lat, lon, accuracyM, dwellSeconds, idempotencyKey));
+        dayEvents.add(savedEvent);
+        orgRosterService.recordAccount(orgId, accountId);
+        replicaRouting.recordWrite(orgId, accountId);
+
+        dayEvents.sort(Comparator.comparing(AttendanceEvent::getTsUtc));
+        dayRollupService.updateDayRollup(orgId, accountId, dateKey, dayEvents);
+        pushChangeRecorder.attendanceEventRecorded(savedEvent, dateKey);
+        return true;
+    }
+
+    private AttendanceEvent buildEvent(long orgId, long accountId, EventKind eventKind, long fenceId, LocalDateTime ts,
+                                       double lat, double lon, double accuracyM, long dwellSeconds, String idempotencyKey) {
+        Map<String, Object> flags = new HashMap<>();
+        flags.put("dwell_seconds", dwellSeconds);
+
+        AttendanceEvent event = new AttendanceEvent();
+        event.setOrgId(orgId);
+        event.setAccountId(accountId);
+        event.setEventKind(eventKind);
+        event.setEventSource(EventSource.GEOFENCE);
+        event.setEventAction(EventAction.AUTO);
+        event.setTsUtc(ts);
+        event.setFenceId(fenceId);
+        event.setLat(lat);
+        event.setLon(lon);
+        event.setAccuracyM(accuracyM);
+        event.setUnderRange(eventKind == EventKind.CHECK_IN);
+        event.setSuccess(true);
+        event.setVerdict(IntegrityVerdict.PASS);
+        event.setFlags(flags);
+        event.setIdempotencyKey(idempotencyKey);
+        return event;
+    }
+}
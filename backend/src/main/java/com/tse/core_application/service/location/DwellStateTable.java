@@ -0,0 +1,222 @@
+package com.tse.core_application.service.location;
+
+/**
+ * Dwell state of every tracked account, in parallel primitive arrays.
+ *
+ * Accounts are spread over stripes by id; each stripe is an open-addressing table guarded by
+ * its own monitor, so pings of different accounts rarely contend. Callers synchronize on the
+ * stripe around every access, including reads of the slot arrays. Slots are never removed
+ * one by one: {@link Stripe#evictIdle} rebuilds the stripe without idle accounts.
+ */
+final class DwellStateTable {
+
+    static final byte OUTSIDE = 0;
+    static final byte ENTERING = 1;
+    static final byte INSIDE = 2;
+    static final byte EXITING = 3;
+
+    private static final long EMPTY = 0L;
+
+    private final Stripe[] stripes;
+
+    DwellStateTable(int stripeCount) {
+        int count = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(64);
+        }
+    }
+
+    Stripe stripeFor(long accountId) {
+        return stripes[mix(accountId) & (stripes.length - 1)];
+    }
+
+    Stripe[] stripes() {
+        return stripes;
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    static String stateName(byte state) {
+        switch (state) {
+            case ENTERING:
+                return "ENTERING";
+            case INSIDE:
+                return "INSIDE";
+            case EXITING:
+                return "EXITING";
+            default:
+                return "OUTSIDE";
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * One open-addressing table. Fields are read and written directly by the engine while
+     * holding the stripe's monitor.
+     */
+    static final class Stripe {
+
+        long[] accountIds;
+        long[] orgIds;
+        byte[] states;
+        /** Fence the account is entering, inside or leaving; 0 when outside. */
+        long[] fenceIds;
+        /** Start of the current ENTERING/EXITING dwell, epoch millis. */
+        long[] sinceMs;
+        long[] lastPingMs;
+        double[] lastLat;
+        double[] lastLon;
+        double[] lastAccuracy;
+        /** Org fence epoch the account's fences were resolved at. */
+        int[] fencesEpochs;
+        AccountFences[] fences;
+        int size;
+
+        private Stripe(int capacity) {
+            allocate(capacity);
+        }
+
+        /**
+         * Slot of the account, or -1 if it is not tracked.
+         */
+        int find(long accountId) {
+            int index = indexOf(accountId);
+            return accountIds[index] == accountId ? index : -1;
+        }
+
+        /**
+         * Slot of the account, created in OUTSIDE state if absent. An account seen under another
+         * org starts over.
+         */
+        int findOrCreate(long accountId, long orgId) {
+            int index = indexOf(accountId);
+            if (accountIds[index] == accountId) {
+                if (orgIds[index] != orgId) {
+                    reset(index, orgId);
+                }
+                return index;
+            }
+
+            if ((size + 1) * 2 > accountIds.length) {
+                rehash(accountIds.length << 1, Long.MIN_VALUE);
+                index = indexOf(accountId);
+            }
+            accountIds[index] = accountId;
+            reset(index, orgId);
+            size++;
+            return index;
+        }
+
+        /**
+         * Rebuild the table without accounts whose last ping is older than the given time.
+         *
+         * @return number of evicted accounts
+         */
+        int evictIdle(long idleBeforeMs) {
+            int before = size;
+            int capacity = accountIds.length;
+            while (capacity > 64 && size * 4 < capacity) {
+                capacity >>= 1;
+            }
+            rehash(capacity, idleBeforeMs);
+            return before - size;
+        }
+
+        private void reset(int index, long orgId) {
+            orgIds[index] = orgId;
+            states[index] = OUTSIDE;
+            fenceIds[index] = 0L;
+            sinceMs[index] = 0L;
+            lastPingMs[index] = 0L;
+            lastLat[index] = 0d;
+            lastLon[index] = 0d;
+            lastAccuracy[index] = 0d;
+            fencesEpochs[index] = -1;
+            fences[index] = null;
+        }
+
+        private int indexOf(long accountId) {
+            int mask = accountIds.length - 1;
+            int index = mix(accountId) & mask;
+            while (accountIds[index] != EMPTY && accountIds[index] != accountId) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void allocate(int capacity) {
+            accountIds = new long[capacity];
+            orgIds = new long[capacity];
+            states = new byte[capacity];
+            fenceIds = new long[capacity];
+            sinceMs = new long[capacity];
+            lastPingMs = new long[capacity];
+            lastLat = new double[capacity];
+            lastLon = new double[capacity];
+            lastAccuracy = new double[capacity];
+            fencesEpochs = new int[capacity];
+            fences = new AccountFences[capacity];
+            size = 0;
+        }
+
+        /**
+         * Copy every slot pinged at or after {@code keepFromMs} into tables of the new capacity.
+         */
+        private void rehash(int capacity, long keepFromMs) {
+            long[] oldAccountIds = accountIds;
+            long[] oldOrgIds = orgIds;
+            byte[] oldStates = states;
+            long[] oldFenceIds = fenceIds;
+            long[] oldSinceMs = sinceMs;
+            long[] oldLastPingMs = lastPingMs;
+            double[] oldLastLat = lastLat;
+            double[] oldLastLon = lastLon;
+            double[] oldLastAccuracy = lastAccuracy;
+            int[] oldFencesEpochs = fencesEpochs;
+            AccountFences[] oldFences = fences;
+
+            allocate(capacity);
+            for (int i = 0; i < oldAccountIds.length; i++) {
+                if (oldAccountIds[i] == EMPTY || oldLastPingMs[i] < keepFromMs) {
+                    continue;
+                }
+                int index = indexOf(oldAccountIds[i]);
+                accountIds[index] = oldAccountIds[i];
+                orgIds[index] = oldOrgIds[i];
+                states[index] = oldStates[i];
+                fenceIds[index] = oldFenceIds[i];
+                sinceMs[index] = oldSinceMs[i];
+                lastPingMs[index] = oldLastPingMs[i];
+                lastLat[index] = oldLastLat[i];
+                lastLon[index] = oldLastLon[i];
+                lastAccuracy[index] = oldLastAccuracy[i];
+                fencesEpochs[index] = oldFencesEpochs[i];
+                fences[index] = oldFences[i];
+                size++;
+            }
+        }
+
+        int count(byte state) {
+            int count = 0;
+            for (int i = 0; i < accountIds.length; i++) {
+                if (accountIds[i] != EMPTY && states[i] == state) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
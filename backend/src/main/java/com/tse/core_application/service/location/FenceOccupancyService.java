@@ -0,0 +1,36 @@
+package com.tse.core_application.service.location;
+
+import com.tse.core_application.dto.fence.FenceOccupancyCountsResponse;
+import com.tse.core_application.dto.fence.FenceOccupancyResponse;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Who is inside which fence right now, from {@link LastKnownLocationStore}.
+ */
+@Service
+public class FenceOccupancyService {
+
+    private final LastKnownLocationStore lastKnownLocationStore;
+
+    public FenceOccupancyService(LastKnownLocationStore lastKnownLocationStore) {
+        this.lastKnownLocationStore = lastKnownLocationStore;
+    }
+
+    public FenceOccupancyResponse getFenceOccupancy(long orgId, long fenceId) {
+        List<LastKnownLocation> inside = lastKnownLocationStore.insideFence(orgId, fenceId);
+        List<FenceOccupancyResponse.Occupant> occupants = new ArrayList<>(inside.size());
+        for (LastKnownLocation location : inside) {
+            occupants.add(new FenceOccupancyResponse.Occupant(location.getAccountId(), location.getLat(),
+                    location.getLon(), location.getAccuracyM(), location.getTsMs(), location.getSource()));
+        }
+        return new FenceOccupancyResponse(fenceId, occupants.size(), occupants);
+    }
+
+    public FenceOccupancyCountsResponse getOrgOccupancy(long orgId) {
+        return new FenceOccupancyCountsResponse(orgId, lastKnownLocationStore.trackedCount(orgId),
+                lastKnownLocationStore.countsByFence(orgId));
+    }
+}
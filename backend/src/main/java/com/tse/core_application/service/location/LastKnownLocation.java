@@ -0,0 +1,69 @@
+package com.tse.core_application.service.location;
+
+/**
+ * Latest position reported for an account, with the fence it was inside (if any). Immutable.
+ */
+public final class LastKnownLocation {
+
+    public static final String SOURCE_PING = "PING";
+    public static final String SOURCE_PUNCH = "PUNCH";
+
+    private final long orgId;
+    private final long accountId;
+    private final double lat;
+    private final double lon;
+    private final Double accuracyM;
+    private final long tsMs;
+    private final Long fenceId;
+    private final String source;
+
+    public LastKnownLocation(long orgId, long accountId, double lat, double lon, Double accuracyM,
+                             long tsMs, Long fenceId, String source) {
+        this.orgId = orgId;
+        this.accountId = accountId;
+        this.lat = lat;
+        this.lon = lon;
+        this.accuracyM = accuracyM;
+        this.tsMs = tsMs;
+        this.fenceId = fenceId;
+        this.source = source;
+    }
+
+    public long getOrgId() {
+        return orgId;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public Double getAccuracyM() {
+        return accuracyM;
+    }
+
+    /**
+     * Fix time, epoch millis.
+     */
+    public long getTsMs() {
+        return tsMs;
+    }
+
+    /**
+     * Fence the position was inside, null when outside every assigned fence.
+     */
+    public Long getFenceId() {
+        return fenceId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+}
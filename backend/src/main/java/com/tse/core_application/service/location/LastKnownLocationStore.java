@@ -0,0 +1,235 @@
+package com.tse.core_application.service.location;
+
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.util.collection.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory last known location per account, indexed by the fence the account is inside.
+ *
+ * Fed by location pings (LocationDwellEngine) and punches (AttendanceService). Each org keeps
+ * its accounts' latest fixes and, per fence, the set of accounts whose latest fix is inside
+ * it, so occupancy of a fence or of a whole org is read without scanning history. Fixes older
+ * than the staleness TTL are left out of every answer and purged periodically.
+ *
+ * The store only holds what this node received; with several nodes, location traffic of an
+ * org has to reach the node that serves its occupancy queries.
+ */
+@Component
+public class LastKnownLocationStore implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastKnownLocationStore.class);
+
+    private final ConcurrentHashMap<Long, OrgLocations> orgs = new ConcurrentHashMap<>();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+
+    @Value("${attendance.location.last-known-ttl-min:15}")
+    private long ttlMinutes;
+
+    /**
+     * Record a fix. Fixes older than the account's current one are ignored.
+     *
+     * @param fenceId fence the fix is inside, null if outside every assigned fence
+     */
+    public void update(long orgId, long accountId, double lat, double lon, Double accuracyM,
+                       long tsMs, Long fenceId, String source) {
+        LastKnownLocation location = new LastKnownLocation(orgId, accountId, lat, lon, accuracyM, tsMs, fenceId, source);
+        // Inside compute, so purgeStale cannot drop the org between lookup and write
+        orgs.compute(orgId, (id, existing) -> {
+            OrgLocations org = existing != null ? existing : new OrgLocations();
+            synchronized (org) {
+                LastKnownLocation previous = org.byAccount.get(accountId);
+                if (previous != null && previous.getTsMs() > tsMs) {
+                    return org;
+                }
+                if (previous != null && previous.getFenceId() != null && !previous.getFenceId().equals(fenceId)) {
+                    org.leave(previous.getFenceId(), accountId);
+                }
+                if (fenceId != null) {
+                    org.byFence.computeIfAbsent(fenceId, fence -> new LongHashSet()).add(accountId);
+                }
+                org.byAccount.put(accountId, location);
+            }
+            updates.incrementAndGet();
+            return org;
+        });
+    }
+
+    /**
+     * Fresh last known location of the account, or null.
+     */
+    public LastKnownLocation get(long orgId, long accountId) {
+        OrgLocations org = orgs.get(orgId);
+        if (org == null) {
+            return null;
+        }
+        long freshFrom = freshFrom();
+        synchronized (org) {
+            LastKnownLocation location = org.byAccount.get(accountId);
+            return location != null && location.getTsMs() >= freshFrom ? location : null;
+        }
+    }
+
+    /**
+     * Accounts whose fresh last known location is inside the fence, most recently seen first.
+     */
+    public List<LastKnownLocation> insideFence(long orgId, long fenceId) {
+        List<LastKnownLocation> inside = new ArrayList<>();
+        OrgLocations org = orgs.get(orgId);
+        if (org == null) {
+            return inside;
+        }
+        long freshFrom = freshFrom();
+        synchronized (org) {
+            LongHashSet accountIds = org.byFence.get(fenceId);
+            if (accountIds != null) {
+                accountIds.forEach(accountId -> {
+                    LastKnownLocation location = org.byAccount.get(accountId);
+                    if (location != null && location.getTsMs() >= freshFrom) {
+                        inside.add(location);
+                    }
+                });
+            }
+        }
+        inside.sort(Comparator.comparingLong(LastKnownLocation::getTsMs).reversed());
+        return inside;
+    }
+
+    /**
+     * Number of accounts with a fresh last known location inside each fence of the org.
+     * Fences nobody is inside are omitted.
+     */
+    public Map<Long, Integer> countsByFence(long orgId) {
+        Map<Long, Integer> counts = new HashMap<>();
+        OrgLocations org = orgs.get(orgId);
+        if (org == null) {
+            return counts;
+        }
+        long freshFrom = freshFrom();
+        synchronized (org) {
+            org.byFence.forEach((fenceId, accountIds) -> {
+                int[] count = new int[1];
+                accountIds.forEach(accountId -> {
+                    LastKnownLocation location = org.byAccount.get(accountId);
+                    if (location != null && location.getTsMs() >= freshFrom) {
+                        count[0]++;
+                    }
+                });
+                if (count[0] > 0) {
+                    counts.put(fenceId, count[0]);
+                }
+            });
+        }
+        return counts;
+    }
+
+    /**
+     * Number of accounts of the org with a fresh last known location, inside a fence or not.
+     */
+    public int trackedCount(long orgId) {
+        OrgLocations org = orgs.get(orgId);
+        if (org == null) {
+            return 0;
+        }
+        long freshFrom = freshFrom();
+        synchronized (org) {
+            int count = 0;
+            for (LastKnownLocation location : org.byAccount.values()) {
+                if (location.getTsMs() >= freshFrom) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Drop stale fixes and empty orgs.
+     */
+    @Scheduled(fixedDelayString = "${attendance.location.last-known-purge-ms:30000}")
+    public void purgeStale() {
+        long freshFrom = freshFrom();
+        int[] removed = new int[1];
+        for (Long orgId : orgs.keySet()) {
+            // An org left empty is dropped inside the same computeIfPresent that emptied it
+            orgs.computeIfPresent(orgId, (id, org) -> {
+                synchronized (org) {
+                    List<LastKnownLocation> stale = new ArrayList<>();
+                    for (LastKnownLocation location : org.byAccount.values()) {
+                        if (location.getTsMs() < freshFrom) {
+                            stale.add(location);
+                        }
+                    }
+                    for (LastKnownLocation location : stale) {
+                        org.byAccount.remove(location.getAccountId());
+                        if (location.getFenceId() != null) {
+                            org.leave(location.getFenceId(), location.getAccountId());
+                        }
+                    }
+                    removed[0] += stale.size();
+                    return org.byAccount.isEmpty() ? null : org;
+                }
+            });
+        }
+
+        if (removed[0] > 0) {
+            purged.addAndGet(removed[0]);
+            logger.debug("Purged {} stale last known locations", removed[0]);
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "lastKnownLocation";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        int tracked = 0;
+        for (OrgLocations org : orgs.values()) {
+            synchronized (org) {
+                tracked += org.byAccount.size();
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("orgs", orgs.size());
+        metrics.put("trackedAccounts", tracked);
+        metrics.put("updates", updates.get());
+        metrics.put("purged", purged.get());
+        return metrics;
+    }
+
+    private long freshFrom() {
+        return System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    /**
+     * Locations of one org. Guarded by its own monitor.
+     */
+    private static final class OrgLocations {
+        private final Map<Long, LastKnownLocation> byAccount = new HashMap<>();
+        private final Map<Long, LongHashSet> byFence = new HashMap<>();
+
+        private void leave(long fenceId, long accountId) {
+            LongHashSet accountIds = byFence.get(fenceId);
+            if (accountIds != null && accountIds.remove(accountId) && accountIds.isEmpty()) {
+                byFence.remove(fenceId);
+            }
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package com.tse.core_application.service.location;
+
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.dto.attendance.LocationPingBatchRequest;
+import com.tse.core_application.dto.attendance.LocationPingBatchResponse;
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
+import com.tse.core_application.entity.fence.GeoFence;
+import com.tse.core_application.entity.policy.AttendancePolicy;
+import com.tse.core_application.exception.ProblemException;
+import com.tse.core_application.repository.fence.GeoFenceRepository;
+import com.tse.core_application.repository.policy.AttendancePolicyRepository;
+import com.tse.core_application.service.coalescing.RequestCoalescer;
+import com.tse.core_application.service.membership.MembershipChangedEvent;
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.service.outbox.ChangeConsumer;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import com.tse.core_application.service.policy.PolicyGate;
+import com.tse.core_application.service.userfence.EffectiveFenceStore;
+import com.tse.core_application.util.concurrent.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dwell-based automatic check-in/out from continuous location pings.
+ *
+ * Every account runs a four-state machine against the centers of its assigned fences, using
+ * the policy's fence radius with hysteresis: a fix within the radius counts as inside, one
+ * beyond radius + exit margin as outside, and anything in between changes nothing.
+ * OUTSIDE -> ENTERING on the first inside fix; ENTERING -> INSIDE once inside fixes span
+ * dwellInMin, writing a CHECK_IN at the entry time. INSIDE -> EXITING on the first outside
+ * fix; EXITING -> OUTSIDE once outside fixes span dwellOutMin (plus autoOutDelayMin when
+ * auto-out is enabled), writing a CHECK_OUT at the exit time if autoOutEnabled. An account
+ * that stops reporting while EXITING is checked out by the sweep.
+ *
+ * The ping path touches no database: state lives in {@link DwellStateTable}; policies, fence
+ * centers and each account's fence list are cached and invalidated by FENCE, ASSIGNMENT and
+ * POLICY outbox records and membership changes. Only confirmed transitions reach
+ * {@link DwellEventRecorder}. State is per node, so pings of one account should be routed to
+ * the same node; pings split across nodes only delay a transition, since the recorder
+ * decides against the stored events. The last accepted fix of every batch also goes to
+ * {@link LastKnownLocationStore}.
+ */
+@Service
+public class LocationDwellEngine implements ChangeConsumer, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationDwellEngine.class);
+
+    private static final int ZONE_IN = 0;
+    private static final int ZONE_BAND = 1;
+    private static final int ZONE_OUT = 2;
+
+    private final PolicyGate policyGate;
+    private final AttendancePolicyRepository policyRepository;
+    private final GeoFenceRepository fenceRepository;
+    private final EffectiveFenceStore effectiveFenceStore;
+    private final DwellEventRecorder dwellEventRecorder;
+    private final LastKnownLocationStore lastKnownLocationStore;
+    private final SingleFlight<Long, FenceCenters> centersFlight;
+    private final ConcurrentHashMap<Long, OrgContext> orgs = new ConcurrentHashMap<>();
+    private final AtomicInteger epochs = new AtomicInteger();
+    private DwellStateTable table;
+
+    private final AtomicLong pings = new AtomicLong();
+    private final AtomicLong ignored = new AtomicLong();
+    private final AtomicLong transitions = new AtomicLong();
+    private final AtomicLong eventsRecorded = new AtomicLong();
+    private final AtomicLong eventFailures = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    @Value("${attendance.location.state-stripes:64}")
+    private int stateStripes;
+
+    @Value("${attendance.location.exit-margin-m:50}")
+    private double exitMarginM;
+
+    @Value("${attendance.location.max-pings-per-batch:200}")
+    private int maxPingsPerBatch;
+
+    @Value("${attendance.location.max-ping-age-min:30}")
+    private long maxPingAgeMin;
+
+    @Value("${attendance.location.policy-ttl-seconds:60}")
+    private long policyTtlSeconds;
+
+    @Value("${attendance.location.idle-evict-hours:12}")
+    private long idleEvictHours;
+
+    public LocationDwellEngine(PolicyGate policyGate,
+                               AttendancePolicyRepository policyRepository,
+                               GeoFenceRepository fenceRepository,
+                               EffectiveFenceStore effectiveFenceStore,
+                               DwellEventRecorder dwellEventRecorder,
+                               LastKnownLocationStore lastKnownLocationStore,
+                               RequestCoalescer requestCoalescer) {
+        this.policyGate = policyGate;
+        this.policyRepository = policyRepository;
+        this.fenceRepository = fenceRepository;
+        this.effectiveFenceStore = effectiveFenceStore;
+        this.dwellEventRecorder = dwellEventRecorder;
+        this.lastKnownLocationStore = lastKnownLocationStore;
+        this.centersFlight = requestCoalescer.group("dwellFenceCenters");
+    }
+
+    @PostConstruct
+    public void init() {
+        table = new DwellStateTable(stateStripes);
+    }
+
+    /**
+     * Apply a batch of fixes of one account and record the transitions it confirms.
+     */
+    public LocationPingBatchResponse ingest(long orgId, LocationPingBatchRequest request) {
+        validate(request);
+        policyGate.assertPolicyActive(orgId);
+
+        long accountId = request.getAccountId();
+        OrgContext org = context(orgId);
+        DwellPolicy policy = policy(orgId, org);
+        DwellStateTable.Stripe stripe = table.stripeFor(accountId);
+
+        // Resolve the account's fences outside the stripe lock; usually already cached in its slot
+        int epoch = org.epoch;
+        AccountFences fences = null;
+        synchronized (stripe) {
+            int slot = stripe.find(accountId);
+            if (slot >= 0 && stripe.orgIds[slot] == orgId && stripe.fencesEpochs[slot] == epoch) {
+                fences = stripe.fences[slot];
+            }
+        }
+        if (fences == null) {
+            fences = loadAccountFences(orgId, accountId, org, epoch);
+        }
+
+        List<LocationPingBatchRequest.LocationPing> batch = new ArrayList<>(request.getPings());
+        long now = System.currentTimeMillis();
+        batch.sort((a, b) -> Long.compare(pingTime(a, now), pingTime(b, now)));
+
+        List<DwellTransition> confirmed = new ArrayList<>(2);
+        double[] distance = new double[1];
+        int accepted = 0;
+        byte state;
+        long fenceId;
+        double[] last = null;
+        long lastTs = 0L;
+        synchronized (stripe) {
+            int slot = stripe.findOrCreate(accountId, orgId);
+            stripe.fences[slot] = fences;
+            stripe.fencesEpochs[slot] = epoch;
+
+            long oldest = now - TimeUnit.MINUTES.toMillis(maxPingAgeMin);
+            for (LocationPingBatchRequest.LocationPing ping : batch) {
+                long ts = pingTime(ping, now);
+                double accuracy = ping.getAccuracyM() != null ? ping.getAccuracyM() : 0d;
+                if (ping.getLat() == null || ping.getLon() == null || ts < oldest
+                        || ts <= stripe.lastPingMs[slot] || accuracy > policy.accuracyGateM) {
+                    continue;
+                }
+                accepted++;
+                stripe.lastPingMs[slot] = ts;
+                stripe.lastLat[slot] = ping.getLat();
+                stripe.lastLon[slot] = ping.getLon();
+                stripe.lastAccuracy[slot] = accuracy;
+
+                DwellTransition transition = step(stripe, slot, ts, fences, policy, distance);
+                if (transition != null) {
+                    confirmed.add(transition);
+                }
+            }
+            state = stripe.states[slot];
+            fenceId = stripe.fenceIds[slot];
+            if (accepted > 0) {
+                last = new double[]{stripe.lastLat[slot], stripe.lastLon[slot], stripe.lastAccuracy[slot]};
+                lastTs = stripe.lastPingMs[slot];
+            }
+        }
+
+        if (last != null) {
+            // Occupancy follows the raw position, not the dwell state
+            int nearest = fences.nearest(last[0], last[1], distance);
+            Long insideFenceId = nearest >= 0 && distance[0] <= policy.radiusM ? fences.fenceId(nearest) : null;
+            lastKnownLocationStore.update(orgId, accountId, last[0], last[1], last[2], lastTs,
+                    insideFenceId, LastKnownLocation.SOURCE_PING);
+        }
+
+        pings.addAndGet(batch.size());
+        ignored.addAndGet(batch.size() - accepted);
+
+        List<String> recorded = new ArrayList<>();
+        for (DwellTransition transition : confirmed) {
+            if (record(orgId, accountId, transition, policy)) {
+                recorded.add(transition.eventKind.name());
+            }
+        }
+
+        return new LocationPingBatchResponse(accountId, accepted, batch.size() - accepted,
+                DwellStateTable.stateName(state), fenceId == 0L ? null : fenceId, recorded);
+    }
+
+    /**
+     * Check out accounts that went silent while leaving, and drop accounts idle for too long.
+     */
+    @Scheduled(fixedDelayString = "${attendance.location.sweep-ms:60000}")
+    public void sweep() {
+        if (table == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long idleBefore = now - TimeUnit.HOURS.toMillis(idleEvictHours);
+
+        for (DwellStateTable.Stripe stripe : table.stripes()) {
+            List<long[]> exiting = new ArrayList<>();
+            synchronized (stripe) {
+                evicted.addAndGet(stripe.evictIdle(idleBefore));
+                for (int slot = 0; slot < stripe.accountIds.length; slot++) {
+                    if (stripe.accountIds[slot] != 0L && stripe.states[slot] == DwellStateTable.EXITING) {
+                        exiting.add(new long[]{stripe.orgIds[slot], stripe.accountIds[slot], stripe.sinceMs[slot]});
+                    }
+                }
+            }
+
+            for (long[] candidate : exiting) {
+                long orgId = candidate[0];
+                long accountId = candidate[1];
+                try {
+                    if (!policyGate.isPolicyActive(orgId)) {
+                        continue;
+                    }
+                    DwellPolicy policy = policy(orgId, context(orgId));
+                    if (now - candidate[2] < policy.exitDwellMs) {
+                        continue;
+                    }
+
+                    DwellTransition transition = null;
+                    synchronized (stripe) {
+                        int slot = stripe.find(accountId);
+                        if (slot >= 0 && stripe.orgIds[slot] == orgId
+                                && stripe.states[slot] == DwellStateTable.EXITING && stripe.sinceMs[slot] == candidate[2]) {
+                            transition = exit(stripe, slot, now, policy);
+                        }
+                    }
+                    if (transition != null) {
+                        record(orgId, accountId, transition, policy);
+                    }
+                } catch (Exception e) {
+                    logger.warn("Dwell sweep failed for account {} of org {}: {}", accountId, orgId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMembershipChanged(MembershipChangedEvent event) {
+        context(event.getOrgId()).epoch = epochs.incrementAndGet();
+    }
+
+    @Override
+    public String getConsumerName() {
+        return "location-dwell";
+    }
+
+    @Override
+    public void onChanges(List<ChangeRecord> records) {
+        for (ChangeRecord record : records) {
+            OrgContext org = orgs.get(record.getOrgId());
+            if (org == null) {
+                continue;
+            }
+            if (ChangeOutbox.AGGREGATE_FENCE.equals(record.getAggregateType())
+                    || ChangeOutbox.AGGREGATE_ASSIGNMENT.equals(record.getAggregateType())) {
+                // Account fence lists and fence centers resolved before this epoch are reloaded on use
+                org.epoch = epochs.incrementAndGet();
+            } else if (ChangeOutbox.AGGREGATE_POLICY.equals(record.getAggregateType())) {
+                org.policy = null;
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        for (OrgContext org : orgs.values()) {
+            org.policy = null;
+            org.epoch = epochs.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "location";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Map<String, Integer> states = new LinkedHashMap<>();
+        int tracked = 0;
+        if (table != null) {
+            for (byte state = DwellStateTable.OUTSIDE; state <= DwellStateTable.EXITING; state++) {
+                states.put(DwellStateTable.stateName(state), 0);
+            }
+            for (DwellStateTable.Stripe stripe : table.stripes()) {
+                synchronized (stripe) {
+                    tracked += stripe.size;
+                    for (byte state = DwellStateTable.OUTSIDE; state <= DwellStateTable.EXITING; state++) {
+                        states.merge(DwellStateTable.stateName(state), stripe.count(state), Integer::sum);
+                    }
+                }
+            }
+        }
+        metrics.put("trackedAccounts", tracked);
+        metrics.put("states", states);
+        metrics.put("pings", pings.get());
+        metrics.put("ignored", ignored.get());
+        metrics.put("transitions", transitions.get());
+        metrics.put("eventsRecorded", eventsRecorded.get());
+        metrics.put("eventFailures", eventFailures.get());
+        metrics.put("evicted", evicted.get());
+        return metrics;
+    }
+
+    /**
+     * Advance the state machine of one slot by one accepted fix. Caller holds the stripe lock.
+     */
+    private DwellTransition step(DwellStateTable.Stripe stripe, int slot, long ts,
+                                 AccountFences fences, DwellPolicy policy, double[] distance) {
+        int nearest = fences.nearest(stripe.lastLat[slot], stripe.lastLon[slot], distance);
+        int zone;
+        if (nearest < 0 || distance[0] > policy.radiusM + exitMarginM) {
+            zone = ZONE_OUT;
+        } else if (distance[0] <= policy.radiusM) {
+            zone = ZONE_IN;
+        } else {
+            zone = ZONE_BAND;
+        }
+
+        byte state = stripe.states[slot];
+        if (state == DwellStateTable.OUTSIDE && zone == ZONE_IN) {
+            stripe.states[slot] = DwellStateTable.ENTERING;
+            stripe.fenceIds[slot] = fences.fenceId(nearest);
+            stripe.sinceMs[slot] = ts;
+        } else if (state == DwellStateTable.ENTERING && zone == ZONE_OUT) {
+            stripe.states[slot] = DwellStateTable.OUTSIDE;
+            stripe.fenceIds[slot] = 0L;
+        } else if (state == DwellStateTable.INSIDE && zone == ZONE_OUT) {
+            stripe.states[slot] = DwellStateTable.EXITING;
+            stripe.sinceMs[slot] = ts;
+        } else if (state == DwellStateTable.EXITING && zone == ZONE_IN) {
+            stripe.states[slot] = DwellStateTable.INSIDE;
+        }
+
+        // A zero dwell confirms on the same fix that started it
+        state = stripe.states[slot];
+        if (state == DwellStateTable.ENTERING && zone == ZONE_IN && ts - stripe.sinceMs[slot] >= policy.dwellInMs) {
+            stripe.states[slot] = DwellStateTable.INSIDE;
+            transitions.incrementAndGet();
+            return new DwellTransition(EventKind.CHECK_IN, stripe.fenceIds[slot], stripe.sinceMs[slot], ts,
+                    stripe.lastLat[slot], stripe.lastLon[slot], stripe.lastAccuracy[slot]);
+        }
+        if (state == DwellStateTable.EXITING && zone == ZONE_OUT && ts - stripe.sinceMs[slot] >= policy.exitDwellMs) {
+            return exit(stripe, slot, ts, policy);
+        }
+        return null;
+    }
+
+    /**
+     * EXITING -> OUTSIDE. Caller holds the stripe lock.
+     */
+    private DwellTransition exit(DwellStateTable.Stripe stripe, int slot, long ts, DwellPolicy policy) {
+        long fenceId = stripe.fenceIds[slot];
+        stripe.states[slot] = DwellStateTable.OUTSIDE;
+        stripe.fenceIds[slot] = 0L;
+        transitions.incrementAndGet();
+        if (!policy.autoOutEnabled) {
+            return null;
+        }
+        return new DwellTransition(EventKind.CHECK_OUT, fenceId, stripe.sinceMs[slot], ts,
+                stripe.lastLat[slot], stripe.lastLon[slot], stripe.lastAccuracy[slot]);
+    }
+
+    private boolean record(long orgId, long accountId, DwellTransition transition, DwellPolicy policy) {
+        try {
+            boolean written = dwellEventRecorder.record(orgId, accountId, transition.eventKind, transition.fenceId,
+                    transition.sinceMs, transition.lat, transition.lon, transition.accuracyM,
+                    (transition.confirmedMs - transition.sinceMs) / 1000, policy.maxSuccessfulPerDay);
+            if (written) {
+                eventsRecorded.incrementAndGet();
+            }
+            return written;
+        } catch (Exception e) {
+            eventFailures.incrementAndGet();
+            logger.warn("Failed to record dwell {} for account {} of org {}: {}",
+                    transition.eventKind, accountId, orgId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void validate(LocationPingBatchRequest request) {
+        if (request.getAccountId() == null || request.getAccountId() <= 0) {
+            throw new ProblemException(HttpStatus.BAD_REQUEST, "VALIDATION_FAILED",
+                    "Invalid accountId", "accountId is required and must be positive");
+        }
+        if (request.getPings() == null || request.getPings().isEmpty()) {
+            throw new ProblemException(HttpStatus.BAD_REQUEST, "VALIDATION_FAILED",
+                    "Invalid pings", "pings must not be empty");
+        }
+        if (request.getPings().size() > maxPingsPerBatch) {
+            throw new ProblemException(HttpStatus.BAD_REQUEST, "VALIDATION_FAILED",
+                    "Too many pings", "A batch can hold at most " + maxPingsPerBatch + " pings");
+        }
+    }
+
+    private static long pingTime(LocationPingBatchRequest.LocationPing ping, long now) {
+        // Device clocks ahead of the server are clamped, so they cannot shorten a dwell
+        return ping.getTsEpochMs() == null ? now : Math.min(ping.getTsEpochMs(), now);
+    }
+
+    private OrgContext context(long orgId) {
+        return orgs.computeIfAbsent(orgId, id -> new OrgContext(epochs.incrementAndGet()));
+    }
+
+    private DwellPolicy policy(long orgId, OrgContext org) {
+        DwellPolicy policy = org.policy;
+        if (policy != null && System.nanoTime() - policy.loadedAtNanos <= TimeUnit.SECONDS.toNanos(policyTtlSeconds)) {
+            return policy;
+        }
+
+        AttendancePolicy attendancePolicy = policyRepository.findByOrgId(orgId)
+                .orElseThrow(() -> new ProblemException(
+                        HttpStatus.NOT_FOUND,
+                        "POLICY_NOT_FOUND",
+                        "Attendance policy not found",
+                        "No attendance policy found for org: " + orgId));
+        policy = new DwellPolicy(attendancePolicy);
+        org.policy = policy;
+        return policy;
+    }
+
+    private AccountFences loadAccountFences(long orgId, long accountId, OrgContext org, int epoch) {
+        FenceCenters centers = org.centers;
+        if (centers == null || centers.epoch != epoch) {
+            // After an invalidation every account of the org reloads; they share one fence query
+            centers = centersFlight.execute(orgId, () -> {
+                FenceCenters loaded = new FenceCenters(epoch, loadCenters(orgId));
+                if (org.epoch == epoch) {
+                    org.centers = loaded;
+                }
+                return loaded;
+            });
+            if (centers.epoch < epoch) {
+                // Joined a load that started before the latest invalidation
+                centers = new FenceCenters(epoch, loadCenters(orgId));
+                org.centers = centers;
+            }
+        }
+
+        List<AccountEffectiveFence> rows = effectiveFenceStore
+                .getEffectiveFences(orgId, Collections.singletonList(accountId))
+                .getOrDefault(accountId, Collections.emptyList());
+
+        long[] fenceIds = new long[rows.size()];
+        double[] lats = new double[rows.size()];
+        double[] lons = new double[rows.size()];
+        int count = 0;
+        for (AccountEffectiveFence row : rows) {
+            double[] center = centers.byFenceId.get(row.getFenceId());
+            if (center != null) {
+                fenceIds[count] = row.getFenceId();
+                lats[count] = center[0];
+                lons[count] = center[1];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return AccountFences.NONE;
+        }
+        return new AccountFences(Arrays.copyOf(fenceIds, count),
+                Arrays.copyOf(lats, count), Arrays.copyOf(lons, count));
+    }
+
+    private Map<Long, double[]> loadCenters(long orgId) {
+        Map<Long, double[]> centers = new HashMap<>();
+        for (GeoFence fence : fenceRepository.findByOrgId(orgId)) {
+            if (Boolean.TRUE.equals(fence.getIsActive())) {
+                centers.put(fence.getId(), new double[]{fence.getCenterLat(), fence.getCenterLng()});
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * Per-org caches. The epoch moves on every fence, assignment or membership change; account
+     * fence lists and fence centers are only used at the epoch they were resolved at.
+     */
+    private static final class OrgContext {
+        private volatile int epoch;
+        private volatile FenceCenters centers;
+        private volatile DwellPolicy policy;
+
+        private OrgContext(int epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private static final class FenceCenters {
+        private final int epoch;
+        private final Map<Long, double[]> byFenceId;
+
+        private FenceCenters(int epoch, Map<Long, double[]> byFenceId) {
+            this.epoch = epoch;
+            this.byFenceId = byFenceId;
+        }
+    }
+
+    private static final class DwellPolicy {
+        private final long dwellInMs;
+        private final long exitDwellMs;
+        private final boolean autoOutEnabled;
+        private final double radiusM;
+        private final double accuracyGateM;
+        private final int maxSuccessfulPerDay;
+        private final long loadedAtNanos = System.nanoTime();
+
+        private DwellPolicy(AttendancePolicy policy) {
+            this.autoOutEnabled = Boolean.TRUE.equals(policy.getAutoOutEnabled());
+            this.dwellInMs = TimeUnit.MINUTES.toMillis(policy.getDwellInMin());
+            this.exitDwellMs = TimeUnit.MINUTES.toMillis(
+                    policy.getDwellOutMin() + (autoOutEnabled ? policy.getAutoOutDelayMin() : 0));
+            this.radiusM = policy.getFenceRadiusM();
+            this.accuracyGateM = policy.getAccuracyGateM();
+            this.maxSuccessfulPerDay = policy.getMaxSuccessfulPunchesPerDay();
+        }
+    }
+
+    private static final class DwellTransition {
+        private final EventKind eventKind;
+        private final long fenceId;
+        private final long sinceMs;
+        private final long confirmedMs;
+        private final double lat;
+        private final double lon;
+        private final double accuracyM;
+
+        private DwellTransition(EventKind eventKind, long fenceId, long sinceMs, long confirmedMs,
+                                double lat, double lon, double accuracyM) {
+            this.eventKind = eventKind;
+            this.fenceId = fenceId;
+            this.sinceMs = sinceMs;
+            this.confirmedMs = confirmedMs;
+            this.lat = lat;
+            this.lon = lon;
+            this.accuracyM = accuracyM;
+        }
+    }
+}
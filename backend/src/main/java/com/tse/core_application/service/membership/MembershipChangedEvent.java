@@ -0,0 +1,35 @@
+package com.tse.core_application.service.membership;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Published (via ApplicationEventPublisher) when team or project membership of accounts changes.
+ * Listeners drop cached memberships and anything derived from them.
+ *
+ * Memberships themselves live behind MembershipProvider; inside this service the event is
+ * published by OrgRosterService when an account joins an org's roster. Integrations that learn
+ * of team / project changes publish it too. Publish it inside the transaction that makes the
+ * change: listeners run once it commits (outside a transaction, right away).
+ */
+public class MembershipChangedEvent {
+
+    private final long orgId;
+    private final Collection<Long> accountIds;
+
+    public MembershipChangedEvent(long orgId, Collection<Long> accountIds) {
+        this.orgId = orgId;
+        this.accountIds = accountIds != null ? accountIds : Collections.emptyList();
+    }
+
+    public long getOrgId() {
+        return orgId;
+    }
+
+    /**
+     * Accounts whose membership changed; empty means "unknown, assume all accounts of the org".
+     */
+    public Collection<Long> getAccountIds() {
+        return accountIds;
+    }
+}
@@ -0,0 +1,313 @@
+package com.tse.core_application.service.membership;
+
+import com.tse.core_application.service.roster.OrgRosterService;
+import com.tse.core_application.util.collection.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached bidirectional membership index per org, built on top of MembershipProvider.
+ *
+ * Forward: account -> teams / projects, filled per account (or per prefetched batch) as
+ * accounts are asked for. Reverse: team / project -> member accounts; the first reverse lookup
+ * of an org inverts the whole roster with two bulk provider calls, and each reverse set is
+ * additionally merged with the provider's direct reverse lookup on first access. Forward-only
+ * callers never pay for the roster inversion. Entries are refreshed after a TTL.
+ *
+ * Provider calls never run inside a ConcurrentHashMap compute; results are loaded first and
+ * then installed with putIfAbsent / replace.
+ */
+@Component
+public class MembershipIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(MembershipIndex.class);
+    private static final long[] NONE = new long[0];
+
+    private final MembershipProvider membershipProvider;
+    private final OrgRosterService orgRosterService;
+    private final ConcurrentHashMap<Long, OrgIndex> indexes = new ConcurrentHashMap<>();
+
+    @Value("${attendance.membership.index-ttl-seconds:300}")
+    private long ttlSeconds;
+
+    public MembershipIndex(MembershipProvider membershipProvider, OrgRosterService orgRosterService) {
+        this.membershipProvider = membershipProvider;
+        this.orgRosterService = orgRosterService;
+    }
+
+    /**
+     * Team IDs the account belongs to.
+     */
+    public long[] teamsOf(long orgId, long accountId) {
+        OrgIndex index = getIndex(orgId);
+        long[] teams = index.teamsByAccount.get(accountId);
+        if (teams == null) {
+            teams = toArray(membershipProvider.listTeamsForUser(orgId, accountId));
+            long[] existing = index.teamsByAccount.putIfAbsent(accountId, teams);
+            teams = existing != null ? existing : teams;
+        }
+        return teams;
+    }
+
+    /**
+     * Project IDs the account belongs to.
+     */
+    public long[] projectsOf(long orgId, long accountId) {
+        OrgIndex index = getIndex(orgId);
+        long[] projects = index.projectsByAccount.get(accountId);
+        if (projects == null) {
+            projects = toArray(membershipProvider.listProjectsForUser(orgId, accountId));
+            long[] existing = index.projectsByAccount.putIfAbsent(accountId, projects);
+            projects = existing != null ? existing : projects;
+        }
+        return projects;
+    }
+
+    /**
+     * Warm the forward index for a batch of accounts with one bulk call per relation.
+     * Accounts already indexed are skipped.
+     */
+    public void prefetch(long orgId, Collection<Long> accountIds) {
+        OrgIndex index = getIndex(orgId);
+
+        List<Long> missingTeams = new ArrayList<>();
+        List<Long> missingProjects = new ArrayList<>();
+        for (Long accountId : accountIds) {
+            if (!index.teamsByAccount.containsKey(accountId)) {
+                missingTeams.add(accountId);
+            }
+            if (!index.projectsByAccount.containsKey(accountId)) {
+                missingProjects.add(accountId);
+            }
+        }
+
+        if (!missingTeams.isEmpty()) {
+            Map<Long, List<Long>> teams = membershipProvider.listTeamsForUsers(orgId, missingTeams);
+            for (Long accountId : missingTeams) {
+                index.teamsByAccount.putIfAbsent(accountId, toArray(teams.get(accountId)));
+            }
+        }
+
+        if (!missingProjects.isEmpty()) {
+            Map<Long, List<Long>> projects = membershipProvider.listProjectsForUsers(orgId, missingProjects);
+            for (Long accountId : missingProjects) {
+                index.projectsByAccount.putIfAbsent(accountId, toArray(projects.get(accountId)));
+            }
+        }
+    }
+
+    /**
+     * Member account IDs of a team, resolved in one lookup.
+     */
+    public LongHashSet membersOfTeam(long orgId, long teamId) {
+        OrgIndex index = getIndex(orgId);
+        LongHashSet members = index.membersByTeam.get(teamId);
+        if (members != null) {
+            return members;
+        }
+        members = merge(inverted(orgId, index).teams.get(teamId), membershipProvider.listMembersOfTeam(orgId, teamId));
+        LongHashSet existing = index.membersByTeam.putIfAbsent(teamId, members);
+        return existing != null ? existing : members;
+    }
+
+    /**
+     * Member account IDs of a project, resolved in one lookup.
+     */
+    public LongHashSet membersOfProject(long orgId, long projectId) {
+        OrgIndex index = getIndex(orgId);
+        LongHashSet members = index.membersByProject.get(projectId);
+        if (members != null) {
+            return members;
+        }
+        members = merge(inverted(orgId, index).projects.get(projectId),
+                membershipProvider.listMembersOfProject(orgId, projectId));
+        LongHashSet existing = index.membersByProject.putIfAbsent(projectId, members);
+        return existing != null ? existing : members;
+    }
+
+    /**
+     * Drop the org's cached index so the next access rebuilds it.
+     */
+    public void evict(long orgId) {
+        indexes.remove(orgId);
+    }
+
+    /**
+     * Refresh what the org's index knows about the given accounts after their memberships
+     * changed: their forward entries are reloaded with one bulk call per relation, the member
+     * sets of teams / projects they left or joined are dropped, and the inverted roster is
+     * dropped only if it listed one of them. Everything cached for other accounts stays.
+     *
+     * Lookups install entries with putIfAbsent, so a lookup that read the provider before the
+     * change cannot overwrite the entries installed here.
+     */
+    public void evictAccounts(long orgId, Collection<Long> accountIds) {
+        OrgIndex index = indexes.get(orgId);
+        if (index == null || accountIds.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = new ArrayList<>(accountIds);
+        Map<Long, List<Long>> teams = membershipProvider.listTeamsForUsers(orgId, ids);
+        Map<Long, List<Long>> projects = membershipProvider.listProjectsForUsers(orgId, ids);
+
+        Inverted inverted = index.inverted;
+        boolean invertedStale = false;
+        for (Long accountId : ids) {
+            long[] accountTeams = toArray(teams.get(accountId));
+            long[] accountProjects = toArray(projects.get(accountId));
+            dropMemberSets(index.membersByTeam, index.teamsByAccount.put(accountId, accountTeams), accountTeams);
+            dropMemberSets(index.membersByProject, index.projectsByAccount.put(accountId, accountProjects), accountProjects);
+            invertedStale |= inverted != null && inverted.accounts.contains(accountId);
+        }
+
+        if (invertedStale) {
+            synchronized (index) {
+                if (index.inverted == inverted) {
+                    index.inverted = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The org's current index. Creating one is free; it fills as it is queried.
+     */
+    private OrgIndex getIndex(long orgId) {
+        while (true) {
+            long now = System.currentTimeMillis();
+            OrgIndex index = indexes.get(orgId);
+            if (index != null && !index.isExpired(now, ttlSeconds)) {
+                return index;
+            }
+            OrgIndex fresh = new OrgIndex(now);
+            boolean installed = index == null
+                    ? indexes.putIfAbsent(orgId, fresh) == null
+                    : indexes.replace(orgId, index, fresh);
+            if (installed) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * The org's inverted roster, built on the first reverse lookup. Concurrent reverse lookups
+     * of the same org wait for one build rather than each inverting the roster.
+     */
+    private Inverted inverted(long orgId, OrgIndex index) {
+        Inverted inverted = index.inverted;
+        if (inverted != null) {
+            return inverted;
+        }
+        synchronized (index) {
+            if (index.inverted == null) {
+                index.inverted = invert(orgId, index);
+            }
+            return index.inverted;
+        }
+    }
+
+    private Inverted invert(long orgId, OrgIndex index) {
+        long[] roster = orgRosterService.getAccountIds(orgId);
+        List<Long> accountIds = new ArrayList<>(roster.length);
+        for (long accountId : roster) {
+            accountIds.add(accountId);
+        }
+
+        Inverted inverted = new Inverted();
+        if (!accountIds.isEmpty()) {
+            Map<Long, List<Long>> teams = membershipProvider.listTeamsForUsers(orgId, accountIds);
+            Map<Long, List<Long>> projects = membershipProvider.listProjectsForUsers(orgId, accountIds);
+
+            for (Long accountId : accountIds) {
+                inverted.accounts.add(accountId);
+                long[] accountTeams = toArray(teams.get(accountId));
+                long[] accountProjects = toArray(projects.get(accountId));
+                index.teamsByAccount.putIfAbsent(accountId, accountTeams);
+                index.projectsByAccount.putIfAbsent(accountId, accountProjects);
+
+                for (long teamId : accountTeams) {
+                    inverted.teams.computeIfAbsent(teamId, id -> new LongHashSet()).add(accountId);
+                }
+                for (long projectId : accountProjects) {
+                    inverted.projects.computeIfAbsent(projectId, id -> new LongHashSet()).add(accountId);
+                }
+            }
+        }
+
+        logger.debug("Inverted membership roster for org {}: {} accounts, {} teams, {} projects",
+                orgId, accountIds.size(), inverted.teams.size(), inverted.projects.size());
+        return inverted;
+    }
+
+    private static void dropMemberSets(Map<Long, LongHashSet> membersById, long[] before, long[] after) {
+        if (before != null) {
+            for (long id : before) {
+                membersById.remove(id);
+            }
+        }
+        for (long id : after) {
+            membersById.remove(id);
+        }
+    }
+
+    private static LongHashSet merge(LongHashSet inverted, List<Long> direct) {
+        LongHashSet members = inverted != null ? inverted.copy() : new LongHashSet();
+        if (direct != null) {
+            for (Long accountId : direct) {
+                members.add(accountId);
+            }
+        }
+        return members;
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return NONE;
+        }
+        long[] result = new long[ids.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Index for one org. The resolved reverse sets returned to callers must be treated as
+     * read-only.
+     */
+    private static final class OrgIndex {
+        private final long builtAtMillis;
+        private final Map<Long, long[]> teamsByAccount = new ConcurrentHashMap<>();
+        private final Map<Long, long[]> projectsByAccount = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, LongHashSet> membersByTeam = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, LongHashSet> membersByProject = new ConcurrentHashMap<>();
+        private volatile Inverted inverted;
+
+        OrgIndex(long builtAtMillis) {
+            this.builtAtMillis = builtAtMillis;
+        }
+
+        boolean isExpired(long nowMillis, long ttlSeconds) {
+            return nowMillis - builtAtMillis > ttlSeconds * 1000L;
+        }
+    }
+
+    /**
+     * Roster inverted to team / project -> accounts. Filled once, then only read.
+     */
+    private static final class Inverted {
+        private final LongHashSet accounts = new LongHashSet();
+        private final Map<Long, LongHashSet> teams = new HashMap<>();
+        private final Map<Long, LongHashSet> projects = new HashMap<>();
+    }
+}
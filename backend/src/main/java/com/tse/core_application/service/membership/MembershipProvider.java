@@ -1,6 +1,10 @@
 package com.tse.core_application.service.membership;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface for resolving user memberships across teams and projects.
@@ -26,6 +30,62 @@ public interface MembershipProvider {
      */
     List<Long> listProjectsForUser(long orgId, long accountId);
 
+    /**
+     * Bulk variant of {@link #listTeamsForUser}: team IDs for many users in one call.
+     * Default implementation loops over the single-user lookup; providers backed by a
+     * directory should override it with a single round trip.
+     *
+     * @param orgId the organization ID
+     * @param accountIds the user account IDs
+     * @return map of accountId to team IDs (accounts without teams may be absent)
+     */
+    default Map<Long, List<Long>> listTeamsForUsers(long orgId, Collection<Long> accountIds) {
+        Map<Long, List<Long>> result = new HashMap<>();
+        for (Long accountId : accountIds) {
+            result.put(accountId, listTeamsForUser(orgId, accountId));
+        }
+        return result;
+    }
+
+    /**
+     * Bulk variant of {@link #listProjectsForUser}: project IDs for many users in one call.
+     *
+     * @param orgId the organization ID
+     * @param accountIds the user account IDs
+     * @return map of accountId to project IDs (accounts without projects may be absent)
+     */
+    default Map<Long, List<Long>> listProjectsForUsers(long orgId, Collection<Long> accountIds) {
+        Map<Long, List<Long>> result = new HashMap<>();
+        for (Long accountId : accountIds) {
+            result.put(accountId, listProjectsForUser(orgId, accountId));
+        }
+        return result;
+    }
+
+    /**
+     * Reverse lookup: account IDs that are members of the given team.
+     * Default implementation returns an empty list; MembershipIndex then relies on
+     * inverting the bulk forward lookups over the org roster.
+     *
+     * @param orgId the organization ID
+     * @param teamId the team ID
+     * @return list of member account IDs (empty if unknown)
+     */
+    default List<Long> listMembersOfTeam(long orgId, long teamId) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reverse lookup: account IDs that are members of the given project.
+     *
+     * @param orgId the organization ID
+     * @param projectId the project ID
+     * @return list of member account IDs (empty if unknown)
+     */
+    default List<Long> listMembersOfProject(long orgId, long projectId) {
+        return Collections.emptyList();
+    }
+
     /**
      * Checks if the given organization exists.
      * Default implementation returns true (for demo/skip-org-validation).
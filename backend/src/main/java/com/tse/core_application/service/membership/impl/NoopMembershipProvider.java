@@ -3,8 +3,10 @@ package com.tse.core_application.service.membership.impl;
 import com.tse.core_application.service.membership.MembershipProvider;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * No-operation implementation of MembershipProvider.
@@ -24,6 +26,16 @@ public class NoopMembershipProvider implements MembershipProvider {
         return Collections.emptyList();
     }
 
+    @Override
+    public Map<Long, List<Long>> listTeamsForUsers(long orgId, Collection<Long> accountIds) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, List<Long>> listProjectsForUsers(long orgId, Collection<Long> accountIds) {
+        return Collections.emptyMap();
+    }
+
     @Override
     public boolean orgExists(long orgId) {
         return true;
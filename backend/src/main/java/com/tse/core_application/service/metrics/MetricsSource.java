@@ -0,0 +1,17 @@
+package com.tse.core_application.service.metrics;
+
+import java.util.Map;
+
+/**
+ * A component whose counters and gauges are served by /internal/scheduler/metrics, all sources
+ * together or one by name under /internal/scheduler/metrics/{name}.
+ */
+public interface MetricsSource {
+
+    /**
+     * Stable name, unique among sources; the key of this source in the metrics endpoint.
+     */
+    String getMetricsName();
+
+    Map<String, ?> getMetrics();
+}
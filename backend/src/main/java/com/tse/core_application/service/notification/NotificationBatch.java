@@ -0,0 +1,33 @@
+package com.tse.core_application.service.notification;
+
+/**
+ * One chunk of recipients sharing the same notification message.
+ */
+public final class NotificationBatch {
+
+    private final long orgId;
+    private final long[] accountIds;
+    private final String message;
+
+    public NotificationBatch(long orgId, long[] accountIds, String message) {
+        this.orgId = orgId;
+        this.accountIds = accountIds;
+        this.message = message;
+    }
+
+    public long getOrgId() {
+        return orgId;
+    }
+
+    public long[] getAccountIds() {
+        return accountIds;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int size() {
+        return accountIds.length;
+    }
+}
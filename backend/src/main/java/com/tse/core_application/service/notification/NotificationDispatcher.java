@@ -0,0 +1,158 @@
+package com.tse.core_application.service.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out stage between the schedulers and the NotificationSink.
+ *
+ * Batches go into a bounded queue drained by a small pool of dedicated worker threads.
+ * Workers take tokens from a shared bucket (one per recipient) before calling the sink, and
+ * retry failed batches with exponential backoff. When the queue is full, producers block
+ * for up to the enqueue timeout (backpressure) and the batch is dropped after that.
+ * Delivery never runs on request threads and does not use the DB pool, so it cannot starve
+ * punch traffic.
+ */
+@Component
+public class NotificationDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+    private final NotificationSink sink;
+    private final AtomicLong deliveredRecipients = new AtomicLong();
+    private final AtomicLong failedRecipients = new AtomicLong();
+    private final AtomicLong droppedRecipients = new AtomicLong();
+    private final List<Thread> workers = new ArrayList<>();
+
+    @Value("${attendance.notify.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${attendance.notify.workers:4}")
+    private int workerCount;
+
+    @Value("${attendance.notify.rate-per-second:3000}")
+    private double ratePerSecond;
+
+    @Value("${attendance.notify.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${attendance.notify.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${attendance.notify.retry-backoff-max-ms:5000}")
+    private long retryBackoffMaxMs;
+
+    @Value("${attendance.notify.enqueue-timeout-ms:10000}")
+    private long enqueueTimeoutMs;
+
+    private BlockingQueue<NotificationBatch> queue;
+    private TokenBucket tokenBucket;
+    private volatile boolean running;
+
+    public NotificationDispatcher(NotificationSink sink) {
+        this.sink = sink;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        tokenBucket = new TokenBucket(ratePerSecond, ratePerSecond);
+        running = true;
+
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "notify-dispatch-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Enqueue a batch for delivery. Blocks while the queue is full, up to the enqueue timeout.
+     *
+     * @return false if the batch was dropped because the queue stayed full
+     */
+    public boolean submit(NotificationBatch batch) {
+        try {
+            if (queue.offer(batch, enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        droppedRecipients.addAndGet(batch.size());
+        logger.warn("Notification queue full, dropped batch of {} for org {}", batch.size(), batch.getOrgId());
+        return false;
+    }
+
+    public int getQueuedBatches() {
+        return queue.size();
+    }
+
+    public long getDeliveredRecipients() {
+        return deliveredRecipients.get();
+    }
+
+    public long getFailedRecipients() {
+        return failedRecipients.get();
+    }
+
+    public long getDroppedRecipients() {
+        return droppedRecipients.get();
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                NotificationBatch batch = queue.take();
+                tokenBucket.acquire(batch.size());
+                deliver(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Notification worker error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void deliver(NotificationBatch batch) throws InterruptedException {
+        long backoff = retryBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                sink.send(batch);
+                deliveredRecipients.addAndGet(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    failedRecipients.addAndGet(batch.size());
+                    logger.error("Giving up on notification batch of {} for org {} after {} attempts: {}",
+                            batch.size(), batch.getOrgId(), attempt, e.getMessage());
+                    return;
+                }
+                logger.warn("Notification batch for org {} failed (attempt {}), retrying in {} ms: {}",
+                        batch.getOrgId(), attempt, backoff, e.getMessage());
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, retryBackoffMaxMs);
+            }
+        }
+    }
+}
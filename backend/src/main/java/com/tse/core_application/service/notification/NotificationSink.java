@@ -0,0 +1,16 @@
+package com.tse.core_application.service.notification;
+
+/**
+ * Delivery channel for notification batches (push, mail, ...).
+ * Implementations throw on failure; the dispatcher takes care of rate limiting and retries.
+ */
+public interface NotificationSink {
+
+    /**
+     * Deliver one batch to all of its recipients.
+     *
+     * @param batch Recipients and message
+     * @throws RuntimeException if the batch could not be delivered and should be retried
+     */
+    void send(NotificationBatch batch);
+}
@@ -0,0 +1,52 @@
+package com.tse.core_application.service.notification;
+
+/**
+ * Token bucket refilled continuously at a fixed rate, capped at its capacity.
+ * Thread-safe; acquire blocks the calling thread until enough tokens are available.
+ */
+public final class TokenBucket {
+
+    private final double ratePerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double ratePerSecond, double capacity) {
+        if (ratePerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.ratePerNano = ratePerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Take the given number of tokens, waiting for refill if needed.
+     * Requests larger than the capacity are served in capacity-sized steps.
+     */
+    public void acquire(int permits) throws InterruptedException {
+        double remaining = permits;
+        while (remaining > 0) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                double take = Math.min(remaining, tokens);
+                tokens -= take;
+                remaining -= take;
+                if (remaining <= 0) {
+                    return;
+                }
+                waitNanos = (long) (Math.min(remaining, capacity) / ratePerNano);
+            }
+            Thread.sleep(Math.max(1, waitNanos / 1_000_000));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+        lastRefillNanos = now;
+    }
+}
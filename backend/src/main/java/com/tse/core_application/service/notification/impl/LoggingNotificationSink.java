@@ -0,0 +1,48 @@
+package com.tse.core_application.service.notification.impl;
+
+import com.tse.core_application.service.notification.NotificationBatch;
+import com.tse.core_application.service.notification.NotificationSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Sink for local runs and tests: logs each batch and keeps the most recent ones in memory.
+ * Only registered while no other NotificationSink bean exists (see NotificationConfig), so a
+ * push/mail backed sink in a deployment replaces it.
+ */
+public class LoggingNotificationSink implements NotificationSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingNotificationSink.class);
+
+    private final Deque<NotificationBatch> recent = new ArrayDeque<>();
+
+    @Value("${attendance.notify.logging-sink.retain-batches:100}")
+    private int retainBatches;
+
+    @Override
+    public void send(NotificationBatch batch) {
+        logger.info("Notification to {} accounts in org {}: {}", batch.size(), batch.getOrgId(), batch.getMessage());
+
+        synchronized (recent) {
+            recent.addLast(batch);
+            while (recent.size() > retainBatches) {
+                recent.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Most recently delivered batches, oldest first.
+     */
+    public List<NotificationBatch> getRecentBatches() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+}
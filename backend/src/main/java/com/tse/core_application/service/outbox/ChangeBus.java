@@ -0,0 +1,33 @@
+package com.tse.core_application.service.outbox;
+
+import java.util.List;
+
+/**
+ * Transport that fans relayed change records out to every node.
+ *
+ * Delivery is best effort: consumers track offsets and read anything they missed from
+ * change_outbox, so a bus may drop messages or deliver only a watermark.
+ * Selected with attendance.outbox.bus (in-process, redis, postgres).
+ */
+public interface ChangeBus {
+
+    /**
+     * Publish committed records, in publish_seq order.
+     */
+    void publish(List<ChangeRecord> records);
+
+    void subscribe(Listener listener);
+
+    interface Listener {
+
+        /**
+         * Full records, in publish_seq order.
+         */
+        void onRecords(List<ChangeRecord> records);
+
+        /**
+         * Records up to the given publish_seq exist; read them from the outbox.
+         */
+        void onPublished(long upToSeq);
+    }
+}
@@ -0,0 +1,28 @@
+package com.tse.core_application.service.outbox;
+
+import java.util.List;
+
+/**
+ * Receives relayed change records, e.g. to invalidate a cache.
+ *
+ * Each consumer gets every record exactly in publish_seq order, at least once, on its own
+ * delivery thread. Its offset is stored in change_consumer_offset under the consumer name (plus
+ * attendance.cluster.node-id when clustering is on), so after a restart it only replays what it
+ * missed.
+ */
+public interface ChangeConsumer {
+
+    /**
+     * Stable name, unique among consumers; part of the stored offset key.
+     */
+    String getConsumerName();
+
+    void onChanges(List<ChangeRecord> records);
+
+    /**
+     * Called instead of a replay when records the consumer still needed were already purged
+     * from the outbox. Consumers should drop everything they derived.
+     */
+    default void onReset() {
+    }
+}
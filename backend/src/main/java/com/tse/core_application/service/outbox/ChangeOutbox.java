@@ -0,0 +1,141 @@
+package com.tse.core_application.service.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append side of the change outbox, plus reads of relayed rows for consumer catch-up.
+ */
+@Component
+public class ChangeOutbox {
+
+    public static final String AGGREGATE_FENCE = "FENCE";
+    public static final String AGGREGATE_ASSIGNMENT = "ASSIGNMENT";
+    public static final String AGGREGATE_POLICY = "POLICY";
+    public static final String AGGREGATE_PUNCH_REQUEST = "PUNCH_REQUEST";
+    public static final String AGGREGATE_ATTENDANCE = "ATTENDANCE";
+    /** ORG entity_preference rows; appended by a database trigger (V19), not by this application. */
+    public static final String AGGREGATE_PREFERENCE = "PREFERENCE";
+    /** One month of the cold archive (org 0, aggregate id yyyyMM); written by ColdArchiveWriter. */
+    public static final String AGGREGATE_COLD_ARCHIVE = "COLD_ARCHIVE";
+
+    public static final String CHANGE_CREATED = "CREATED";
+    public static final String CHANGE_UPDATED = "UPDATED";
+    public static final String CHANGE_ASSIGNMENTS = "ASSIGNMENTS_CHANGED";
+    public static final String CHANGE_FULFILLED = "FULFILLED";
+    public static final String CHANGE_EXPIRED = "EXPIRED";
+    public static final String CHANGE_EVENT_RECORDED = "EVENT_RECORDED";
+
+    static final String SELECT_COLUMNS =
+            "SELECT id, org_id, aggregate_type, aggregate_id, aggregate_version, change_type, payload, " +
+            "created_datetime, publish_seq FROM change_outbox ";
+
+    private static final TypeReference<Map<String, Object>> PAYLOAD_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public ChangeOutbox(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Append a change record. Must be called inside the transaction that makes the change,
+     * so the record commits (or rolls back) together with it.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void append(long orgId, String aggregateType, long aggregateId, String changeType, Map<String, Object> payload) {
+        // Row-locks the aggregate until commit: records of one aggregate commit in id order
+        Long version = jdbcTemplate.queryForObject(
+                "INSERT INTO change_outbox_aggregate (aggregate_type, aggregate_id, version) VALUES (?, ?, 1) " +
+                "ON CONFLICT (aggregate_type, aggregate_id) DO UPDATE SET version = change_outbox_aggregate.version + 1 " +
+                "RETURNING version",
+                Long.class, aggregateType, aggregateId);
+
+        jdbcTemplate.update(
+                "INSERT INTO change_outbox (org_id, aggregate_type, aggregate_id, aggregate_version, change_type, payload) " +
+                "VALUES (?, ?, ?, ?, ?, CAST(? AS jsonb))",
+                orgId, aggregateType, aggregateId, version, changeType,
+                toJson(payload != null ? payload : Collections.emptyMap()));
+    }
+
+    /**
+     * Relayed records with publish_seq greater than the given one, in publish_seq order.
+     */
+    public List<ChangeRecord> readPublishedAfter(long seq, int limit) {
+        return jdbcTemplate.query(SELECT_COLUMNS + "WHERE publish_seq > ? ORDER BY publish_seq LIMIT ?",
+                recordMapper(), seq, limit);
+    }
+
+    /**
+     * Relayed records of one org with afterSeq < publish_seq <= upToSeq, in publish_seq order.
+     */
+    public List<ChangeRecord> readPublishedBetween(long orgId, long afterSeq, long upToSeq, int limit) {
+        return jdbcTemplate.query(SELECT_COLUMNS + "WHERE publish_seq > ? AND publish_seq <= ? AND org_id = ? " +
+                        "ORDER BY publish_seq LIMIT ?",
+                recordMapper(), afterSeq, upToSeq, orgId, limit);
+    }
+
+    /**
+     * Highest relayed publish_seq, 0 if nothing was relayed (or everything was purged).
+     */
+    public long maxPublishedSeq() {
+        Long max = jdbcTemplate.queryForObject("SELECT MAX(publish_seq) FROM change_outbox", Long.class);
+        return max != null ? max : 0L;
+    }
+
+    /**
+     * Lowest relayed publish_seq still retained, or null if none is.
+     */
+    public Long minPublishedSeq() {
+        return jdbcTemplate.queryForObject("SELECT MIN(publish_seq) FROM change_outbox", Long.class);
+    }
+
+    RowMapper<ChangeRecord> recordMapper() {
+        return (rs, rowNum) -> {
+            Timestamp created = rs.getTimestamp("created_datetime");
+            long seq = rs.getLong("publish_seq");
+            return new ChangeRecord(
+                    rs.wasNull() ? null : seq,
+                    rs.getLong("id"),
+                    rs.getLong("org_id"),
+                    rs.getString("aggregate_type"),
+                    rs.getLong("aggregate_id"),
+                    rs.getLong("aggregate_version"),
+                    rs.getString("change_type"),
+                    fromJson(rs.getString("payload")),
+                    created != null ? created.toLocalDateTime() : null);
+        };
+    }
+
+    private String toJson(Map<String, Object> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize change payload", e);
+        }
+    }
+
+    private Map<String, Object> fromJson(String payload) {
+        if (payload == null) {
+            return Collections.emptyMap();
+        }
+        try {
+            return objectMapper.readValue(payload, PAYLOAD_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to read change payload", e);
+        }
+    }
+}
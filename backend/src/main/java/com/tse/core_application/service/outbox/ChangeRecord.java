@@ -0,0 +1,39 @@
+package com.tse.core_application.service.outbox;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * One relayed change_outbox row as seen by change consumers.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ChangeRecord {
+
+    /** Publication order across all aggregates. */
+    private Long seq;
+
+    private Long outboxId;
+
+    private Long orgId;
+
+    private String aggregateType;
+
+    private Long aggregateId;
+
+    /** 1, 2, 3... per aggregate; consumers may use it to drop duplicates. */
+    private Long aggregateVersion;
+
+    private String changeType;
+
+    private Map<String, Object> payload;
+
+    private LocalDateTime createdDatetime;
+}
@@ -0,0 +1,155 @@
+package com.tse.core_application.service.outbox;
+
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves committed outbox rows onto the change bus.
+ *
+ * Each run claims unpublished rows in id order in batches, stamps them with consecutive
+ * publish_seq values, commits, and only then publishes them, so consumers never see a change
+ * that was rolled back. Only the node holding the relay lease runs, which keeps publication
+ * in a single order; together with the per-aggregate lock taken by ChangeOutbox.append this
+ * preserves the order of changes of each aggregate.
+ *
+ * The lease is only checked when a run starts, so a slow holder can still be claiming while
+ * the next holder starts. Each claim therefore takes a transaction-scoped advisory lock before
+ * it draws sequence numbers: claims run one at a time and commit in publish_seq order.
+ * Subscribers move their offset to the highest seq they saw, so a lower seq committing after
+ * a higher one would be skipped for good.
+ */
+@Component
+public class ChangeRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeRelay.class);
+
+    /**
+     * Lease key in scheduler_org_lease. Org IDs start at 1, so 0 never collides with an org.
+     */
+    static final long RELAY_LEASE_KEY = 0L;
+
+    /**
+     * pg_advisory_xact_lock key serializing claims ("outbox" in ASCII).
+     */
+    static final long CLAIM_LOCK_KEY = 0x6F7574626F78L;
+
+    private final ChangeOutbox changeOutbox;
+    private final ChangeBus changeBus;
+    private final ClusterCoordinator clusterCoordinator;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate batchTransaction;
+    private final AtomicLong relayedRecords = new AtomicLong();
+
+    @Value("${attendance.outbox.relay-batch-size:500}")
+    private int batchSize;
+
+    @Value("${attendance.outbox.relay-max-batches:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${attendance.outbox.retention-hours:72}")
+    private long retentionHours;
+
+    public ChangeRelay(ChangeOutbox changeOutbox,
+                       ChangeBus changeBus,
+                       ClusterCoordinator clusterCoordinator,
+                       JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager) {
+        this.changeOutbox = changeOutbox;
+        this.changeBus = changeBus;
+        this.clusterCoordinator = clusterCoordinator;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.batchTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Scheduled(fixedDelayString = "${attendance.outbox.relay-interval-ms:500}")
+    public void relay() {
+        if (!clusterCoordinator.tryAcquire(RELAY_LEASE_KEY)) {
+            return;
+        }
+
+        try {
+            for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+                List<ChangeRecord> records = batchTransaction.execute(status -> claimBatch());
+                if (records == null || records.isEmpty()) {
+                    return;
+                }
+
+                changeBus.publish(records);
+                relayedRecords.addAndGet(records.size());
+
+                if (records.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Change relay failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Purge relayed rows past the retention window. Consumers further behind than that get
+     * ChangeConsumer.onReset instead of a replay.
+     */
+    @Scheduled(cron = "${attendance.outbox.cleanup-cron:0 15 * * * ?}")
+    public void purgeRelayed() {
+        if (!clusterCoordinator.tryAcquire(RELAY_LEASE_KEY)) {
+            return;
+        }
+
+        Timestamp cutoff = Timestamp.from(Instant.now().minus(retentionHours, ChronoUnit.HOURS));
+        int purged = jdbcTemplate.update(
+                "DELETE FROM change_outbox WHERE publish_seq IS NOT NULL AND published_datetime < ?", cutoff);
+        if (purged > 0) {
+            logger.info("Purged {} relayed change records older than {} hours", purged, retentionHours);
+        }
+    }
+
+    public long getRelayedRecords() {
+        return relayedRecords.get();
+    }
+
+    private List<ChangeRecord> claimBatch() {
+        // Held until this claim commits; a concurrent claim waits and then draws higher seqs
+        jdbcTemplate.queryForObject("SELECT 1 FROM pg_advisory_xact_lock(?)", Integer.class, CLAIM_LOCK_KEY);
+
+        List<ChangeRecord> records = jdbcTemplate.query(
+                ChangeOutbox.SELECT_COLUMNS + "WHERE publish_seq IS NULL ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED",
+                changeOutbox.recordMapper(), batchSize);
+        if (records.isEmpty()) {
+            return records;
+        }
+
+        List<Long> seqs = new ArrayList<>(jdbcTemplate.queryForList(
+                "SELECT nextval('change_outbox_publish_seq') FROM generate_series(1, ?)", Long.class, records.size()));
+        Collections.sort(seqs);
+
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).setSeq(seqs.get(i));
+        }
+
+        jdbcTemplate.batchUpdate("UPDATE change_outbox SET publish_seq = ?, published_datetime = now() WHERE id = ?",
+                records, records.size(), (ps, record) -> {
+                    ps.setLong(1, record.getSeq());
+                    ps.setLong(2, record.getOutboxId());
+                });
+
+        return records;
+    }
+}
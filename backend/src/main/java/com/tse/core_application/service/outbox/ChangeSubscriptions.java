@@ -0,0 +1,276 @@
+package com.tse.core_application.service.outbox;
+
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers relayed change records to the local ChangeConsumers and tracks their offsets.
+ *
+ * Each consumer has its own single delivery thread, so neither the relay thread nor a bus
+ * listener thread runs consumer code, and a slow consumer only delays itself. Records arriving
+ * over the bus are applied directly when they continue a consumer's offset; on a gap (dropped
+ * message, full delivery queue, watermark-only bus, restart) the consumer replays from
+ * change_outbox instead. A periodic catch-up covers buses that lose messages silently and
+ * persists the offsets, so a restarted node resumes where it stopped.
+ *
+ * Offsets are keyed by consumer name, plus the configured attendance.cluster.node-id when
+ * clustering is on (each node's consumers hold their own derived state). Offsets not written for
+ * offset-retention-days belong to nodes that are gone and are deleted.
+ */
+@Component
+public class ChangeSubscriptions implements ChangeBus.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeSubscriptions.class);
+
+    private final List<ChangeConsumer> consumers;
+    private final ChangeBus changeBus;
+    private final ChangeOutbox changeOutbox;
+    private final ClusterCoordinator clusterCoordinator;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Subscription> subscriptions = new LinkedHashMap<>();
+    private volatile boolean started;
+
+    @Value("${attendance.outbox.catch-up-batch-size:1000}")
+    private int catchUpBatchSize;
+
+    @Value("${attendance.outbox.delivery-queue-capacity:100}")
+    private int deliveryQueueCapacity;
+
+    @Value("${attendance.outbox.offset-retention-days:30}")
+    private int offsetRetentionDays;
+
+    public ChangeSubscriptions(ObjectProvider<ChangeConsumer> consumers,
+                               ChangeBus changeBus,
+                               ChangeOutbox changeOutbox,
+                               ClusterCoordinator clusterCoordinator,
+                               JdbcTemplate jdbcTemplate) {
+        this.consumers = consumers.orderedStream().collect(Collectors.toList());
+        this.changeBus = changeBus;
+        this.changeOutbox = changeOutbox;
+        this.clusterCoordinator = clusterCoordinator;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long head = changeOutbox.maxPublishedSeq();
+
+        for (ChangeConsumer consumer : consumers) {
+            String consumerId = clusterCoordinator.isEnabled()
+                    ? consumer.getConsumerName() + "@" + clusterCoordinator.getNodeId()
+                    : consumer.getConsumerName();
+            List<Long> stored = jdbcTemplate.queryForList(
+                    "SELECT last_seq FROM change_consumer_offset WHERE consumer_id = ?", Long.class, consumerId);
+
+            // A consumer seen for the first time starts at the head: it has nothing derived yet
+            Subscription subscription = new Subscription(consumerId, consumer, stored.isEmpty() ? head : stored.get(0),
+                    deliveryExecutor(consumer.getConsumerName()));
+            subscriptions.put(consumerId, subscription);
+
+            if (!stored.isEmpty()) {
+                catchUp(subscription);
+            }
+        }
+
+        changeBus.subscribe(this);
+        started = true;
+        persistOffsets();
+        logger.info("Change subscriptions started for {} consumers at seq {}", subscriptions.size(), head);
+    }
+
+    @Override
+    public void onRecords(List<ChangeRecord> records) {
+        if (!started || records.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.executor.execute(() -> deliver(subscription, records));
+        }
+    }
+
+    @Override
+    public void onPublished(long upToSeq) {
+        if (!started) {
+            return;
+        }
+        for (Subscription subscription : subscriptions.values()) {
+            if (upToSeq > subscription.offset) {
+                subscription.executor.execute(() -> catchUp(subscription));
+            }
+        }
+    }
+
+    /**
+     * Replay anything the bus did not deliver and persist offsets.
+     */
+    @Scheduled(fixedDelayString = "${attendance.outbox.catch-up-interval-ms:30000}")
+    public void periodicCatchUp() {
+        if (!started) {
+            return;
+        }
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.executor.execute(() -> catchUp(subscription));
+        }
+        persistOffsets();
+        purgeStaleOffsets();
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (Subscription subscription : subscriptions.values()) {
+            subscription.executor.shutdown();
+        }
+        for (Subscription subscription : subscriptions.values()) {
+            try {
+                subscription.executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (started) {
+            persistOffsets();
+        }
+    }
+
+    /**
+     * Current offset per consumer, for diagnostics.
+     */
+    public Map<String, Long> getOffsets() {
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        subscriptions.forEach((consumerId, subscription) -> offsets.put(consumerId, subscription.offset));
+        return offsets;
+    }
+
+    private void deliver(Subscription subscription, List<ChangeRecord> records) {
+        synchronized (subscription) {
+            List<ChangeRecord> fresh = new ArrayList<>(records.size());
+            for (ChangeRecord record : records) {
+                if (record.getSeq() > subscription.offset) {
+                    fresh.add(record);
+                }
+            }
+            if (fresh.isEmpty()) {
+                return;
+            }
+
+            if (fresh.get(0).getSeq() != subscription.offset + 1) {
+                // Something before this batch was missed (or a relay batch rolled back): replay from the table
+                catchUp(subscription);
+                return;
+            }
+
+            apply(subscription, fresh);
+        }
+    }
+
+    private void catchUp(Subscription subscription) {
+        synchronized (subscription) {
+            try {
+                Long oldest = changeOutbox.minPublishedSeq();
+                if (oldest != null && oldest > subscription.offset + 1) {
+                    logger.warn("Consumer {} is behind the outbox retention (offset {}, oldest {}); resetting",
+                            subscription.consumerId, subscription.offset, oldest);
+                    subscription.consumer.onReset();
+                    subscription.offset = oldest - 1;
+                }
+
+                while (true) {
+                    List<ChangeRecord> records = changeOutbox.readPublishedAfter(subscription.offset, catchUpBatchSize);
+                    if (records.isEmpty()) {
+                        return;
+                    }
+                    if (!apply(subscription, records) || records.size() < catchUpBatchSize) {
+                        return;
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Catch-up failed for consumer {}: {}", subscription.consumerId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private boolean apply(Subscription subscription, List<ChangeRecord> records) {
+        try {
+            subscription.consumer.onChanges(records);
+            subscription.offset = records.get(records.size() - 1).getSeq();
+            return true;
+        } catch (RuntimeException e) {
+            // Offset stays put: the records are replayed by the next catch-up
+            logger.error("Consumer {} failed on records {}..{}: {}", subscription.consumerId,
+                    records.get(0).getSeq(), records.get(records.size() - 1).getSeq(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private void persistOffsets() {
+        for (Subscription subscription : subscriptions.values()) {
+            try {
+                jdbcTemplate.update(
+                        "INSERT INTO change_consumer_offset (consumer_id, last_seq, updated_datetime) VALUES (?, ?, now()) " +
+                        "ON CONFLICT (consumer_id) DO UPDATE SET last_seq = EXCLUDED.last_seq, updated_datetime = now()",
+                        subscription.consumerId, subscription.offset);
+            } catch (Exception e) {
+                logger.warn("Failed to persist offset of consumer {}: {}", subscription.consumerId, e.getMessage());
+            }
+        }
+    }
+
+    private void purgeStaleOffsets() {
+        try {
+            int purged = jdbcTemplate.update(
+                    "DELETE FROM change_consumer_offset WHERE updated_datetime < now() - make_interval(days => ?)",
+                    offsetRetentionDays);
+            if (purged > 0) {
+                logger.info("Purged {} stale consumer offsets", purged);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to purge stale consumer offsets: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Single delivery thread per consumer. When its queue is full the batch is dropped; the next
+     * delivery sees the gap and replays from the outbox.
+     */
+    private ThreadPoolExecutor deliveryExecutor(String consumerName) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(deliveryQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "change-consumer-" + consumerName);
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    private static final class Subscription {
+        private final String consumerId;
+        private final ChangeConsumer consumer;
+        private final ThreadPoolExecutor executor;
+        private volatile long offset;
+
+        Subscription(String consumerId, ChangeConsumer consumer, long offset, ThreadPoolExecutor executor) {
+            this.consumerId = consumerId;
+            this.consumer = consumer;
+            this.offset = offset;
+            this.executor = executor;
+        }
+    }
+}
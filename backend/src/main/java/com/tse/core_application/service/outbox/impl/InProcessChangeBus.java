@@ -0,0 +1,40 @@
+package com.tse.core_application.service.outbox.impl;
+
+import com.tse.core_application.service.outbox.ChangeBus;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Default bus: delivers relayed records to listeners on the relaying node only.
+ * Other replicas pick the records up from the outbox on their periodic catch-up.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.outbox.bus", havingValue = "in-process", matchIfMissing = true)
+public class InProcessChangeBus implements ChangeBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessChangeBus.class);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(List<ChangeRecord> records) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onRecords(records);
+            } catch (Exception e) {
+                logger.error("Change listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,126 @@
+package com.tse.core_application.service.outbox.impl;
+
+import com.tse.core_application.service.outbox.ChangeBus;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Postgres LISTEN/NOTIFY bus. NOTIFY payloads are small, so only the highest publish_seq of
+ * each batch is sent; listeners read the records from the outbox. Each node keeps one
+ * dedicated connection (outside the Hikari pool) for LISTEN and reconnects on failure.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.outbox.bus", havingValue = "postgres")
+public class PostgresNotifyChangeBus implements ChangeBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresNotifyChangeBus.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+    private Thread listenThread;
+
+    @Value("${attendance.outbox.pg-channel:geo_fence_changes}")
+    private String channel;
+
+    @Value("${attendance.outbox.pg-poll-timeout-ms:5000}")
+    private int pollTimeoutMs;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    public PostgresNotifyChangeBus(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void publish(List<ChangeRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        long upToSeq = records.get(records.size() - 1).getSeq();
+        try {
+            jdbcTemplate.queryForRowSet("SELECT pg_notify(?, ?)", channel, String.valueOf(upToSeq));
+        } catch (Exception e) {
+            // Listeners catch up from the outbox
+            logger.warn("Failed to NOTIFY change seq {}: {}", upToSeq, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Listener listener) {
+        listeners.add(listener);
+        if (listenThread == null) {
+            running = true;
+            listenThread = new Thread(this::listenLoop, "outbox-pg-listen");
+            listenThread.setDaemon(true);
+            listenThread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (listenThread != null) {
+            listenThread.interrupt();
+        }
+    }
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                logger.info("Listening for change notifications on channel {}", channel);
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (notifications == null || notifications.length == 0) {
+                        continue;
+                    }
+
+                    long upToSeq = 0;
+                    for (PGNotification notification : notifications) {
+                        upToSeq = Math.max(upToSeq, Long.parseLong(notification.getParameter()));
+                    }
+                    for (Listener listener : listeners) {
+                        listener.onPublished(upToSeq);
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Change notification listener failed, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(pollTimeoutMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
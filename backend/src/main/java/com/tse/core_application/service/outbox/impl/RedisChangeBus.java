@@ -0,0 +1,82 @@
+package com.tse.core_application.service.outbox.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.service.outbox.ChangeBus;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Redis pub/sub bus: the relay publishes each batch as JSON on one channel and every node,
+ * including the relay itself, receives it. Pub/sub drops messages while a node is
+ * disconnected; consumer offsets and catch-up cover that.
+ */
+@Component
+@ConditionalOnProperty(name = "attendance.outbox.bus", havingValue = "redis")
+public class RedisChangeBus implements ChangeBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisChangeBus.class);
+    private static final TypeReference<List<ChangeRecord>> RECORDS_TYPE = new TypeReference<List<ChangeRecord>>() {};
+
+    private final RedisConnectionFactory connectionFactory;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private RedisMessageListenerContainer container;
+
+    @Value("${attendance.outbox.redis-channel:geo-fence:changes}")
+    private String channel;
+
+    public RedisChangeBus(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper) {
+        this.connectionFactory = connectionFactory;
+        this.redisTemplate = new StringRedisTemplate(connectionFactory);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void publish(List<ChangeRecord> records) {
+        try {
+            redisTemplate.convertAndSend(channel, objectMapper.writeValueAsString(records));
+        } catch (Exception e) {
+            // Subscribers catch up from the outbox
+            logger.warn("Failed to publish {} change records to Redis: {}", records.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Listener listener) {
+        if (container == null) {
+            container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.afterPropertiesSet();
+            container.start();
+        }
+
+        container.addMessageListener((message, pattern) -> {
+            try {
+                String body = new String(message.getBody(), StandardCharsets.UTF_8);
+                listener.onRecords(objectMapper.readValue(body, RECORDS_TYPE));
+            } catch (Exception e) {
+                logger.error("Failed to handle change message from Redis: {}", e.getMessage(), e);
+            }
+        }, new ChannelTopic(channel));
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+    }
+}
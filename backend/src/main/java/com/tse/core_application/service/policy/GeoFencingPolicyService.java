@@ -7,12 +7,16 @@ import com.tse.core_application.entity.policy.AttendancePolicy;
 import com.tse.core_application.exception.PolicyNotFoundException;
 import com.tse.core_application.exception.ProblemException;
 import com.tse.core_application.repository.policy.AttendancePolicyRepository;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.preference.OrgEntitlementCache;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -20,9 +24,14 @@ import java.util.stream.Collectors;
 public class GeoFencingPolicyService {
 
     private final AttendancePolicyRepository policyRepository;
+    private final ChangeOutbox changeOutbox;
+    private final OrgEntitlementCache orgEntitlementCache;
 
-    public GeoFencingPolicyService(AttendancePolicyRepository policyRepository) {
+    public GeoFencingPolicyService(AttendancePolicyRepository policyRepository, ChangeOutbox changeOutbox,
+                                   OrgEntitlementCache orgEntitlementCache) {
         this.policyRepository = policyRepository;
+        this.changeOutbox = changeOutbox;
+        this.orgEntitlementCache = orgEntitlementCache;
     }
 
     @Transactional
@@ -46,6 +55,7 @@ public class GeoFencingPolicyService {
             }
 
             policy = policyRepository.save(policy);
+            appendChange(policy, ChangeOutbox.CHANGE_CREATED);
 
             PolicyResponse response = new PolicyResponse();
             response.setStatus("CREATED");
@@ -148,6 +158,7 @@ public class GeoFencingPolicyService {
         }
 
         policy = policyRepository.save(policy);
+        appendChange(policy, ChangeOutbox.CHANGE_UPDATED);
 
         PolicyResponse response = new PolicyResponse();
         response.setStatus("UPDATED");
@@ -157,6 +168,14 @@ public class GeoFencingPolicyService {
         return response;
     }
 
+    private void appendChange(AttendancePolicy policy, String changeType) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("isActive", policy.getIsActive());
+        changeOutbox.append(policy.getOrgId(), ChangeOutbox.AGGREGATE_POLICY, policy.getId(), changeType, payload);
+        // Other nodes evict when the POLICY record reaches them
+        orgEntitlementCache.evictAfterCommit(policy.getOrgId());
+    }
+
     @Transactional(readOnly = true)
     public List<PolicyResponse> getAllPolicies(String timeZone) {
         List<AttendancePolicy> policies = policyRepository.findAll();
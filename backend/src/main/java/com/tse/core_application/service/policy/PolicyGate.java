@@ -1,28 +1,27 @@
 package com.tse.core_application.service.policy;
 
-import com.tse.core_application.entity.policy.AttendancePolicy;
 import com.tse.core_application.exception.ProblemException;
-import com.tse.core_application.repository.policy.AttendancePolicyRepository;
+import com.tse.core_application.service.preference.OrgEntitlement;
+import com.tse.core_application.service.preference.OrgEntitlementCache;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
-
 /**
  * Helper to check if geo-fencing policy is active for an org.
  * Honors the config toggle attendance.policy.skip-activation-check.
+ * Reads the policy activation from OrgEntitlementCache, whose misses are coalesced per org.
  */
 @Component
 public class PolicyGate {
 
-    private final AttendancePolicyRepository policyRepository;
+    private final OrgEntitlementCache orgEntitlementCache;
 
     @Value("${attendance.policy.skip-activation-check:true}")
     private boolean skipActivationCheck;
 
-    public PolicyGate(AttendancePolicyRepository policyRepository) {
-        this.policyRepository = policyRepository;
+    public PolicyGate(OrgEntitlementCache orgEntitlementCache) {
+        this.orgEntitlementCache = orgEntitlementCache;
     }
 
     /**
@@ -38,8 +37,8 @@ public class PolicyGate {
             return; // Demo mode: bypass check
         }
 
-        Optional<AttendancePolicy> policyOpt = policyRepository.findByOrgId(orgId);
-        if (!policyOpt.isPresent()) {
+        OrgEntitlement entitlement = orgEntitlementCache.get(orgId);
+        if (!entitlement.isPolicyConfigured()) {
             throw new ProblemException(
                     HttpStatus.CONFLICT,
                     "GEOFENCING_INACTIVE",
@@ -48,8 +47,7 @@ public class PolicyGate {
             );
         }
 
-        AttendancePolicy policy = policyOpt.get();
-        if (!Boolean.TRUE.equals(policy.getIsActive())) {
+        if (!entitlement.isPolicyActive()) {
             throw new ProblemException(
                     HttpStatus.CONFLICT,
                     "GEOFENCING_INACTIVE",
@@ -70,7 +68,6 @@ public class PolicyGate {
             return true;
         }
 
-        Optional<AttendancePolicy> policyOpt = policyRepository.findByOrgId(orgId);
-        return policyOpt.isPresent() && Boolean.TRUE.equals(policyOpt.get().getIsActive());
+        return orgEntitlementCache.get(orgId).isPolicyActive();
     }
 }
@@ -1,8 +1,6 @@
 package com.tse.core_application.service.preference;
 
-import com.tse.core_application.constants.EntityTypes;
 import com.tse.core_application.exception.GeoFencingAccessDeniedException;
-import com.tse.core_application.repository.preference.EntityPreferenceRepository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
@@ -12,10 +10,10 @@ public class GeoFencingAccessService {
 
     private static final Logger logger = LogManager.getLogger(GeoFencingAccessService.class);
 
-    private final EntityPreferenceRepository entityPreferenceRepository;
+    private final OrgEntitlementCache orgEntitlementCache;
 
-    public GeoFencingAccessService(EntityPreferenceRepository entityPreferenceRepository) {
-        this.entityPreferenceRepository = entityPreferenceRepository;
+    public GeoFencingAccessService(OrgEntitlementCache orgEntitlementCache) {
+        this.orgEntitlementCache = orgEntitlementCache;
     }
 
     /**
@@ -28,7 +26,7 @@ public class GeoFencingAccessService {
     public void validateGeoFencingAccess(Long orgId) {
         logger.debug("Validating geo-fencing access for orgId: {}", orgId);
 
-        boolean isEnabled = entityPreferenceRepository.isGeoFencingEnabledForEntity(EntityTypes.ORG, orgId);
+        boolean isEnabled = orgEntitlementCache.get(orgId).isGeoFencingEnabled();
 
         if (!isEnabled) {
             logger.warn("Geo-fencing access denied for orgId: {}. Feature is not allowed or not active.", orgId);
@@ -45,6 +43,6 @@ public class GeoFencingAccessService {
      * @return true if geo-fencing is both allowed and active, false otherwise
      */
     public boolean isGeoFencingEnabled(Long orgId) {
-        return entityPreferenceRepository.isGeoFencingEnabledForEntity(EntityTypes.ORG, orgId);
+        return orgEntitlementCache.get(orgId).isGeoFencingEnabled();
     }
 }
@@ -0,0 +1,56 @@
+package com.tse.core_application.service.preference;
+
+/**
+ * Immutable snapshot of what an org is entitled to: the ORG entity preference flags and the
+ * activation of its attendance policy.
+ */
+public final class OrgEntitlement {
+
+    private final long orgId;
+    private final boolean geoFencingAllowed;
+    private final boolean geoFencingActive;
+    private final boolean policyConfigured;
+    private final boolean policyActive;
+    private final long loadedAtNanos;
+
+    public OrgEntitlement(long orgId, boolean geoFencingAllowed, boolean geoFencingActive,
+                          boolean policyConfigured, boolean policyActive, long loadedAtNanos) {
+        this.orgId = orgId;
+        this.geoFencingAllowed = geoFencingAllowed;
+        this.geoFencingActive = geoFencingActive;
+        this.policyConfigured = policyConfigured;
+        this.policyActive = policyActive;
+        this.loadedAtNanos = loadedAtNanos;
+    }
+
+    public long getOrgId() {
+        return orgId;
+    }
+
+    public boolean isGeoFencingAllowed() {
+        return geoFencingAllowed;
+    }
+
+    public boolean isGeoFencingActive() {
+        return geoFencingActive;
+    }
+
+    /**
+     * Geo-fencing is both provisioned and activated for the org.
+     */
+    public boolean isGeoFencingEnabled() {
+        return geoFencingAllowed && geoFencingActive;
+    }
+
+    public boolean isPolicyConfigured() {
+        return policyConfigured;
+    }
+
+    public boolean isPolicyActive() {
+        return policyConfigured && policyActive;
+    }
+
+    long getLoadedAtNanos() {
+        return loadedAtNanos;
+    }
+}
@@ -0,0 +1,175 @@
+package com.tse.core_application.service.preference;
+
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.service.coalescing.RequestCoalescer;
+import com.tse.core_application.service.metrics.MetricsSource;
+import com.tse.core_application.service.outbox.ChangeConsumer;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import com.tse.core_application.util.concurrent.SingleFlight;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-org entitlement cache behind GeoFencingAccessService and PolicyGate.
+ *
+ * One query loads the ORG entity preference flags and the policy activation together, and the
+ * immutable result is served until its TTL runs out. Concurrent misses share one load. Orgs
+ * without geo-fencing are cached too (with their own, shorter TTL), so denied requests do not
+ * reach the database either.
+ *
+ * Policy changes evict the org after commit locally and through POLICY outbox records on
+ * every node. entity_preference is written outside this application; a trigger on it appends
+ * PREFERENCE outbox records, which evict the org the same way. The TTL only bounds staleness
+ * while the relay is behind.
+ */
+@Component
+public class OrgEntitlementCache implements ChangeConsumer, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrgEntitlementCache.class);
+
+    private static final String LOAD_SQL =
+            "SELECT ep.is_geofencing_allowed, ep.is_geofencing_active, ap.id AS policy_id, ap.is_active " +
+            "FROM (SELECT CAST(? AS BIGINT) AS org_id) o " +
+            "LEFT JOIN entity_preference ep ON ep.entity_type_id = ? AND ep.entity_id = o.org_id " +
+            "LEFT JOIN attendance_policy ap ON ap.org_id = o.org_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SingleFlight<Long, OrgEntitlement> loadFlight;
+    private final ConcurrentHashMap<Long, OrgEntitlement> entitlements = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Bumped on every eviction; a load that overlapped one is returned but not cached. */
+    private final AtomicLong evictionEpoch = new AtomicLong();
+
+    @Value("${attendance.entitlement.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${attendance.entitlement.negative-ttl-seconds:15}")
+    private long negativeTtlSeconds;
+
+    public OrgEntitlementCache(JdbcTemplate jdbcTemplate, RequestCoalescer requestCoalescer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.loadFlight = requestCoalescer.group("orgEntitlements");
+    }
+
+    public OrgEntitlement get(long orgId) {
+        OrgEntitlement entitlement = entitlements.get(orgId);
+        if (entitlement != null && !isExpired(entitlement)) {
+            hits.incrementAndGet();
+            return entitlement;
+        }
+
+        // When a hot org's entry expires, the threads that miss at once share one load
+        return loadFlight.execute(orgId, () -> {
+            long epoch = evictionEpoch.get();
+            OrgEntitlement loaded = load(orgId);
+            if (evictionEpoch.get() == epoch) {
+                entitlements.put(orgId, loaded);
+            }
+            return loaded;
+        });
+    }
+
+    public void evict(long orgId) {
+        evictionEpoch.incrementAndGet();
+        if (entitlements.remove(orgId) != null) {
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Evict once the caller's transaction commits, so no reader re-caches the old state in between.
+     */
+    public void evictAfterCommit(long orgId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(orgId);
+                }
+            });
+        } else {
+            evict(orgId);
+        }
+    }
+
+    public void evictAll() {
+        evictionEpoch.incrementAndGet();
+        entitlements.clear();
+    }
+
+    @Override
+    public String getConsumerName() {
+        return "org-entitlements";
+    }
+
+    @Override
+    public void onChanges(List<ChangeRecord> records) {
+        for (ChangeRecord record : records) {
+            if (ChangeOutbox.AGGREGATE_POLICY.equals(record.getAggregateType())
+                    || ChangeOutbox.AGGREGATE_PREFERENCE.equals(record.getAggregateType())) {
+                evict(record.getOrgId());
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        evictAll();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "orgEntitlements";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", entitlements.size());
+        metrics.put("hits", hits.get());
+        metrics.put("loads", loads.get());
+        metrics.put("evictions", evictions.get());
+        return metrics;
+    }
+
+    private boolean isExpired(OrgEntitlement entitlement) {
+        long ttl = entitlement.isGeoFencingEnabled() ? ttlSeconds : negativeTtlSeconds;
+        return System.nanoTime() - entitlement.getLoadedAtNanos() > TimeUnit.SECONDS.toNanos(ttl);
+    }
+
+    private OrgEntitlement load(long orgId) {
+        loads.incrementAndGet();
+        long loadedAt = System.nanoTime();
+        OrgEntitlement entitlement = jdbcTemplate.queryForObject(LOAD_SQL, (rs, rowNum) -> {
+            rs.getLong("policy_id");
+            boolean policyConfigured = !rs.wasNull();
+            return new OrgEntitlement(
+                    orgId,
+                    rs.getBoolean("is_geofencing_allowed"),
+                    rs.getBoolean("is_geofencing_active"),
+                    policyConfigured,
+                    rs.getBoolean("is_active"),
+                    loadedAt);
+        }, orgId, EntityTypes.ORG);
+
+        logger.debug("Loaded entitlement of org {}: geoFencingEnabled={}, policyActive={}",
+                orgId, entitlement.isGeoFencingEnabled(), entitlement.isPolicyActive());
+        return entitlement;
+    }
+}
@@ -0,0 +1,361 @@
+package com.tse.core_application.service.punch;
+
+import com.tse.core_application.entity.punch.PunchRequest;
+import com.tse.core_application.repository.punch.PunchRequestRepository;
+import com.tse.core_application.service.outbox.ChangeConsumer;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process registry of PENDING punch requests that have not expired yet, per org, indexed by
+ * target entity and ordered by expiresAt.
+ *
+ * Loaded from punch_request at startup and kept current by the local create / fulfil / expiry
+ * paths (applied after commit) and by PUNCH_REQUEST outbox records for changes made on other
+ * nodes. Requests past expiresAt are pruned on read, so a late expiry tick never shows a stale
+ * request. A periodic reconciliation reloads the table as the source of truth; removals are
+ * remembered until the request would have expired anyway, so an out-of-order CREATED record or a
+ * reload racing a fulfilment cannot bring a request back.
+ *
+ * Entries are detached snapshots shared between readers; callers must not modify them.
+ */
+@Component
+public class ActivePunchRequestRegistry implements ChangeConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActivePunchRequestRegistry.class);
+
+    private final PunchRequestRepository punchRequestRepository;
+
+    /** Guards every mutation and the swap on reload; reads only lock the org they touch. */
+    private final Object lock = new Object();
+    private volatile ConcurrentHashMap<Long, OrgRequests> orgs = new ConcurrentHashMap<>();
+    private final Map<Long, LocalDateTime> removed = new HashMap<>();
+    private List<PunchRequest> upsertedDuringReload;
+    private volatile boolean ready;
+    private volatile int lastReconcileDrift;
+
+    public ActivePunchRequestRegistry(PunchRequestRepository punchRequestRepository) {
+        this.punchRequestRepository = punchRequestRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${attendance.punch.registry-reconcile-ms:60000}",
+               initialDelayString = "${attendance.punch.registry-reconcile-ms:60000}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    /**
+     * Reload all active requests from the table and swap them in, keeping local changes
+     * made while the load was running.
+     */
+    public void reconcile() {
+        synchronized (lock) {
+            upsertedDuringReload = new ArrayList<>();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<PunchRequest> pending;
+        try {
+            pending = punchRequestRepository.findByStateAndExpiresAtAfter(PunchRequest.State.PENDING, now);
+        } catch (Exception e) {
+            synchronized (lock) {
+                upsertedDuringReload = null;
+            }
+            logger.error("Failed to reconcile active punch requests: {}", e.getMessage(), e);
+            return;
+        }
+
+        synchronized (lock) {
+            removed.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+
+            ConcurrentHashMap<Long, OrgRequests> rebuilt = new ConcurrentHashMap<>();
+            for (PunchRequest request : pending) {
+                add(rebuilt, snapshot(request), now);
+            }
+            for (PunchRequest request : upsertedDuringReload) {
+                add(rebuilt, request, now);
+            }
+            upsertedDuringReload = null;
+
+            int drift = drift(orgs, rebuilt, now);
+            orgs = rebuilt;
+            lastReconcileDrift = drift;
+            if (drift > 0 && ready) {
+                logger.warn("Active punch request registry was out of sync with the table by {} requests", drift);
+            }
+            ready = true;
+        }
+
+        logger.debug("Reconciled active punch request registry: {} requests", size());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Active requests (requestedDatetime <= now < expiresAt) targeting one of the given entities,
+     * equivalent to PunchRequestRepository.findPendingForEntities.
+     */
+    public List<PunchRequest> findActiveForEntities(long orgId, LocalDateTime now, int entityTypeId, Collection<Long> entityIds) {
+        OrgRequests org = orgs.get(orgId);
+        return org != null ? org.activeFor(entityTypeId, entityIds, now) : Collections.emptyList();
+    }
+
+    /**
+     * Add a new PENDING request once the caller's transaction commits.
+     */
+    public void register(PunchRequest request) {
+        PunchRequest snapshot = snapshot(request);
+        afterCommit(() -> upsert(snapshot));
+    }
+
+    /**
+     * Drop a request that left PENDING (fulfilled or expired) once the caller's transaction commits.
+     */
+    public void unregister(PunchRequest request) {
+        long orgId = request.getOrgId();
+        long requestId = request.getId();
+        LocalDateTime expiresAt = request.getExpiresAt();
+        afterCommit(() -> remove(orgId, requestId, expiresAt));
+    }
+
+    @Override
+    public String getConsumerName() {
+        return "active-punch-requests";
+    }
+
+    @Override
+    public void onChanges(List<ChangeRecord> records) {
+        for (ChangeRecord record : records) {
+            if (!ChangeOutbox.AGGREGATE_PUNCH_REQUEST.equals(record.getAggregateType())) {
+                continue;
+            }
+            Map<String, Object> payload = record.getPayload();
+            LocalDateTime expiresAt = LocalDateTime.parse((String) payload.get("expiresAt"));
+
+            if (ChangeOutbox.CHANGE_CREATED.equals(record.getChangeType())) {
+                PunchRequest request = new PunchRequest();
+                request.setId(record.getAggregateId());
+                request.setOrgId(record.getOrgId());
+                request.setEntityTypeId(((Number) payload.get("entityTypeId")).intValue());
+                request.setEntityId(((Number) payload.get("entityId")).longValue());
+                request.setRequesterAccountId(((Number) payload.get("requesterAccountId")).longValue());
+                request.setRequestedDatetime(LocalDateTime.parse((String) payload.get("requestedDatetime")));
+                request.setRespondWithinMinutes(((Number) payload.get("respondWithinMinutes")).intValue());
+                request.setExpiresAt(expiresAt);
+                request.setState(PunchRequest.State.PENDING);
+                upsert(request);
+            } else {
+                remove(record.getOrgId(), record.getAggregateId(), expiresAt);
+            }
+        }
+    }
+
+    @Override
+    public void onReset() {
+        reconcile();
+    }
+
+    public int size() {
+        int size = 0;
+        for (OrgRequests org : orgs.values()) {
+            size += org.size();
+        }
+        return size;
+    }
+
+    public int getLastReconcileDrift() {
+        return lastReconcileDrift;
+    }
+
+    private void upsert(PunchRequest request) {
+        synchronized (lock) {
+            add(orgs, request, LocalDateTime.now());
+            if (upsertedDuringReload != null) {
+                upsertedDuringReload.add(request);
+            }
+        }
+    }
+
+    private void remove(long orgId, long requestId, LocalDateTime expiresAt) {
+        synchronized (lock) {
+            removed.put(requestId, expiresAt);
+            OrgRequests org = orgs.get(orgId);
+            if (org != null) {
+                org.remove(requestId);
+            }
+        }
+    }
+
+    private void add(ConcurrentHashMap<Long, OrgRequests> target, PunchRequest request, LocalDateTime now) {
+        if (removed.containsKey(request.getId()) || !request.getExpiresAt().isAfter(now)) {
+            return;
+        }
+        target.computeIfAbsent(request.getOrgId(), orgId -> new OrgRequests()).add(request);
+    }
+
+    private static int drift(Map<Long, OrgRequests> current, Map<Long, OrgRequests> rebuilt, LocalDateTime now) {
+        int drift = 0;
+        for (Map.Entry<Long, OrgRequests> entry : rebuilt.entrySet()) {
+            OrgRequests before = current.get(entry.getKey());
+            drift += before != null ? entry.getValue().difference(before, now) : entry.getValue().size();
+        }
+        for (Map.Entry<Long, OrgRequests> entry : current.entrySet()) {
+            if (!rebuilt.containsKey(entry.getKey())) {
+                drift += entry.getValue().size();
+            }
+        }
+        return drift;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static PunchRequest snapshot(PunchRequest source) {
+        PunchRequest copy = new PunchRequest();
+        copy.setId(source.getId());
+        copy.setOrgId(source.getOrgId());
+        copy.setEntityTypeId(source.getEntityTypeId());
+        copy.setEntityId(source.getEntityId());
+        copy.setRequesterAccountId(source.getRequesterAccountId());
+        copy.setRequestedDatetime(source.getRequestedDatetime());
+        copy.setRespondWithinMinutes(source.getRespondWithinMinutes());
+        copy.setExpiresAt(source.getExpiresAt());
+        copy.setState(PunchRequest.State.PENDING);
+        copy.setCreatedDatetime(source.getCreatedDatetime());
+        copy.setUpdatedDatetime(source.getUpdatedDatetime());
+        return copy;
+    }
+
+    /**
+     * Requests of one org: by id, by packed target entity, and by (expiresAt, id).
+     */
+    private static final class OrgRequests {
+        private static final Comparator<PunchRequest> BY_EXPIRY =
+                Comparator.comparing(PunchRequest::getExpiresAt).thenComparing(PunchRequest::getId);
+
+        private final Map<Long, PunchRequest> byId = new HashMap<>();
+        private final Map<Long, List<PunchRequest>> byEntity = new HashMap<>();
+        private final TreeSet<PunchRequest> byExpiry = new TreeSet<>(BY_EXPIRY);
+
+        synchronized void add(PunchRequest request) {
+            removeInternal(request.getId());
+            byId.put(request.getId(), request);
+            byEntity.computeIfAbsent(EntityAccountIndex.key(request.getEntityTypeId(), request.getEntityId()),
+                    k -> new ArrayList<>()).add(request);
+            byExpiry.add(request);
+        }
+
+        synchronized void remove(long requestId) {
+            removeInternal(requestId);
+        }
+
+        synchronized List<PunchRequest> activeFor(int entityTypeId, Collection<Long> entityIds, LocalDateTime now) {
+            pruneExpired(now);
+            List<PunchRequest> result = new ArrayList<>();
+            for (Long entityId : entityIds) {
+                List<PunchRequest> requests = byEntity.get(EntityAccountIndex.key(entityTypeId, entityId));
+                if (requests == null) {
+                    continue;
+                }
+                for (PunchRequest request : requests) {
+                    if (!request.getRequestedDatetime().isAfter(now)) {
+                        result.add(request);
+                    }
+                }
+            }
+            return result;
+        }
+
+        synchronized int size() {
+            return byId.size();
+        }
+
+        /**
+         * Requests not yet expired that are in only one of the two sets.
+         */
+        synchronized int difference(OrgRequests other, LocalDateTime now) {
+            Map<Long, PunchRequest> otherById;
+            synchronized (other) {
+                otherById = new HashMap<>(other.byId);
+            }
+            int difference = 0;
+            for (PunchRequest request : byId.values()) {
+                if (otherById.remove(request.getId()) == null && request.getExpiresAt().isAfter(now)) {
+                    difference++;
+                }
+            }
+            for (PunchRequest request : otherById.values()) {
+                if (request.getExpiresAt().isAfter(now)) {
+                    difference++;
+                }
+            }
+            return difference;
+        }
+
+        private void pruneExpired(LocalDateTime now) {
+            Iterator<PunchRequest> it = byExpiry.iterator();
+            List<Long> due = new ArrayList<>();
+            while (it.hasNext()) {
+                PunchRequest head = it.next();
+                if (head.getExpiresAt().isAfter(now)) {
+                    break;
+                }
+                due.add(head.getId());
+            }
+            due.forEach(this::removeInternal);
+        }
+
+        private void removeInternal(long requestId) {
+            PunchRequest existing = byId.remove(requestId);
+            if (existing == null) {
+                return;
+            }
+            byExpiry.remove(existing);
+            long key = EntityAccountIndex.key(existing.getEntityTypeId(), existing.getEntityId());
+            List<PunchRequest> requests = byEntity.get(key);
+            if (requests != null) {
+                requests.removeIf(r -> r.getId().equals(requestId));
+                if (requests.isEmpty()) {
+                    byEntity.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.tse.core_application.service.punch;
+
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.util.collection.LongHashSet;
+import com.tse.core_application.util.collection.LongObjectHashMap;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+/**
+ * Inverted membership of a set of accounts: packed (entityTypeId, entityId) key -> account IDs,
+ * held in a primitive-keyed map so the packed keys are never boxed.
+ *
+ * Built once per call so each punch request is resolved to the accounts it applies to with a
+ * single lookup instead of scanning every account's entity set. Account arrays keep the order
+ * of the input account list; duplicate input accounts are ignored.
+ */
+final class EntityAccountIndex {
+
+    private static final int TYPE_SHIFT = 56;
+    private static final long ID_MASK = (1L << TYPE_SHIFT) - 1;
+    private static final long[] NONE = new long[0];
+
+    private final LongObjectHashMap<long[]> accountsByEntity;
+
+    private EntityAccountIndex(LongObjectHashMap<long[]> accountsByEntity) {
+        this.accountsByEntity = accountsByEntity;
+    }
+
+    /**
+     * Index the USER, TEAM, PROJECT and ORG memberships of the given accounts.
+     */
+    static EntityAccountIndex build(long orgId, Collection<Long> accountIds,
+                                    LongFunction<long[]> teamsOf, LongFunction<long[]> projectsOf) {
+        LongObjectHashMap<Bucket> buckets = new LongObjectHashMap<>(accountIds.size() * 2);
+        Bucket orgBucket = new Bucket();
+        buckets.put(key(EntityTypes.ORG, orgId), orgBucket);
+
+        LongHashSet seen = new LongHashSet(accountIds.size());
+        for (Long accountId : accountIds) {
+            if (accountId == null || !seen.add(accountId)) {
+                continue;
+            }
+            bucket(buckets, key(EntityTypes.USER, accountId)).add(accountId);
+            for (long teamId : teamsOf.apply(accountId)) {
+                bucket(buckets, key(EntityTypes.TEAM, teamId)).add(accountId);
+            }
+            for (long projectId : projectsOf.apply(accountId)) {
+                bucket(buckets, key(EntityTypes.PROJECT, projectId)).add(accountId);
+            }
+            orgBucket.add(accountId);
+        }
+
+        LongObjectHashMap<long[]> accountsByEntity = new LongObjectHashMap<>(buckets.size());
+        buckets.forEach((key, bucket) -> accountsByEntity.put(key, bucket.toArray()));
+        return new EntityAccountIndex(accountsByEntity);
+    }
+
+    private static Bucket bucket(LongObjectHashMap<Bucket> buckets, long key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    static long key(int entityTypeId, long entityId) {
+        return ((long) entityTypeId << TYPE_SHIFT) | (entityId & ID_MASK);
+    }
+
+    static int entityTypeOf(long key) {
+        return (int) (key >>> TYPE_SHIFT);
+    }
+
+    static long entityIdOf(long key) {
+        return key & ID_MASK;
+    }
+
+    /**
+     * Accounts the entity covers, in input order; empty if none.
+     */
+    long[] accountsFor(int entityTypeId, long entityId) {
+        long[] accounts = accountsByEntity.get(key(entityTypeId, entityId));
+        return accounts != null ? accounts : NONE;
+    }
+
+    /**
+     * Distinct indexed entity IDs grouped by entity type, for the per-type request queries.
+     */
+    Map<Integer, Set<Long>> entitiesByType() {
+        Map<Integer, Set<Long>> entitiesByType = new HashMap<>();
+        accountsByEntity.forEachKey(key ->
+                entitiesByType.computeIfAbsent(entityTypeOf(key), k -> new HashSet<>()).add(entityIdOf(key)));
+        return entitiesByType;
+    }
+
+    int entityCount() {
+        return accountsByEntity.size();
+    }
+
+    private static final class Bucket {
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            ids[size++] = id;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.tse.core_application.service.punch;
+
+import com.tse.core_application.entity.punch.PunchRequest;
+import com.tse.core_application.repository.punch.PunchRequestRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * In-memory delay queue of PENDING punch requests ordered by expiresAt.
+ *
+ * Rebuilt from the punch_request table at startup and fed by PunchRequestService on create.
+ * The expiry scheduler drains every entry whose expiresAt is at or before "now", so a late
+ * or skipped tick picks up everything that fell due in between instead of losing it.
+ *
+ * Due entries of an org without an active policy are parked rather than expired and return
+ * to the queue once the org has an active policy again. An entry whose processing fails is
+ * retried on the next ticks and dropped after max-attempts failures; its request stays
+ * PENDING and is queued again by the next rebuild.
+ */
+@Component
+public class PunchExpiryQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(PunchExpiryQueue.class);
+
+    private final PunchRequestRepository punchRequestRepository;
+    private final ConcurrentSkipListSet<Entry> queue = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Long, Set<Entry>> parked = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Integer> failedAttempts = new ConcurrentHashMap<>();
+
+    @Value("${attendance.punch.expiry.max-attempts:5}")
+    private int maxAttempts;
+
+    public PunchExpiryQueue(PunchRequestRepository punchRequestRepository) {
+        this.punchRequestRepository = punchRequestRepository;
+    }
+
+    /**
+     * Rebuild the queue from all PENDING rows (including ones already overdue).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<PunchRequestRepository.PendingExpiryView> pending =
+                punchRequestRepository.findByState(PunchRequest.State.PENDING);
+
+        queue.clear();
+        parked.clear();
+        failedAttempts.clear();
+        for (PunchRequestRepository.PendingExpiryView view : pending) {
+            queue.add(new Entry(view.getId(), view.getOrgId(), view.getExpiresAt()));
+        }
+
+        logger.info("Rebuilt punch expiry queue with {} pending requests", queue.size());
+    }
+
+    /**
+     * Merge due PENDING rows from the table into the queue.
+     * Needed when several nodes run: a request created on another node is only in that node's
+     * queue, so the node owning the org picks it up from the table once it is due.
+     */
+    public void syncDue(LocalDateTime now) {
+        for (PunchRequestRepository.PendingExpiryView view :
+                punchRequestRepository.findByStateAndExpiresAtLessThanEqual(PunchRequest.State.PENDING, now)) {
+            queue.add(new Entry(view.getId(), view.getOrgId(), view.getExpiresAt()));
+        }
+    }
+
+    /**
+     * Schedule a request for expiry. When called inside a transaction the entry is only
+     * enqueued after commit, so rolled-back requests never reach the queue.
+     */
+    public void schedule(PunchRequest request) {
+        Entry entry = new Entry(request.getId(), request.getOrgId(), request.getExpiresAt());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queue.add(entry);
+                }
+            });
+        } else {
+            queue.add(entry);
+        }
+    }
+
+    /**
+     * Remove and return every entry with expiresAt <= now, in expiry order.
+     */
+    public List<Entry> drainDue(LocalDateTime now) {
+        List<Entry> due = new ArrayList<>();
+
+        Entry head;
+        while ((head = queue.pollFirst()) != null) {
+            if (head.getExpiresAt().isAfter(now)) {
+                // Not yet due - put it back and stop
+                queue.add(head);
+                break;
+            }
+            due.add(head);
+        }
+
+        return due;
+    }
+
+    /**
+     * Put an entry back after its processing failed, so the next tick retries it.
+     *
+     * @return false if the entry failed max-attempts times and was dropped instead
+     */
+    public boolean retry(Entry entry) {
+        int attempts = failedAttempts.merge(entry.getRequestId(), 1, Integer::sum);
+        if (attempts >= maxAttempts) {
+            failedAttempts.remove(entry.getRequestId());
+            return false;
+        }
+        queue.add(entry);
+        return true;
+    }
+
+    /**
+     * Forget the failure counts of processed requests.
+     */
+    public void completed(Collection<Long> requestIds) {
+        if (!failedAttempts.isEmpty()) {
+            requestIds.forEach(failedAttempts::remove);
+        }
+    }
+
+    /**
+     * Hold back a due entry whose org has no active policy.
+     */
+    public void park(Entry entry) {
+        parked.computeIfAbsent(entry.getOrgId(), id -> ConcurrentHashMap.newKeySet()).add(entry);
+    }
+
+    /**
+     * Move parked entries of orgs that have an active policy again back into the queue.
+     */
+    public void unpark(Set<Long> activeOrgIds) {
+        parked.entrySet().removeIf(parkedOrg -> {
+            if (!activeOrgIds.contains(parkedOrg.getKey())) {
+                return false;
+            }
+            queue.addAll(parkedOrg.getValue());
+            return true;
+        });
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public int parkedSize() {
+        return parked.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Queue entry keyed by request id, ordered by (expiresAt, id).
+     */
+    public static final class Entry implements Comparable<Entry> {
+        private final long requestId;
+        private final long orgId;
+        private final LocalDateTime expiresAt;
+
+        public Entry(long requestId, long orgId, LocalDateTime expiresAt) {
+            this.requestId = requestId;
+            this.orgId = orgId;
+            this.expiresAt = expiresAt;
+        }
+
+        public long getRequestId() {
+            return requestId;
+        }
+
+        public long getOrgId() {
+            return orgId;
+        }
+
+        public LocalDateTime getExpiresAt() {
+            return expiresAt;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int cmp = expiresAt.compareTo(other.expiresAt);
+            return cmp != 0 ? cmp : Long.compare(requestId, other.requestId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Entry)) return false;
+            Entry entry = (Entry) o;
+            return requestId == entry.requestId && expiresAt.equals(entry.expiresAt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(requestId) * 31 + expiresAt.hashCode();
+        }
+    }
+}
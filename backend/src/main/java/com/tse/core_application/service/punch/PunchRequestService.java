@@ -9,8 +9,10 @@ import com.tse.core_application.repository.punch.PunchRequestRepository;
 import com.tse.core_application.entity.policy.AttendancePolicy;
 import com.tse.core_application.repository.policy.AttendancePolicyRepository;
 import com.tse.core_application.service.attendance.OfficePolicyProvider;
-import com.tse.core_application.service.membership.MembershipProvider;
+import com.tse.core_application.service.membership.MembershipIndex;
+import com.tse.core_application.service.outbox.ChangeOutbox;
 import com.tse.core_application.service.policy.PolicyGate;
+import com.tse.core_application.service.push.PushChangeRecorder;
 import com.tse.core_application.util.DateTimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,10 +37,13 @@ public class PunchRequestService {
     private static final Logger logger = LoggerFactory.getLogger(PunchRequestService.class);
 
     private final PunchRequestRepository punchRequestRepository;
-    private final MembershipProvider membershipProvider;
+    private final MembershipIndex membershipIndex;
     private final PolicyGate policyGate;
     private final OfficePolicyProvider officePolicyProvider;
     private final AttendancePolicyRepository attendancePolicyRepository;
+    private final PunchExpiryQueue punchExpiryQueue;
+    private final PushChangeRecorder pushChangeRecorder;
+    private final ActivePunchRequestRegistry activePunchRequestRegistry;
 
     @Value("${attendance.punch.max-past-skew-minutes:5}")
     private int maxPastSkewMinutes;
@@ -47,15 +52,21 @@ public class PunchRequestService {
     private int maxFutureDays;
 
     public PunchRequestService(PunchRequestRepository punchRequestRepository,
-                               MembershipProvider membershipProvider,
+                               MembershipIndex membershipIndex,
                                PolicyGate policyGate,
                                OfficePolicyProvider officePolicyProvider,
-                               AttendancePolicyRepository attendancePolicyRepository) {
+                               AttendancePolicyRepository attendancePolicyRepository,
+                               PunchExpiryQueue punchExpiryQueue,
+                               PushChangeRecorder pushChangeRecorder,
+                               ActivePunchRequestRegistry activePunchRequestRegistry) {
         this.punchRequestRepository = punchRequestRepository;
-        this.membershipProvider = membershipProvider;
+        this.membershipIndex = membershipIndex;
         this.policyGate = policyGate;
         this.officePolicyProvider = officePolicyProvider;
         this.attendancePolicyRepository = attendancePolicyRepository;
+        this.punchExpiryQueue = punchExpiryQueue;
+        this.pushChangeRecorder = pushChangeRecorder;
+        this.activePunchRequestRegistry = activePunchRequestRegistry;
     }
 
     @Transactional
@@ -169,6 +180,11 @@ public class PunchRequestService {
 
         PunchRequest saved = punchRequestRepository.save(request);
 
+        // Hand off to the expiry queue and the active registry (both after commit)
+        punchExpiryQueue.schedule(saved);
+        activePunchRequestRegistry.register(saved);
+        pushChangeRecorder.punchRequestChanged(saved, PunchRequest.State.PENDING, ChangeOutbox.CHANGE_CREATED);
+
         logger.info("Created punch request {} for org {} targeting {}/{} by requester {}",
                 saved.getId(), orgId, dto.getEntityTypeId(), dto.getEntityId(), dto.getRequesterAccountId());
 
@@ -182,28 +198,21 @@ public class PunchRequestService {
 
         LocalDateTime now = LocalDateTime.now();
 
-        // Expand memberships for each account
-        Map<Long, Set<EntityRef>> accountToEntities = new HashMap<>();
-        for (Long accountId : accountIds) {
-            accountToEntities.put(accountId, expandMembership(orgId, accountId));
-        }
+        // Invert memberships once: entity -> accounts (one bulk lookup for accounts not yet indexed)
+        EntityAccountIndex index = buildEntityAccountIndex(orgId, accountIds);
 
         // Collect all requests
         List<PunchRequest> allRequests = new ArrayList<>();
 
         // Group entities by type to minimize queries
-        Map<Integer, Set<Long>> entitiesByType = new HashMap<>();
-        for (Set<EntityRef> entities : accountToEntities.values()) {
-            for (EntityRef ref : entities) {
-                entitiesByType.computeIfAbsent(ref.entityTypeId, k -> new HashSet<>()).add(ref.entityId);
-            }
-        }
+        Map<Integer, Set<Long>> entitiesByType = index.entitiesByType();
 
-        // Query for each entity type
+        // Look up each entity type: from the active registry once it is loaded, else from the table
+        boolean fromRegistry = activePunchRequestRegistry.isReady();
         for (Map.Entry<Integer, Set<Long>> entry : entitiesByType.entrySet()) {
-            List<PunchRequest> requests = punchRequestRepository.findPendingForEntities(
-                    orgId, now, entry.getKey(), entry.getValue()
-            );
+            List<PunchRequest> requests = fromRegistry
+                    ? activePunchRequestRegistry.findActiveForEntities(orgId, now, entry.getKey(), entry.getValue())
+                    : punchRequestRepository.findPendingForEntities(orgId, now, entry.getKey(), entry.getValue());
             allRequests.addAll(requests);
         }
 
@@ -211,13 +220,11 @@ public class PunchRequestService {
         Map<Long, PunchRequestViewDto> requestMap = new HashMap<>();
         for (PunchRequest req : allRequests) {
             if (!requestMap.containsKey(req.getId())) {
-                // Find which accounts this request applies to
-                List<Long> appliesToAccounts = new ArrayList<>();
-                for (Long accountId : accountIds) {
-                    Set<EntityRef> entities = accountToEntities.get(accountId);
-                    if (entities.stream().anyMatch(e -> e.matches(req.getEntityTypeId(), req.getEntityId()))) {
-                        appliesToAccounts.add(accountId);
-                    }
+                // Accounts this request applies to: one lookup on the targeted entity
+                long[] accounts = index.accountsFor(req.getEntityTypeId(), req.getEntityId());
+                List<Long> appliesToAccounts = new ArrayList<>(accounts.length);
+                for (long accountId : accounts) {
+                    appliesToAccounts.add(accountId);
                 }
                 requestMap.put(req.getId(), toViewDto(req, now, appliesToAccounts, timeZone));
             }
@@ -270,22 +277,14 @@ public class PunchRequestService {
         LocalDateTime fromServer = DateTimeUtils.convertUserDateToServerTimezoneWithSeconds(from, timeZone);
         LocalDateTime toServer = DateTimeUtils.convertUserDateToServerTimezoneWithSeconds(to, timeZone);
 
-        // Expand memberships for each account
-        Map<Long, Set<EntityRef>> accountToEntities = new HashMap<>();
-        for (Long accountId : accountIds) {
-            accountToEntities.put(accountId, expandMembership(orgId, accountId));
-        }
+        // Invert memberships once: entity -> accounts (one bulk lookup for accounts not yet indexed)
+        EntityAccountIndex index = buildEntityAccountIndex(orgId, accountIds);
 
         // Collect all requests
         List<PunchRequest> allRequests = new ArrayList<>();
 
         // Group entities by type
-        Map<Integer, Set<Long>> entitiesByType = new HashMap<>();
-        for (Set<EntityRef> entities : accountToEntities.values()) {
-            for (EntityRef ref : entities) {
-                entitiesByType.computeIfAbsent(ref.entityTypeId, k -> new HashSet<>()).add(ref.entityId);
-            }
-        }
+        Map<Integer, Set<Long>> entitiesByType = index.entitiesByType();
 
         // Query for each entity type
         for (Map.Entry<Integer, Set<Long>> entry : entitiesByType.entrySet()) {
@@ -300,13 +299,11 @@ public class PunchRequestService {
         Map<Long, PunchRequestViewDto> requestMap = new HashMap<>();
         for (PunchRequest req : allRequests) {
             if (!requestMap.containsKey(req.getId())) {
-                // Find which accounts this request applies to
-                List<Long> appliesToAccounts = new ArrayList<>();
-                for (Long accountId : accountIds) {
-                    Set<EntityRef> entities = accountToEntities.get(accountId);
-                    if (entities.stream().anyMatch(e -> e.matches(req.getEntityTypeId(), req.getEntityId()))) {
-                        appliesToAccounts.add(accountId);
-                    }
+                // Accounts this request applies to: one lookup on the targeted entity
+                long[] accounts = index.accountsFor(req.getEntityTypeId(), req.getEntityId());
+                List<Long> appliesToAccounts = new ArrayList<>(accounts.length);
+                for (long accountId : accounts) {
+                    appliesToAccounts.add(accountId);
                 }
                 requestMap.put(req.getId(), toViewDto(req, now, appliesToAccounts, timeZone));
             }
@@ -315,24 +312,11 @@ public class PunchRequestService {
         return new ArrayList<>(requestMap.values());
     }
 
-    private Set<EntityRef> expandMembership(long orgId, long accountId) {
-        Set<EntityRef> entities = new HashSet<>();
-
-        // USER
-        entities.add(new EntityRef(EntityTypes.USER, accountId));
-
-        // TEAM
-        List<Long> teamIds = membershipProvider.listTeamsForUser(orgId, accountId);
-        teamIds.forEach(teamId -> entities.add(new EntityRef(EntityTypes.TEAM, teamId)));
-
-        // PROJECT
-        List<Long> projectIds = membershipProvider.listProjectsForUser(orgId, accountId);
-        projectIds.forEach(projectId -> entities.add(new EntityRef(EntityTypes.PROJECT, projectId)));
-
-        // ORG
-        entities.add(new EntityRef(EntityTypes.ORG, orgId));
-
-        return entities;
+    private EntityAccountIndex buildEntityAccountIndex(long orgId, List<Long> accountIds) {
+        membershipIndex.prefetch(orgId, accountIds);
+        return EntityAccountIndex.build(orgId, accountIds,
+                accountId -> membershipIndex.teamsOf(orgId, accountId),
+                accountId -> membershipIndex.projectsOf(orgId, accountId));
     }
 
     private PunchRequestViewDto toViewDto(PunchRequest request, LocalDateTime now, List<Long> appliesToAccountIds, String timeZone) {
@@ -364,34 +348,4 @@ public class PunchRequestService {
 
         return dto;
     }
-
-    /**
-     * Internal class for entity reference.
-     */
-    private static class EntityRef {
-        final int entityTypeId;
-        final long entityId;
-
-        EntityRef(int entityTypeId, long entityId) {
-            this.entityTypeId = entityTypeId;
-            this.entityId = entityId;
-        }
-
-        boolean matches(int typeId, long entId) {
-            return this.entityTypeId == typeId && this.entityId == entId;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof EntityRef)) return false;
-            EntityRef entityRef = (EntityRef) o;
-            return entityTypeId == entityRef.entityTypeId && entityId == entityRef.entityId;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(entityTypeId, entityId);
-        }
-    }
 }
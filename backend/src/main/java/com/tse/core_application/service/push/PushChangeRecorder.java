@@ -0,0 +1,56 @@
+package com.tse.core_application.service.push;
+
+import com.tse.core_application.entity.attendance.AttendanceEvent;
+import com.tse.core_application.entity.punch.PunchRequest;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes the change records that are pushed to connected clients.
+ *
+ * Records go through the change outbox inside the caller's transaction, so a client is only
+ * told about committed changes and the outbox publish_seq doubles as its resume token.
+ */
+@Component
+public class PushChangeRecorder {
+
+    private final ChangeOutbox changeOutbox;
+
+    public PushChangeRecorder(ChangeOutbox changeOutbox) {
+        this.changeOutbox = changeOutbox;
+    }
+
+    /**
+     * A punch request was created, fulfilled or expired. The new state is passed explicitly
+     * because bulk transitions (expiry) do not update the loaded entity.
+     */
+    public void punchRequestChanged(PunchRequest request, PunchRequest.State state, String changeType) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("entityTypeId", request.getEntityTypeId());
+        payload.put("entityId", request.getEntityId());
+        payload.put("requesterAccountId", request.getRequesterAccountId());
+        payload.put("requestedDatetime", request.getRequestedDatetime().toString());
+        payload.put("expiresAt", request.getExpiresAt().toString());
+        payload.put("respondWithinMinutes", request.getRespondWithinMinutes());
+        payload.put("state", state.name());
+        changeOutbox.append(request.getOrgId(), ChangeOutbox.AGGREGATE_PUNCH_REQUEST, request.getId(), changeType, payload);
+    }
+
+    /**
+     * An attendance event was recorded for an account's day.
+     */
+    public void attendanceEventRecorded(AttendanceEvent event, LocalDate dateKey) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("eventId", event.getId());
+        payload.put("eventKind", event.getEventKind().name());
+        payload.put("success", event.getSuccess());
+        payload.put("tsUtc", event.getTsUtc().toString());
+        payload.put("dateKey", dateKey.toString());
+        changeOutbox.append(event.getOrgId(), ChangeOutbox.AGGREGATE_ATTENDANCE, event.getAccountId(),
+                ChangeOutbox.CHANGE_EVENT_RECORDED, payload);
+    }
+}
@@ -0,0 +1,295 @@
+package com.tse.core_application.service.push;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.dto.push.PushMessage;
+import com.tse.core_application.service.membership.MembershipIndex;
+import com.tse.core_application.service.outbox.ChangeConsumer;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import com.tse.core_application.util.collection.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes punch request and attendance changes to the WebSocket sessions connected to this node.
+ *
+ * Changes arrive as relayed outbox records (in publish_seq order) through ChangeSubscriptions.
+ * Recipients are resolved against the sessions of the record's org: the targeted user, the
+ * members of a targeted team or project (via MembershipIndex), or every session for an org-wide
+ * request. Each message carries its publish_seq as resume token; a client reconnecting with a
+ * token gets the org's retained records after it replayed from change_outbox, filtered to its
+ * account, before live delivery resumes.
+ *
+ * With the in-process bus only the relaying node is fed immediately; for push latency on several
+ * nodes use the redis or postgres bus.
+ */
+@Component
+public class PushDispatcher implements ChangeConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushDispatcher.class);
+
+    private final ChangeOutbox changeOutbox;
+    private final MembershipIndex membershipIndex;
+    private final ObjectMapper objectMapper;
+
+    /** orgId -> accountId -> sessions */
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, Set<PushSession>>> sessions = new ConcurrentHashMap<>();
+
+    /** Highest publish_seq handed to onChanges; live sessions are current up to here. */
+    private volatile long deliveredSeq = -1;
+
+    private final AtomicLong pushedMessages = new AtomicLong();
+    private final AtomicLong replayedMessages = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    @Value("${attendance.push.max-replay:500}")
+    private int maxReplay;
+
+    public PushDispatcher(ChangeOutbox changeOutbox, MembershipIndex membershipIndex, ObjectMapper objectMapper) {
+        this.changeOutbox = changeOutbox;
+        this.membershipIndex = membershipIndex;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getConsumerName() {
+        return "push";
+    }
+
+    @Override
+    public void onChanges(List<ChangeRecord> records) {
+        // Publish the position before reading the session map, so a session registering
+        // concurrently either receives these records here or replays them in connect()
+        deliveredSeq = Math.max(deliveredSeq, records.get(records.size() - 1).getSeq());
+
+        for (ChangeRecord record : records) {
+            if (!isPushed(record)) {
+                continue;
+            }
+            Map<Long, Set<PushSession>> orgSessions = sessions.get(record.getOrgId());
+            if (orgSessions == null || orgSessions.isEmpty()) {
+                continue;
+            }
+
+            String json = null;
+            for (PushSession session : recipients(record, orgSessions)) {
+                if (json == null) {
+                    json = toJson(toMessage(record));
+                }
+                if (send(session, record.getSeq(), json)) {
+                    pushedMessages.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Register a session and bring it up to date: replay the records after the resume token
+     * (or start at the current position without one), then send READY with the token to use
+     * on the next reconnect.
+     */
+    public void connect(PushSession session, Long resumeToken) {
+        sessions.computeIfAbsent(session.getOrgId(), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(session.getAccountId(), k -> ConcurrentHashMap.newKeySet())
+                .add(session);
+
+        synchronized (session) {
+            long upTo = currentSeq();
+            if (resumeToken != null && resumeToken >= upTo) {
+                // Already current, e.g. last served by a node that was further ahead
+                session.setLastSeq(resumeToken);
+            } else {
+                session.setLastSeq(upTo);
+                if (resumeToken != null && !replay(session, resumeToken, upTo)) {
+                    resyncs.incrementAndGet();
+                    sendControl(session, PushMessage.TYPE_RESYNC, upTo);
+                }
+            }
+            sendControl(session, PushMessage.TYPE_READY, session.getLastSeq());
+        }
+
+        logger.debug("Push session {} connected for org {} account {} (resume token {})",
+                session.getId(), session.getOrgId(), session.getAccountId(), resumeToken);
+    }
+
+    public void disconnect(PushSession session) {
+        Map<Long, Set<PushSession>> orgSessions = sessions.get(session.getOrgId());
+        if (orgSessions == null) {
+            return;
+        }
+        orgSessions.computeIfPresent(session.getAccountId(), (accountId, accountSessions) -> {
+            accountSessions.remove(session);
+            return accountSessions.isEmpty() ? null : accountSessions;
+        });
+    }
+
+    public int getSessionCount() {
+        int count = 0;
+        for (Map<Long, Set<PushSession>> orgSessions : sessions.values()) {
+            for (Set<PushSession> accountSessions : orgSessions.values()) {
+                count += accountSessions.size();
+            }
+        }
+        return count;
+    }
+
+    public long getPushedMessages() {
+        return pushedMessages.get();
+    }
+
+    public long getReplayedMessages() {
+        return replayedMessages.get();
+    }
+
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    /**
+     * Replay the org's records in (afterSeq, upToSeq] that apply to the session's account.
+     *
+     * @return false if the token is older than the outbox retention or the gap exceeds the
+     *         replay limit; the client has to resync by polling
+     */
+    private boolean replay(PushSession session, long afterSeq, long upToSeq) {
+        Long oldest = changeOutbox.minPublishedSeq();
+        if (oldest == null || oldest > afterSeq + 1) {
+            return false;
+        }
+
+        List<ChangeRecord> records = changeOutbox.readPublishedBetween(session.getOrgId(), afterSeq, upToSeq, maxReplay + 1);
+        if (records.size() > maxReplay) {
+            return false;
+        }
+
+        session.setLastSeq(afterSeq);
+        for (ChangeRecord record : records) {
+            if (isPushed(record) && appliesTo(record, session.getOrgId(), session.getAccountId())
+                    && send(session, record.getSeq(), toJson(toMessage(record)))) {
+                replayedMessages.incrementAndGet();
+            }
+        }
+        session.setLastSeq(upToSeq);
+        return true;
+    }
+
+    private long currentSeq() {
+        long seq = deliveredSeq;
+        if (seq < 0) {
+            // Nothing delivered since startup: everything already relayed is history
+            seq = changeOutbox.maxPublishedSeq();
+            deliveredSeq = Math.max(deliveredSeq, seq);
+        }
+        return seq;
+    }
+
+    private Collection<PushSession> recipients(ChangeRecord record, Map<Long, Set<PushSession>> orgSessions) {
+        if (ChangeOutbox.AGGREGATE_ATTENDANCE.equals(record.getAggregateType())) {
+            return orgSessions.getOrDefault(record.getAggregateId(), Collections.emptySet());
+        }
+
+        int entityTypeId = ((Number) record.getPayload().get("entityTypeId")).intValue();
+        long entityId = ((Number) record.getPayload().get("entityId")).longValue();
+
+        if (entityTypeId == EntityTypes.USER) {
+            return orgSessions.getOrDefault(entityId, Collections.emptySet());
+        }
+
+        LongHashSet members = entityTypeId == EntityTypes.ORG ? null : membersOf(record.getOrgId(), entityTypeId, entityId);
+        List<PushSession> recipients = new ArrayList<>();
+        for (Map.Entry<Long, Set<PushSession>> entry : orgSessions.entrySet()) {
+            if (members == null || members.contains(entry.getKey())) {
+                recipients.addAll(entry.getValue());
+            }
+        }
+        return recipients;
+    }
+
+    private boolean appliesTo(ChangeRecord record, long orgId, long accountId) {
+        if (ChangeOutbox.AGGREGATE_ATTENDANCE.equals(record.getAggregateType())) {
+            return record.getAggregateId() == accountId;
+        }
+
+        int entityTypeId = ((Number) record.getPayload().get("entityTypeId")).intValue();
+        long entityId = ((Number) record.getPayload().get("entityId")).longValue();
+        switch (entityTypeId) {
+            case EntityTypes.USER:
+                return entityId == accountId;
+            case EntityTypes.ORG:
+                return entityId == orgId;
+            default:
+                return membersOf(orgId, entityTypeId, entityId).contains(accountId);
+        }
+    }
+
+    private LongHashSet membersOf(long orgId, int entityTypeId, long entityId) {
+        return entityTypeId == EntityTypes.TEAM
+                ? membershipIndex.membersOfTeam(orgId, entityId)
+                : membershipIndex.membersOfProject(orgId, entityId);
+    }
+
+    private static boolean isPushed(ChangeRecord record) {
+        return ChangeOutbox.AGGREGATE_PUNCH_REQUEST.equals(record.getAggregateType())
+                || ChangeOutbox.AGGREGATE_ATTENDANCE.equals(record.getAggregateType());
+    }
+
+    private boolean send(PushSession session, long seq, String json) {
+        if (!session.isOpen()) {
+            disconnect(session);
+            return false;
+        }
+        try {
+            return session.sendChange(seq, json);
+        } catch (Exception e) {
+            // The client resumes from its last token after reconnecting
+            logger.warn("Failed to push change {} to session {}: {}", seq, session.getId(), e.getMessage());
+            disconnect(session);
+            return false;
+        }
+    }
+
+    private void sendControl(PushSession session, String type, long seq) {
+        PushMessage message = new PushMessage();
+        message.setType(type);
+        message.setResumeToken(String.valueOf(seq));
+        message.setOrgId(session.getOrgId());
+        try {
+            session.send(toJson(message));
+        } catch (Exception e) {
+            logger.warn("Failed to send {} to session {}: {}", type, session.getId(), e.getMessage());
+            disconnect(session);
+        }
+    }
+
+    private static PushMessage toMessage(ChangeRecord record) {
+        PushMessage message = new PushMessage();
+        message.setType(record.getAggregateType());
+        message.setChange(record.getChangeType());
+        message.setResumeToken(String.valueOf(record.getSeq()));
+        message.setOrgId(record.getOrgId());
+        message.setAggregateId(record.getAggregateId());
+        message.setData(record.getPayload());
+        return message;
+    }
+
+    private String toJson(PushMessage message) {
+        try {
+            return objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize push message", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.tse.core_application.service.push;
+
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+
+/**
+ * One connected client: the account it listens for and the last change it was sent.
+ * Sends and the resume replay are serialized on the instance, so a client never sees a
+ * change twice or out of order.
+ */
+public class PushSession {
+
+    private final WebSocketSession session;
+    private final long orgId;
+    private final long accountId;
+    private long lastSeq;
+
+    public PushSession(WebSocketSession session, long orgId, long accountId) {
+        this.session = session;
+        this.orgId = orgId;
+        this.accountId = accountId;
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    public long getOrgId() {
+        return orgId;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public boolean isOpen() {
+        return session.isOpen();
+    }
+
+    synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    synchronized void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    /**
+     * Send a change unless the client already has it.
+     */
+    synchronized boolean sendChange(long seq, String json) throws IOException {
+        if (seq <= lastSeq) {
+            return false;
+        }
+        session.sendMessage(new TextMessage(json));
+        lastSeq = seq;
+        return true;
+    }
+
+    synchronized void send(String json) throws IOException {
+        session.sendMessage(new TextMessage(json));
+    }
+}
@@ -0,0 +1,172 @@
+package com.tse.core_application.service.roster;
+
+import com.tse.core_application.repository.roster.OrgAccountRosterRepository;
+import com.tse.core_application.service.dir.DirectoryProvider;
+import com.tse.core_application.service.dir.EntityRef;
+import com.tse.core_application.service.membership.MembershipChangedEvent;
+import com.tse.core_application.util.collection.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maintains the set of accounts belonging to each org.
+ *
+ * The roster is sourced from DirectoryProvider when it returns users for the org (authoritative),
+ * otherwise from the org_account_roster table, which is upserted on an account's first attendance
+ * event. Each org's roster is cached in memory as a primitive long set and refreshed after a TTL,
+ * so org-wide resolution never scans the event or day tables.
+ */
+@Service
+public class OrgRosterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrgRosterService.class);
+
+    private final OrgAccountRosterRepository rosterRepository;
+    private final DirectoryProvider directoryProvider;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ConcurrentHashMap<Long, Roster> rosters = new ConcurrentHashMap<>();
+
+    @Value("${attendance.roster.cache-ttl-seconds:600}")
+    private long cacheTtlSeconds;
+
+    public OrgRosterService(OrgAccountRosterRepository rosterRepository,
+                            DirectoryProvider directoryProvider,
+                            ApplicationEventPublisher eventPublisher) {
+        this.rosterRepository = rosterRepository;
+        this.directoryProvider = directoryProvider;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Ensure the account is on the org's roster.
+     * Costs no DB round trip once the account is known to the cached roster. The cached roster
+     * only learns the account once the caller's transaction commits, so a rollback leaves no
+     * phantom member behind. An account new to the roster is announced with a
+     * MembershipChangedEvent; its listeners run once the caller's transaction commits and only
+     * refresh state derived for that account, so the caller holds none of their locks.
+     */
+    @Transactional
+    public void recordAccount(long orgId, long accountId) {
+        Roster roster = getRoster(orgId);
+        if (roster.contains(accountId)) {
+            return;
+        }
+
+        int inserted = rosterRepository.upsert(orgId, accountId);
+        afterCommit(() -> roster.add(accountId));
+
+        if (inserted > 0) {
+            logger.debug("Added account {} to roster of org {}", accountId, orgId);
+            eventPublisher.publishEvent(new MembershipChangedEvent(orgId, Collections.singletonList(accountId)));
+        }
+    }
+
+    /**
+     * Returns a snapshot of all account IDs on the org's roster.
+     */
+    public long[] getAccountIds(long orgId) {
+        return getRoster(orgId).toArray();
+    }
+
+    public boolean isOnRoster(long orgId, long accountId) {
+        return getRoster(orgId).contains(accountId);
+    }
+
+    /**
+     * Drop the cached roster so the next read reloads it.
+     */
+    public void evict(long orgId) {
+        rosters.remove(orgId);
+    }
+
+    /**
+     * The org's cached roster, reloaded once expired. The roster is loaded outside the map and
+     * then installed with putIfAbsent / replace, so the directory or DB call never holds a map
+     * bin lock; a thread that loses the install race uses the roster installed by the winner.
+     */
+    private Roster getRoster(long orgId) {
+        while (true) {
+            long now = System.currentTimeMillis();
+            Roster roster = rosters.get(orgId);
+            if (roster != null && !roster.isExpired(now, cacheTtlSeconds)) {
+                return roster;
+            }
+            Roster fresh = loadRoster(orgId, now);
+            boolean installed = roster == null
+                    ? rosters.putIfAbsent(orgId, fresh) == null
+                    : rosters.replace(orgId, roster, fresh);
+            if (installed) {
+                return fresh;
+            }
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private Roster loadRoster(long orgId, long now) {
+        List<EntityRef> directoryUsers = directoryProvider.listUsersByOrg(orgId);
+
+        LongHashSet accountIds;
+        if (directoryUsers != null && !directoryUsers.isEmpty()) {
+            accountIds = new LongHashSet(directoryUsers.size());
+            for (EntityRef user : directoryUsers) {
+                accountIds.add(user.getId());
+            }
+        } else {
+            accountIds = LongHashSet.of(rosterRepository.findAccountIdsByOrgId(orgId));
+        }
+
+        logger.debug("Loaded roster for org {} with {} accounts", orgId, accountIds.size());
+        return new Roster(accountIds, now);
+    }
+
+    /**
+     * Cached roster of one org, guarded by its own monitor.
+     */
+    private static final class Roster {
+        private final LongHashSet accountIds;
+        private final long loadedAtMillis;
+
+        Roster(LongHashSet accountIds, long loadedAtMillis) {
+            this.accountIds = accountIds;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+
+        boolean isExpired(long nowMillis, long ttlSeconds) {
+            return nowMillis - loadedAtMillis > ttlSeconds * 1000L;
+        }
+
+        synchronized boolean contains(long accountId) {
+            return accountIds.contains(accountId);
+        }
+
+        synchronized void add(long accountId) {
+            accountIds.add(accountId);
+        }
+
+        synchronized long[] toArray() {
+            return accountIds.toArray();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.tse.core_application.service.scheduler;
+
+import com.tse.core_application.service.archive.ArchiveStore;
+import com.tse.core_application.service.archive.ColdArchiveReader;
+import com.tse.core_application.service.archive.ColdArchiveWriter;
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import com.tse.core_application.service.metrics.MetricsSource;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Maintains the monthly partitions of attendance_event (see V16).
+ *
+ * Creation: the current UTC month and the months-ahead months after it always exist. Runs at
+ * startup on every node and daily under the partition lease; creating a partition is
+ * idempotent. An insert outside every monthly partition lands in the default partition (V21);
+ * its row count is reported as defaultPartitionRows and logged as an error while it is not 0.
+ *
+ * Retention: a month older than retention-months is written to the cold archive if it is not
+ * there yet (see ColdArchiveWriter), detached and exported with COPY to a gzipped CSV. The
+ * export is written to the {@link ArchiveStore} under partition-exports/ before the partition
+ * is dropped, so no node's local disk holds the only copy and the dropped rows leave Postgres.
+ * Every step can be repeated, so a month left detached by an interrupted run is finished by
+ * the next one.
+ *
+ * Reports of a dropped month can only come from the cold archive, which every node reads from
+ * the archive store. A partition is therefore only dropped once the archive of its month holds
+ * as many events as the detached partition; otherwise the month is archived again, and if it
+ * still does not match (or the archive is disabled) the drop is refused and logged. For the
+ * same reason retention-months may not be below attendance.cold-archive.hot-months.
+ */
+@Component
+public class AttendanceEventPartitionManager implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttendanceEventPartitionManager.class);
+
+    /**
+     * Lease key in scheduler_org_lease. Org IDs start at 1 and the change relay uses 0.
+     */
+    static final long PARTITION_LEASE_KEY = -1L;
+
+    private static final String PARTITION_PREFIX = "attendance_event_p";
+    private static final String DEFAULT_PARTITION = "attendance_event_default";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterCoordinator clusterCoordinator;
+    private final TransactionTemplate transactionTemplate;
+    private final ColdArchiveWriter coldArchiveWriter;
+    private final ColdArchiveReader coldArchiveReader;
+    private final ArchiveStore archiveStore;
+
+    private final AtomicLong partitionsCreated = new AtomicLong();
+    private final AtomicLong partitionsArchived = new AtomicLong();
+    private final AtomicLong rowsArchived = new AtomicLong();
+    private final AtomicLong dropsRefused = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long defaultPartitionRows;
+    private volatile LocalDateTime lastRunAt;
+
+    @Value("${attendance.partition.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${attendance.partition.retention-months:24}")
+    private int retentionMonths;
+
+    public AttendanceEventPartitionManager(JdbcTemplate jdbcTemplate,
+                                           ClusterCoordinator clusterCoordinator,
+                                           PlatformTransactionManager transactionManager,
+                                           ColdArchiveWriter coldArchiveWriter,
+                                           ColdArchiveReader coldArchiveReader,
+                                           ArchiveStore archiveStore) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clusterCoordinator = clusterCoordinator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.coldArchiveWriter = coldArchiveWriter;
+        this.coldArchiveReader = coldArchiveReader;
+        this.archiveStore = archiveStore;
+    }
+
+    @PostConstruct
+    public void validateRetention() {
+        int hotMonths = coldArchiveReader.getHotMonths();
+        if (retentionMonths > 0 && retentionMonths < hotMonths) {
+            throw new IllegalStateException("attendance.partition.retention-months (" + retentionMonths +
+                    ") must not be below attendance.cold-archive.hot-months (" + hotMonths +
+                    "): months in between would be dropped while reports still read them from the database");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            ensurePartitions();
+            checkDefaultPartition();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("Failed to create attendance_event partitions at startup: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Scheduled job: create upcoming partitions and archive expired ones.
+     * Runs daily at 02:30.
+     */
+    @Scheduled(cron = "${attendance.partition.maintain-cron:0 30 2 * * ?}")
+    public void maintainPartitions() {
+        if (!clusterCoordinator.tryAcquire(PARTITION_LEASE_KEY)) {
+            return;
+        }
+
+        lastRunAt = LocalDateTime.now();
+        try {
+            ensurePartitions();
+            checkDefaultPartition();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("Failed to create attendance_event partitions: {}", e.getMessage(), e);
+        }
+        try {
+            archiveExpiredPartitions();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("Failed to archive attendance_event partitions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Create the partitions of the current month and the next months-ahead months if missing.
+     *
+     * @return number of partitions created
+     */
+    public int ensurePartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        int created = 0;
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            Boolean missing = jdbcTemplate.queryForObject(
+                    "SELECT to_regclass(?) IS NULL", Boolean.class, partitionName(month));
+            if (Boolean.TRUE.equals(missing)) {
+                jdbcTemplate.queryForObject("SELECT ensure_attendance_event_partition(?)", String.class,
+                        Date.valueOf(month.atDay(1)));
+                created++;
+            }
+        }
+
+        if (created > 0) {
+            partitionsCreated.addAndGet(created);
+            logger.info("Created {} attendance_event partitions up to {}", created, current.plusMonths(monthsAhead));
+        }
+        return created;
+    }
+
+    /**
+     * Count the rows in the default partition: events outside every monthly partition. Creating
+     * their month moves them out of it; rows of a month that was already dropped stay there
+     * until someone deals with them.
+     *
+     * @return number of rows in the default partition
+     */
+    public long checkDefaultPartition() {
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + DEFAULT_PARTITION, Long.class);
+        defaultPartitionRows = rows != null ? rows : 0L;
+        if (defaultPartitionRows > 0) {
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "SELECT MIN(ts_utc) AS first_ts, MAX(ts_utc) AS last_ts FROM " + DEFAULT_PARTITION);
+            logger.error("{} attendance_event rows from {} to {} are outside every monthly partition (in {})",
+                    defaultPartitionRows, range.get("first_ts"), range.get("last_ts"), DEFAULT_PARTITION);
+        }
+        return defaultPartitionRows;
+    }
+
+    /**
+     * Detach, export and drop every month older than the retention window.
+     *
+     * @return number of partitions archived
+     */
+    public int archiveExpiredPartitions() throws IOException {
+        if (retentionMonths <= 0) {
+            return 0;
+        }
+        YearMonth oldestKept = YearMonth.now(ZoneOffset.UTC).minusMonths(retentionMonths);
+
+        // Attached partitions and tables left detached by an interrupted run
+        List<String> tables = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                "WHERE n.nspname = current_schema() AND c.relkind = 'r' " +
+                "AND c.relname ~ '^attendance_event_p[0-9]{4}_[0-9]{2}$' ORDER BY c.relname",
+                String.class);
+
+        int archived = 0;
+        for (String table : tables) {
+            YearMonth month = YearMonth.parse(table.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (!month.isBefore(oldestKept)) {
+                break;
+            }
+            if (archive(table, month)) {
+                archived++;
+            }
+        }
+        return archived;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "partitions";
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        List<String> attached = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'attendance_event'::regclass AND c.relname <> '" + DEFAULT_PARTITION + "' " +
+                "ORDER BY c.relname",
+                String.class);
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("partitions", attached.size());
+        metrics.put("oldestPartition", attached.isEmpty() ? null : attached.get(0));
+        metrics.put("newestPartition", attached.isEmpty() ? null : attached.get(attached.size() - 1));
+        metrics.put("defaultPartitionRows", defaultPartitionRows);
+        metrics.put("partitionsCreated", partitionsCreated.get());
+        metrics.put("partitionsArchived", partitionsArchived.get());
+        metrics.put("rowsArchived", rowsArchived.get());
+        metrics.put("dropsRefused", dropsRefused.get());
+        metrics.put("failures", failures.get());
+        metrics.put("lastRunAt", lastRunAt);
+        return metrics;
+    }
+
+    public static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    /**
+     * Key of the partition's export in the archive store.
+     */
+    static String exportKey(String table) {
+        return "partition-exports/" + table + ".csv.gz";
+    }
+
+    /**
+     * @return true if the partition was dropped, false if the drop was refused
+     */
+    private boolean archive(String table, YearMonth month) throws IOException {
+        // Reports of the month are served from the cold archive once the partition is gone
+        coldArchiveWriter.archiveMonth(month);
+        if (coldArchiveReader.archivedEventCount(month) == null) {
+            dropsRefused.incrementAndGet();
+            logger.error("Not dropping partition {}: {} is not in the cold archive (attendance.cold-archive.enabled?)",
+                    table, month);
+            return false;
+        }
+
+        // Table names come from pg_class and match the partition pattern, so they are safe to inline
+        Boolean attached = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = to_regclass(?) " +
+                "AND inhparent = 'attendance_event'::regclass)", Boolean.class, table);
+        if (Boolean.TRUE.equals(attached)) {
+            jdbcTemplate.execute("ALTER TABLE attendance_event DETACH PARTITION " + table);
+        }
+
+        // Detached, the partition no longer changes: rows added to the month since it was
+        // archived are written to the archive again before the drop
+        Long partitionRows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+        if (!partitionRows.equals(coldArchiveReader.archivedEventCount(month))) {
+            coldArchiveWriter.rewriteMonth(month);
+        }
+        Long archivedRows = coldArchiveReader.archivedEventCount(month);
+        if (!partitionRows.equals(archivedRows)) {
+            dropsRefused.incrementAndGet();
+            logger.error("Not dropping partition {}: the cold archive of {} holds {} of its {} rows",
+                    table, month, archivedRows, partitionRows);
+            return false;
+        }
+
+        // The export is spooled to a temp file, since the connection is busy with the COPY, then
+        // streamed to the archive store; the partition is only dropped once the store has it
+        Path spool = Files.createTempFile(table, ".csv.gz");
+        try {
+            Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+                CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(spool))) {
+                    return copyManager.copyOut("COPY (SELECT * FROM " + table + " ORDER BY org_id, account_id, ts_utc) " +
+                            "TO STDOUT WITH (FORMAT csv, HEADER)", out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            Timestamp rangeStart = Timestamp.from(month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+            Timestamp rangeEnd = Timestamp.from(month.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+            long rowCount = rows != null ? rows : 0L;
+            String key = exportKey(table);
+            try (InputStream in = Files.newInputStream(spool)) {
+                archiveStore.put(key, in);
+            }
+            transactionTemplate.execute(status -> {
+                jdbcTemplate.update(
+                        "INSERT INTO attendance_event_archive (partition_name, range_start, range_end, row_count, archive_path, archive_key) " +
+                        "VALUES (?, ?, ?, ?, NULL, ?) ON CONFLICT (partition_name) DO UPDATE SET row_count = EXCLUDED.row_count, " +
+                        "archive_path = NULL, archive_key = EXCLUDED.archive_key, archived_at = NOW()",
+                        table, rangeStart, rangeEnd, rowCount, key);
+                // Chunks of an export stored in the database before the archive store
+                jdbcTemplate.update("DELETE FROM attendance_event_archive_chunk WHERE partition_name = ?", table);
+                jdbcTemplate.execute("DROP TABLE " + table);
+                return null;
+            });
+
+            partitionsArchived.incrementAndGet();
+            rowsArchived.addAndGet(rowCount);
+            logger.info("Archived partition {} ({} rows, {} bytes to {} in the {} store)",
+                    table, rowCount, Files.size(spool), key, archiveStore.getStoreName());
+            return true;
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+}
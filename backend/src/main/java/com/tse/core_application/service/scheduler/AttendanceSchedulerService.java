@@ -13,15 +13,26 @@ import com.tse.core_application.repository.attendance.AttendanceDayRepository;
 import com.tse.core_application.repository.attendance.AttendanceEventRepository;
 import com.tse.core_application.repository.policy.AttendancePolicyRepository;
 import com.tse.core_application.repository.punch.PunchRequestRepository;
-import com.tse.core_application.service.attendance.DayRollupService;
-import com.tse.core_application.service.attendance.HolidayProvider;
 import com.tse.core_application.service.attendance.OfficePolicyProvider;
-import com.tse.core_application.service.membership.MembershipProvider;
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import com.tse.core_application.service.membership.MembershipIndex;
+import com.tse.core_application.service.notification.NotificationBatch;
+import com.tse.core_application.service.notification.NotificationDispatcher;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.punch.ActivePunchRequestRegistry;
+import com.tse.core_application.service.punch.PunchExpiryQueue;
+import com.tse.core_application.service.push.PushChangeRecorder;
+import com.tse.core_application.service.roster.OrgRosterService;
+import com.tse.core_application.util.DateTimeUtils;
+import com.tse.core_application.util.collection.LongHashSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.*;
 import java.util.*;
@@ -36,34 +47,65 @@ public class AttendanceSchedulerService {
 
     private static final Logger logger = LogManager.getLogger(AttendanceSchedulerService.class);
 
+    static final String NOTIFY_JOB = "notify-before-shift-start";
+    static final String AUTO_CHECKOUT_JOB = "auto-checkout";
+
     private final AttendancePolicyRepository policyRepository;
     private final AttendanceEventRepository eventRepository;
     private final AttendanceDayRepository dayRepository;
     private final OfficePolicyProvider officePolicyProvider;
-    private final HolidayProvider holidayProvider;
-    private final DayRollupService dayRollupService;
     private final PunchRequestRepository punchRequestRepository;
-    private final MembershipProvider membershipProvider;
-    // TODO: Inject notification service when available
-    // private final NotificationService notificationService;
+    private final MembershipIndex membershipIndex;
+    private final PunchExpiryQueue punchExpiryQueue;
+    private final OrgRosterService orgRosterService;
+    private final AutoCheckoutBatchProcessor autoCheckoutBatchProcessor;
+    private final ClusterCoordinator clusterCoordinator;
+    private final NotificationDispatcher notificationDispatcher;
+    private final SchedulerExecutors schedulerExecutors;
+    private final PushChangeRecorder pushChangeRecorder;
+    private final ActivePunchRequestRegistry activePunchRequestRegistry;
+    private final SchedulerJobRuns schedulerJobRuns;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${attendance.punch.expiry.batch-size:500}")
+    private int expiryBatchSize;
+
+    @Value("${attendance.notify.batch-size:500}")
+    private int notifyBatchSize;
 
     public AttendanceSchedulerService(
             AttendancePolicyRepository policyRepository,
             AttendanceEventRepository eventRepository,
             AttendanceDayRepository dayRepository,
             OfficePolicyProvider officePolicyProvider,
-            HolidayProvider holidayProvider,
-            DayRollupService dayRollupService,
             PunchRequestRepository punchRequestRepository,
-            MembershipProvider membershipProvider) {
+            MembershipIndex membershipIndex,
+            PunchExpiryQueue punchExpiryQueue,
+            OrgRosterService orgRosterService,
+            AutoCheckoutBatchProcessor autoCheckoutBatchProcessor,
+            ClusterCoordinator clusterCoordinator,
+            NotificationDispatcher notificationDispatcher,
+            SchedulerExecutors schedulerExecutors,
+            PushChangeRecorder pushChangeRecorder,
+            ActivePunchRequestRegistry activePunchRequestRegistry,
+            SchedulerJobRuns schedulerJobRuns,
+            PlatformTransactionManager transactionManager) {
         this.policyRepository = policyRepository;
         this.eventRepository = eventRepository;
         this.dayRepository = dayRepository;
         this.officePolicyProvider = officePolicyProvider;
-        this.holidayProvider = holidayProvider;
-        this.dayRollupService = dayRollupService;
         this.punchRequestRepository = punchRequestRepository;
-        this.membershipProvider = membershipProvider;
+        this.membershipIndex = membershipIndex;
+        this.punchExpiryQueue = punchExpiryQueue;
+        this.orgRosterService = orgRosterService;
+        this.autoCheckoutBatchProcessor = autoCheckoutBatchProcessor;
+        this.clusterCoordinator = clusterCoordinator;
+        this.notificationDispatcher = notificationDispatcher;
+        this.schedulerExecutors = schedulerExecutors;
+        this.pushChangeRecorder = pushChangeRecorder;
+        this.activePunchRequestRegistry = activePunchRequestRegistry;
+        this.schedulerJobRuns = schedulerJobRuns;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
@@ -116,10 +158,8 @@ public class AttendanceSchedulerService {
      * Called by scheduler or manually via controller.
      */
     public void processNotifyBeforeShiftStart() {
-        // Get all policies where geo-fencing is active
-        List<AttendancePolicy> activePolicies = policyRepository.findAll().stream()
-                .filter(policy -> policy.getIsActive() != null && policy.getIsActive())
-                .collect(Collectors.toList());
+        // Get all policies where geo-fencing is active, of orgs owned by this node
+        List<AttendancePolicy> activePolicies = ownedActivePolicies();
 
         if (activePolicies.isEmpty()) {
             logger.info("No active attendance policies found");
@@ -128,18 +168,32 @@ public class AttendanceSchedulerService {
 
         logger.info("Processing shift notifications for " + activePolicies.size() + " organizations");
 
-        // Process each organization in parallel for optimization
-        activePolicies.parallelStream().forEach(policy -> {
-            try {
-                processOrgNotification(policy);
-            } catch (Exception e) {
-                logger.error("Error processing notification for orgId=" + policy.getOrgId() + ": " + e.getMessage(), e);
+        // One task per org on a bounded executor, each in its own transaction
+        schedulerExecutors.runPerOrgInTransaction("scheduler-notify", activePolicies,
+                AttendancePolicy::getOrgId, this::processOrgNotification);
+    }
+
+    /**
+     * Active policies of the orgs this node holds the lease for. The lease is checked (and
+     * possibly written) here, outside any stream pipeline.
+     */
+    private List<AttendancePolicy> ownedActivePolicies() {
+        List<AttendancePolicy> owned = new ArrayList<>();
+        for (AttendancePolicy policy : policyRepository.findAll()) {
+            if (policy.getIsActive() == null || !policy.getIsActive()) {
+                continue;
+            }
+            if (clusterCoordinator.tryAcquire(policy.getOrgId())) {
+                owned.add(policy);
             }
-        });
+        }
+        return owned;
     }
 
     /**
      * Process shift notification for a single organization.
+     * Runs once per day, at the trigger time or within the catch-up window after it if that
+     * minute was missed (see SchedulerJobRuns).
      */
     private void processOrgNotification(AttendancePolicy policy) {
         Long orgId = policy.getOrgId();
@@ -154,100 +208,87 @@ public class AttendanceSchedulerService {
 
         // Get current time in org's timezone
         ZoneId zoneId = ZoneId.of(timezone);
-        LocalTime currentTime = LocalTime.now(zoneId);
+        LocalDateTime now = LocalDateTime.now(zoneId);
 
-        // Check if current time matches trigger time (rounded to minute)
-        if (currentTime.getHour() == triggerTime.getHour() &&
-            currentTime.getMinute() == triggerTime.getMinute()) {
+        // Due from the trigger minute until the catch-up window closes, once per day
+        LocalDateTime window = schedulerJobRuns.dueWindow(now, triggerTime);
+        if (window != null && !schedulerJobRuns.hasRun(orgId, NOTIFY_JOB, window.toLocalDate())) {
 
-            logger.info("Trigger time matched for orgId=" + orgId +
-                       ". Sending notifications. TriggerTime=" + triggerTime +
-                       ", CurrentTime=" + currentTime);
+            logger.info("Trigger time reached for orgId=" + orgId +
+                       ". Sending notifications. TriggerTime=" + window +
+                       ", CurrentTime=" + now);
 
-            // Get all active users for this org (excluding already checked-in users)
-            List<Long> usersToNotify = getUsersToNotify(orgId);
+            // Roster accounts that have not checked in yet
+            long[] usersToNotify = getUsersToNotify(orgId);
 
-            if (!usersToNotify.isEmpty()) {
-                logger.info("Sending shift notifications to " + usersToNotify.size() +
+            if (usersToNotify.length > 0) {
+                logger.info("Sending shift notifications to " + usersToNotify.length +
                            " users for orgId=" + orgId);
 
                 sendShiftNotifications(orgId, usersToNotify, officeStartTime);
 
                 // TODO: Record audit log
-                logger.info("Notifications sent to users: " + usersToNotify);
             } else {
                 logger.info("No users to notify for orgId=" + orgId);
             }
+
+            schedulerJobRuns.markRun(orgId, NOTIFY_JOB, window.toLocalDate());
         }
     }
 
     /**
-     * Get list of users to notify (exclude already checked-in users).
+     * Get users to notify: the org roster minus accounts that already checked in today.
+     * Checked-in accounts come from one indexed (org_id, date_key) query.
      */
-    private List<Long> getUsersToNotify(Long orgId) {
-        // TODO: Replace with actual user service integration
-        // For now, this is a placeholder that gets users who haven't checked in today
-
+    private long[] getUsersToNotify(Long orgId) {
         LocalDate today = LocalDate.now(ZoneId.of(officePolicyProvider.getOperationalTimezone(orgId)));
 
-        // Get all attendance days for today in this org
-        List<AttendanceDay> todayAttendance = dayRepository.findAll().stream()
-                .filter(day -> day.getOrgId().equals(orgId) && day.getDateKey().equals(today))
-                .collect(Collectors.toList());
-
-        // Get users who already checked in (have firstInUtc set)
-        Set<Long> checkedInUsers = todayAttendance.stream()
-                .filter(day -> day.getFirstInUtc() != null)
-                .map(AttendanceDay::getAccountId)
-                .collect(Collectors.toSet());
-
-        // TODO: Get all active users from org and filter out checked-in users
-        // For now, returning empty list as we need integration with user service
-        // Example:
-        // List<Long> allActiveUsers = userService.getActiveUsersForOrg(orgId);
-        // return allActiveUsers.stream()
-        //     .filter(userId -> !checkedInUsers.contains(userId))
-        //     .collect(Collectors.toList());
-
+        LongHashSet checkedInUsers = LongHashSet.of(dayRepository.findCheckedInAccountIds(orgId, today));
         logger.info("Users already checked in for orgId=" + orgId + ": " + checkedInUsers.size());
-        return new ArrayList<>();  // Placeholder - needs user service integration
+
+        long[] roster = orgRosterService.getAccountIds(orgId);
+        long[] pending = new long[roster.length];
+        int count = 0;
+        for (long accountId : roster) {
+            if (!checkedInUsers.contains(accountId)) {
+                pending[count++] = accountId;
+            }
+        }
+        return Arrays.copyOf(pending, count);
     }
 
     /**
      * Send shift start notifications to users.
+     * Recipients are split into batches and handed to the NotificationDispatcher, which
+     * rate-limits and retries delivery on its own workers.
      */
-    private void sendShiftNotifications(Long orgId, List<Long> accountIds, LocalTime officeStartTime) {
-        // TODO: Implement notification sending using the pattern from the example
-        // This would follow the pattern:
-        // 1. Create Notification entity
-        // 2. Save to database
-        // 3. Create notification views for each user
-        // 4. Format payloads
-        // 5. Send via FCM (taskService.sendPushNotification)
-
+    private void sendShiftNotifications(Long orgId, long[] accountIds, LocalTime officeStartTime) {
         String notificationMessage = String.format(
             "Reminder: Please check in. Your office hours start at %s.",
             officeStartTime.toString()
         );
 
-        logger.info("Notification message for orgId=" + orgId + ": " + notificationMessage);
-        logger.info("Would send notifications to " + accountIds.size() + " users");
+        int dropped = 0;
+        for (int from = 0; from < accountIds.length; from += notifyBatchSize) {
+            long[] chunk = Arrays.copyOfRange(accountIds, from, Math.min(from + notifyBatchSize, accountIds.length));
+            if (!notificationDispatcher.submit(new NotificationBatch(orgId, chunk, notificationMessage))) {
+                dropped += chunk.length;
+            }
+        }
 
-        // TODO: Implement actual notification logic:
-        // List<HashMap<String, String>> payloads = createNotificationPayloads(orgId, accountIds, notificationMessage);
-        // notificationService.sendPushNotification(payloads);
+        if (dropped > 0) {
+            logger.warn("Dropped " + dropped + " shift notifications for orgId=" + orgId + " (dispatch queue full)");
+        }
     }
 
     /**
      * Process auto-checkout for all organizations.
      * Called by scheduler or manually via controller.
+     * Not transactional: each org commits its work in chunks (see AutoCheckoutBatchProcessor).
      */
-    @Transactional
     public void processAutoCheckout() {
-        // Get all active policies
-        List<AttendancePolicy> activePolicies = policyRepository.findAll().stream()
-                .filter(policy -> policy.getIsActive() != null && policy.getIsActive())
-                .collect(Collectors.toList());
+        // Get all active policies of orgs owned by this node
+        List<AttendancePolicy> activePolicies = ownedActivePolicies();
 
         if (activePolicies.isEmpty()) {
             logger.info("No active attendance policies found for auto-checkout");
@@ -256,14 +297,9 @@ public class AttendanceSchedulerService {
 
         logger.info("Processing auto-checkout for " + activePolicies.size() + " organizations");
 
-        // Process each organization in parallel for optimization
-        activePolicies.parallelStream().forEach(policy -> {
-            try {
-                processOrgAutoCheckout(policy);
-            } catch (Exception e) {
-                logger.error("Error processing auto-checkout for orgId=" + policy.getOrgId() + ": " + e.getMessage(), e);
-            }
-        });
+        // One task per org on a bounded executor; each org commits in chunked transactions
+        schedulerExecutors.runPerOrg("scheduler-auto-checkout", activePolicies,
+                AttendancePolicy::getOrgId, this::processOrgAutoCheckout);
     }
 
     /**
@@ -273,8 +309,11 @@ public class AttendanceSchedulerService {
      * - Missing break end
      * - Respects holidays (only process if non-holiday or if check-in exists on holiday)
      * - Handles day boundary crossing (e.g., office end at 11:55 PM + 20 min grace = next day)
+     * Runs once per office day, at the cutoff or within the catch-up window after it if that
+     * minute was missed (see SchedulerJobRuns). The day only counts as run once every chunk
+     * committed; a cancelled or partly failed run is repeated on the next tick of the window.
+     * The missing events and day rollups are written set-based by AutoCheckoutBatchProcessor.
      */
-    @Transactional
     public void processOrgAutoCheckout(AttendancePolicy policy) {
         Long orgId = policy.getOrgId();
         String timezone = officePolicyProvider.getOperationalTimezone(orgId);
@@ -286,37 +325,21 @@ public class AttendanceSchedulerService {
 
         // Calculate cutoff time for auto-checkout
         LocalDateTime now = LocalDateTime.now(zoneId);
-        LocalDate today = now.toLocalDate();
-
-        // Calculate when TODAY's office ends and its cutoff
-        LocalDateTime todayOfficeEnd = today.atTime(officeEndTime);
-        LocalDateTime todayCutoff = todayOfficeEnd.plusMinutes(maxCheckoutAfterEndMin);
-
-        // Determine which date to process based on whether cutoff crosses midnight
-        final LocalDate dateToProcess;
-        final LocalDateTime cutoffDateTime;
+        LocalTime cutoffTime = officeEndTime.plusMinutes(maxCheckoutAfterEndMin);
 
-        if (todayCutoff.toLocalDate().equals(today)) {
-            // Cutoff is still today (no midnight crossing)
-            // Example: Office ends 5 PM, grace 60 min = cutoff 6 PM (same day)
-            dateToProcess = today;
-            cutoffDateTime = todayCutoff;
-        } else {
-            // Cutoff is tomorrow (crossed midnight)
-            // Example: Office ends 11:55 PM, grace 20 min = cutoff 12:15 AM (next day)
-            // When it's 12:15 AM on Oct 6, we process Oct 5's data
-            dateToProcess = today.minusDays(1);
-            cutoffDateTime = dateToProcess.atTime(officeEndTime).plusMinutes(maxCheckoutAfterEndMin);
+        // Most recent cutoff, if it is still within the catch-up window
+        LocalDateTime cutoffDateTime = schedulerJobRuns.dueWindow(now, cutoffTime);
+        if (cutoffDateTime == null) {
+            return;
         }
 
-        // Check if current time matches cutoff time (hour and minute)
-        // This ensures the scheduler runs only ONCE per day at the exact cutoff time
-        LocalTime cutoffTime = cutoffDateTime.toLocalTime();
-        LocalTime currentTime = now.toLocalTime();
+        // The office day the cutoff belongs to; the cutoff may cross midnight
+        // Example: Office ends 11:55 PM, grace 20 min = cutoff 12:15 AM (next day)
+        // When it's 12:15 AM on Oct 6, we process Oct 5's data
+        LocalDate dateToProcess = cutoffDateTime.minusMinutes(maxCheckoutAfterEndMin).toLocalDate();
 
-        if (currentTime.getHour() != cutoffTime.getHour() ||
-            currentTime.getMinute() != cutoffTime.getMinute()) {
-            // Not the exact cutoff minute, skip
+        // Runs only ONCE per office day, whichever node reaches the window first
+        if (schedulerJobRuns.hasRun(orgId, AUTO_CHECKOUT_JOB, dateToProcess)) {
             return;
         }
 
@@ -324,212 +347,179 @@ public class AttendanceSchedulerService {
                    ". Processing auto-checkout. CutoffDateTime=" + cutoffDateTime +
                    ", CurrentDateTime=" + now + ", DateToProcess=" + dateToProcess);
 
-        // Check if dateToProcess is a holiday
-        boolean isHoliday = holidayProvider.isHoliday(orgId, dateToProcess);
-
-        // Get attendance days that need auto-checkout (optimized query)
-        // Only get records where user has checked in but not checked out
-        List<AttendanceDay> dayRecords = dayRepository.findAll().stream()
-                .filter(day -> day.getOrgId().equals(orgId) &&
-                              day.getDateKey().equals(dateToProcess) &&
-                              day.getFirstInUtc() != null &&      // Has checked in
-                              day.getLastOutUtc() == null)        // Hasn't checked out yet
-                .collect(Collectors.toList());
+        // Days with a check-in but no check-out. Holidays need no special casing:
+        // only users who actually checked in on the holiday are candidates.
+        List<AttendanceDay> dayRecords = dayRepository.findOpenDays(orgId, dateToProcess);
 
         logger.info("Found " + dayRecords.size() + " attendance records for orgId=" + orgId +
                    " on date=" + dateToProcess);
 
-        for (AttendanceDay dayRecord : dayRecords) {
-            try {
-                // If it's a holiday and no check-in, skip
-                if (isHoliday && dayRecord.getFirstInUtc() == null) {
-                    continue;
-                }
-
-                processUserAutoCheckout(orgId, dayRecord, dateToProcess, policy);
-            } catch (Exception e) {
-                logger.error("Error processing auto-checkout for accountId=" + dayRecord.getAccountId() +
-                           " in orgId=" + orgId + ": " + e.getMessage(), e);
+        if (!dayRecords.isEmpty()) {
+            AutoCheckoutBatchProcessor.Progress progress =
+                    autoCheckoutBatchProcessor.process(orgId, dateToProcess, dayRecords);
+            if (!progress.isComplete()) {
+                // Cancelled or failed chunks: left unmarked, so the next tick within the catch-up
+                // window closes the days still open
+                logger.warn("Auto-checkout incomplete for orgId=" + orgId + " on date=" + dateToProcess +
+                           " (" + progress + "), will retry");
+                return;
             }
         }
+
+        schedulerJobRuns.markRun(orgId, AUTO_CHECKOUT_JOB, dateToProcess);
     }
 
     /**
-     * Process auto-checkout for a single user.
+     * Process missed punches for expired punch requests.
+     * Called by scheduler or manually via controller.
+     *
+     * Drains every request whose expiresAt is at or before now from the expiry queue
+     * (not just the current minute), so a late or skipped tick never loses expirations.
+     * Requests of orgs without an active policy are parked, not expired. Due requests are
+     * handled in batches: each request writes its missed punch events in its own transaction,
+     * then the requests of the batch that succeeded flip to EXPIRED with a single update.
      */
-    @Transactional
-    public void processUserAutoCheckout(Long orgId, AttendanceDay dayRecord, LocalDate dateKey, AttendancePolicy policy) {
-        Long accountId = dayRecord.getAccountId();
-
-        // Get all events for this user on this day
-        LocalDateTime dayStart = dateKey.atStartOfDay();
-        LocalDateTime dayEnd = dateKey.plusDays(1).atStartOfDay();
-
-        List<AttendanceEvent> events = eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
-                orgId, accountId, dayStart, dayEnd);
-
-        if (events.isEmpty()) {
-            return;
-        }
-
-        // Determine current state by walking through events
-        boolean needsCheckout = false;
-        boolean needsBreakEnd = false;
-        EventKind lastSuccessfulEvent = null;
+    public void processMissedPunches() {
+        LocalDateTime now = LocalDateTime.now();
 
-        for (AttendanceEvent event : events) {
-            if (event.getSuccess() != null && event.getSuccess()) {
-                lastSuccessfulEvent = event.getEventKind();
-            }
+        if (clusterCoordinator.isEnabled()) {
+            // Requests may have been created on other nodes
+            punchExpiryQueue.syncDue(now);
         }
 
-        // Determine what needs to be done
-        if (lastSuccessfulEvent == EventKind.CHECK_IN) {
-            needsCheckout = true;
-        } else if (lastSuccessfulEvent == EventKind.BREAK_START) {
-            needsBreakEnd = true;
-            needsCheckout = true;  // After break end, still need checkout
-        }
+        // Missed punches are only recorded for orgs with an active policy
+        Set<Long> activeOrgIds = policyRepository.findAll().stream()
+                .filter(policy -> policy.getIsActive() != null && policy.getIsActive())
+                .map(AttendancePolicy::getOrgId)
+                .collect(Collectors.toSet());
+        punchExpiryQueue.unpark(activeOrgIds);
 
-        // Missing check-in - can't auto-checkout
-        if (dayRecord.getFirstInUtc() == null) {
-            logger.info("Skipping auto-checkout for accountId=" + accountId +
-                       " - no check-in found");
+        List<PunchExpiryQueue.Entry> dueEntries = filterOwnedEntries(punchExpiryQueue.drainDue(now));
+        if (dueEntries.isEmpty()) {
             return;
         }
 
-        // Process missing break end
-        if (needsBreakEnd) {
-            createAutoEvent(orgId, accountId, EventKind.BREAK_END, events);
-            logger.info("Created auto BREAK_END for accountId=" + accountId);
-
-            // Refresh events after creating break end
-            events = eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
-                    orgId, accountId, dayStart, dayEnd);
-        }
-
-        // Process missing checkout
-        if (needsCheckout && dayRecord.getLastOutUtc() == null) {
-            createAutoEvent(orgId, accountId, EventKind.CHECK_OUT, events);
-            logger.info("Created auto CHECK_OUT for accountId=" + accountId);
-
-            // Update day rollup
-            events = eventRepository.findByOrgIdAndAccountIdAndTsUtcBetweenOrderByTsUtcAsc(
-                    orgId, accountId, dayStart, dayEnd);
-            dayRollupService.updateDayRollup(orgId, accountId, dateKey, events);
+        logger.info("Processing " + dueEntries.size() + " expired punch requests (now=" + now + ")");
 
-            logger.info("Auto-checkout completed for accountId=" + accountId + " on date=" + dateKey);
+        for (int from = 0; from < dueEntries.size(); from += expiryBatchSize) {
+            List<PunchExpiryQueue.Entry> batch = dueEntries.subList(from, Math.min(from + expiryBatchSize, dueEntries.size()));
+            processExpiredBatch(batch, activeOrgIds, now);
         }
     }
 
     /**
-     * Create an automatic event (BREAK_END or CHECK_OUT).
+     * Keep only entries of orgs this node holds the lease for. Entries of other orgs are dropped
+     * from the local queue; their owning node picks them up through syncDue.
      */
-    private void createAutoEvent(Long orgId, Long accountId, EventKind eventKind, List<AttendanceEvent> existingEvents) {
-        AttendanceEvent autoEvent = new AttendanceEvent();
-        autoEvent.setOrgId(orgId);
-        autoEvent.setAccountId(accountId);
-        autoEvent.setEventKind(eventKind);
-        autoEvent.setEventSource(EventSource.MANUAL);  // Could also use a new EventSource.SYSTEM
-        autoEvent.setEventAction(EventAction.AUTO);
-        autoEvent.setTsUtc(LocalDateTime.now());
-        autoEvent.setSuccess(true);
-        autoEvent.setVerdict(IntegrityVerdict.PASS);
-        autoEvent.setFlags(new HashMap<>());
-
-        // Add flag to indicate this was auto-generated
-        Map<String, Object> flags = new HashMap<>();
-        flags.put("auto_checkout", true);
-        flags.put("reason", "Missing " + eventKind.name().toLowerCase() + " after grace period");
-        autoEvent.setFlags(flags);
+    private List<PunchExpiryQueue.Entry> filterOwnedEntries(List<PunchExpiryQueue.Entry> entries) {
+        if (!clusterCoordinator.isEnabled() || entries.isEmpty()) {
+            return entries;
+        }
 
-        eventRepository.save(autoEvent);
+        Map<Long, Boolean> ownership = new HashMap<>();
+        List<PunchExpiryQueue.Entry> owned = new ArrayList<>();
+        for (PunchExpiryQueue.Entry entry : entries) {
+            Boolean isOwned = ownership.get(entry.getOrgId());
+            if (isOwned == null) {
+                isOwned = clusterCoordinator.tryAcquire(entry.getOrgId());
+                ownership.put(entry.getOrgId(), isOwned);
+            }
+            if (isOwned) {
+                owned.add(entry);
+            }
+        }
+        return owned;
     }
 
     /**
-     * Process missed punches for expired punch requests.
-     * Called by scheduler or manually via controller.
+     * Process one batch of due punch requests. Each request writes its missed punch events in
+     * its own transaction, so a failing request is retried alone instead of rolling back the
+     * batch. Requests already FULFILLED or CANCELLED are skipped by the PENDING re-check.
      */
-    @Transactional
-    public void processMissedPunches() {
-        LocalDateTime now = LocalDateTime.now();
-
-        // Get all active policies
-        List<AttendancePolicy> activePolicies = policyRepository.findAll().stream()
-                .filter(policy -> policy.getIsActive() != null && policy.getIsActive())
-                .collect(Collectors.toList());
-
-        if (activePolicies.isEmpty()) {
-            logger.info("No active attendance policies found for missed punch processing");
+    private void processExpiredBatch(List<PunchExpiryQueue.Entry> batch, Set<Long> activeOrgIds, LocalDateTime now) {
+        Map<Long, PunchExpiryQueue.Entry> entriesById = new HashMap<>();
+        for (PunchExpiryQueue.Entry entry : batch) {
+            if (activeOrgIds.contains(entry.getOrgId())) {
+                entriesById.put(entry.getRequestId(), entry);
+            } else {
+                punchExpiryQueue.park(entry);
+            }
+        }
+        if (entriesById.isEmpty()) {
             return;
         }
 
-        logger.info("Processing missed punches for " + activePolicies.size() + " organizations");
+        List<PunchRequest> pendingRequests = punchRequestRepository.findByIdInAndState(
+                entriesById.keySet(), PunchRequest.State.PENDING);
 
-        // Process each organization
-        for (AttendancePolicy policy : activePolicies) {
+        List<PunchRequest> processed = new ArrayList<>(pendingRequests.size());
+        for (PunchRequest request : pendingRequests) {
+            Long orgId = request.getOrgId();
             try {
-                processOrgMissedPunches(policy.getOrgId(), now);
+                // The day the request expired on, not the day the queue is drained: catch-up
+                // after downtime or midnight may drain requests of earlier days
+                LocalDate dateKey = DateTimeUtils.convertServerDateToUserTimezone(
+                        request.getExpiresAt(), officePolicyProvider.getOperationalTimezone(orgId)).toLocalDate();
+                transactionTemplate.executeWithoutResult(status -> processExpiredPunchRequest(orgId, request, dateKey));
+                processed.add(request);
             } catch (Exception e) {
-                logger.error("Error processing missed punches for orgId=" + policy.getOrgId() + ": " + e.getMessage(), e);
+                retry(entriesById.get(request.getId()), e);
             }
         }
-    }
+        if (processed.isEmpty()) {
+            return;
+        }
 
-    /**
-     * Process missed punches for a single organization.
-     * Finds all expired punch requests and marks missed punches for users who didn't respond.
-     */
-    @Transactional
-    public void processOrgMissedPunches(Long orgId, LocalDateTime now) {
-        String timezone = officePolicyProvider.getOperationalTimezone(orgId);
-        ZoneId zoneId = ZoneId.of(timezone);
-        LocalDate today = LocalDate.now(zoneId);
-
-        // Find all punch requests that have just expired (expiresAt matches current minute)
-        List<PunchRequest> allRequests = punchRequestRepository.findAll();
-        List<PunchRequest> expiredRequests = allRequests.stream()
-                .filter(pr -> pr.getOrgId().equals(orgId))
-                .filter(pr -> pr.getState() == PunchRequest.State.PENDING)
-                .filter(pr -> {
-                    LocalDateTime expiresAt = pr.getExpiresAt();
-                    // Check if expires at current minute
-                    return expiresAt.getYear() == now.getYear() &&
-                           expiresAt.getMonthValue() == now.getMonthValue() &&
-                           expiresAt.getDayOfMonth() == now.getDayOfMonth() &&
-                           expiresAt.getHour() == now.getHour() &&
-                           expiresAt.getMinute() == now.getMinute();
-                })
+        List<Long> processedIds = processed.stream()
+                .map(PunchRequest::getId)
                 .collect(Collectors.toList());
-
-        if (expiredRequests.isEmpty()) {
-            return;
+        try {
+            transactionTemplate.executeWithoutResult(status -> expireRequests(processed, processedIds, now));
+            punchExpiryQueue.completed(processedIds);
+        } catch (Exception e) {
+            // Missed events are written once per account and request, so the retry adds none twice
+            for (Long requestId : processedIds) {
+                retry(entriesById.get(requestId), e);
+            }
         }
+    }
 
-        logger.info("Found " + expiredRequests.size() + " expired punch requests for orgId=" + orgId);
+    /**
+     * Flip processed requests to EXPIRED with one update and push the change.
+     */
+    private void expireRequests(List<PunchRequest> requests, List<Long> requestIds, LocalDateTime now) {
+        int expired = punchRequestRepository.markExpired(requestIds, now);
 
-        // Process each expired request
+        // Requests fulfilled concurrently were skipped by markExpired; only push the ones it expired
+        List<PunchRequest> expiredRequests = expired == requestIds.size()
+                ? requests
+                : punchRequestRepository.findByIdInAndState(requestIds, PunchRequest.State.EXPIRED);
         for (PunchRequest request : expiredRequests) {
-            try {
-                processExpiredPunchRequest(orgId, request, today, zoneId);
+            pushChangeRecorder.punchRequestChanged(request, PunchRequest.State.EXPIRED, ChangeOutbox.CHANGE_EXPIRED);
+            activePunchRequestRegistry.unregister(request);
+        }
 
-                // Mark request as EXPIRED
-                request.setState(PunchRequest.State.EXPIRED);
-                punchRequestRepository.save(request);
+        logger.info("Marked " + expired + " punch requests as EXPIRED");
+    }
 
-                logger.info("Marked punch request " + request.getId() + " as EXPIRED");
-            } catch (Exception e) {
-                logger.error("Error processing expired punch request " + request.getId() + ": " + e.getMessage(), e);
-            }
+    private void retry(PunchExpiryQueue.Entry entry, Exception e) {
+        if (punchExpiryQueue.retry(entry)) {
+            logger.error("Error processing expired punch request " + entry.getRequestId() +
+                       ", retrying next tick: " + e.getMessage(), e);
+        } else {
+            logger.error("Giving up on expired punch request " + entry.getRequestId() +
+                       " after repeated failures; it stays PENDING until the queue is rebuilt: " + e.getMessage(), e);
         }
     }
 
     /**
      * Process a single expired punch request.
-     * Resolves all account IDs based on entity type and marks missed punches.
+     * Resolves all account IDs based on entity type and marks missed punches. Accounts that
+     * already have an event for the request, missed ones included, are skipped, so processing a
+     * request again writes nothing twice.
      */
     @Transactional
-    public void processExpiredPunchRequest(Long orgId, PunchRequest request, LocalDate dateKey, ZoneId zoneId) {
+    public void processExpiredPunchRequest(Long orgId, PunchRequest request, LocalDate dateKey) {
         // Resolve account IDs based on entity type
         Set<Long> accountIds = resolveAccountIds(orgId, request.getEntityTypeId(), request.getEntityId());
 
@@ -543,7 +533,7 @@ public class AttendanceSchedulerService {
         // For each account, check if they missed the punch
         for (Long accountId : accountIds) {
             try {
-                processMissedPunchForAccount(orgId, accountId, request, dateKey, zoneId);
+                processMissedPunchForAccount(orgId, accountId, request, dateKey);
             } catch (Exception e) {
                 logger.error("Error processing missed punch for accountId=" + accountId +
                            " in punch request " + request.getId() + ": " + e.getMessage(), e);
@@ -555,9 +545,8 @@ public class AttendanceSchedulerService {
      * Resolve account IDs based on entity type and entity ID.
      *
      * For USER: Returns the entity ID directly as account ID.
-     * For TEAM/PROJECT/ORG: This is a simplified implementation that checks all unique account IDs
-     * from attendance events in the org. In production, this should use a dedicated UserService
-     * or AccountService to get all active users in the organization/team/project.
+     * For TEAM/PROJECT: Reverse lookup in the cached MembershipIndex.
+     * For ORG: All accounts on the org roster (see OrgRosterService), served from memory.
      */
     private Set<Long> resolveAccountIds(Long orgId, Integer entityTypeId, Long entityId) {
         Set<Long> accountIds = new HashSet<>();
@@ -566,69 +555,27 @@ public class AttendanceSchedulerService {
             // Direct user - entity ID is the account ID
             accountIds.add(entityId);
         } else if (entityTypeId == EntityTypes.TEAM) {
-            // Get all unique account IDs from attendance events for this org
-            // Then filter by team membership
-            Set<Long> allAccountIds = getAllAccountIdsInOrg(orgId);
-
-            for (Long accountId : allAccountIds) {
-                List<Long> teams = membershipProvider.listTeamsForUser(orgId, accountId);
-                if (teams.contains(entityId)) {
-                    accountIds.add(accountId);
-                }
-            }
+            // Reverse lookup: team -> member accounts
+            membershipIndex.membersOfTeam(orgId, entityId).forEach(accountIds::add);
         } else if (entityTypeId == EntityTypes.PROJECT) {
-            // Get all unique account IDs from attendance events for this org
-            // Then filter by project membership
-            Set<Long> allAccountIds = getAllAccountIdsInOrg(orgId);
-
-            for (Long accountId : allAccountIds) {
-                List<Long> projects = membershipProvider.listProjectsForUser(orgId, accountId);
-                if (projects.contains(entityId)) {
-                    accountIds.add(accountId);
-                }
-            }
+            // Reverse lookup: project -> member accounts
+            membershipIndex.membersOfProject(orgId, entityId).forEach(accountIds::add);
         } else if (entityTypeId == EntityTypes.ORG) {
-            // Get all users in the organization
-            accountIds = getAllAccountIdsInOrg(orgId);
+            // All users on the org roster
+            for (long accountId : orgRosterService.getAccountIds(orgId)) {
+                accountIds.add(accountId);
+            }
         }
 
         return accountIds;
     }
 
-    /**
-     * Get all unique account IDs that have interacted with the attendance system for this org.
-     * This includes accounts from both attendance days and attendance events.
-     *
-     * NOTE: This is a workaround. In production, you should use a UserService or AccountService
-     * to get all active users in the organization, not just those with attendance records.
-     */
-    private Set<Long> getAllAccountIdsInOrg(Long orgId) {
-        Set<Long> accountIds = new HashSet<>();
-
-        // Get from attendance days
-        List<AttendanceDay> allDays = dayRepository.findAll();
-        accountIds.addAll(allDays.stream()
-                .filter(day -> day.getOrgId().equals(orgId))
-                .map(AttendanceDay::getAccountId)
-                .collect(Collectors.toSet()));
-
-        // Get from attendance events (to catch users who may have events but no day records yet)
-        List<AttendanceEvent> allEvents = eventRepository.findAll();
-        accountIds.addAll(allEvents.stream()
-                .filter(event -> event.getOrgId().equals(orgId))
-                .map(AttendanceEvent::getAccountId)
-                .collect(Collectors.toSet()));
-
-        return accountIds;
-    }
-
     /**
      * Process missed punch for a single account.
      * Checks if user has checked in for the day and if they didn't respond to the punch request.
      */
     @Transactional
-    public void processMissedPunchForAccount(Long orgId, Long accountId, PunchRequest request,
-                                             LocalDate dateKey, ZoneId zoneId) {
+    public void processMissedPunchForAccount(Long orgId, Long accountId, PunchRequest request, LocalDate dateKey) {
         // Get attendance day record for this user
         Optional<AttendanceDay> dayRecordOpt = dayRepository.findByOrgIdAndAccountIdAndDateKey(orgId, accountId, dateKey);
 
@@ -665,7 +612,7 @@ public class AttendanceSchedulerService {
         }
 
         // User missed the punch - create a missed punch event
-        createMissedPunchEvent(orgId, accountId, request, events);
+        createMissedPunchEvent(orgId, accountId, request);
 
         logger.info("Marked missed punch for accountId=" + accountId + " for punch request " + request.getId());
     }
@@ -673,8 +620,7 @@ public class AttendanceSchedulerService {
     /**
      * Create a missed punch event.
      */
-    private void createMissedPunchEvent(Long orgId, Long accountId, PunchRequest request,
-                                       List<AttendanceEvent> existingEvents) {
+    private void createMissedPunchEvent(Long orgId, Long accountId, PunchRequest request) {
         AttendanceEvent missedEvent = new AttendanceEvent();
         missedEvent.setOrgId(orgId);
         missedEvent.setAccountId(accountId);
@@ -0,0 +1,356 @@
+package com.tse.core_application.service.scheduler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+import com.tse.core_application.entity.attendance.AttendanceDay;
+import com.tse.core_application.entity.attendance.AttendanceEvent;
+import com.tse.core_application.repository.attendance.AttendanceEventRepository;
+import com.tse.core_application.service.attendance.DayRollupService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Set-based auto-checkout for one org and date.
+ *
+ * Open days are split into chunks. Each chunk runs in its own transaction:
+ * one query loads the events of every account in the chunk, the missing BREAK_END/CHECK_OUT
+ * events are built in memory, inserted with a single JDBC batch, and the recomputed day
+ * rollups are written back with a second JDBC batch. A failed chunk is retried and, if it
+ * keeps failing, skipped without affecting chunks already committed.
+ */
+@Component
+public class AutoCheckoutBatchProcessor {
+
+    private static final Logger logger = LogManager.getLogger(AutoCheckoutBatchProcessor.class);
+
+    private static final String INSERT_EVENT_SQL =
+            "INSERT INTO attendance_event (org_id, account_id, event_kind, event_source, event_action, " +
+            "ts_utc, success, verdict, flags) VALUES (?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb))";
+
+    private static final String UPDATE_DAY_SQL =
+            "UPDATE attendance_day SET first_in_utc = ?, last_out_utc = ?, worked_seconds = ?, " +
+            "break_seconds = ?, status = ?, anomalies = CAST(? AS jsonb) WHERE id = ?";
+
+    private final AttendanceEventRepository eventRepository;
+    private final DayRollupService dayRollupService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate chunkTransaction;
+    private final ConcurrentHashMap<Long, Progress> progressByOrg = new ConcurrentHashMap<>();
+
+    @Value("${attendance.auto-checkout.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${attendance.auto-checkout.chunk-max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${attendance.auto-checkout.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${attendance.auto-checkout.chunk-timeout-seconds:30}")
+    private int chunkTimeoutSeconds;
+
+    public AutoCheckoutBatchProcessor(AttendanceEventRepository eventRepository,
+                                      DayRollupService dayRollupService,
+                                      JdbcTemplate jdbcTemplate,
+                                      ObjectMapper objectMapper,
+                                      PlatformTransactionManager transactionManager) {
+        this.eventRepository = eventRepository;
+        this.dayRollupService = dayRollupService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    public void init() {
+        // Also the statement timeout of every query in the chunk
+        chunkTransaction.setTimeout(chunkTimeoutSeconds);
+    }
+
+    /**
+     * Auto-checkout all given open days of an org.
+     *
+     * @param orgId   Organization ID
+     * @param dateKey Date being closed
+     * @param days    Days with a check-in and no check-out
+     * @return Progress of this run
+     */
+    public Progress process(Long orgId, LocalDate dateKey, List<AttendanceDay> days) {
+        int chunkCount = (days.size() + chunkSize - 1) / chunkSize;
+        Progress progress = new Progress(orgId, dateKey, days.size(), chunkCount);
+        progressByOrg.put(orgId, progress);
+
+        for (int from = 0; from < days.size(); from += chunkSize) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Run cancelled by SchedulerExecutors; committed chunks stay, the rest is left open
+                logger.warn("Auto-checkout cancelled for orgId=" + orgId + " on date=" + dateKey + " after " +
+                           progress.chunksCompleted.get() + "/" + progress.chunksTotal + " chunks");
+                break;
+            }
+            List<AttendanceDay> chunk = days.subList(from, Math.min(from + chunkSize, days.size()));
+            processChunkWithRetry(orgId, dateKey, chunk, progress);
+        }
+
+        progress.finishedAt = LocalDateTime.now();
+        logger.info("Auto-checkout finished for orgId=" + orgId + " on date=" + dateKey + ": " + progress);
+        return progress;
+    }
+
+    /**
+     * Progress of the latest run for an org, or null if none has run since startup.
+     */
+    public Progress getProgress(Long orgId) {
+        return progressByOrg.get(orgId);
+    }
+
+    private void processChunkWithRetry(Long orgId, LocalDate dateKey, List<AttendanceDay> chunk, Progress progress) {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                int[] counts = chunkTransaction.execute(status -> processChunk(orgId, dateKey, chunk));
+                progress.eventsInserted.addAndGet(counts[0]);
+                progress.daysUpdated.addAndGet(counts[1]);
+                progress.chunksCompleted.incrementAndGet();
+                logger.info("Auto-checkout chunk " + (progress.chunksCompleted.get() + progress.chunksFailed.get()) +
+                           "/" + progress.chunksTotal + " committed for orgId=" + orgId +
+                           " (events=" + counts[0] + ", days=" + counts[1] + ")");
+                return;
+            } catch (Exception e) {
+                if (attempt == maxAttempts) {
+                    progress.chunksFailed.incrementAndGet();
+                    logger.error("Auto-checkout chunk failed for orgId=" + orgId + " after " + attempt +
+                               " attempts, skipping " + chunk.size() + " days: " + e.getMessage(), e);
+                    return;
+                }
+                logger.warn("Auto-checkout chunk attempt " + attempt + " failed for orgId=" + orgId +
+                           ", retrying: " + e.getMessage());
+                if (!sleep(retryBackoffMs * attempt)) {
+                    progress.chunksFailed.incrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Process one chunk inside the current transaction.
+     *
+     * @return {inserted events, updated days}
+     */
+    private int[] processChunk(Long orgId, LocalDate dateKey, List<AttendanceDay> chunk) {
+        LocalDateTime dayStart = dateKey.atStartOfDay();
+        LocalDateTime dayEnd = dateKey.plusDays(1).atStartOfDay();
+
+        List<Long> accountIds = new ArrayList<>(chunk.size());
+        for (AttendanceDay day : chunk) {
+            accountIds.add(day.getAccountId());
+        }
+
+        // One query for the events of every account in the chunk
+        Map<Long, List<AttendanceEvent>> eventsByAccount = new HashMap<>();
+        for (AttendanceEvent event : eventRepository.findByOrgIdAndAccountIdInAndTsUtcBetweenOrderByTsUtcAsc(
+                orgId, accountIds, dayStart, dayEnd)) {
+            eventsByAccount.computeIfAbsent(event.getAccountId(), id -> new ArrayList<>()).add(event);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<AttendanceEvent> newEvents = new ArrayList<>();
+        List<AttendanceDay> changedDays = new ArrayList<>();
+
+        for (AttendanceDay day : chunk) {
+            List<AttendanceEvent> events = eventsByAccount.get(day.getAccountId());
+            if (events == null || events.isEmpty()) {
+                continue;
+            }
+
+            EventKind lastSuccessfulEvent = null;
+            for (AttendanceEvent event : events) {
+                if (event.getSuccess() != null && event.getSuccess()) {
+                    lastSuccessfulEvent = event.getEventKind();
+                }
+            }
+
+            List<AttendanceEvent> dayEvents = new ArrayList<>(events);
+            if (lastSuccessfulEvent == EventKind.BREAK_START) {
+                AttendanceEvent breakEnd = buildAutoEvent(orgId, day.getAccountId(), EventKind.BREAK_END, now);
+                newEvents.add(breakEnd);
+                dayEvents.add(breakEnd);
+            } else if (lastSuccessfulEvent != EventKind.CHECK_IN) {
+                continue;
+            }
+
+            // Keep CHECK_OUT strictly after a BREAK_END created in the same pass
+            AttendanceEvent checkOut = buildAutoEvent(orgId, day.getAccountId(), EventKind.CHECK_OUT, now.plusNanos(1000));
+            newEvents.add(checkOut);
+            dayEvents.add(checkOut);
+
+            dayRollupService.applyRollup(day, dayEvents);
+            changedDays.add(day);
+        }
+
+        if (newEvents.isEmpty()) {
+            return new int[]{0, 0};
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_EVENT_SQL, newEvents, newEvents.size(), (ps, event) -> {
+            ps.setLong(1, event.getOrgId());
+            ps.setLong(2, event.getAccountId());
+            ps.setString(3, event.getEventKind().name());
+            ps.setString(4, event.getEventSource().name());
+            ps.setString(5, event.getEventAction().name());
+            ps.setTimestamp(6, Timestamp.valueOf(event.getTsUtc()));
+            ps.setBoolean(7, event.getSuccess());
+            ps.setString(8, event.getVerdict().name());
+            ps.setString(9, toJson(event.getFlags()));
+        });
+
+        jdbcTemplate.batchUpdate(UPDATE_DAY_SQL, changedDays, changedDays.size(), (ps, day) -> {
+            ps.setTimestamp(1, day.getFirstInUtc() != null ? Timestamp.valueOf(day.getFirstInUtc()) : null);
+            ps.setTimestamp(2, day.getLastOutUtc() != null ? Timestamp.valueOf(day.getLastOutUtc()) : null);
+            ps.setInt(3, day.getWorkedSeconds());
+            ps.setInt(4, day.getBreakSeconds());
+            ps.setString(5, day.getStatus().name());
+            ps.setString(6, toJson(day.getAnomalies()));
+            ps.setLong(7, day.getId());
+        });
+
+        return new int[]{newEvents.size(), changedDays.size()};
+    }
+
+    private AttendanceEvent buildAutoEvent(Long orgId, Long accountId, EventKind eventKind, LocalDateTime ts) {
+        AttendanceEvent autoEvent = new AttendanceEvent();
+        autoEvent.setOrgId(orgId);
+        autoEvent.setAccountId(accountId);
+        autoEvent.setEventKind(eventKind);
+        autoEvent.setEventSource(EventSource.MANUAL);
+        autoEvent.setEventAction(EventAction.AUTO);
+        autoEvent.setTsUtc(ts);
+        autoEvent.setSuccess(true);
+        autoEvent.setVerdict(IntegrityVerdict.PASS);
+
+        // Add flag to indicate this was auto-generated
+        Map<String, Object> flags = new HashMap<>();
+        flags.put("auto_checkout", true);
+        flags.put("reason", "Missing " + eventKind.name().toLowerCase() + " after grace period");
+        autoEvent.setFlags(flags);
+        return autoEvent;
+    }
+
+    private String toJson(Map<String, Object> value) {
+        try {
+            return objectMapper.writeValueAsString(value != null ? value : new HashMap<>());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize jsonb column", e);
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Progress of one auto-checkout run for an org.
+     */
+    public static final class Progress {
+        private final Long orgId;
+        private final LocalDate dateKey;
+        private final int totalDays;
+        private final int chunksTotal;
+        private final AtomicInteger chunksCompleted = new AtomicInteger();
+        private final AtomicInteger chunksFailed = new AtomicInteger();
+        private final AtomicInteger eventsInserted = new AtomicInteger();
+        private final AtomicInteger daysUpdated = new AtomicInteger();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+
+        Progress(Long orgId, LocalDate dateKey, int totalDays, int chunksTotal) {
+            this.orgId = orgId;
+            this.dateKey = dateKey;
+            this.totalDays = totalDays;
+            this.chunksTotal = chunksTotal;
+        }
+
+        public Long getOrgId() {
+            return orgId;
+        }
+
+        public LocalDate getDateKey() {
+            return dateKey;
+        }
+
+        public int getTotalDays() {
+            return totalDays;
+        }
+
+        public int getChunksTotal() {
+            return chunksTotal;
+        }
+
+        public int getChunksCompleted() {
+            return chunksCompleted.get();
+        }
+
+        public int getChunksFailed() {
+            return chunksFailed.get();
+        }
+
+        public int getEventsInserted() {
+            return eventsInserted.get();
+        }
+
+        public int getDaysUpdated() {
+            return daysUpdated.get();
+        }
+
+        public LocalDateTime getStartedAt() {
+            return startedAt;
+        }
+
+        public LocalDateTime getFinishedAt() {
+            return finishedAt;
+        }
+
+        /**
+         * Whether every chunk committed: false if the run was cancelled or a chunk failed.
+         */
+        public boolean isComplete() {
+            return chunksCompleted.get() == chunksTotal && chunksFailed.get() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "days=" + totalDays + ", chunks=" + chunksCompleted.get() + "/" + chunksTotal +
+                   " (failed=" + chunksFailed.get() + "), events=" + eventsInserted.get() +
+                   ", daysUpdated=" + daysUpdated.get();
+        }
+    }
+}
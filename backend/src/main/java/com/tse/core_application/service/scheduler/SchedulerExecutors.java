@@ -0,0 +1,234 @@
+package com.tse.core_application.service.scheduler;
+
+import com.tse.core_application.service.metrics.MetricsSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Named, bounded executors for per-org scheduler work.
+ *
+ * Replaces parallelStream on the JVM-wide common pool. Each job gets its own pool, sized as a
+ * share of the Hikari pool; the scheduled jobs run one after another on Spring's scheduler
+ * thread, so half the pool per executor leaves the rest to request threads.
+ * Each org is one task and a failure or timeout of one org never affects the others.
+ *
+ * A run waits for its orgs against one deadline (run-timeout-seconds) and cancels whatever has
+ * not finished by then. Cancelling only interrupts the worker thread; JDBC work is bounded by
+ * transaction timeouts, which Spring applies as statement timeouts: the org transaction of
+ * runPerOrgInTransaction (org-timeout-seconds) or the work's own transactions for runPerOrg.
+ */
+@Component
+public class SchedulerExecutors implements MetricsSource {
+
+    private static final Logger logger = LogManager.getLogger(SchedulerExecutors.class);
+
+    private final ConcurrentHashMap<String, NamedExecutor> executors = new ConcurrentHashMap<>();
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int hikariPoolSize;
+
+    @Value("${attendance.scheduler.executor-threads:0}")
+    private int configuredThreads;
+
+    @Value("${attendance.scheduler.executor-queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${attendance.scheduler.org-timeout-seconds:45}")
+    private int orgTimeoutSeconds;
+
+    @Value("${attendance.scheduler.run-timeout-seconds:50}")
+    private int runTimeoutSeconds;
+
+    public SchedulerExecutors(PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    /**
+     * Run one task per org on the named executor, each in its own transaction, and wait for all.
+     *
+     * @param executorName Executor (and thread name prefix) for this job
+     * @param items        Work items, one per org
+     * @param orgIdOf      Org ID of an item, for logging
+     * @param work         Work for one org
+     */
+    public <T> void runPerOrgInTransaction(String executorName, List<T> items, Function<T, Long> orgIdOf,
+                                           Consumer<T> work) {
+        TransactionTemplate orgTransaction = new TransactionTemplate(transactionManager);
+        orgTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        orgTransaction.setTimeout(orgTimeoutSeconds);
+
+        runPerOrg(executorName, items, orgIdOf, item -> orgTransaction.executeWithoutResult(status -> work.accept(item)));
+    }
+
+    /**
+     * Run one task per org on the named executor without an enclosing transaction and wait for all.
+     * For work that commits in its own (shorter) transactions, which should carry a timeout.
+     */
+    public <T> void runPerOrg(String executorName, List<T> items, Function<T, Long> orgIdOf, Consumer<T> work) {
+        NamedExecutor executor = executors.computeIfAbsent(executorName, this::createExecutor);
+
+        List<Future<?>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            Long orgId = orgIdOf.apply(item);
+            try {
+                futures.add(executor.pool.submit(() -> executor.run(orgId, () -> work.accept(item))));
+            } catch (RejectedExecutionException e) {
+                executor.rejected.incrementAndGet();
+                futures.add(null);
+                logger.error("Executor " + executorName + " rejected orgId=" + orgId + " (queue full)");
+            }
+        }
+
+        // One deadline for the whole run, however many orgs are still queued
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(runTimeoutSeconds);
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                cancelRemaining(executor, futures, items, orgIdOf, i);
+                return;
+            } catch (ExecutionException | CancellationException e) {
+                // Already logged and counted by the task itself
+            } catch (InterruptedException e) {
+                cancelRemaining(executor, futures, items, orgIdOf, i);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private <T> void cancelRemaining(NamedExecutor executor, List<Future<?>> futures, List<T> items,
+                                     Function<T, Long> orgIdOf, int from) {
+        List<Long> cancelled = new ArrayList<>();
+        for (int i = from; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            if (future != null && !future.isDone() && future.cancel(true)) {
+                executor.timedOut.incrementAndGet();
+                cancelled.add(orgIdOf.apply(items.get(i)));
+            }
+        }
+        if (!cancelled.isEmpty()) {
+            logger.error("Executor " + executor.name + " cancelled " + cancelled.size() + " orgs unfinished after " +
+                       runTimeoutSeconds + "s: " + cancelled);
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "scheduler";
+    }
+
+    /**
+     * Snapshot of all executor metrics, keyed by executor name.
+     */
+    @Override
+    public Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> metrics = new LinkedHashMap<>();
+        executors.forEach((name, executor) -> metrics.put(name, executor.snapshot()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executors.values().forEach(executor -> executor.pool.shutdownNow());
+    }
+
+    private NamedExecutor createExecutor(String name) {
+        // Default: half the DB pool per executor, at least two threads
+        int threads = configuredThreads > 0 ? configuredThreads : Math.max(2, hikariPoolSize / 2);
+        AtomicInteger sequence = new AtomicInteger();
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+
+        logger.info("Created scheduler executor " + name + " with " + threads + " threads");
+        return new NamedExecutor(name, pool);
+    }
+
+    /**
+     * A bounded pool plus its counters.
+     */
+    private static final class NamedExecutor {
+        private final String name;
+        private final ThreadPoolExecutor pool;
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong totalRunMillis = new AtomicLong();
+        private final AtomicLong maxRunMillis = new AtomicLong();
+        private volatile long lastRunMillis;
+
+        NamedExecutor(String name, ThreadPoolExecutor pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+
+        void run(Long orgId, Runnable task) {
+            long start = System.currentTimeMillis();
+            try {
+                task.run();
+                succeeded.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                logger.error("Executor " + name + " failed for orgId=" + orgId + ": " + e.getMessage(), e);
+                throw e;
+            } finally {
+                long duration = System.currentTimeMillis() - start;
+                lastRunMillis = duration;
+                totalRunMillis.addAndGet(duration);
+                maxRunMillis.accumulateAndGet(duration, Math::max);
+            }
+        }
+
+        Map<String, Object> snapshot() {
+            long runs = succeeded.get() + failed.get();
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("poolSize", pool.getMaximumPoolSize());
+            snapshot.put("activeTasks", pool.getActiveCount());
+            snapshot.put("queueDepth", pool.getQueue().size());
+            snapshot.put("succeeded", succeeded.get());
+            snapshot.put("failed", failed.get());
+            snapshot.put("timedOut", timedOut.get());
+            snapshot.put("rejected", rejected.get());
+            snapshot.put("lastRunMillis", lastRunMillis);
+            snapshot.put("avgRunMillis", runs > 0 ? totalRunMillis.get() / runs : 0);
+            snapshot.put("maxRunMillis", maxRunMillis.get());
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.tse.core_application.service.scheduler;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Once-a-day windows of the per-org scheduler jobs (shift notification, auto-checkout).
+ *
+ * A window opens at its trigger time and stays due for catch-up-minutes, so a tick that runs
+ * late, a restart, or a lease that moves to another node mid-minute does not lose the day's
+ * run. The window a job last ran for is kept in scheduler_job_run, shared by all nodes, so a
+ * window runs once no matter which node picks it up.
+ */
+@Component
+public class SchedulerJobRuns {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${attendance.scheduler.catch-up-minutes:30}")
+    private long catchUpMinutes;
+
+    public SchedulerJobRuns(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Start of the window of the given daily trigger time that is due at {@code now}, or null
+     * if the latest trigger is more than catch-up-minutes ago.
+     */
+    public LocalDateTime dueWindow(LocalDateTime now, LocalTime triggerTime) {
+        LocalDateTime start = now.toLocalDate().atTime(triggerTime);
+        if (start.isAfter(now)) {
+            start = start.minusDays(1);
+        }
+        return now.isBefore(start.plusMinutes(Math.max(catchUpMinutes, 1))) ? start : null;
+    }
+
+    /**
+     * Whether the job already ran for the window of the given date.
+     */
+    public boolean hasRun(long orgId, String jobName, LocalDate windowDate) {
+        List<Date> last = jdbcTemplate.queryForList(
+                "SELECT window_date FROM scheduler_job_run WHERE org_id = ? AND job_name = ?",
+                Date.class, orgId, jobName);
+        return !last.isEmpty() && !last.get(0).toLocalDate().isBefore(windowDate);
+    }
+
+    /**
+     * Record that the job ran for the window of the given date.
+     */
+    public void markRun(long orgId, String jobName, LocalDate windowDate) {
+        Timestamp now = Timestamp.from(Instant.now());
+        int updated = jdbcTemplate.update(
+                "UPDATE scheduler_job_run SET window_date = ?, ran_at = ? WHERE org_id = ? AND job_name = ?",
+                Date.valueOf(windowDate), now, orgId, jobName);
+        if (updated == 0) {
+            try {
+                jdbcTemplate.update(
+                        "INSERT INTO scheduler_job_run (org_id, job_name, window_date, ran_at) VALUES (?, ?, ?, ?)",
+                        orgId, jobName, Date.valueOf(windowDate), now);
+            } catch (DuplicateKeyException e) {
+                jdbcTemplate.update(
+                        "UPDATE scheduler_job_run SET window_date = ?, ran_at = ? WHERE org_id = ? AND job_name = ?",
+                        Date.valueOf(windowDate), now, orgId, jobName);
+            }
+        }
+    }
+}
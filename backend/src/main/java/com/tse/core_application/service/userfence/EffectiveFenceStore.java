@@ -0,0 +1,567 @@
+package com.tse.core_application.service.userfence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.dto.userfence.SourceRef;
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
+import com.tse.core_application.entity.assignment.FenceAssignment;
+import com.tse.core_application.repository.assignment.AccountEffectiveFenceRepository;
+import com.tse.core_application.repository.assignment.FenceAssignmentRepository;
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import com.tse.core_application.service.fence.FenceReadVersions;
+import com.tse.core_application.service.membership.MembershipChangedEvent;
+import com.tse.core_application.service.membership.MembershipIndex;
+import com.tse.core_application.service.roster.OrgRosterService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Materialized effective fences per account (account_effective_fence).
+ *
+ * Reads return the stored rows of accounts marked current in account_effective_fence_state;
+ * other accounts are resolved from assignments and memberships (one bulk membership lookup,
+ * one assignment query) and written back on the refresh thread once the reader's transaction
+ * commits, so a read never waits on the org_fence_version lock. Assignment writes invalidate the
+ * affected accounts inside the writer's transaction, membership changes right after it commits;
+ * both bump org_fence_version. A materialization only persists if that version did not move
+ * while it was computing, so a concurrent write can never leave stale rows marked current. A
+ * nightly rebuild refreshes every org from scratch.
+ */
+@Service
+public class EffectiveFenceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(EffectiveFenceStore.class);
+
+    private static final String INSERT_ROW_SQL =
+            "INSERT INTO account_effective_fence (org_id, account_id, fence_id, source_mask, is_default_resolved, sources) " +
+            "VALUES (:orgId, :accountId, :fenceId, :sourceMask, :isDefault, CAST(:sources AS jsonb))";
+
+    private static final String INSERT_STATE_SQL =
+            "INSERT INTO account_effective_fence_state (org_id, account_id, built_version) VALUES (:orgId, :accountId, :version)";
+
+    private final AccountEffectiveFenceRepository effectiveFenceRepository;
+    private final FenceAssignmentRepository assignmentRepository;
+    private final MembershipIndex membershipIndex;
+    private final OrgRosterService orgRosterService;
+    private final ClusterCoordinator clusterCoordinator;
+    private final FenceReadVersions fenceReadVersions;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate persistTransaction;
+    private final TransactionTemplate invalidateTransaction;
+    private final ThreadPoolExecutor refreshExecutor;
+
+    @Value("${attendance.effective-fence.rebuild-chunk-size:500}")
+    private int rebuildChunkSize;
+
+    public EffectiveFenceStore(AccountEffectiveFenceRepository effectiveFenceRepository,
+                               FenceAssignmentRepository assignmentRepository,
+                               MembershipIndex membershipIndex,
+                               OrgRosterService orgRosterService,
+                               ClusterCoordinator clusterCoordinator,
+                               FenceReadVersions fenceReadVersions,
+                               NamedParameterJdbcTemplate jdbcTemplate,
+                               ObjectMapper objectMapper,
+                               PlatformTransactionManager transactionManager) {
+        this.effectiveFenceRepository = effectiveFenceRepository;
+        this.assignmentRepository = assignmentRepository;
+        this.membershipIndex = membershipIndex;
+        this.orgRosterService = orgRosterService;
+        this.clusterCoordinator = clusterCoordinator;
+        this.fenceReadVersions = fenceReadVersions;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.persistTransaction = new TransactionTemplate(transactionManager);
+        this.persistTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.invalidateTransaction = new TransactionTemplate(transactionManager);
+
+        // Warm-up after writes and persists of read-path results; when saturated, accounts are
+        // simply materialized again on the next read
+        this.refreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+                    Thread thread = new Thread(runnable, "effective-fence-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Effective fences of each requested account. Every requested account is present in the
+     * result (possibly with an empty list).
+     */
+    public Map<Long, List<AccountEffectiveFence>> getEffectiveFences(long orgId, Collection<Long> accountIds) {
+        Map<Long, List<AccountEffectiveFence>> result = new HashMap<>();
+        if (accountIds == null || accountIds.isEmpty()) {
+            return result;
+        }
+
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(accountIds));
+
+        // Read the version first: anything computed below is tagged with it
+        long version = currentVersion(orgId);
+
+        Set<Long> current = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT account_id FROM account_effective_fence_state WHERE org_id = :orgId AND account_id IN (:ids)",
+                new MapSqlParameterSource("orgId", orgId).addValue("ids", ids), Long.class));
+
+        if (!current.isEmpty()) {
+            for (AccountEffectiveFence row : effectiveFenceRepository.findByOrgIdAndAccountIdIn(orgId, current)) {
+                result.computeIfAbsent(row.getAccountId(), id -> new ArrayList<>()).add(row);
+            }
+        }
+
+        List<Long> missing = new ArrayList<>();
+        for (Long accountId : ids) {
+            if (!current.contains(accountId)) {
+                missing.add(accountId);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<Long, List<AccountEffectiveFence>> computed = compute(orgId, missing);
+            persistLater(orgId, version, computed);
+            result.putAll(computed);
+        }
+
+        for (Long accountId : ids) {
+            result.putIfAbsent(accountId, new ArrayList<>());
+        }
+        return result;
+    }
+
+    /**
+     * Invalidate every account affected by an assignment change of the given entity.
+     * Joins the caller's transaction so the invalidation commits together with the change.
+     */
+    public void invalidateEntity(long orgId, int entityTypeId, long entityId) {
+        invalidateEntities(orgId, Collections.singletonMap(entityTypeId, Collections.singleton(entityId)));
+    }
+
+    /**
+     * Invalidate every account affected by assignment changes of the given entities, keyed by
+     * entity type, with a single version bump. Joins the caller's transaction.
+     */
+    public void invalidateEntities(long orgId, Map<Integer, Set<Long>> entityIdsByType) {
+        if (entityIdsByType.containsKey(EntityTypes.ORG)) {
+            invalidateAccounts(orgId, Collections.emptyList());
+            return;
+        }
+
+        Set<Long> accountIds = new LinkedHashSet<>(
+                entityIdsByType.getOrDefault(EntityTypes.USER, Collections.emptySet()));
+        for (Long teamId : entityIdsByType.getOrDefault(EntityTypes.TEAM, Collections.emptySet())) {
+            accountIds.addAll(boxed(membershipIndex.membersOfTeam(orgId, teamId).toArray()));
+        }
+        for (Long projectId : entityIdsByType.getOrDefault(EntityTypes.PROJECT, Collections.emptySet())) {
+            accountIds.addAll(boxed(membershipIndex.membersOfProject(orgId, projectId).toArray()));
+        }
+
+        if (!accountIds.isEmpty()) {
+            invalidateAccounts(orgId, accountIds);
+        }
+    }
+
+    /**
+     * Invalidate the given accounts; an empty collection invalidates the whole org.
+     * Joins the caller's transaction; affected accounts are re-materialized after commit.
+     * Also moves the read versions behind the ETags of their user-fence responses.
+     */
+    public void invalidateAccounts(long orgId, Collection<Long> accountIds) {
+        invalidateTransaction.executeWithoutResult(status -> {
+            bumpVersion(orgId);
+            fenceReadVersions.bumpAccountVersions(orgId, accountIds);
+
+            MapSqlParameterSource params = new MapSqlParameterSource("orgId", orgId);
+            if (accountIds.isEmpty()) {
+                jdbcTemplate.update("DELETE FROM account_effective_fence_state WHERE org_id = :orgId", params);
+            } else {
+                jdbcTemplate.update("DELETE FROM account_effective_fence_state WHERE org_id = :orgId AND account_id IN (:ids)",
+                        params.addValue("ids", accountIds));
+            }
+        });
+
+        List<Long> snapshot = new ArrayList<>(accountIds);
+        afterCommit(() -> refreshExecutor.execute(() -> {
+            try {
+                if (snapshot.isEmpty()) {
+                    rebuildOrg(orgId);
+                } else {
+                    refresh(orgId, snapshot);
+                }
+            } catch (Exception e) {
+                logger.warn("Effective fence warm-up failed for org {}: {}", orgId, e.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Runs once the publisher's transaction commits, in a transaction of its own: a punch that
+     * adds an account to the roster never holds the org_fence_version lock, and the memberships
+     * reloaded here are the committed ones. An event naming its accounts refreshes only their
+     * memberships, effective fences and read versions. An event without accounts drops the
+     * org's membership index and effective fences and moves the org's membership version,
+     * which is part of every user-fence ETag of the org.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMembershipChanged(MembershipChangedEvent event) {
+        long orgId = event.getOrgId();
+        Collection<Long> accountIds = event.getAccountIds();
+        if (accountIds.isEmpty()) {
+            membershipIndex.evict(orgId);
+        } else {
+            membershipIndex.evictAccounts(orgId, accountIds);
+        }
+
+        // REQUIRES_NEW: after commit the publisher's transaction is still bound but cannot commit again
+        persistTransaction.executeWithoutResult(status -> {
+            if (accountIds.isEmpty()) {
+                fenceReadVersions.bumpMembershipVersion(orgId);
+            }
+            invalidateAccounts(orgId, accountIds);
+        });
+    }
+
+    /**
+     * Background full rebuild of every org that has assignments.
+     */
+    @Scheduled(cron = "${attendance.effective-fence.rebuild-cron:0 30 2 * * ?}")
+    public void rebuildAll() {
+        List<Long> orgIds = jdbcTemplate.queryForList(
+                "SELECT DISTINCT org_id FROM fence_assignment", new MapSqlParameterSource(), Long.class);
+
+        for (Long orgId : orgIds) {
+            if (!clusterCoordinator.tryAcquire(orgId)) {
+                continue;
+            }
+            try {
+                rebuildOrg(orgId);
+            } catch (Exception e) {
+                logger.error("Effective fence rebuild failed for org {}: {}", orgId, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Re-materialize every known account of the org in chunks and drop rows of accounts that
+     * are no longer current.
+     */
+    public void rebuildOrg(long orgId) {
+        Set<Long> accountIds = new LinkedHashSet<>(boxed(orgRosterService.getAccountIds(orgId)));
+        accountIds.addAll(jdbcTemplate.queryForList(
+                "SELECT account_id FROM account_effective_fence_state WHERE org_id = :orgId",
+                new MapSqlParameterSource("orgId", orgId), Long.class));
+
+        List<Long> ids = new ArrayList<>(accountIds);
+        for (int from = 0; from < ids.size(); from += rebuildChunkSize) {
+            refresh(orgId, ids.subList(from, Math.min(from + rebuildChunkSize, ids.size())));
+        }
+
+        int orphaned = jdbcTemplate.update(
+                "DELETE FROM account_effective_fence f WHERE f.org_id = :orgId AND NOT EXISTS (" +
+                "SELECT 1 FROM account_effective_fence_state s WHERE s.org_id = f.org_id AND s.account_id = f.account_id)",
+                new MapSqlParameterSource("orgId", orgId));
+
+        logger.info("Rebuilt effective fences for org {}: {} accounts, {} orphaned rows removed",
+                orgId, ids.size(), orphaned);
+    }
+
+    private void refresh(long orgId, List<Long> accountIds) {
+        long version = currentVersion(orgId);
+        tryPersist(orgId, version, compute(orgId, accountIds));
+    }
+
+    /**
+     * Resolve effective fences from assignments: one bulk membership lookup and one query.
+     */
+    private Map<Long, List<AccountEffectiveFence>> compute(long orgId, List<Long> accountIds) {
+        membershipIndex.prefetch(orgId, accountIds);
+
+        Set<Long> teamIds = new HashSet<>();
+        Set<Long> projectIds = new HashSet<>();
+        for (Long accountId : accountIds) {
+            for (long teamId : membershipIndex.teamsOf(orgId, accountId)) {
+                teamIds.add(teamId);
+            }
+            for (long projectId : membershipIndex.projectsOf(orgId, accountId)) {
+                projectIds.add(projectId);
+            }
+        }
+
+        List<FenceAssignment> assignments = assignmentRepository.findForEntities(
+                orgId, accountIds, orPlaceholder(teamIds), orPlaceholder(projectIds));
+
+        Map<Integer, Map<Long, List<FenceAssignment>>> byEntity = new HashMap<>();
+        for (FenceAssignment assignment : assignments) {
+            byEntity.computeIfAbsent(assignment.getEntityTypeId(), type -> new HashMap<>())
+                    .computeIfAbsent(assignment.getEntityId(), id -> new ArrayList<>())
+                    .add(assignment);
+        }
+
+        Map<Long, List<AccountEffectiveFence>> result = new HashMap<>();
+        for (Long accountId : accountIds) {
+            // Same order as source attribution always used: USER, TEAMs, PROJECTs, ORG
+            List<FenceAssignment> accountAssignments = new ArrayList<>();
+            addAssignments(accountAssignments, byEntity, EntityTypes.USER, accountId);
+            for (long teamId : membershipIndex.teamsOf(orgId, accountId)) {
+                addAssignments(accountAssignments, byEntity, EntityTypes.TEAM, teamId);
+            }
+            for (long projectId : membershipIndex.projectsOf(orgId, accountId)) {
+                addAssignments(accountAssignments, byEntity, EntityTypes.PROJECT, projectId);
+            }
+            addAssignments(accountAssignments, byEntity, EntityTypes.ORG, orgId);
+
+            result.put(accountId, toRows(orgId, accountId, accountAssignments));
+        }
+        return result;
+    }
+
+    private List<AccountEffectiveFence> toRows(long orgId, long accountId, List<FenceAssignment> assignments) {
+        Long defaultFenceId = resolveDefaultFenceId(accountId, assignments);
+
+        Map<Long, AccountEffectiveFence> rowsByFence = new LinkedHashMap<>();
+        for (FenceAssignment assignment : assignments) {
+            AccountEffectiveFence row = rowsByFence.computeIfAbsent(assignment.getFenceId(), fenceId -> {
+                AccountEffectiveFence created = new AccountEffectiveFence();
+                created.setOrgId(orgId);
+                created.setAccountId(accountId);
+                created.setFenceId(fenceId);
+                created.setSourceMask((short) 0);
+                created.setIsDefaultResolved(fenceId.equals(defaultFenceId));
+                created.setSources(new ArrayList<>());
+                return created;
+            });
+            row.setSourceMask((short) (row.getSourceMask() | sourceBit(assignment.getEntityTypeId())));
+            row.getSources().add(new SourceRef(assignment.getEntityTypeId(), assignment.getEntityId(), assignment.getIsDefault()));
+        }
+        return new ArrayList<>(rowsByFence.values());
+    }
+
+    /**
+     * Default fence precedence, the same as user-fence reads resolved it before materialization:
+     * USER default, then earliest TEAM default, then earliest PROJECT default, then ORG default.
+     * "Earliest" is by created_datetime; ties, and several defaults of the same USER or ORG
+     * (which used to depend on query row order), go to the lowest assignment id.
+     */
+    static Long resolveDefaultFenceId(long accountId, List<FenceAssignment> assignments) {
+        Optional<FenceAssignment> userDefault = earliestDefault(assignments.stream()
+                .filter(a -> a.getEntityTypeId() == EntityTypes.USER)
+                .filter(a -> a.getEntityId().equals(accountId)));
+        if (userDefault.isPresent()) {
+            return userDefault.get().getFenceId();
+        }
+
+        Optional<FenceAssignment> teamDefault = earliestDefault(assignments.stream()
+                .filter(a -> a.getEntityTypeId() == EntityTypes.TEAM));
+        if (teamDefault.isPresent()) {
+            return teamDefault.get().getFenceId();
+        }
+
+        Optional<FenceAssignment> projectDefault = earliestDefault(assignments.stream()
+                .filter(a -> a.getEntityTypeId() == EntityTypes.PROJECT));
+        if (projectDefault.isPresent()) {
+            return projectDefault.get().getFenceId();
+        }
+
+        return earliestDefault(assignments.stream()
+                .filter(a -> a.getEntityTypeId() == EntityTypes.ORG))
+                .map(FenceAssignment::getFenceId)
+                .orElse(null);
+    }
+
+    private static Optional<FenceAssignment> earliestDefault(Stream<FenceAssignment> assignments) {
+        return assignments
+                .filter(a -> Boolean.TRUE.equals(a.getIsDefault()))
+                .min(Comparator.comparing(FenceAssignment::getCreatedDatetime,
+                                Comparator.nullsLast(Comparator.<LocalDateTime>naturalOrder()))
+                        .thenComparing(FenceAssignment::getId, Comparator.nullsLast(Comparator.<Long>naturalOrder())));
+    }
+
+    /**
+     * The fence a punch without a nearby fence falls back to: the resolved default, otherwise
+     * the fence from the most specific source (USER > TEAM > PROJECT > ORG), then the lowest
+     * fence id. Unlike the fallback before materialization, which ignored is_default and took
+     * the earliest assignment of the most specific source, an explicit default now wins.
+     */
+    public static AccountEffectiveFence preferredFence(Collection<AccountEffectiveFence> rows) {
+        return rows.stream()
+                .min(Comparator
+                        .comparing((AccountEffectiveFence f) -> !Boolean.TRUE.equals(f.getIsDefaultResolved()))
+                        .thenComparingInt(f -> Integer.lowestOneBit(f.getSourceMask()))
+                        .thenComparing(AccountEffectiveFence::getFenceId))
+                .orElse(null);
+    }
+
+    /**
+     * Persist rows computed on the read path from the refresh thread, after the reader's
+     * transaction commits. Persisting inline would take the org_fence_version lock in a nested
+     * transaction while the reader's own transaction holds a pooled connection (and possibly that
+     * lock). When the refresh queue is full the rows are dropped and recomputed on a later read.
+     */
+    private void persistLater(long orgId, long version, Map<Long, List<AccountEffectiveFence>> computed) {
+        afterCommit(() -> refreshExecutor.execute(() -> tryPersist(orgId, version, computed)));
+    }
+
+    /**
+     * Persist computed rows unless the org's version moved since computing started.
+     * Failures are logged only: the caller already has the computed result.
+     */
+    private void tryPersist(long orgId, long version, Map<Long, List<AccountEffectiveFence>> computed) {
+        if (computed.isEmpty()) {
+            return;
+        }
+
+        try {
+            Boolean persisted = persistTransaction.execute(status -> {
+                MapSqlParameterSource orgParam = new MapSqlParameterSource("orgId", orgId);
+                jdbcTemplate.update("INSERT INTO org_fence_version (org_id, version) VALUES (:orgId, 0) " +
+                        "ON CONFLICT (org_id) DO NOTHING", orgParam);
+
+                // Lock the version row: writers bumping it wait until this materialization commits
+                Long locked = jdbcTemplate.queryForObject(
+                        "SELECT version FROM org_fence_version WHERE org_id = :orgId FOR UPDATE", orgParam, Long.class);
+                if (locked == null || locked != version) {
+                    return false;
+                }
+
+                MapSqlParameterSource accountParams = new MapSqlParameterSource("orgId", orgId)
+                        .addValue("ids", computed.keySet());
+                jdbcTemplate.update("DELETE FROM account_effective_fence WHERE org_id = :orgId AND account_id IN (:ids)", accountParams);
+                jdbcTemplate.update("DELETE FROM account_effective_fence_state WHERE org_id = :orgId AND account_id IN (:ids)", accountParams);
+
+                List<SqlParameterSource> rows = new ArrayList<>();
+                List<SqlParameterSource> states = new ArrayList<>();
+                computed.forEach((accountId, accountRows) -> {
+                    for (AccountEffectiveFence row : accountRows) {
+                        rows.add(new MapSqlParameterSource("orgId", orgId)
+                                .addValue("accountId", accountId)
+                                .addValue("fenceId", row.getFenceId())
+                                .addValue("sourceMask", row.getSourceMask())
+                                .addValue("isDefault", row.getIsDefaultResolved())
+                                .addValue("sources", toJson(row.getSources())));
+                    }
+                    states.add(new MapSqlParameterSource("orgId", orgId)
+                            .addValue("accountId", accountId)
+                            .addValue("version", version));
+                });
+
+                if (!rows.isEmpty()) {
+                    jdbcTemplate.batchUpdate(INSERT_ROW_SQL, rows.toArray(new SqlParameterSource[0]));
+                }
+                jdbcTemplate.batchUpdate(INSERT_STATE_SQL, states.toArray(new SqlParameterSource[0]));
+                return true;
+            });
+
+            if (!Boolean.TRUE.equals(persisted)) {
+                logger.debug("Skipped persisting effective fences for org {}: version moved", orgId);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to persist effective fences for org {}: {}", orgId, e.getMessage());
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private long currentVersion(long orgId) {
+        List<Long> versions = jdbcTemplate.queryForList(
+                "SELECT version FROM org_fence_version WHERE org_id = :orgId",
+                new MapSqlParameterSource("orgId", orgId), Long.class);
+        return versions.isEmpty() ? 0L : versions.get(0);
+    }
+
+    private void bumpVersion(long orgId) {
+        jdbcTemplate.update("INSERT INTO org_fence_version (org_id, version) VALUES (:orgId, 1) " +
+                "ON CONFLICT (org_id) DO UPDATE SET version = org_fence_version.version + 1",
+                new MapSqlParameterSource("orgId", orgId));
+    }
+
+    private String toJson(List<SourceRef> sources) {
+        try {
+            return objectMapper.writeValueAsString(sources);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize effective fence sources", e);
+        }
+    }
+
+    private static void addAssignments(List<FenceAssignment> target,
+                                       Map<Integer, Map<Long, List<FenceAssignment>>> byEntity,
+                                       int entityTypeId, long entityId) {
+        Map<Long, List<FenceAssignment>> byId = byEntity.get(entityTypeId);
+        if (byId != null) {
+            List<FenceAssignment> found = byId.get(entityId);
+            if (found != null) {
+                target.addAll(found);
+            }
+        }
+    }
+
+    private static int sourceBit(int entityTypeId) {
+        if (entityTypeId == EntityTypes.USER) return AccountEffectiveFence.SOURCE_USER;
+        if (entityTypeId == EntityTypes.TEAM) return AccountEffectiveFence.SOURCE_TEAM;
+        if (entityTypeId == EntityTypes.PROJECT) return AccountEffectiveFence.SOURCE_PROJECT;
+        if (entityTypeId == EntityTypes.ORG) return AccountEffectiveFence.SOURCE_ORG;
+        return 0;
+    }
+
+    /**
+     * An empty IN list is invalid SQL, so empty sets are replaced by an ID that never matches.
+     */
+    private static Collection<Long> orPlaceholder(Set<Long> ids) {
+        return ids.isEmpty() ? Collections.singletonList(-1L) : ids;
+    }
+
+    private static List<Long> boxed(long[] values) {
+        List<Long> list = new ArrayList<>(values.length);
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
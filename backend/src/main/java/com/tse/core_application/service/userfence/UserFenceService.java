@@ -1,25 +1,26 @@
 package com.tse.core_application.service.userfence;
 
-import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.dto.userfence.BulkUserFencesResponse;
 import com.tse.core_application.dto.userfence.Counts;
 import com.tse.core_application.dto.userfence.EffectiveFenceDto;
-import com.tse.core_application.dto.userfence.SourceRef;
 import com.tse.core_application.dto.userfence.UserFencesResponse;
-import com.tse.core_application.entity.assignment.FenceAssignment;
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
 import com.tse.core_application.entity.fence.GeoFence;
 import com.tse.core_application.exception.ProblemException;
-import com.tse.core_application.repository.assignment.FenceAssignmentRepository;
 import com.tse.core_application.repository.fence.GeoFenceRepository;
+import com.tse.core_application.service.coalescing.RequestCoalescer;
+import com.tse.core_application.service.fence.FenceReadVersions;
 import com.tse.core_application.service.membership.MembershipProvider;
+import com.tse.core_application.util.concurrent.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service for computing effective fences available to a user.
@@ -29,19 +30,31 @@ public class UserFenceService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserFenceService.class);
 
-    private final FenceAssignmentRepository assignmentRepository;
     private final GeoFenceRepository fenceRepository;
     private final MembershipProvider membershipProvider;
+    private final EffectiveFenceStore effectiveFenceStore;
+    private final FenceReadVersions fenceReadVersions;
+    private final SingleFlight<List<Object>, List<EffectiveFenceDto>> fencesFlight;
 
     @Value("${attendance.policy.skip-org-validation:true}")
     private boolean skipOrgValidation;
 
-    public UserFenceService(FenceAssignmentRepository assignmentRepository,
-                            GeoFenceRepository fenceRepository,
-                            MembershipProvider membershipProvider) {
-        this.assignmentRepository = assignmentRepository;
+    @Value("${attendance.user-fences.bulk-max-accounts:5000}")
+    private int bulkMaxAccounts;
+
+    @Value("${attendance.user-fences.bulk-parallel-threshold:256}")
+    private int bulkParallelThreshold;
+
+    public UserFenceService(GeoFenceRepository fenceRepository,
+                            MembershipProvider membershipProvider,
+                            EffectiveFenceStore effectiveFenceStore,
+                            FenceReadVersions fenceReadVersions,
+                            RequestCoalescer requestCoalescer) {
         this.fenceRepository = fenceRepository;
         this.membershipProvider = membershipProvider;
+        this.effectiveFenceStore = effectiveFenceStore;
+        this.fenceReadVersions = fenceReadVersions;
+        this.fencesFlight = requestCoalescer.group("userFenceFences");
     }
 
     public UserFencesResponse getUserFences(long orgId, long accountId, boolean includeInactive) {
@@ -55,250 +68,201 @@ public class UserFenceService {
             );
         }
 
-        if (!skipOrgValidation && !membershipProvider.orgExists(orgId)) {
-            throw new ProblemException(
-                    HttpStatus.NOT_FOUND,
-                    "ORG_NOT_FOUND",
-                    "Organization not found",
-                    "Organization not found: " + orgId
-            );
-        }
-
-        // 1. Expand memberships
-        List<EntityRef> entities = expandMemberships(orgId, accountId);
+        validateOrgExists(orgId);
 
-        // 2. Collect all assignments
-        List<FenceAssignment> allAssignments = collectAssignments(orgId, entities);
-
-        // 3. Validate cross-org consistency
-        validateNoOrgMismatch(orgId, allAssignments);
-
-        // 4. Group assignments by fenceId
-        Map<Long, List<FenceAssignment>> assignmentsByFence = allAssignments.stream()
-                .collect(Collectors.groupingBy(FenceAssignment::getFenceId));
-
-        // 5. Fetch fences
-        Set<Long> fenceIds = assignmentsByFence.keySet();
-        List<GeoFence> fences = fetchFences(orgId, fenceIds, includeInactive);
-
-        // 6. Build response
-        return buildResponse(orgId, accountId, fences, assignmentsByFence, allAssignments);
+        return resolveUserFences(orgId, Collections.singletonList(accountId), includeInactive).get(0);
     }
 
-    private List<EntityRef> expandMemberships(long orgId, long accountId) {
-        List<EntityRef> entities = new ArrayList<>();
-
-        // USER
-        entities.add(new EntityRef(EntityTypes.USER, accountId));
-
-        // TEAM
-        List<Long> teamIds = membershipProvider.listTeamsForUser(orgId, accountId);
-        teamIds.forEach(teamId -> entities.add(new EntityRef(EntityTypes.TEAM, teamId)));
+    /**
+     * Effective fences, default fence and counts for many accounts at once.
+     * Reads the materialized effective fences of all accounts and runs one fence query
+     * regardless of the number of accounts; per-account results are then built in memory.
+     */
+    public BulkUserFencesResponse getUserFencesBulk(long orgId, List<Long> accountIds, boolean includeInactive) {
+        if (accountIds == null || accountIds.isEmpty()) {
+            throw new ProblemException(
+                    HttpStatus.BAD_REQUEST,
+                    "VALIDATION_FAILED",
+                    "Invalid accountIds",
+                    "At least one accountId is required"
+            );
+        }
 
-        // PROJECT
-        List<Long> projectIds = membershipProvider.listProjectsForUser(orgId, accountId);
-        projectIds.forEach(projectId -> entities.add(new EntityRef(EntityTypes.PROJECT, projectId)));
+        List<Long> distinctAccountIds = accountIds.stream().distinct().collect(Collectors.toList());
+        if (distinctAccountIds.size() > bulkMaxAccounts) {
+            throw new ProblemException(
+                    HttpStatus.BAD_REQUEST,
+                    "VALIDATION_FAILED",
+                    "Too many accountIds",
+                    "At most " + bulkMaxAccounts + " accountIds are allowed per request"
+            );
+        }
 
-        // ORG
-        entities.add(new EntityRef(EntityTypes.ORG, orgId));
+        for (Long accountId : distinctAccountIds) {
+            if (accountId == null || accountId <= 0) {
+                throw new ProblemException(
+                        HttpStatus.BAD_REQUEST,
+                        "VALIDATION_FAILED",
+                        "Invalid accountId",
+                        "accountId must be positive: " + accountId
+                );
+            }
+        }
 
-        logger.debug("Expanded memberships for user {} in org {}: {} entities",
-                accountId, orgId, entities.size());
+        validateOrgExists(orgId);
 
-        return entities;
+        return new BulkUserFencesResponse(orgId, resolveUserFences(orgId, distinctAccountIds, includeInactive));
     }
 
-    private List<FenceAssignment> collectAssignments(long orgId, List<EntityRef> entities) {
-        List<FenceAssignment> allAssignments = new ArrayList<>();
-
-        for (EntityRef entity : entities) {
-            List<FenceAssignment> assignments = assignmentRepository
-                    .findByOrgIdAndEntityTypeIdAndEntityId(orgId, entity.getEntityTypeId(), entity.getEntityId());
-            allAssignments.addAll(assignments);
+    private void validateOrgExists(long orgId) {
+        if (!skipOrgValidation && !membershipProvider.orgExists(orgId)) {
+            throw new ProblemException(
+                    HttpStatus.NOT_FOUND,
+                    "ORG_NOT_FOUND",
+                    "Organization not found",
+                    "Organization not found: " + orgId
+            );
         }
-
-        logger.debug("Collected {} total assignments for org {}", allAssignments.size(), orgId);
-
-        return allAssignments;
     }
 
-    private void validateNoOrgMismatch(long orgId, List<FenceAssignment> assignments) {
-        for (FenceAssignment assignment : assignments) {
-            if (!Objects.equals(assignment.getOrgId(), orgId)) {
-                throw new ProblemException(
-                        HttpStatus.CONFLICT,
-                        "CROSS_ORG_MISMATCH",
-                        "Cross-organization mismatch detected",
-                        "Assignment " + assignment.getId() + " belongs to different org"
-                );
-            }
-        }
+    /**
+     * Resolve effective fences for the given accounts, in the order given.
+     */
+    private List<UserFencesResponse> resolveUserFences(long orgId, List<Long> accountIds, boolean includeInactive) {
+        // 1. Materialized effective fences (accounts not yet materialized are resolved and stored)
+        Map<Long, List<AccountEffectiveFence>> rowsByAccount = effectiveFenceStore.getEffectiveFences(orgId, accountIds);
+
+        // 2. The fences the accounts resolve to, loaded once for all accounts
+        Set<Long> fenceIds = rowsByAccount.values().stream()
+                .flatMap(List::stream)
+                .map(AccountEffectiveFence::getFenceId)
+                .collect(Collectors.toSet());
+        List<EffectiveFenceDto> fences = fetchFences(orgId, fenceIds, includeInactive);
+
+        // 3. Build each account's response in memory; CPU only, so large batches run in parallel
+        Stream<Long> accounts = accountIds.size() >= bulkParallelThreshold
+                ? accountIds.parallelStream()
+                : accountIds.stream();
+
+        return accounts
+                .map(accountId -> buildResponse(orgId, accountId, fences, rowsByAccount.get(accountId)))
+                .collect(Collectors.toList());
     }
 
-    private List<GeoFence> fetchFences(long orgId, Set<Long> fenceIds, boolean includeInactive) {
+    /**
+     * The given fences of the org in id order, without sources. Only the fences the accounts
+     * actually resolve to are read, never the whole org. At shift start most accounts of an org
+     * resolve to the same fences; identical concurrent reads share one query. The key carries
+     * the fence version seen by the caller's own transaction, so a caller only shares a load
+     * that saw the same fences as its snapshot. The templates are shared between threads and
+     * copied before use, never modified.
+     */
+    private List<EffectiveFenceDto> fetchFences(long orgId, Set<Long> fenceIds, boolean includeInactive) {
         if (fenceIds.isEmpty()) {
             return Collections.emptyList();
         }
 
-        List<GeoFence> fences;
-        if (includeInactive) {
-            fences = fenceRepository.findByOrgIdAndIdIn(orgId, fenceIds);
-        } else {
-            fences = fenceRepository.findByOrgIdAndIdInAndIsActiveTrue(orgId, fenceIds);
-        }
-
-        logger.debug("Fetched {} fences for org {} (includeInactive={})",
-                fences.size(), orgId, includeInactive);
+        List<Long> sortedIds = new ArrayList<>(fenceIds);
+        Collections.sort(sortedIds);
+        long fenceVersion = fenceReadVersions.currentFenceVersion(orgId);
+        return fencesFlight.execute(Arrays.asList(orgId, fenceVersion, includeInactive, sortedIds), () -> {
+            List<GeoFence> loaded = includeInactive
+                    ? fenceRepository.findByOrgIdAndIdIn(orgId, sortedIds)
+                    : fenceRepository.findByOrgIdAndIdInAndIsActiveTrue(orgId, sortedIds);
+            List<EffectiveFenceDto> fences = loaded.stream()
+                    .sorted(Comparator.comparing(GeoFence::getId))
+                    .map(UserFenceService::toDto)
+                    .collect(Collectors.toList());
+            logger.debug("Fetched {} of {} fences for org {}", fences.size(), sortedIds.size(), orgId);
+            return Collections.unmodifiableList(fences);
+        });
+    }
 
-        return fences;
+    private static EffectiveFenceDto toDto(GeoFence fence) {
+        EffectiveFenceDto dto = new EffectiveFenceDto();
+        dto.setId(fence.getId());
+        dto.setName(fence.getName());
+        dto.setLocationKind(fence.getLocationKind() != null ? fence.getLocationKind().name() : null);
+        dto.setSiteCode(fence.getSiteCode());
+        dto.setTz(fence.getTz());
+        dto.setCenterLat(fence.getCenterLat());
+        dto.setCenterLng(fence.getCenterLng());
+        dto.setRadiusM(fence.getRadiusM());
+        dto.setIsActive(fence.getIsActive());
+        return dto;
     }
 
     private UserFencesResponse buildResponse(long orgId,
                                              long accountId,
-                                             List<GeoFence> fences,
-                                             Map<Long, List<FenceAssignment>> assignmentsByFence,
-                                             List<FenceAssignment> allAssignments) {
+                                             List<EffectiveFenceDto> fences,
+                                             List<AccountEffectiveFence> rows) {
         UserFencesResponse response = new UserFencesResponse();
         response.setOrgId(orgId);
         response.setAccountId(accountId);
 
+        Map<Long, AccountEffectiveFence> rowsByFence = new HashMap<>();
+        for (AccountEffectiveFence row : rows) {
+            rowsByFence.put(row.getFenceId(), row);
+        }
+
         List<EffectiveFenceDto> effectiveFences = new ArrayList<>();
 
-        for (GeoFence fence : fences) {
-            List<FenceAssignment> fenceAssignments = assignmentsByFence.get(fence.getId());
-            if (fenceAssignments == null) {
+        for (EffectiveFenceDto fence : fences) {
+            AccountEffectiveFence row = rowsByFence.get(fence.getId());
+            if (row == null) {
                 continue;
             }
 
             EffectiveFenceDto dto = new EffectiveFenceDto();
             dto.setId(fence.getId());
             dto.setName(fence.getName());
-            dto.setLocationKind(fence.getLocationKind() != null ? fence.getLocationKind().name() : null);
+            dto.setLocationKind(fence.getLocationKind());
             dto.setSiteCode(fence.getSiteCode());
             dto.setTz(fence.getTz());
             dto.setCenterLat(fence.getCenterLat());
             dto.setCenterLng(fence.getCenterLng());
             dto.setRadiusM(fence.getRadiusM());
             dto.setIsActive(fence.getIsActive());
-
-            // Build sources
-            List<SourceRef> sources = fenceAssignments.stream()
-                    .map(a -> new SourceRef(a.getEntityTypeId(), a.getEntityId(), a.getIsDefault()))
-                    .collect(Collectors.toList());
-            dto.setSources(sources);
+            dto.setSources(row.getSources());
 
             effectiveFences.add(dto);
         }
 
         response.setFences(effectiveFences);
 
-        // Compute default fence
-        Long defaultFenceId = computeDefaultFenceId(accountId, allAssignments, assignmentsByFence.keySet());
+        // Default fence was resolved (USER > TEAM > PROJECT > ORG) when the rows were materialized
+        Long defaultFenceId = rows.stream()
+                .filter(row -> Boolean.TRUE.equals(row.getIsDefaultResolved()))
+                .map(AccountEffectiveFence::getFenceId)
+                .findFirst()
+                .orElse(null);
         response.setDefaultFenceIdForUser(defaultFenceId);
 
-        // Compute counts
-        Counts counts = computeCounts(effectiveFences, allAssignments);
-        response.setCounts(counts);
+        response.setCounts(computeCounts(effectiveFences, rows));
 
         return response;
     }
 
-    private Long computeDefaultFenceId(long accountId,
-                                       List<FenceAssignment> allAssignments,
-                                       Set<Long> validFenceIds) {
-        // Priority 1: USER-level default
-        Optional<FenceAssignment> userDefault = allAssignments.stream()
-                .filter(a -> a.getEntityTypeId() == EntityTypes.USER)
-                .filter(a -> a.getEntityId().equals(accountId))
-                .filter(FenceAssignment::getIsDefault)
-                .filter(a -> validFenceIds.contains(a.getFenceId()))
-                .findFirst();
-
-        if (userDefault.isPresent()) {
-            return userDefault.get().getFenceId();
-        }
-
-        // Priority 2: TEAM default (earliest by created_datetime)
-        Optional<FenceAssignment> teamDefault = allAssignments.stream()
-                .filter(a -> a.getEntityTypeId() == EntityTypes.TEAM)
-                .filter(FenceAssignment::getIsDefault)
-                .filter(a -> validFenceIds.contains(a.getFenceId()))
-                .min(Comparator.comparing(FenceAssignment::getCreatedDatetime));
-
-        if (teamDefault.isPresent()) {
-            return teamDefault.get().getFenceId();
-        }
-
-        // Priority 3: PROJECT default (earliest by created_datetime)
-        Optional<FenceAssignment> projectDefault = allAssignments.stream()
-                .filter(a -> a.getEntityTypeId() == EntityTypes.PROJECT)
-                .filter(FenceAssignment::getIsDefault)
-                .filter(a -> validFenceIds.contains(a.getFenceId()))
-                .min(Comparator.comparing(FenceAssignment::getCreatedDatetime));
-
-        if (projectDefault.isPresent()) {
-            return projectDefault.get().getFenceId();
-        }
-
-        // Priority 4: ORG default
-        Optional<FenceAssignment> orgDefault = allAssignments.stream()
-                .filter(a -> a.getEntityTypeId() == EntityTypes.ORG)
-                .filter(FenceAssignment::getIsDefault)
-                .filter(a -> validFenceIds.contains(a.getFenceId()))
-                .findFirst();
-
-        return orgDefault.map(FenceAssignment::getFenceId).orElse(null);
-    }
-
-    private Counts computeCounts(List<EffectiveFenceDto> fences, List<FenceAssignment> allAssignments) {
+    private Counts computeCounts(List<EffectiveFenceDto> fences, List<AccountEffectiveFence> rows) {
         // Count unique fences per entity type
-        Set<Long> userFences = new HashSet<>();
-        Set<Long> teamFences = new HashSet<>();
-        Set<Long> projectFences = new HashSet<>();
-        Set<Long> orgFences = new HashSet<>();
-
-        for (FenceAssignment assignment : allAssignments) {
-            Long fenceId = assignment.getFenceId();
-            int entityTypeId = assignment.getEntityTypeId();
-
-            if (entityTypeId == EntityTypes.USER) {
-                userFences.add(fenceId);
-            } else if (entityTypeId == EntityTypes.TEAM) {
-                teamFences.add(fenceId);
-            } else if (entityTypeId == EntityTypes.PROJECT) {
-                projectFences.add(fenceId);
-            } else if (entityTypeId == EntityTypes.ORG) {
-                orgFences.add(fenceId);
-            }
+        int userFences = 0;
+        int teamFences = 0;
+        int projectFences = 0;
+        int orgFences = 0;
+
+        for (AccountEffectiveFence row : rows) {
+            if (row.hasSource(AccountEffectiveFence.SOURCE_USER)) userFences++;
+            if (row.hasSource(AccountEffectiveFence.SOURCE_TEAM)) teamFences++;
+            if (row.hasSource(AccountEffectiveFence.SOURCE_PROJECT)) projectFences++;
+            if (row.hasSource(AccountEffectiveFence.SOURCE_ORG)) orgFences++;
         }
 
         return new Counts(
                 fences.size(),
-                userFences.size(),
-                teamFences.size(),
-                projectFences.size(),
-                orgFences.size()
+                userFences,
+                teamFences,
+                projectFences,
+                orgFences
         );
     }
-
-    /**
-     * Internal class for representing entity references.
-     */
-    private static class EntityRef {
-        private final int entityTypeId;
-        private final long entityId;
-
-        EntityRef(int entityTypeId, long entityId) {
-            this.entityTypeId = entityTypeId;
-            this.entityId = entityId;
-        }
-
-        int getEntityTypeId() {
-            return entityTypeId;
-        }
-
-        long getEntityId() {
-            return entityId;
-        }
-    }
 }
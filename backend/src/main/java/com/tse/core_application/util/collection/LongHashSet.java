@@ -0,0 +1,175 @@
+package com.tse.core_application.util.collection;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of primitive longs.
+ * Avoids boxing for large id sets (org rosters, membership indexes).
+ * Not thread-safe; callers publish instances safely or guard them.
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] slots;
+    private int size;
+    private boolean containsEmptyKey;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    public static LongHashSet of(long[] values) {
+        LongHashSet set = new LongHashSet(values.length);
+        for (long value : values) {
+            set.add(value);
+        }
+        return set;
+    }
+
+    public static LongHashSet of(Iterable<Long> values) {
+        LongHashSet set = new LongHashSet();
+        for (Long value : values) {
+            if (value != null) {
+                set.add(value);
+            }
+        }
+        return set;
+    }
+
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = true;
+            size++;
+            return true;
+        }
+
+        int index = indexOf(value);
+        if (slots[index] == value) {
+            return false;
+        }
+
+        slots[index] = value;
+        size++;
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash(slots.length << 1);
+        }
+        return true;
+    }
+
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            if (!containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = false;
+            size--;
+            return true;
+        }
+
+        int index = indexOf(value);
+        if (slots[index] != value) {
+            return false;
+        }
+
+        // Backward-shift deletion: pull later entries of the probe chain into the gap
+        int mask = slots.length - 1;
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (slots[next] != EMPTY) {
+            int home = mix(slots[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = slots[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmptyKey;
+        }
+        return slots[indexOf(value)] == value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (containsEmptyKey) {
+            consumer.accept(EMPTY);
+        }
+        for (long slot : slots) {
+            if (slot != EMPTY) {
+                consumer.accept(slot);
+            }
+        }
+    }
+
+    public long[] toArray() {
+        long[] result = new long[size];
+        int i = 0;
+        if (containsEmptyKey) {
+            result[i++] = EMPTY;
+        }
+        for (long slot : slots) {
+            if (slot != EMPTY) {
+                result[i++] = slot;
+            }
+        }
+        return result;
+    }
+
+    public LongHashSet copy() {
+        LongHashSet copy = new LongHashSet(4);
+        copy.slots = slots.clone();
+        copy.size = size;
+        copy.containsEmptyKey = containsEmptyKey;
+        return copy;
+    }
+
+    private int indexOf(long value) {
+        int mask = slots.length - 1;
+        int index = mix(value) & mask;
+        while (slots[index] != EMPTY && slots[index] != value) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = slots;
+        slots = new long[newCapacity];
+        Arrays.fill(slots, EMPTY);
+        for (long value : old) {
+            if (value != EMPTY) {
+                slots[indexOf(value)] = value;
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
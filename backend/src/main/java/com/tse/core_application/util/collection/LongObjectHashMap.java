@@ -0,0 +1,146 @@
+package com.tse.core_application.util.collection;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash map from primitive longs to objects.
+ * Avoids boxing the key for large id-keyed indexes (packed entity keys, account ids).
+ * Not thread-safe; callers publish instances safely or guard them. No removal.
+ */
+public class LongObjectHashMap<V> {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private boolean containsEmptyKey;
+    private V emptyKeyValue;
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @return the previous value, null if there was none
+     */
+    public V put(long key, V value) {
+        if (key == EMPTY) {
+            V previous = emptyKeyValue;
+            if (!containsEmptyKey) {
+                containsEmptyKey = true;
+                size++;
+            }
+            emptyKeyValue = value;
+            return previous;
+        }
+
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            V previous = valueAt(index);
+            values[index] = value;
+            return previous;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        if (size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    public V get(long key) {
+        if (key == EMPTY) {
+            return emptyKeyValue;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? valueAt(index) : null;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) {
+            return containsEmptyKey;
+        }
+        return keys[indexOf(key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEachKey(LongConsumer consumer) {
+        if (containsEmptyKey) {
+            consumer.accept(EMPTY);
+        }
+        for (long key : keys) {
+            if (key != EMPTY) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    public void forEach(EntryConsumer<? super V> consumer) {
+        if (containsEmptyKey) {
+            consumer.accept(EMPTY, emptyKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], valueAt(i));
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[newCapacity];
+        values = new Object[newCapacity];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
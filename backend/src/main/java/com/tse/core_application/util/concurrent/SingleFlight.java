@@ -0,0 +1,115 @@
+package com.tse.core_application.util.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller (the leader) runs the loader
+ * on its own thread, every caller arriving while it runs waits on the leader's future and gets
+ * the same result or exception. Nothing is cached; once the leader finishes the next call
+ * runs the loader again.
+ *
+ * A follower waits at most followerTimeoutMs for the leader; after that it runs the loader
+ * itself, so one stuck leader does not hold every caller of the key.
+ *
+ * Results are shared between threads, so they must be immutable values (no managed entities)
+ * and must not be modified by callers.
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final long followerTimeoutMs;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong followerTimeouts = new AtomicLong();
+
+    public SingleFlight(String name, long followerTimeoutMs) {
+        this.name = name;
+        this.followerTimeoutMs = followerTimeoutMs;
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        calls.incrementAndGet();
+
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, own);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            try {
+                return await(leader, followerTimeoutMs);
+            } catch (TimeoutException e) {
+                followerTimeouts.incrementAndGet();
+                return loader.get();
+            }
+        }
+
+        try {
+            V value = loader.get();
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Followers that gave up waiting for the leader and loaded themselves.
+     */
+    public long getFollowerTimeouts() {
+        return followerTimeouts.get();
+    }
+
+    /**
+     * Share of calls that were served by another caller's execution.
+     */
+    public double getCoalescingRatio() {
+        long total = calls.get();
+        return total == 0 ? 0.0 : (double) coalesced.get() / total;
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> future, long timeoutMs) throws TimeoutException {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a coalesced call", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
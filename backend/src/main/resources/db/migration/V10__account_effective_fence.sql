@@ -0,0 +1,32 @@
+-- Materialized effective fences per account: the merge of USER, TEAM, PROJECT and ORG assignments.
+-- Derived data only; fence_assignment stays the source of truth.
+
+CREATE TABLE IF NOT EXISTS account_effective_fence (
+    id BIGSERIAL PRIMARY KEY,
+    org_id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+    fence_id BIGINT NOT NULL,
+    source_mask SMALLINT NOT NULL,                  -- 1=USER, 2=TEAM, 4=PROJECT, 8=ORG
+    is_default_resolved BOOLEAN NOT NULL DEFAULT FALSE,
+    sources JSONB NOT NULL DEFAULT '[]'::JSONB      -- contributing entities, for source attribution
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_acc_eff_fence ON account_effective_fence(org_id, account_id, fence_id);
+CREATE INDEX IF NOT EXISTS idx_acc_eff_fence_fence ON account_effective_fence(org_id, fence_id);
+
+-- Accounts whose rows are current. Writers delete the state row to invalidate an account;
+-- readers re-materialize accounts without one.
+CREATE TABLE IF NOT EXISTS account_effective_fence_state (
+    org_id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+    built_version BIGINT NOT NULL,
+    built_datetime TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (org_id, account_id)
+);
+
+-- Per-org counter bumped by every assignment or membership change. Materialization only
+-- persists its result if the counter did not move while it was computing.
+CREATE TABLE IF NOT EXISTS org_fence_version (
+    org_id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0
+);
@@ -0,0 +1,37 @@
+-- Transactional outbox for fence, assignment and policy changes.
+-- Writers append rows in the same transaction as their change; the relay assigns publish_seq
+-- (a total publication order) and hands the rows to the change bus.
+
+CREATE SEQUENCE IF NOT EXISTS change_outbox_publish_seq;
+
+CREATE TABLE IF NOT EXISTS change_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    org_id BIGINT NOT NULL,
+    aggregate_type VARCHAR(32) NOT NULL,            -- FENCE, ASSIGNMENT, POLICY
+    aggregate_id BIGINT NOT NULL,
+    aggregate_version BIGINT NOT NULL,              -- 1, 2, 3... per aggregate
+    change_type VARCHAR(32) NOT NULL,
+    payload JSONB NOT NULL DEFAULT '{}'::JSONB,
+    created_datetime TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    publish_seq BIGINT,                             -- NULL until relayed
+    published_datetime TIMESTAMPTZ
+);
+
+CREATE INDEX IF NOT EXISTS idx_change_outbox_unpublished ON change_outbox(id) WHERE publish_seq IS NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS uq_change_outbox_publish_seq ON change_outbox(publish_seq);
+
+-- Per-aggregate version counter. Incrementing it row-locks the aggregate until the writer
+-- commits, so outbox rows of one aggregate are committed in id order.
+CREATE TABLE IF NOT EXISTS change_outbox_aggregate (
+    aggregate_type VARCHAR(32) NOT NULL,
+    aggregate_id BIGINT NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (aggregate_type, aggregate_id)
+);
+
+-- Last publish_seq applied by each consumer, for catch-up after a restart or a missed message.
+CREATE TABLE IF NOT EXISTS change_consumer_offset (
+    consumer_id VARCHAR(128) PRIMARY KEY,
+    last_seq BIGINT NOT NULL,
+    updated_datetime TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
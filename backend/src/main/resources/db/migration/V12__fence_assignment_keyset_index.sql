@@ -0,0 +1,6 @@
+-- Keyset paging of a fence's assignments by entity type and entity id.
+-- Covers every query of idx_fence_assignment_fence, which is dropped.
+CREATE INDEX IF NOT EXISTS idx_fence_assignment_fence_type_entity
+    ON fence_assignment(org_id, fence_id, entity_type_id, entity_id);
+
+DROP INDEX IF EXISTS idx_fence_assignment_fence;
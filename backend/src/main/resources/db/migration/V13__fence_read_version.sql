@@ -0,0 +1,18 @@
+-- Version stamps behind the ETags of fence reads. Counters only ever increase; a reader that
+-- sees the same stamps as before knows its cached representation is still current.
+
+-- Per-org counters: fence_version moves on every fence create/update, assignment_version on
+-- every org-wide assignment change (ORG assignments, full invalidations).
+CREATE TABLE IF NOT EXISTS org_fence_read_version (
+    org_id BIGINT PRIMARY KEY,
+    fence_version BIGINT NOT NULL DEFAULT 0,
+    assignment_version BIGINT NOT NULL DEFAULT 0
+);
+
+-- Per-account counter: moves whenever the account's effective fences are invalidated.
+CREATE TABLE IF NOT EXISTS account_fence_read_version (
+    org_id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+    version BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (org_id, account_id)
+);
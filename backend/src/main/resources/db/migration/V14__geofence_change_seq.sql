@@ -0,0 +1,18 @@
+-- Per-org fence change sequence for delta sync. Every create/update stamps the fence with the
+-- org's new fence_version, taken under the org_fence_read_version row lock, so within an org
+-- the stamps commit in increasing order and a reader never sees a later one without the
+-- earlier ones.
+
+ALTER TABLE geofence ADD COLUMN IF NOT EXISTS change_seq BIGINT NOT NULL DEFAULT 0;
+
+-- Existing fences are stamped with their org's current version (at least 1), so a client
+-- syncing from 0 receives them.
+INSERT INTO org_fence_read_version (org_id, fence_version)
+SELECT DISTINCT org_id, 1 FROM geofence
+ON CONFLICT (org_id) DO UPDATE SET fence_version = GREATEST(org_fence_read_version.fence_version, 1);
+
+UPDATE geofence g SET change_seq = v.fence_version
+FROM org_fence_read_version v
+WHERE v.org_id = g.org_id;
+
+CREATE INDEX IF NOT EXISTS idx_geofence_org_change_seq ON geofence(org_id, change_seq);
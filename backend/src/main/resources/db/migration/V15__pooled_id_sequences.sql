@@ -0,0 +1,18 @@
+-- Pooled sequence ids for attendance_event, attendance_day, fence_assignment and punch_request.
+-- Hibernate takes a block of 50 ids per nextval (pooled optimizer: the returned value is the top
+-- of the block), which lets it batch inserts instead of running one INSERT per entity.
+-- The BIGSERIAL sequences are kept as column defaults, so the raw JDBC batch inserts still work;
+-- a value they take is always the top of a block no session uses, so ids never collide.
+-- Each sequence is moved to the current max id, so the first block starts right above it.
+
+ALTER SEQUENCE attendance_event_id_seq INCREMENT BY 50;
+SELECT setval('attendance_event_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM attendance_event), 1));
+
+ALTER SEQUENCE attendance_day_id_seq INCREMENT BY 50;
+SELECT setval('attendance_day_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM attendance_day), 1));
+
+ALTER SEQUENCE fence_assignment_id_seq INCREMENT BY 50;
+SELECT setval('fence_assignment_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM fence_assignment), 1));
+
+ALTER SEQUENCE punch_request_id_seq INCREMENT BY 50;
+SELECT setval('punch_request_id_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM punch_request), 1));
@@ -0,0 +1,114 @@
+-- Monthly range partitioning of attendance_event on ts_utc.
+-- Partitions are named attendance_event_pYYYY_MM and cover one UTC calendar month. Future
+-- partitions are created ahead of time by AttendanceEventPartitionManager through
+-- ensure_attendance_event_partition; months past the retention window are detached, exported
+-- and dropped by the same job (see attendance_event_archive).
+--
+-- The primary key has to include the partition key, so it becomes (id, ts_utc); ids still come
+-- from attendance_event_id_seq and stay unique. The idempotency key cannot be unique across
+-- partitions either; it is unique per partition, which still rejects a concurrent double
+-- submit (both rows land in the same month).
+--
+-- Existing rows are copied into the new table inside this migration, which holds an exclusive
+-- lock on attendance_event until it commits. Run it in a maintenance window on large tables.
+
+CREATE OR REPLACE FUNCTION ensure_attendance_event_partition(p_month DATE) RETURNS TEXT AS $$
+DECLARE
+    v_first DATE := date_trunc('month', p_month::timestamp)::date;
+    v_name TEXT := 'attendance_event_p' || to_char(v_first, 'YYYY_MM');
+    v_start TIMESTAMPTZ := v_first::timestamp AT TIME ZONE 'UTC';
+    v_end TIMESTAMPTZ := (v_first + INTERVAL '1 month') AT TIME ZONE 'UTC';
+BEGIN
+    IF to_regclass(v_name) IS NULL THEN
+        EXECUTE format('CREATE TABLE %I PARTITION OF attendance_event FOR VALUES FROM (%L) TO (%L)',
+                       v_name, v_start, v_end);
+        EXECUTE format('CREATE UNIQUE INDEX IF NOT EXISTS %I ON %I (org_id, account_id, event_kind, idempotency_key) ' ||
+                       'WHERE idempotency_key IS NOT NULL', v_name || '_idem', v_name);
+    END IF;
+    RETURN v_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- The id sequence outlives the old table
+ALTER SEQUENCE attendance_event_id_seq OWNED BY NONE;
+ALTER TABLE attendance_event RENAME TO attendance_event_unpartitioned;
+
+CREATE TABLE attendance_event (
+    id BIGINT NOT NULL DEFAULT nextval('attendance_event_id_seq'),
+    org_id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+
+    event_kind TEXT NOT NULL CHECK (event_kind IN ('CHECK_IN', 'CHECK_OUT', 'BREAK_START', 'BREAK_END', 'PUNCHED')),
+    event_source TEXT NOT NULL CHECK (event_source IN ('MANUAL', 'GEOFENCE', 'WIFI', 'SUPERVISOR')),
+    event_action TEXT NOT NULL CHECK (event_action IN ('MANUAL', 'AUTO')),
+
+    ts_utc TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+    client_local_ts TIMESTAMPTZ,
+    client_tz TEXT,
+
+    fence_id BIGINT,
+    lat DOUBLE PRECISION,
+    lon DOUBLE PRECISION,
+    accuracy_m DOUBLE PRECISION,
+    under_range BOOLEAN,
+
+    success BOOLEAN NOT NULL,
+    verdict TEXT NOT NULL CHECK (verdict IN ('PASS', 'WARN', 'FAIL')),
+    fail_reason TEXT,
+    flags JSONB NOT NULL DEFAULT '{}'::JSONB,
+
+    punch_request_id BIGINT,
+    requester_account_id BIGINT,
+
+    idempotency_key TEXT,
+    created_datetime TIMESTAMPTZ NOT NULL DEFAULT NOW(),
+
+    PRIMARY KEY (id, ts_utc)
+) PARTITION BY RANGE (ts_utc);
+
+ALTER SEQUENCE attendance_event_id_seq OWNED BY attendance_event.id;
+
+-- One partition per month from the oldest existing event through three months ahead
+DO $$
+DECLARE
+    v_now DATE := (now() AT TIME ZONE 'UTC')::date;
+    v_month DATE;
+    v_last DATE;
+BEGIN
+    SELECT COALESCE(MIN(ts_utc AT TIME ZONE 'UTC')::date, v_now),
+           GREATEST(COALESCE(MAX(ts_utc AT TIME ZONE 'UTC')::date, v_now), (v_now + INTERVAL '3 months')::date)
+    INTO v_month, v_last
+    FROM attendance_event_unpartitioned;
+
+    v_month := date_trunc('month', v_month::timestamp)::date;
+    WHILE v_month <= v_last LOOP
+        PERFORM ensure_attendance_event_partition(v_month);
+        v_month := (v_month + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO attendance_event (id, org_id, account_id, event_kind, event_source, event_action, ts_utc,
+                              client_local_ts, client_tz, fence_id, lat, lon, accuracy_m, under_range,
+                              success, verdict, fail_reason, flags, punch_request_id, requester_account_id,
+                              idempotency_key, created_datetime)
+SELECT id, org_id, account_id, event_kind, event_source, event_action, ts_utc,
+       client_local_ts, client_tz, fence_id, lat, lon, accuracy_m, under_range,
+       success, verdict, fail_reason, flags, punch_request_id, requester_account_id,
+       idempotency_key, created_datetime
+FROM attendance_event_unpartitioned;
+
+DROP TABLE attendance_event_unpartitioned;
+
+-- Partitioned indexes, created on every current and future partition
+CREATE INDEX IF NOT EXISTS idx_att_event_org_acc_ts ON attendance_event(org_id, account_id, ts_utc DESC);
+CREATE INDEX IF NOT EXISTS idx_att_event_org_kind ON attendance_event(org_id, event_kind);
+
+-- Partitions that left the table: where their rows were exported to
+CREATE TABLE IF NOT EXISTS attendance_event_archive (
+    partition_name TEXT PRIMARY KEY,
+    range_start TIMESTAMPTZ NOT NULL,
+    range_end TIMESTAMPTZ NOT NULL,
+    row_count BIGINT NOT NULL,
+    archive_path TEXT NOT NULL,
+    archived_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,2 @@
+-- Due-expiry lookups by state, used when a node syncs pending requests created on other nodes
+CREATE INDEX IF NOT EXISTS idx_pr_state_expires ON punch_request(state, expires_at);
@@ -0,0 +1,10 @@
+-- Last window each once-a-day scheduler job has run for, per org. Lets whichever node holds
+-- the org's lease catch up on a window that was missed (late tick, lease moved, restart)
+-- without running a window twice.
+CREATE TABLE IF NOT EXISTS scheduler_job_run (
+    org_id BIGINT NOT NULL,
+    job_name VARCHAR(64) NOT NULL,
+    window_date DATE NOT NULL,
+    ran_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (org_id, job_name)
+);
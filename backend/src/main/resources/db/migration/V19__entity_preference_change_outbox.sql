@@ -0,0 +1,49 @@
+-- entity_preference is written outside this application, so there is no write path here to
+-- hook. ORG rows feed the cached org entitlements, so every change of an org's
+-- geo-fencing flags appends a PREFERENCE record to change_outbox in the writer's transaction;
+-- every node evicts the org when the record is relayed.
+
+CREATE OR REPLACE FUNCTION entity_preference_org_change() RETURNS TRIGGER AS $$
+DECLARE
+    pref entity_preference%ROWTYPE;
+    next_version BIGINT;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        pref := OLD;
+    ELSE
+        pref := NEW;
+    END IF;
+
+    -- 2 = ORG
+    IF pref.entity_type_id <> 2 THEN
+        RETURN NULL;
+    END IF;
+
+    -- Same per-aggregate version counter (and row lock) as ChangeOutbox.append
+    INSERT INTO change_outbox_aggregate (aggregate_type, aggregate_id, version)
+    VALUES ('PREFERENCE', pref.entity_id, 1)
+    ON CONFLICT (aggregate_type, aggregate_id) DO UPDATE SET version = change_outbox_aggregate.version + 1
+    RETURNING version INTO next_version;
+
+    INSERT INTO change_outbox (org_id, aggregate_type, aggregate_id, aggregate_version, change_type, payload)
+    VALUES (pref.entity_id, 'PREFERENCE', pref.entity_id, next_version,
+            CASE WHEN TG_OP = 'INSERT' THEN 'CREATED' WHEN TG_OP = 'DELETE' THEN 'DELETED' ELSE 'UPDATED' END,
+            jsonb_build_object('geoFencingAllowed', pref.is_geofencing_allowed,
+                               'geoFencingActive', pref.is_geofencing_active));
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_entity_preference_org_write ON entity_preference;
+CREATE TRIGGER trg_entity_preference_org_write
+    AFTER INSERT OR DELETE ON entity_preference
+    FOR EACH ROW EXECUTE PROCEDURE entity_preference_org_change();
+
+-- Updates only when a flag actually changes (audit-only updates are ignored)
+DROP TRIGGER IF EXISTS trg_entity_preference_org_update ON entity_preference;
+CREATE TRIGGER trg_entity_preference_org_update
+    AFTER UPDATE ON entity_preference
+    FOR EACH ROW
+    WHEN (OLD.is_geofencing_allowed IS DISTINCT FROM NEW.is_geofencing_allowed
+          OR OLD.is_geofencing_active IS DISTINCT FROM NEW.is_geofencing_active)
+    EXECUTE PROCEDURE entity_preference_org_change();
@@ -0,0 +1,4 @@
+-- Per-org membership counter behind the user-fence ETags: moves on every membership or roster
+-- change (MembershipChangedEvent), so a cached getUserFences answer never outlives the
+-- memberships it was resolved from.
+ALTER TABLE org_fence_read_version ADD COLUMN IF NOT EXISTS membership_version BIGINT NOT NULL DEFAULT 0;
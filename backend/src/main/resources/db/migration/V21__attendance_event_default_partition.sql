@@ -0,0 +1,43 @@
+-- Catch-all partition of attendance_event: an event whose ts_utc has no monthly partition
+-- (a month the partition manager has not created yet, or one it already dropped) is stored
+-- here instead of failing the insert. AttendanceEventPartitionManager reports its row count and
+-- logs an error while it is not empty.
+CREATE TABLE IF NOT EXISTS attendance_event_default PARTITION OF attendance_event DEFAULT;
+CREATE UNIQUE INDEX IF NOT EXISTS attendance_event_default_idem
+    ON attendance_event_default (org_id, account_id, event_kind, idempotency_key)
+    WHERE idempotency_key IS NOT NULL;
+
+-- With a default partition, a new range partition can only be attached once the default holds
+-- no rows of its range: rows of the month are moved out of the default first. The default is
+-- locked so no insert lands there between the move and the attach.
+CREATE OR REPLACE FUNCTION ensure_attendance_event_partition(p_month DATE) RETURNS TEXT AS $$
+DECLARE
+    v_first DATE := date_trunc('month', p_month::timestamp)::date;
+    v_name TEXT := 'attendance_event_p' || to_char(v_first, 'YYYY_MM');
+    v_start TIMESTAMPTZ := v_first::timestamp AT TIME ZONE 'UTC';
+    v_end TIMESTAMPTZ := (v_first + INTERVAL '1 month') AT TIME ZONE 'UTC';
+BEGIN
+    IF to_regclass(v_name) IS NULL THEN
+        LOCK TABLE attendance_event_default IN ACCESS EXCLUSIVE MODE;
+        EXECUTE format('CREATE TABLE %I (LIKE attendance_event INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', v_name);
+        EXECUTE format('WITH moved AS (DELETE FROM attendance_event_default WHERE ts_utc >= %L AND ts_utc < %L RETURNING *) ' ||
+                       'INSERT INTO %I SELECT * FROM moved', v_start, v_end, v_name);
+        EXECUTE format('ALTER TABLE attendance_event ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                       v_name, v_start, v_end);
+        EXECUTE format('CREATE UNIQUE INDEX IF NOT EXISTS %I ON %I (org_id, account_id, event_kind, idempotency_key) ' ||
+                       'WHERE idempotency_key IS NOT NULL', v_name || '_idem', v_name);
+    END IF;
+    RETURN v_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Exports of dropped partitions are kept in the database, so they survive the loss of the node
+-- that ran the export. archive_path only remains for exports written to local disk before this.
+CREATE TABLE IF NOT EXISTS attendance_event_archive_chunk (
+    partition_name TEXT NOT NULL REFERENCES attendance_event_archive (partition_name) ON DELETE CASCADE,
+    chunk_no INT NOT NULL,
+    data BYTEA NOT NULL,
+    PRIMARY KEY (partition_name, chunk_no)
+);
+
+ALTER TABLE attendance_event_archive ALTER COLUMN archive_path DROP NOT NULL;
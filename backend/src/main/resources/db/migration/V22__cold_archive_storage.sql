@@ -0,0 +1,23 @@
+-- Cold archive files (see ColdArchiveFormat), one per org, UTC month and version, kept in the
+-- database so every node serves the same archive. Nodes only cache them on local disk to
+-- memory-map them.
+CREATE TABLE IF NOT EXISTS attendance_cold_archive_file (
+    archive_month DATE NOT NULL,
+    version INT NOT NULL,
+    org_id BIGINT NOT NULL,
+    content BYTEA NOT NULL,
+    PRIMARY KEY (archive_month, version, org_id)
+);
+
+-- A month is served from the archive once it has a row here, written after every file of its
+-- version. A rewrite stores a new version next to the current one and then switches this row,
+-- so readers never see a half-written month. event_count is what the partition manager checks
+-- before it drops the month's partition.
+CREATE TABLE IF NOT EXISTS attendance_cold_archive_month (
+    archive_month DATE PRIMARY KEY,
+    version INT NOT NULL,
+    org_count INT NOT NULL,
+    event_count BIGINT NOT NULL,
+    day_count BIGINT NOT NULL,
+    completed_at TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
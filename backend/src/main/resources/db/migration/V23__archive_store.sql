@@ -0,0 +1,14 @@
+-- Objects of the database archive store (attendance.archive.store=database), chunked so that
+-- no single value holds a whole partition export. With the default directory store, archived
+-- data lives outside Postgres and this table stays empty.
+CREATE TABLE IF NOT EXISTS archive_store_chunk (
+    object_key TEXT NOT NULL,
+    chunk_no INT NOT NULL,
+    data BYTEA NOT NULL,
+    PRIMARY KEY (object_key, chunk_no)
+);
+
+-- Cold archive files are now written to the archive store. Their rows remain as the index of
+-- which orgs have a file in a version; content is only set on files written before this.
+ALTER TABLE attendance_cold_archive_file ALTER COLUMN content DROP NOT NULL;
+ALTER TABLE attendance_cold_archive_file ADD COLUMN IF NOT EXISTS size_bytes BIGINT;
@@ -0,0 +1,4 @@
+-- Exports of dropped partitions are written to the archive store (see ArchiveStore) under
+-- archive_key. Exports from before this keep their attendance_event_archive_chunk rows (or
+-- their archive_path on local disk) and have no archive_key.
+ALTER TABLE attendance_event_archive ADD COLUMN IF NOT EXISTS archive_key TEXT;
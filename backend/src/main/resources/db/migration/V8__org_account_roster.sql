@@ -0,0 +1,21 @@
+-- Maintained (org_id, account_id) roster of accounts known to the attendance system.
+-- Upserted on an account's first attendance event so org-wide fan-out never scans event/day tables.
+
+CREATE TABLE IF NOT EXISTS org_account_roster (
+    id BIGSERIAL PRIMARY KEY,
+    org_id BIGINT NOT NULL,
+    account_id BIGINT NOT NULL,
+    created_datetime TIMESTAMPTZ NOT NULL DEFAULT NOW()
+);
+
+-- One row per (org, account); also serves the upsert's ON CONFLICT target
+CREATE UNIQUE INDEX IF NOT EXISTS uq_org_account_roster ON org_account_roster(org_id, account_id);
+
+-- Backfill from existing attendance history
+INSERT INTO org_account_roster (org_id, account_id)
+SELECT DISTINCT org_id, account_id FROM attendance_day
+ON CONFLICT (org_id, account_id) DO NOTHING;
+
+INSERT INTO org_account_roster (org_id, account_id)
+SELECT DISTINCT org_id, account_id FROM attendance_event
+ON CONFLICT (org_id, account_id) DO NOTHING;
@@ -0,0 +1,18 @@
+-- Coordination tables for running the attendance schedulers on several replicas.
+-- ClusterCoordinator writes these with update-then-insert, so no ON CONFLICT clauses are needed.
+
+-- Live scheduler nodes; a node is considered dead once its heartbeat is older than the node TTL
+CREATE TABLE IF NOT EXISTS scheduler_node (
+    node_id VARCHAR(128) PRIMARY KEY,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    heartbeat_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Per-org lease: only the holder runs the org's scheduled jobs until lease_until
+CREATE TABLE IF NOT EXISTS scheduler_org_lease (
+    org_id BIGINT PRIMARY KEY,
+    node_id VARCHAR(128) NOT NULL,
+    lease_until TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_sched_lease_node ON scheduler_org_lease(node_id);
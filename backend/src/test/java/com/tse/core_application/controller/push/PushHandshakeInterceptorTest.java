@@ -0,0 +1,142 @@
+package com.tse.core_application.controller.push;
+
+import com.tse.core_application.DummyClasses.JwtUtil;
+import com.tse.core_application.DummyClasses.RequestHeaderHandler;
+import com.tse.core_application.DummyClasses.User;
+import com.tse.core_application.DummyClasses.UserService;
+import com.tse.core_application.exception.GeoFencingAccessDeniedException;
+import com.tse.core_application.service.dir.DirectoryProvider;
+import com.tse.core_application.service.dir.impl.NoopDirectoryProvider;
+import com.tse.core_application.service.preference.GeoFencingAccessService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Who may open the push channel of an org, and for which account.
+ */
+public class PushHandshakeInterceptorTest {
+
+    private static final long ORG_ID = 7L;
+    private static final long USER_ID = 12345L;
+    private static final long ACCOUNT_ID = 10001L;
+
+    private JwtUtil jwtUtil;
+    private UserService userService;
+    private RequestHeaderHandler requestHeaderHandler;
+    private GeoFencingAccessService geoFencingAccessService;
+    private DirectoryProvider directoryProvider;
+    private PushHandshakeInterceptor interceptor;
+    private MockHttpServletResponse servletResponse;
+    private Map<String, Object> attributes;
+
+    @BeforeEach
+    public void setUp() {
+        jwtUtil = mock(JwtUtil.class);
+        userService = mock(UserService.class);
+        requestHeaderHandler = mock(RequestHeaderHandler.class);
+        geoFencingAccessService = mock(GeoFencingAccessService.class);
+        directoryProvider = mock(DirectoryProvider.class);
+
+        when(jwtUtil.getUsernameFromToken("token")).thenReturn("user@example.com");
+        when(userService.getUserByUserName("user@example.com"))
+                .thenReturn(new User(USER_ID, "user@example.com", "user@example.com"));
+        when(requestHeaderHandler.getAccountIdFromRequestHeader(anyString())).thenReturn(ACCOUNT_ID);
+
+        interceptor = new PushHandshakeInterceptor(jwtUtil, userService, requestHeaderHandler,
+                geoFencingAccessService, directoryProvider);
+        servletResponse = new MockHttpServletResponse();
+        attributes = new HashMap<>();
+    }
+
+    @Test
+    public void ownAccountIsAccepted() {
+        when(directoryProvider.isAccountOfUser(ORG_ID, USER_ID, ACCOUNT_ID)).thenReturn(true);
+
+        assertTrue(handshake("Bearer token", String.valueOf(ACCOUNT_ID), "resumeToken=42"));
+        assertEquals(ORG_ID, attributes.get(PushHandshakeInterceptor.ATTR_ORG_ID));
+        assertEquals(ACCOUNT_ID, attributes.get(PushHandshakeInterceptor.ATTR_ACCOUNT_ID));
+        assertEquals(42L, attributes.get(PushHandshakeInterceptor.ATTR_RESUME_TOKEN));
+    }
+
+    @Test
+    public void accountOfAnotherUserOrOrgIsRejected() {
+        when(directoryProvider.isAccountOfUser(ORG_ID, USER_ID, ACCOUNT_ID)).thenReturn(false);
+
+        assertFalse(handshake("Bearer token", String.valueOf(ACCOUNT_ID), null));
+        assertEquals(403, servletResponse.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void defaultDirectoryTrustsTheAccountHeader() {
+        NoopDirectoryProvider noopDirectoryProvider = new NoopDirectoryProvider();
+        ReflectionTestUtils.setField(noopDirectoryProvider, "trustAccountHeader", true);
+        interceptor = new PushHandshakeInterceptor(jwtUtil, userService, requestHeaderHandler,
+                geoFencingAccessService, noopDirectoryProvider);
+
+        assertTrue(handshake("Bearer token", String.valueOf(ACCOUNT_ID), null));
+        assertEquals(ACCOUNT_ID, attributes.get(PushHandshakeInterceptor.ATTR_ACCOUNT_ID));
+    }
+
+    @Test
+    public void defaultDirectoryCanBeSetToRefuseEveryAccount() {
+        NoopDirectoryProvider noopDirectoryProvider = new NoopDirectoryProvider();
+        ReflectionTestUtils.setField(noopDirectoryProvider, "trustAccountHeader", false);
+        interceptor = new PushHandshakeInterceptor(jwtUtil, userService, requestHeaderHandler,
+                geoFencingAccessService, noopDirectoryProvider);
+
+        assertFalse(handshake("Bearer token", String.valueOf(ACCOUNT_ID), null));
+        assertEquals(403, servletResponse.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void missingCredentialsAreRejected() {
+        assertFalse(handshake(null, String.valueOf(ACCOUNT_ID), null));
+        assertEquals(401, servletResponse.getStatus());
+
+        servletResponse = new MockHttpServletResponse();
+        assertFalse(handshake("Bearer token", null, null));
+        assertEquals(401, servletResponse.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void orgWithoutGeoFencingIsRejected() {
+        when(directoryProvider.isAccountOfUser(ORG_ID, USER_ID, ACCOUNT_ID)).thenReturn(true);
+        doThrow(new GeoFencingAccessDeniedException(ORG_ID)).when(geoFencingAccessService).validateGeoFencingAccess(ORG_ID);
+
+        assertFalse(handshake("Bearer token", String.valueOf(ACCOUNT_ID), null));
+        assertEquals(403, servletResponse.getStatus());
+        assertTrue(attributes.isEmpty());
+    }
+
+    private boolean handshake(String authorization, String accountIds, String query) {
+        MockHttpServletRequest servletRequest = new MockHttpServletRequest("GET", "/api/orgs/" + ORG_ID + "/push");
+        servletRequest.setQueryString(query);
+        if (authorization != null) {
+            servletRequest.addHeader("Authorization", authorization);
+        }
+        if (accountIds != null) {
+            servletRequest.addHeader("accountIds", accountIds);
+        }
+        return interceptor.beforeHandshake(new ServletServerHttpRequest(servletRequest),
+                new ServletServerHttpResponse(servletResponse), null, attributes);
+    }
+}
@@ -0,0 +1,156 @@
+package com.tse.core_application.entity;
+
+import com.tse.core_application.constants.attendance.AttendanceStatus;
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+import com.tse.core_application.entity.assignment.FenceAssignment;
+import com.tse.core_application.entity.attendance.AttendanceDay;
+import com.tse.core_application.entity.attendance.AttendanceEvent;
+import com.tse.core_application.entity.punch.PunchRequest;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Batched writes of all four sequence-id entities (attendance_event, attendance_day,
+ * fence_assignment, punch_request) against the dev PostgreSQL database, whose URL sets
+ * reWriteBatchedInserts. attendance_event and attendance_day use jsonb columns, so they cannot
+ * run in BatchedWriteStatementCountTest's H2 database. Each test rolls back.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("dev")
+public class BatchedWritePostgresTest {
+
+    private static final long ORG_ID = 990_047L;
+    private static final int ROWS = 200;
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+    private int batchSize;
+
+    @Test
+    public void interleavedInsertsOfAllBatchedEntitiesArePooledAndBatched() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Alternating entity types: only ordered inserts keep each type in full batches
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < ROWS; i++) {
+            entityManager.persist(event(i, now));
+            entityManager.persist(day(i));
+            entityManager.persist(assignment(i));
+            entityManager.persist(punchRequest(i, now));
+        }
+        entityManager.flush();
+
+        assertEquals(4L * ROWS, statistics.getEntityInsertCount());
+        long perEntity = blocks(ROWS, ALLOCATION_SIZE) + 1 + blocks(ROWS, batchSize);
+        long prepared = statistics.getPrepareStatementCount();
+        assertTrue(prepared <= 4 * perEntity,
+                "Expected at most " + 4 * perEntity + " prepared statements for " + 4 * ROWS + " inserts, got " + prepared);
+
+        assertEquals(Integer.valueOf(ROWS), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM attendance_event WHERE org_id = ?", Integer.class, ORG_ID));
+        assertEquals(Integer.valueOf(ROWS), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM attendance_day WHERE org_id = ?", Integer.class, ORG_ID));
+    }
+
+    /**
+     * pgjdbc only reports per-row counts when it sends a batch as separate INSERTs; a batch it
+     * rewrote into multi-row INSERTs reports SUCCESS_NO_INFO for every row.
+     */
+    @Test
+    public void configuredPoolRewritesBatchedInserts() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            rows.add(new Object[]{ORG_ID, 1L, 1, 1000L + i});
+        }
+
+        int[] counts = jdbcTemplate.batchUpdate(
+                "INSERT INTO fence_assignment (org_id, fence_id, entity_type_id, entity_id, is_default) " +
+                "VALUES (?, ?, ?, ?, false)", rows);
+
+        assertEquals(10, counts.length);
+        for (int count : counts) {
+            assertEquals(Statement.SUCCESS_NO_INFO, count);
+        }
+    }
+
+    private static long blocks(long rows, int size) {
+        return (rows + size - 1) / size;
+    }
+
+    private static AttendanceEvent event(int i, LocalDateTime now) {
+        AttendanceEvent event = new AttendanceEvent();
+        event.setOrgId(ORG_ID);
+        event.setAccountId(1000L + i);
+        event.setEventKind(EventKind.CHECK_IN);
+        event.setEventSource(EventSource.MANUAL);
+        event.setEventAction(EventAction.MANUAL);
+        event.setTsUtc(now);
+        event.setSuccess(true);
+        event.setVerdict(IntegrityVerdict.PASS);
+        return event;
+    }
+
+    private static AttendanceDay day(int i) {
+        AttendanceDay day = new AttendanceDay();
+        day.setOrgId(ORG_ID);
+        day.setAccountId(1000L + i);
+        day.setDateKey(LocalDate.now());
+        day.setStatus(AttendanceStatus.PRESENT);
+        return day;
+    }
+
+    private static FenceAssignment assignment(int i) {
+        FenceAssignment assignment = new FenceAssignment();
+        assignment.setOrgId(ORG_ID);
+        assignment.setFenceId(2L);
+        assignment.setEntityTypeId(1);
+        assignment.setEntityId(1000L + i);
+        assignment.setIsDefault(false);
+        return assignment;
+    }
+
+    private static PunchRequest punchRequest(int i, LocalDateTime now) {
+        PunchRequest request = new PunchRequest();
+        request.setOrgId(ORG_ID);
+        request.setEntityTypeId(1);
+        request.setEntityId(1000L + i);
+        request.setRequesterAccountId(1L);
+        request.setRequestedDatetime(now);
+        request.setRespondWithinMinutes(10);
+        request.setExpiresAt(now.plusMinutes(10));
+        request.setState(PunchRequest.State.PENDING);
+        return request;
+    }
+}
@@ -0,0 +1,168 @@
+package com.tse.core_application.entity;
+
+import com.tse.core_application.entity.assignment.FenceAssignment;
+import com.tse.core_application.entity.punch.PunchRequest;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statement counts of bulk writes under the Hibernate settings shipped in application.properties.
+ * With pooled sequence ids and JDBC batching, N inserts or updates must cost a handful of
+ * prepared statements (one sequence call per id block, one statement per batch) instead of one
+ * round trip per row. PunchRequest and FenceAssignment run against an in-memory H2 database.
+ */
+public class BatchedWriteStatementCountTest {
+
+    private static final String JPA_PROPERTIES_PREFIX = "spring.jpa.properties.";
+    private static final int ROWS = 500;
+    private static final int ALLOCATION_SIZE = 50;
+
+    private static StandardServiceRegistry registry;
+    private static SessionFactory sessionFactory;
+    private static int batchSize;
+
+    @BeforeAll
+    public static void setUp() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = BatchedWriteStatementCountTest.class.getResourceAsStream("/application.properties")) {
+            assertNotNull(in, "application.properties not on the classpath");
+            properties.load(in);
+        }
+        String configuredBatchSize = properties.getProperty(JPA_PROPERTIES_PREFIX + AvailableSettings.STATEMENT_BATCH_SIZE);
+        assertNotNull(configuredBatchSize, "hibernate.jdbc.batch_size is not configured");
+        batchSize = Integer.parseInt(configuredBatchSize);
+
+        StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(JPA_PROPERTIES_PREFIX)) {
+                builder.applySetting(name.substring(JPA_PROPERTIES_PREFIX.length()), properties.getProperty(name));
+            }
+        }
+        registry = builder
+                .applySetting(AvailableSettings.URL, "jdbc:h2:mem:batched_writes;DB_CLOSE_DELAY=-1")
+                .applySetting(AvailableSettings.USER, "sa")
+                .applySetting(AvailableSettings.PASS, "")
+                .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+                .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .applySetting(AvailableSettings.GENERATE_STATISTICS, "true")
+                .build();
+        sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(PunchRequest.class)
+                .addAnnotatedClass(FenceAssignment.class)
+                .buildMetadata()
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Test
+    public void interleavedInsertsArePooledAndBatched() {
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        // Alternating entity types: only ordered inserts keep each type in full batches
+        inTransaction(session -> {
+            for (int i = 0; i < ROWS; i++) {
+                session.persist(punchRequest(i));
+                session.persist(assignment(i));
+            }
+        });
+
+        assertEquals(2L * ROWS, statistics.getEntityInsertCount());
+        long perEntity = blocks(ROWS, ALLOCATION_SIZE) + 1 + blocks(ROWS, batchSize);
+        long prepared = statistics.getPrepareStatementCount();
+        assertTrue(prepared <= 2 * perEntity,
+                "Expected at most " + 2 * perEntity + " prepared statements for " + 2 * ROWS + " inserts, got " + prepared);
+    }
+
+    @Test
+    public void updatesAreBatched() {
+        inTransaction(session -> {
+            for (int i = 0; i < ROWS; i++) {
+                session.persist(punchRequest(i));
+            }
+        });
+
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        inTransaction(session -> {
+            List<PunchRequest> requests = session
+                    .createQuery("from PunchRequest where state = :state", PunchRequest.class)
+                    .setParameter("state", PunchRequest.State.PENDING)
+                    .getResultList();
+            for (PunchRequest request : requests) {
+                request.setState(PunchRequest.State.EXPIRED);
+            }
+        });
+
+        assertTrue(statistics.getEntityUpdateCount() >= ROWS);
+        long expected = 1 + blocks(statistics.getEntityUpdateCount(), batchSize);
+        long prepared = statistics.getPrepareStatementCount();
+        assertTrue(prepared <= expected,
+                "Expected at most " + expected + " prepared statements for " + statistics.getEntityUpdateCount()
+                        + " updates, got " + prepared);
+    }
+
+    private static void inTransaction(Consumer<Session> work) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            work.accept(session);
+            session.getTransaction().commit();
+        }
+    }
+
+    private static long blocks(long rows, int size) {
+        return (rows + size - 1) / size;
+    }
+
+    private static PunchRequest punchRequest(int i) {
+        LocalDateTime now = LocalDateTime.now();
+        PunchRequest request = new PunchRequest();
+        request.setOrgId(1L);
+        request.setEntityTypeId(1);
+        request.setEntityId(1000L + i);
+        request.setRequesterAccountId(1L);
+        request.setRequestedDatetime(now);
+        request.setRespondWithinMinutes(10);
+        request.setExpiresAt(now.plusMinutes(10));
+        request.setState(PunchRequest.State.PENDING);
+        return request;
+    }
+
+    private static FenceAssignment assignment(int i) {
+        FenceAssignment assignment = new FenceAssignment();
+        assignment.setOrgId(1L);
+        assignment.setFenceId(1L);
+        assignment.setEntityTypeId(1);
+        assignment.setEntityId(1000L + i);
+        assignment.setIsDefault(false);
+        return assignment;
+    }
+}
@@ -0,0 +1,322 @@
+package com.tse.core_application.service.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.constants.attendance.AttendanceStatus;
+import com.tse.core_application.constants.attendance.EventAction;
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.constants.attendance.EventSource;
+import com.tse.core_application.constants.attendance.IntegrityVerdict;
+import com.tse.core_application.entity.attendance.AttendanceDay;
+import com.tse.core_application.entity.attendance.AttendanceEvent;
+import com.tse.core_application.service.archive.impl.DirectoryArchiveStore;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cold archive files through the archive store and back: rows encoded by ColdArchiveFormat,
+ * stored the way ColdArchiveWriter stores them, and read by ColdArchiveReader from a directory
+ * store and an in-memory H2 database through a temporary cache directory.
+ */
+public class ColdArchiveRoundTripTest {
+
+    private static final long ORG_ID = 7L;
+    private static final long OTHER_ORG_ID = 8L;
+    private static final long ACCOUNT_ID = 10001L;
+    private static final YearMonth MONTH = YearMonth.now(ZoneOffset.UTC).minusMonths(20);
+    private static final Instant MONTH_START = MONTH.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+    private static final Instant NEXT_MONTH_START = MONTH.plusMonths(1).atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+
+    @TempDir
+    Path cacheDir;
+
+    @TempDir
+    Path storeDir;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DirectoryArchiveStore store;
+    private ColdArchiveReader reader;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:cold_archive;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(2);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS attendance_cold_archive_file");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS attendance_cold_archive_month");
+        jdbcTemplate.execute("CREATE TABLE attendance_cold_archive_file (archive_month DATE NOT NULL, " +
+                "version INT NOT NULL, org_id BIGINT NOT NULL, content BYTEA, size_bytes BIGINT, " +
+                "PRIMARY KEY (archive_month, version, org_id))");
+        jdbcTemplate.execute("CREATE TABLE attendance_cold_archive_month (archive_month DATE PRIMARY KEY, " +
+                "version INT NOT NULL, org_count INT NOT NULL, event_count BIGINT NOT NULL, day_count BIGINT NOT NULL, " +
+                "completed_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL)");
+
+        store = new DirectoryArchiveStore();
+        ReflectionTestUtils.setField(store, "storeDir", storeDir.toString());
+
+        reader = new ColdArchiveReader(jdbcTemplate, new ObjectMapper(), store);
+        ReflectionTestUtils.setField(reader, "enabled", true);
+        ReflectionTestUtils.setField(reader, "cacheDir", cacheDir.toString());
+        ReflectionTestUtils.setField(reader, "hotMonths", 13);
+        ReflectionTestUtils.setField(reader, "maxOpenFiles", 4);
+        ReflectionTestUtils.setField(reader, "negativeTtlSeconds", 60L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void eventsAndDaysSurviveRoundTrip() throws IOException {
+        ColdArchiveFormat.EventRow full = event(1L, MONTH_START.plusSeconds(3600));
+        full.clientLocalTsMs = MONTH_START.plusSeconds(3600 + 19800).toEpochMilli();
+        full.clientTz = "Asia/Kolkata";
+        full.fenceId = 42L;
+        full.lat = 12.9715987;
+        full.lon = 77.5945627;
+        full.accuracyM = 8.5;
+        full.underRange = true;
+        full.failReason = "Outside fence";
+        full.flagsJson = "{\"missed_punch\":true}";
+        full.punchRequestId = 77L;
+        full.requesterAccountId = 10002L;
+        ColdArchiveFormat.EventRow sparse = event(2L, MONTH_START.plusSeconds(7200));
+        sparse.eventKind = EventKind.CHECK_OUT;
+        sparse.success = false;
+        sparse.verdict = IntegrityVerdict.FAIL;
+
+        ColdArchiveFormat.DayRow day = new ColdArchiveFormat.DayRow();
+        day.id = 5L;
+        day.accountId = ACCOUNT_ID;
+        day.dayOfMonth = 1;
+        day.firstInMs = full.tsMs;
+        day.lastOutMs = sparse.tsMs;
+        day.workedSeconds = 3600;
+        day.breakSeconds = 0;
+        day.status = AttendanceStatus.PRESENT;
+        day.anomaliesJson = "{\"late\":true}";
+
+        store(1, ORG_ID, Arrays.asList(full, sparse), Collections.singletonList(day));
+        complete(1, 1, 2, 1);
+
+        assertTrue(reader.isMonthArchived(MONTH));
+        assertEquals(NEXT_MONTH_START, reader.archivedUntil(MONTH_START));
+        assertEquals(MONTH.plusMonths(1).atDay(1), reader.archivedUntil(MONTH.atDay(1)));
+
+        List<AttendanceEvent> events = reader.readEvents(ORG_ID, ACCOUNT_ID, MONTH_START, NEXT_MONTH_START);
+        assertEquals(2, events.size());
+        AttendanceEvent first = events.get(0);
+        assertEquals(Long.valueOf(1L), first.getId());
+        assertEquals(Long.valueOf(ORG_ID), first.getOrgId());
+        assertEquals(Long.valueOf(ACCOUNT_ID), first.getAccountId());
+        assertEquals(EventKind.CHECK_IN, first.getEventKind());
+        assertEquals(EventSource.GEOFENCE, first.getEventSource());
+        assertEquals(EventAction.MANUAL, first.getEventAction());
+        assertEquals(new Timestamp(full.tsMs).toLocalDateTime(), first.getTsUtc());
+        assertEquals(new Timestamp(full.clientLocalTsMs).toLocalDateTime(), first.getClientLocalTs());
+        assertEquals("Asia/Kolkata", first.getClientTz());
+        assertEquals(Long.valueOf(42L), first.getFenceId());
+        assertEquals(12.9715987, first.getLat(), 1e-7);
+        assertEquals(77.5945627, first.getLon(), 1e-7);
+        assertEquals(8.5, first.getAccuracyM(), 1e-6);
+        assertEquals(Boolean.TRUE, first.getUnderRange());
+        assertEquals(Boolean.TRUE, first.getSuccess());
+        assertEquals(IntegrityVerdict.PASS, first.getVerdict());
+        assertEquals("Outside fence", first.getFailReason());
+        assertEquals(Boolean.TRUE, first.getFlags().get("missed_punch"));
+        assertEquals(Long.valueOf(77L), first.getPunchRequestId());
+        assertEquals(Long.valueOf(10002L), first.getRequesterAccountId());
+
+        AttendanceEvent second = events.get(1);
+        assertEquals(EventKind.CHECK_OUT, second.getEventKind());
+        assertEquals(Boolean.FALSE, second.getSuccess());
+        assertEquals(IntegrityVerdict.FAIL, second.getVerdict());
+        assertNull(second.getClientLocalTs());
+        assertNull(second.getFenceId());
+        assertNull(second.getLat());
+        assertNull(second.getAccuracyM());
+        assertNull(second.getUnderRange());
+        assertNull(second.getPunchRequestId());
+        assertTrue(second.getFlags().isEmpty());
+
+        // The range bound is exclusive
+        assertEquals(1, reader.readEvents(ORG_ID, ACCOUNT_ID, MONTH_START, MONTH_START.plusSeconds(7200)).size());
+
+        List<AttendanceDay> days = reader.readDays(ORG_ID, ACCOUNT_ID, MONTH.atDay(1), MONTH.atEndOfMonth());
+        assertEquals(1, days.size());
+        assertEquals(MONTH.atDay(1), days.get(0).getDateKey());
+        assertEquals(new Timestamp(day.firstInMs).toLocalDateTime(), days.get(0).getFirstInUtc());
+        assertEquals(new Timestamp(day.lastOutMs).toLocalDateTime(), days.get(0).getLastOutUtc());
+        assertEquals(Integer.valueOf(3600), days.get(0).getWorkedSeconds());
+        assertEquals(AttendanceStatus.PRESENT, days.get(0).getStatus());
+        assertEquals(Boolean.TRUE, days.get(0).getAnomalies().get("late"));
+
+        // No file: the org had no data that month
+        assertTrue(reader.readEvents(OTHER_ORG_ID, ACCOUNT_ID, MONTH_START, NEXT_MONTH_START).isEmpty());
+    }
+
+    @Test
+    public void unarchivedOrHotMonthIsReadFromDatabase() {
+        assertFalse(reader.isMonthArchived(MONTH));
+        assertEquals(MONTH_START, reader.archivedUntil(MONTH_START));
+
+        YearMonth hot = YearMonth.now(ZoneOffset.UTC);
+        jdbcTemplate.update("INSERT INTO attendance_cold_archive_month (archive_month, version, org_count, " +
+                "event_count, day_count) VALUES (?, 1, 0, 0, 0)", Date.valueOf(hot.atDay(1)));
+        Instant hotStart = hot.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC);
+        assertEquals(hotStart, reader.archivedUntil(hotStart));
+    }
+
+    @Test
+    public void unarchivedMonthIsRememberedUntilItsChangeArrives() throws IOException {
+        assertFalse(reader.isMonthArchived(MONTH));
+
+        store(1, ORG_ID, Collections.singletonList(event(1L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        complete(1, 1, 1, 0);
+        // Within the TTL the negative answer is served from memory
+        assertFalse(reader.isMonthArchived(MONTH));
+
+        reader.onChanges(Collections.singletonList(coldArchiveChange()));
+        assertTrue(reader.isMonthArchived(MONTH));
+        assertEquals(Long.valueOf(1L), readFirstEventId(ORG_ID));
+    }
+
+    @Test
+    public void unarchivedMonthIsLookedUpAgainOnceTheTtlExpires() throws IOException {
+        ReflectionTestUtils.setField(reader, "negativeTtlSeconds", 0L);
+        assertFalse(reader.isMonthArchived(MONTH));
+
+        store(1, ORG_ID, Collections.singletonList(event(1L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        complete(1, 1, 1, 0);
+        assertTrue(reader.isMonthArchived(MONTH));
+    }
+
+    @Test
+    public void fileWrittenBeforeTheArchiveStoreIsReadFromTheDatabase() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColdArchiveFormat.write(out, ORG_ID, MONTH_START.toEpochMilli(),
+                Collections.singletonList(event(3L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        jdbcTemplate.update("INSERT INTO attendance_cold_archive_file (archive_month, version, org_id, content) " +
+                "VALUES (?, ?, ?, ?)", Date.valueOf(MONTH.atDay(1)), 1, ORG_ID, out.toByteArray());
+        complete(1, 1, 1, 0);
+
+        assertEquals(Long.valueOf(3L), readFirstEventId(ORG_ID));
+    }
+
+    @Test
+    public void newVersionIsServedOnceItsChangeArrives() throws IOException {
+        store(1, ORG_ID, Collections.singletonList(event(1L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        complete(1, 1, 1, 0);
+        assertEquals(Long.valueOf(1L), readFirstEventId(ORG_ID));
+
+        store(2, ORG_ID, Collections.singletonList(event(2L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        complete(2, 1, 1, 0);
+        // Until the change arrives, the version this node mapped keeps being served
+        assertEquals(Long.valueOf(1L), readFirstEventId(ORG_ID));
+
+        reader.onChanges(Collections.singletonList(coldArchiveChange()));
+
+        assertEquals(Long.valueOf(2L), readFirstEventId(ORG_ID));
+    }
+
+    @Test
+    public void fileReplacedBeforeChangeArrivesIsReloaded() throws IOException {
+        store(1, ORG_ID, Collections.singletonList(event(1L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        store(1, OTHER_ORG_ID, Collections.singletonList(event(10L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        complete(1, 2, 2, 0);
+        assertEquals(Long.valueOf(1L), readFirstEventId(ORG_ID));
+
+        // Version 2 replaces version 1 before this node hears of it; the other org's file of
+        // version 1 was never cached here and is gone
+        store(2, ORG_ID, Collections.singletonList(event(2L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        store(2, OTHER_ORG_ID, Collections.singletonList(event(20L, MONTH_START.plusSeconds(60))), Collections.emptyList());
+        complete(2, 2, 2, 0);
+
+        assertEquals(Long.valueOf(20L), readFirstEventId(OTHER_ORG_ID));
+        assertEquals(Long.valueOf(2L), readFirstEventId(ORG_ID));
+    }
+
+    private Long readFirstEventId(long orgId) {
+        return reader.readEvents(orgId, ACCOUNT_ID, MONTH_START, NEXT_MONTH_START).get(0).getId();
+    }
+
+    private ChangeRecord coldArchiveChange() {
+        ChangeRecord record = new ChangeRecord();
+        record.setOrgId(0L);
+        record.setAggregateType(ChangeOutbox.AGGREGATE_COLD_ARCHIVE);
+        record.setAggregateId(ColdArchiveReader.aggregateId(MONTH));
+        return record;
+    }
+
+    private void store(int version, long orgId, List<ColdArchiveFormat.EventRow> events,
+                       List<ColdArchiveFormat.DayRow> days) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColdArchiveFormat.write(out, orgId, MONTH_START.toEpochMilli(), events, days);
+        byte[] content = out.toByteArray();
+        store.put(ColdArchiveReader.objectKey(MONTH, version, orgId), new ByteArrayInputStream(content));
+        jdbcTemplate.update("INSERT INTO attendance_cold_archive_file (archive_month, version, org_id, size_bytes) " +
+                "VALUES (?, ?, ?, ?)", Date.valueOf(MONTH.atDay(1)), version, orgId, content.length);
+    }
+
+    /**
+     * Switch the month to the version and drop the files of other versions, as the writer does.
+     */
+    private void complete(int version, int orgCount, long eventCount, long dayCount) throws IOException {
+        Date month = Date.valueOf(MONTH.atDay(1));
+        jdbcTemplate.update("DELETE FROM attendance_cold_archive_month WHERE archive_month = ?", month);
+        jdbcTemplate.update("INSERT INTO attendance_cold_archive_month (archive_month, version, org_count, " +
+                "event_count, day_count) VALUES (?, ?, ?, ?, ?)", month, version, orgCount, eventCount, dayCount);
+        List<Map<String, Object>> replaced = jdbcTemplate.queryForList(
+                "SELECT version, org_id FROM attendance_cold_archive_file WHERE archive_month = ? AND version <> ?",
+                month, version);
+        jdbcTemplate.update("DELETE FROM attendance_cold_archive_file WHERE archive_month = ? AND version <> ?",
+                month, version);
+        for (Map<String, Object> file : replaced) {
+            store.delete(ColdArchiveReader.objectKey(MONTH, ((Number) file.get("version")).intValue(),
+                    ((Number) file.get("org_id")).longValue()));
+        }
+    }
+
+    private static ColdArchiveFormat.EventRow event(long id, Instant ts) {
+        ColdArchiveFormat.EventRow row = new ColdArchiveFormat.EventRow();
+        row.id = id;
+        row.accountId = ACCOUNT_ID;
+        row.eventKind = EventKind.CHECK_IN;
+        row.eventSource = EventSource.GEOFENCE;
+        row.eventAction = EventAction.MANUAL;
+        row.tsMs = ts.toEpochMilli();
+        row.success = true;
+        row.verdict = IntegrityVerdict.PASS;
+        return row;
+    }
+}
@@ -0,0 +1,126 @@
+package com.tse.core_application.service.archive.impl;
+
+import com.tse.core_application.service.archive.ArchiveStore;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Both archive stores keep objects whole under their key: the directory store in a temporary
+ * directory, the database store in an in-memory H2 database with small chunks.
+ */
+public class ArchiveStoreTest {
+
+    private static final String KEY = "cold-archive/2024-01/1/org-7.cold";
+
+    @TempDir
+    Path storeDir;
+
+    @TempDir
+    Path workDir;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DirectoryArchiveStore directoryStore;
+    private DatabaseArchiveStore databaseStore;
+
+    @BeforeEach
+    public void setUp() {
+        directoryStore = new DirectoryArchiveStore();
+        ReflectionTestUtils.setField(directoryStore, "storeDir", storeDir.toString());
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:archive_store;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(2);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS archive_store_chunk");
+        jdbcTemplate.execute("CREATE TABLE archive_store_chunk (object_key VARCHAR(512) NOT NULL, " +
+                "chunk_no INT NOT NULL, data BYTEA NOT NULL, PRIMARY KEY (object_key, chunk_no))");
+        databaseStore = new DatabaseArchiveStore(jdbcTemplate, new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(databaseStore, "chunkBytes", 1000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void directoryStoreKeepsObjectsWhole() throws IOException {
+        roundTrip(directoryStore);
+    }
+
+    @Test
+    public void databaseStoreKeepsObjectsWhole() throws IOException {
+        roundTrip(databaseStore);
+        // Only the empty object's chunk 0 is left
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM archive_store_chunk", Integer.class));
+    }
+
+    @Test
+    public void databaseStoreSplitsObjectsIntoChunks() throws IOException {
+        databaseStore.put(KEY, new ByteArrayInputStream(bytes(2500)));
+        assertEquals(Integer.valueOf(3), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM archive_store_chunk WHERE object_key = ?", Integer.class, KEY));
+        databaseStore.put(KEY, new ByteArrayInputStream(bytes(1000)));
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM archive_store_chunk WHERE object_key = ?", Integer.class, KEY));
+    }
+
+    @Test
+    public void directoryStoreRefusesKeysOutsideItsDirectory() {
+        assertThrows(IllegalArgumentException.class,
+                () -> directoryStore.put("../escape", new ByteArrayInputStream(bytes(10))));
+        assertThrows(IllegalArgumentException.class, () -> directoryStore.delete(""));
+    }
+
+    private void roundTrip(ArchiveStore store) throws IOException {
+        Path target = workDir.resolve("target");
+        assertFalse(store.get(KEY, target));
+
+        byte[] first = bytes(2500);
+        store.put(KEY, new ByteArrayInputStream(first));
+        assertTrue(store.get(KEY, target));
+        assertArrayEquals(first, Files.readAllBytes(target));
+
+        byte[] second = bytes(1000);
+        store.put(KEY, new ByteArrayInputStream(second));
+        assertTrue(store.get(KEY, target));
+        assertArrayEquals(second, Files.readAllBytes(target));
+
+        // Empty objects exist too
+        store.put("empty", new ByteArrayInputStream(new byte[0]));
+        assertTrue(store.get("empty", target));
+        assertEquals(0, Files.size(target));
+
+        store.delete(KEY);
+        store.delete(KEY);
+        assertFalse(store.get(KEY, target));
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,162 @@
+package com.tse.core_application.service.assignment;
+
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.dto.assignment.AssignFenceRequest;
+import com.tse.core_application.dto.assignment.AssignFenceResult;
+import com.tse.core_application.dto.assignment.EntityActionItem;
+import com.tse.core_application.dto.assignment.EntityResult;
+import com.tse.core_application.entity.fence.GeoFence;
+import com.tse.core_application.repository.fence.GeoFenceRepository;
+import com.tse.core_application.service.dir.DirectoryProvider;
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.userfence.EffectiveFenceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * The same request applied through the per-item path and through BulkAssignmentEngine must give
+ * the same results, summary and final fence_assignment rows (including audit columns).
+ * Runs against the dev PostgreSQL database, where the partial unique index on defaults exists;
+ * each test rolls back.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("dev")
+@Import({FenceAssignmentService.class, BulkAssignmentEngine.class})
+public class BulkAssignmentParityTest {
+
+    private static final long ORG_ID = 990_001L;
+    private static final long FENCE_ID = 10L;
+    private static final long UPDATED_BY = 77L;
+
+    @Autowired
+    private FenceAssignmentService assignmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @MockBean
+    private GeoFenceRepository fenceRepository;
+
+    @MockBean
+    private DirectoryProvider directoryProvider;
+
+    @MockBean
+    private EffectiveFenceStore effectiveFenceStore;
+
+    @MockBean
+    private ChangeOutbox changeOutbox;
+
+    @BeforeEach
+    public void setUp() {
+        GeoFence fence = new GeoFence();
+        fence.setId(FENCE_ID);
+        fence.setOrgId(ORG_ID);
+        fence.setIsActive(true);
+        when(fenceRepository.findByIdAndOrgId(anyLong(), anyLong())).thenReturn(Optional.of(fence));
+    }
+
+    @Test
+    public void bulkPathMatchesPerItemPath() {
+        AssignFenceRequest request = request(
+                Arrays.asList(
+                        item(EntityTypes.USER, 1L, true),      // already the default: NOOP
+                        item(EntityTypes.USER, 4L, false),     // first fence: becomes default
+                        item(EntityTypes.TEAM, 3L, true),      // new default, unsets fence 12
+                        item(EntityTypes.PROJECT, 5L, true),   // existing, made default
+                        item(EntityTypes.USER, 2L, false),     // already assigned: NOOP
+                        item(3, 6L, false),                    // invalid type
+                        item(EntityTypes.USER, 0L, false)),    // invalid id
+                Arrays.asList(
+                        item(EntityTypes.USER, 1L, null),      // default removed, fence 11 promoted
+                        item(EntityTypes.USER, 2L, null),      // default removed, nothing left
+                        item(EntityTypes.TEAM, 3L, null),      // default removed, two left: no default
+                        item(EntityTypes.USER, 99L, null)));   // not assigned: NOOP
+
+        Outcome serial = run(request, Integer.MAX_VALUE);
+        Outcome bulk = run(request, 1);
+
+        assertEquals(serial.results, bulk.results);
+        assertEquals(serial.summary, bulk.summary);
+        assertEquals(serial.rows, bulk.rows);
+    }
+
+    private Outcome run(AssignFenceRequest request, int bulkThreshold) {
+        jdbcTemplate.update("DELETE FROM fence_assignment WHERE org_id = ?", ORG_ID);
+        seed(EntityTypes.USER, 1L, 10L, true);
+        seed(EntityTypes.USER, 1L, 11L, false);
+        seed(EntityTypes.USER, 2L, 10L, true);
+        seed(EntityTypes.TEAM, 3L, 11L, false);
+        seed(EntityTypes.TEAM, 3L, 12L, true);
+        seed(EntityTypes.PROJECT, 5L, 10L, false);
+        seed(EntityTypes.PROJECT, 5L, 12L, false);
+
+        ReflectionTestUtils.setField(assignmentService, "bulkThreshold", bulkThreshold);
+        AssignFenceResult result = assignmentService.assignFenceToEntity(ORG_ID, request);
+        entityManager.flush();
+        entityManager.clear();
+
+        Outcome outcome = new Outcome();
+        for (EntityResult entityResult : result.getResults()) {
+            outcome.results.add(entityResult.getEntityTypeId() + ":" + entityResult.getEntityId() + " " +
+                    entityResult.getAction() + " default=" + entityResult.getDefaultForEntity() + " " +
+                    entityResult.getFenceIds() + " " + entityResult.getMessage());
+        }
+        outcome.summary = "added=" + result.getSummary().getAdded() + " removed=" + result.getSummary().getRemoved() +
+                " updatedDefault=" + result.getSummary().getUpdatedDefault() + " noops=" + result.getSummary().getNoops() +
+                " errors=" + result.getSummary().getErrors();
+        outcome.rows.addAll(jdbcTemplate.query(
+                "SELECT entity_type_id, entity_id, fence_id, is_default, updated_by, updated_datetime IS NOT NULL AS updated " +
+                "FROM fence_assignment WHERE org_id = ? ORDER BY entity_type_id, entity_id, fence_id",
+                (rs, rowNum) -> rs.getInt("entity_type_id") + ":" + rs.getLong("entity_id") + " fence=" +
+                        rs.getLong("fence_id") + " default=" + rs.getBoolean("is_default") + " updatedBy=" +
+                        rs.getObject("updated_by") + " updated=" + rs.getBoolean("updated"),
+                ORG_ID));
+        return outcome;
+    }
+
+    private void seed(int entityTypeId, long entityId, long fenceId, boolean isDefault) {
+        jdbcTemplate.update("INSERT INTO fence_assignment (org_id, fence_id, entity_type_id, entity_id, is_default) " +
+                "VALUES (?, ?, ?, ?, ?)", ORG_ID, fenceId, entityTypeId, entityId, isDefault);
+    }
+
+    private static AssignFenceRequest request(List<EntityActionItem> add, List<EntityActionItem> remove) {
+        AssignFenceRequest request = new AssignFenceRequest();
+        request.setFenceId(FENCE_ID);
+        request.setAdd(add);
+        request.setRemove(remove);
+        request.setUpdatedBy(UPDATED_BY);
+        return request;
+    }
+
+    private static EntityActionItem item(int entityTypeId, long entityId, Boolean makeDefault) {
+        return new EntityActionItem(entityTypeId, entityId, makeDefault);
+    }
+
+    private static final class Outcome {
+        private final List<String> results = new ArrayList<>();
+        private final List<String> rows = new ArrayList<>();
+        private String summary;
+    }
+}
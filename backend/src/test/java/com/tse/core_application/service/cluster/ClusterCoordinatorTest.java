@@ -0,0 +1,160 @@
+package com.tse.core_application.service.cluster;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Two coordinators sharing one in-memory H2 database, driven by explicit heartbeats instead of
+ * the heartbeat thread.
+ */
+public class ClusterCoordinatorTest {
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ClusterCoordinator nodeA;
+    private ClusterCoordinator nodeB;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:cluster;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(2);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS scheduler_node");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS scheduler_org_lease");
+        jdbcTemplate.execute("CREATE TABLE scheduler_node (node_id VARCHAR(128) PRIMARY KEY, " +
+                "started_at TIMESTAMP WITH TIME ZONE NOT NULL, heartbeat_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE scheduler_org_lease (org_id BIGINT PRIMARY KEY, " +
+                "node_id VARCHAR(128) NOT NULL, lease_until TIMESTAMP WITH TIME ZONE NOT NULL)");
+
+        nodeA = node("a");
+        nodeB = node("b");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void orgsAreSplitBetweenLiveNodesByTheRing() {
+        joinBoth();
+        assertEquals(Arrays.asList("a", "b"), nodeA.getLiveNodes());
+        assertEquals(Arrays.asList("a", "b"), nodeB.getLiveNodes());
+
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b"), VIRTUAL_NODES);
+        int ownedByA = 0;
+        int ownedByB = 0;
+        for (long orgId = 1; orgId <= 200; orgId++) {
+            boolean a = nodeA.tryAcquire(orgId);
+            boolean b = nodeB.tryAcquire(orgId);
+            assertTrue(a ^ b, "org " + orgId + " must have exactly one owner");
+            assertEquals(ring.ownerOf(orgId), a ? "a" : "b");
+            ownedByA += a ? 1 : 0;
+            ownedByB += b ? 1 : 0;
+        }
+        assertTrue(ownedByA > 0 && ownedByB > 0);
+    }
+
+    @Test
+    public void movedOrgStaysWithHolderUntilItRebalances() {
+        nodeA.heartbeat();
+        long orgId = orgOwnedBy("b");
+        assertTrue(nodeA.tryAcquire(orgId));
+
+        // b already sees the new ring, a has not rebalanced yet: a's lease still wins
+        nodeB.heartbeat();
+        assertFalse(nodeB.tryAcquire(orgId));
+
+        // a rebalances and hands the org back
+        nodeA.heartbeat();
+        assertFalse(nodeA.tryAcquire(orgId));
+        assertTrue(nodeB.tryAcquire(orgId));
+    }
+
+    @Test
+    public void leasesOfDeadNodeAreTakenOverOnceExpired() {
+        joinBoth();
+        long orgId = orgOwnedBy("a");
+        assertTrue(nodeA.tryAcquire(orgId));
+
+        // a stops heartbeating: b owns every org in its ring but waits for a's lease
+        jdbcTemplate.update("UPDATE scheduler_node SET heartbeat_at = ? WHERE node_id = 'a'", secondsAgo(60));
+        nodeB.heartbeat();
+        assertEquals(Arrays.asList("b"), nodeB.getLiveNodes());
+        assertFalse(nodeB.tryAcquire(orgId));
+
+        jdbcTemplate.update("UPDATE scheduler_org_lease SET lease_until = ? WHERE node_id = 'a'", secondsAgo(1));
+        assertTrue(nodeB.tryAcquire(orgId));
+
+        // a comes back and owns the org on the ring again, but b's lease holds until b lets go
+        nodeA.heartbeat();
+        assertFalse(nodeA.tryAcquire(orgId));
+    }
+
+    @Test
+    public void stoppedNodeReleasesLeasesImmediately() {
+        joinBoth();
+        long orgId = orgOwnedBy("a");
+        assertTrue(nodeA.tryAcquire(orgId));
+
+        nodeA.stop();
+        nodeB.heartbeat();
+        assertEquals(Arrays.asList("b"), nodeB.getLiveNodes());
+        assertTrue(nodeB.tryAcquire(orgId));
+    }
+
+    @Test
+    public void disabledCoordinatorOwnsEveryOrg() {
+        ClusterCoordinator single = new ClusterCoordinator(jdbcTemplate);
+        single.start();
+        assertFalse(single.isEnabled());
+        assertTrue(single.tryAcquire(1L));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM scheduler_org_lease", Integer.class));
+    }
+
+    private void joinBoth() {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.heartbeat();
+    }
+
+    private ClusterCoordinator node(String nodeId) {
+        ClusterCoordinator coordinator = new ClusterCoordinator(jdbcTemplate);
+        ReflectionTestUtils.setField(coordinator, "enabled", true);
+        ReflectionTestUtils.setField(coordinator, "nodeId", nodeId);
+        ReflectionTestUtils.setField(coordinator, "nodeTtlSeconds", 30L);
+        ReflectionTestUtils.setField(coordinator, "leaseSeconds", 90L);
+        ReflectionTestUtils.setField(coordinator, "virtualNodes", VIRTUAL_NODES);
+        return coordinator;
+    }
+
+    private static long orgOwnedBy(String nodeId) {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b"), VIRTUAL_NODES);
+        long orgId = 1;
+        while (!nodeId.equals(ring.ownerOf(orgId))) {
+            orgId++;
+        }
+        return orgId;
+    }
+
+    private static Timestamp secondsAgo(long seconds) {
+        return Timestamp.from(Instant.now().minusSeconds(seconds));
+    }
+}
@@ -0,0 +1,182 @@
+package com.tse.core_application.service.datasource;
+
+import com.tse.core_application.service.outbox.ChangeOutbox;
+import com.tse.core_application.service.outbox.ChangeRecord;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Routing between two in-memory H2 databases standing in for the primary and the replica.
+ * Each holds one row naming itself, so a query shows which pool served it.
+ */
+public class ReadReplicaRoutingTest {
+
+    private static final long ORG_ID = 1L;
+    private static final long ACCOUNT_ID = 42L;
+
+    private HikariDataSource primary;
+    private HikariDataSource replica;
+    private ReplicaRouting replicaRouting;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writeTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    public void setUp() {
+        primary = database("primary");
+        replica = database("replica");
+
+        replicaRouting = new ReplicaRouting(primary, replica);
+        ReflectionTestUtils.setField(replicaRouting, "maxLagMs", 5000L);
+        ReflectionTestUtils.setField(replicaRouting, "readYourWritesMs", 10000L);
+        replicaRouting.recordLag(0L);
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(
+                new ReadRoutingDataSource(primary, replica, replicaRouting));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    public void readOnlyTransactionsUseReplica() {
+        assertEquals("replica", readOnlyTransaction.execute(status -> role()));
+        assertEquals("primary", writeTransaction.execute(status -> role()));
+        assertEquals("primary", role());
+    }
+
+    @Test
+    public void laggingOrUnknownReplicaFallsBackToPrimary() {
+        replicaRouting.recordLag(60_000L);
+        assertEquals("primary", readOnlyTransaction.execute(status -> role()));
+
+        replicaRouting.recordLag(Long.MAX_VALUE);
+        assertEquals("primary", readOnlyTransaction.execute(status -> role()));
+
+        replicaRouting.recordLag(100L);
+        assertEquals("replica", readOnlyTransaction.execute(status -> role()));
+    }
+
+    @Test
+    public void readsOfRecentlyWrittenAccountUsePrimary() {
+        replicaRouting.recordWrite(ORG_ID, ACCOUNT_ID);
+
+        assertEquals("primary", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+        // Other accounts and other orgs are unaffected
+        assertEquals("replica", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID + 1));
+            return role();
+        }));
+        assertEquals("replica", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID + 1, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+        // The pin ends with its transaction
+        assertEquals("replica", readOnlyTransaction.execute(status -> role()));
+    }
+
+    @Test
+    public void writeIsRecordedOnceItsTransactionCommits() {
+        writeTransaction.execute(status -> {
+            replicaRouting.recordWrite(ORG_ID, ACCOUNT_ID);
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals("replica", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+
+        writeTransaction.execute(status -> {
+            replicaRouting.recordWrite(ORG_ID, ACCOUNT_ID);
+            return null;
+        });
+        assertEquals("primary", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+    }
+
+    @Test
+    public void writeOnAnotherNodeArrivesThroughOutbox() {
+        ChangeRecord record = new ChangeRecord();
+        record.setOrgId(ORG_ID);
+        record.setAggregateType(ChangeOutbox.AGGREGATE_ATTENDANCE);
+        record.setAggregateId(ACCOUNT_ID);
+        replicaRouting.onChanges(Collections.singletonList(record));
+
+        assertEquals("primary", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+    }
+
+    @Test
+    public void readYourWritesAfterFirstQueryFails() {
+        replicaRouting.recordWrite(ORG_ID, ACCOUNT_ID);
+
+        assertThrows(IllegalStateException.class, () -> readOnlyTransaction.execute(status -> {
+            role();
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+        // The failed transaction left nothing behind
+        assertEquals("primary", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+    }
+
+    @Test
+    public void readYourWritesExpiresAfterWindow() {
+        ReflectionTestUtils.setField(replicaRouting, "readYourWritesMs", 0L);
+        replicaRouting.recordWrite(ORG_ID, ACCOUNT_ID);
+        replicaRouting.purgeWrites();
+
+        assertEquals("replica", readOnlyTransaction.execute(status -> {
+            replicaRouting.readYourWrites(ORG_ID, Collections.singletonList(ACCOUNT_ID));
+            return role();
+        }));
+    }
+
+    private String role() {
+        return jdbcTemplate.queryForObject("SELECT name FROM db_role", String.class);
+    }
+
+    private static HikariDataSource database(String name) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:routing_" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setPoolName(name);
+        dataSource.setMaximumPoolSize(2);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS db_role (name VARCHAR(16))");
+        jdbcTemplate.execute("DELETE FROM db_role");
+        jdbcTemplate.update("INSERT INTO db_role (name) VALUES (?)", name);
+        return dataSource;
+    }
+}
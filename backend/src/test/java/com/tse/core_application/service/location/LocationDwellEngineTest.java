@@ -0,0 +1,276 @@
+package com.tse.core_application.service.location;
+
+import com.tse.core_application.constants.attendance.EventKind;
+import com.tse.core_application.dto.attendance.LocationPingBatchRequest;
+import com.tse.core_application.dto.attendance.LocationPingBatchResponse;
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
+import com.tse.core_application.entity.fence.GeoFence;
+import com.tse.core_application.entity.policy.AttendancePolicy;
+import com.tse.core_application.repository.fence.GeoFenceRepository;
+import com.tse.core_application.repository.policy.AttendancePolicyRepository;
+import com.tse.core_application.service.coalescing.RequestCoalescer;
+import com.tse.core_application.service.policy.PolicyGate;
+import com.tse.core_application.service.userfence.EffectiveFenceStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The dwell state machine of LocationDwellEngine, driven through ingest with in-memory policy,
+ * fences and assignments. Fences A and B lie 167 m apart on a meridian with a 100 m radius and
+ * a 50 m exit margin, so their circles overlap around the midpoint.
+ */
+public class LocationDwellEngineTest {
+
+    private static final long ORG_ID = 7L;
+    private static final long ACCOUNT_ID = 10001L;
+    private static final long FENCE_A = 101L;
+    private static final long FENCE_B = 102L;
+
+    private static final double LAT_A = 12.0;
+    private static final double LAT_B = 12.0015;
+    private static final double LON = 77.0;
+    // From fence A: 56 m north (inside), 133 m south (between radius and exit margin), 334 m south (outside)
+    private static final double IN = LAT_A + 0.0005;
+    private static final double BAND = LAT_A - 0.0012;
+    private static final double OUT = LAT_A - 0.003;
+
+    private EffectiveFenceStore effectiveFenceStore;
+    private DwellEventRecorder dwellEventRecorder;
+    private LastKnownLocationStore lastKnownLocationStore;
+    private LocationDwellEngine engine;
+    private AttendancePolicy policy;
+    private Map<Long, List<AccountEffectiveFence>> assignments;
+    private long t0;
+
+    @BeforeEach
+    public void setUp() {
+        AttendancePolicyRepository policyRepository = mock(AttendancePolicyRepository.class);
+        GeoFenceRepository fenceRepository = mock(GeoFenceRepository.class);
+        effectiveFenceStore = mock(EffectiveFenceStore.class);
+        dwellEventRecorder = mock(DwellEventRecorder.class);
+        lastKnownLocationStore = new LastKnownLocationStore();
+        ReflectionTestUtils.setField(lastKnownLocationStore, "ttlMinutes", 24 * 60L);
+
+        policy = new AttendancePolicy();
+        policy.setOrgId(ORG_ID);
+        policy.setFenceRadiusM(100);
+        policy.setAccuracyGateM(80);
+        policy.setDwellInMin(5);
+        policy.setDwellOutMin(5);
+        policy.setAutoOutEnabled(true);
+        policy.setAutoOutDelayMin(0);
+        when(policyRepository.findByOrgId(ORG_ID)).thenReturn(Optional.of(policy));
+        when(fenceRepository.findByOrgId(ORG_ID)).thenReturn(Arrays.asList(fence(FENCE_A, LAT_A), fence(FENCE_B, LAT_B)));
+
+        assignments = new HashMap<>();
+        assignments.put(ACCOUNT_ID, Collections.singletonList(assignment(FENCE_A)));
+        when(effectiveFenceStore.getEffectiveFences(eq(ORG_ID), anyCollection())).thenAnswer(invocation -> {
+            Map<Long, List<AccountEffectiveFence>> result = new HashMap<>();
+            for (Object accountId : (Iterable<?>) invocation.getArgument(1)) {
+                result.put((Long) accountId, assignments.getOrDefault(accountId, Collections.emptyList()));
+            }
+            return result;
+        });
+        when(dwellEventRecorder.record(anyLong(), anyLong(), any(EventKind.class), anyLong(), anyLong(),
+                anyDouble(), anyDouble(), anyDouble(), anyLong(), anyInt())).thenReturn(true);
+
+        engine = new LocationDwellEngine(mock(PolicyGate.class), policyRepository, fenceRepository,
+                effectiveFenceStore, dwellEventRecorder, lastKnownLocationStore, new RequestCoalescer(5000L));
+        ReflectionTestUtils.setField(engine, "stateStripes", 4);
+        ReflectionTestUtils.setField(engine, "exitMarginM", 50d);
+        ReflectionTestUtils.setField(engine, "maxPingsPerBatch", 200);
+        ReflectionTestUtils.setField(engine, "maxPingAgeMin", 180L);
+        ReflectionTestUtils.setField(engine, "policyTtlSeconds", 60L);
+        ReflectionTestUtils.setField(engine, "idleEvictHours", 12L);
+        engine.init();
+
+        t0 = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+    }
+
+    @Test
+    public void checksInOnceInsideFixesSpanTheDwell() {
+        LocationPingBatchResponse entering = ingest(ACCOUNT_ID, ping(IN, 0), ping(IN, 2));
+        assertEquals("ENTERING", entering.getState());
+        assertEquals(Long.valueOf(FENCE_A), entering.getFenceId());
+        assertTrue(entering.getRecordedEvents().isEmpty());
+
+        LocationPingBatchResponse inside = ingest(ACCOUNT_ID, ping(IN, 5));
+        assertEquals("INSIDE", inside.getState());
+        assertEquals(Collections.singletonList("CHECK_IN"), inside.getRecordedEvents());
+        // Written at the entry time, with the dwell that confirmed it
+        verify(dwellEventRecorder).record(eq(ORG_ID), eq(ACCOUNT_ID), eq(EventKind.CHECK_IN), eq(FENCE_A),
+                eq(at(0)), anyDouble(), anyDouble(), anyDouble(), eq(300L), eq(6));
+    }
+
+    @Test
+    public void leavingBeforeTheDwellRestartsTheEntry() {
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(IN, 0), ping(OUT, 3), ping(IN, 4), ping(IN, 8));
+        assertEquals("ENTERING", response.getState());
+        assertTrue(response.getRecordedEvents().isEmpty());
+
+        response = ingest(ACCOUNT_ID, ping(IN, 9));
+        assertEquals(Collections.singletonList("CHECK_IN"), response.getRecordedEvents());
+        verify(dwellEventRecorder).record(eq(ORG_ID), eq(ACCOUNT_ID), eq(EventKind.CHECK_IN), eq(FENCE_A),
+                eq(at(4)), anyDouble(), anyDouble(), anyDouble(), eq(300L), anyInt());
+    }
+
+    @Test
+    public void exitHysteresisKeepsTheAccountInside() {
+        checkIn();
+
+        // Between the radius and the exit margin nothing changes, however long
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(BAND, 6), ping(BAND, 20), ping(BAND, 40));
+        assertEquals("INSIDE", response.getState());
+
+        // Stepping out and back in before the exit dwell cancels the exit
+        response = ingest(ACCOUNT_ID, ping(OUT, 41), ping(OUT, 44));
+        assertEquals("EXITING", response.getState());
+        response = ingest(ACCOUNT_ID, ping(IN, 45));
+        assertEquals("INSIDE", response.getState());
+        verify(dwellEventRecorder, never()).record(anyLong(), anyLong(), eq(EventKind.CHECK_OUT), anyLong(), anyLong(),
+                anyDouble(), anyDouble(), anyDouble(), anyLong(), anyInt());
+
+        response = ingest(ACCOUNT_ID, ping(OUT, 50), ping(BAND, 52), ping(OUT, 55));
+        assertEquals("OUTSIDE", response.getState());
+        assertNull(response.getFenceId());
+        assertEquals(Collections.singletonList("CHECK_OUT"), response.getRecordedEvents());
+        verify(dwellEventRecorder).record(eq(ORG_ID), eq(ACCOUNT_ID), eq(EventKind.CHECK_OUT), eq(FENCE_A),
+                eq(at(50)), anyDouble(), anyDouble(), anyDouble(), eq(300L), anyInt());
+    }
+
+    @Test
+    public void exitWithoutAutoOutWritesNothing() {
+        policy.setAutoOutEnabled(false);
+        checkIn();
+
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(OUT, 10), ping(OUT, 15));
+        assertEquals("OUTSIDE", response.getState());
+        assertTrue(response.getRecordedEvents().isEmpty());
+        verify(dwellEventRecorder, never()).record(anyLong(), anyLong(), eq(EventKind.CHECK_OUT), anyLong(), anyLong(),
+                anyDouble(), anyDouble(), anyDouble(), anyLong(), anyInt());
+    }
+
+    @Test
+    public void fixesAreAppliedInTimeOrderAndStaleOnesIgnored() {
+        // One batch out of order: sorted before it is applied
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(IN, 5), ping(IN, 0));
+        assertEquals(2, response.getAccepted().intValue());
+        assertEquals(Collections.singletonList("CHECK_IN"), response.getRecordedEvents());
+        verify(dwellEventRecorder).record(eq(ORG_ID), eq(ACCOUNT_ID), eq(EventKind.CHECK_IN), eq(FENCE_A),
+                eq(at(0)), anyDouble(), anyDouble(), anyDouble(), eq(300L), anyInt());
+
+        // A late batch older than the last accepted fix, a fix beyond the maximum age and an
+        // inaccurate fix change nothing
+        response = ingest(ACCOUNT_ID, ping(OUT, 1), ping(OUT, 5), ping(OUT, -200), inaccurate(OUT, 8));
+        assertEquals(0, response.getAccepted().intValue());
+        assertEquals(4, response.getIgnored().intValue());
+        assertEquals("INSIDE", response.getState());
+
+        LastKnownLocation last = lastKnownLocationStore.get(ORG_ID, ACCOUNT_ID);
+        assertEquals(at(5), last.getTsMs());
+        assertEquals(Long.valueOf(FENCE_A), last.getFenceId());
+    }
+
+    @Test
+    public void futureFixesAreClampedToNow() {
+        // A device clock ahead of the server cannot confirm a dwell early
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID,
+                new LocationPingBatchRequest.LocationPing(IN, LON, 10d, System.currentTimeMillis()),
+                new LocationPingBatchRequest.LocationPing(IN, LON, 10d,
+                        System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)));
+        assertEquals("ENTERING", response.getState());
+        assertTrue(response.getRecordedEvents().isEmpty());
+    }
+
+    @Test
+    public void overlappingFencesEnterTheNearestCenter() {
+        assignments.put(ACCOUNT_ID, Arrays.asList(assignment(FENCE_A), assignment(FENCE_B)));
+
+        // 89 m from A, 78 m from B: inside both, nearer B
+        double overlap = LAT_A + 0.0008;
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(overlap, 0), ping(overlap, 5));
+        assertEquals(Long.valueOf(FENCE_B), response.getFenceId());
+        verify(dwellEventRecorder).record(eq(ORG_ID), eq(ACCOUNT_ID), eq(EventKind.CHECK_IN), eq(FENCE_B),
+                eq(at(0)), anyDouble(), anyDouble(), anyDouble(), eq(300L), anyInt());
+
+        // Walking on into A never leaves a fence: still checked in at B, no events, while
+        // occupancy follows the position
+        response = ingest(ACCOUNT_ID, ping(LAT_A, 10), ping(LAT_A, 30));
+        assertEquals("INSIDE", response.getState());
+        assertEquals(Long.valueOf(FENCE_B), response.getFenceId());
+        assertTrue(response.getRecordedEvents().isEmpty());
+        assertEquals(Long.valueOf(FENCE_A), lastKnownLocationStore.get(ORG_ID, ACCOUNT_ID).getFenceId());
+    }
+
+    @Test
+    public void fencesNotAssignedToTheAccountAreIgnored() {
+        // B's center is 167 m from A, beyond A's radius and exit margin
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(LAT_B, 0), ping(LAT_B, 10));
+        assertEquals("OUTSIDE", response.getState());
+        assertNull(response.getFenceId());
+        assertNull(lastKnownLocationStore.get(ORG_ID, ACCOUNT_ID).getFenceId());
+    }
+
+    private void checkIn() {
+        LocationPingBatchResponse response = ingest(ACCOUNT_ID, ping(IN, 0), ping(IN, 5));
+        assertEquals("INSIDE", response.getState());
+    }
+
+    private LocationPingBatchResponse ingest(long accountId, LocationPingBatchRequest.LocationPing... pings) {
+        return engine.ingest(ORG_ID, new LocationPingBatchRequest(accountId, new ArrayList<>(Arrays.asList(pings))));
+    }
+
+    private LocationPingBatchRequest.LocationPing ping(double lat, int minute) {
+        return new LocationPingBatchRequest.LocationPing(lat, LON, 10d, at(minute));
+    }
+
+    private LocationPingBatchRequest.LocationPing inaccurate(double lat, int minute) {
+        return new LocationPingBatchRequest.LocationPing(lat, LON, 500d, at(minute));
+    }
+
+    private long at(int minute) {
+        return t0 + TimeUnit.MINUTES.toMillis(minute);
+    }
+
+    private static GeoFence fence(long id, double lat) {
+        GeoFence fence = new GeoFence();
+        fence.setId(id);
+        fence.setOrgId(ORG_ID);
+        fence.setCenterLat(lat);
+        fence.setCenterLng(LON);
+        fence.setIsActive(true);
+        return fence;
+    }
+
+    private static AccountEffectiveFence assignment(long fenceId) {
+        AccountEffectiveFence row = new AccountEffectiveFence();
+        row.setOrgId(ORG_ID);
+        row.setAccountId(ACCOUNT_ID);
+        row.setFenceId(fenceId);
+        return row;
+    }
+}
@@ -0,0 +1,188 @@
+package com.tse.core_application.service.outbox;
+
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Offsets in change_consumer_offset: the stable key, resuming after a restart, gap repair and
+ * purging offsets of nodes that are gone. The outbox is mocked; offsets go to the dev PostgreSQL
+ * database and each test rolls back.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("dev")
+public class ChangeSubscriptionsOffsetTest {
+
+    private static final String CONSUMER_NAME = "offset-test-recorder";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private ChangeOutbox changeOutbox;
+    private ClusterCoordinator clusterCoordinator;
+    private RecordingConsumer consumer;
+    private ChangeSubscriptions subscriptions;
+
+    @BeforeEach
+    public void setUp() {
+        changeOutbox = mock(ChangeOutbox.class);
+        clusterCoordinator = mock(ClusterCoordinator.class);
+        consumer = new RecordingConsumer();
+        when(changeOutbox.minPublishedSeq()).thenReturn(1L);
+        when(changeOutbox.readPublishedAfter(anyLong(), anyInt()))
+                .thenReturn(Collections.emptyList());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (subscriptions != null) {
+            subscriptions.stop();
+        }
+    }
+
+    @Test
+    public void offsetIsKeyedByConsumerNameAndSurvivesRestart() {
+        when(changeOutbox.maxPublishedSeq()).thenReturn(10L);
+        subscriptions = subscriptions();
+        subscriptions.start();
+        assertEquals(Long.valueOf(10L), storedOffset(CONSUMER_NAME));
+
+        subscriptions.onRecords(Arrays.asList(record(11L), record(12L)));
+        consumer.awaitSeq(12L);
+        subscriptions.stop();
+        assertEquals(Long.valueOf(12L), storedOffset(CONSUMER_NAME));
+
+        // Restarted node: resumes after 12 instead of starting at the new head
+        when(changeOutbox.maxPublishedSeq()).thenReturn(20L);
+        when(changeOutbox.readPublishedAfter(12L, 1000)).thenReturn(Arrays.asList(record(13L), record(14L)));
+        consumer = new RecordingConsumer();
+        subscriptions = subscriptions();
+        subscriptions.start();
+
+        assertEquals(Arrays.asList(13L, 14L), consumer.seqs());
+        assertEquals(Long.valueOf(14L), storedOffset(CONSUMER_NAME));
+    }
+
+    @Test
+    public void clusteredOffsetIncludesConfiguredNodeId() {
+        when(clusterCoordinator.isEnabled()).thenReturn(true);
+        when(clusterCoordinator.getNodeId()).thenReturn("node-1");
+        when(changeOutbox.maxPublishedSeq()).thenReturn(5L);
+        subscriptions = subscriptions();
+        subscriptions.start();
+
+        assertEquals(Long.valueOf(5L), storedOffset(CONSUMER_NAME + "@node-1"));
+    }
+
+    @Test
+    public void gapIsRepairedFromOutbox() {
+        when(changeOutbox.maxPublishedSeq()).thenReturn(10L);
+        when(changeOutbox.readPublishedAfter(10L, 1000)).thenReturn(Arrays.asList(record(11L), record(12L)));
+        subscriptions = subscriptions();
+        subscriptions.start();
+
+        // 11 never arrived over the bus
+        subscriptions.onRecords(Collections.singletonList(record(12L)));
+        consumer.awaitSeq(12L);
+
+        assertEquals(Arrays.asList(11L, 12L), consumer.seqs());
+    }
+
+    @Test
+    public void staleOffsetsArePurged() {
+        jdbcTemplate.update("INSERT INTO change_consumer_offset (consumer_id, last_seq, updated_datetime) " +
+                "VALUES (?, 1, now() - interval '40 days')", CONSUMER_NAME + "@gone-node");
+        when(changeOutbox.maxPublishedSeq()).thenReturn(10L);
+        subscriptions = subscriptions();
+        subscriptions.start();
+
+        subscriptions.periodicCatchUp();
+
+        assertNull(storedOffset(CONSUMER_NAME + "@gone-node"));
+        assertEquals(Long.valueOf(10L), storedOffset(CONSUMER_NAME));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ChangeSubscriptions subscriptions() {
+        ObjectProvider<ChangeConsumer> consumers = mock(ObjectProvider.class);
+        when(consumers.orderedStream()).thenReturn(Stream.of(consumer));
+        ChangeSubscriptions subscriptions = new ChangeSubscriptions(consumers, mock(ChangeBus.class), changeOutbox,
+                clusterCoordinator, jdbcTemplate);
+        ReflectionTestUtils.setField(subscriptions, "catchUpBatchSize", 1000);
+        ReflectionTestUtils.setField(subscriptions, "deliveryQueueCapacity", 10);
+        ReflectionTestUtils.setField(subscriptions, "offsetRetentionDays", 30);
+        return subscriptions;
+    }
+
+    private Long storedOffset(String consumerId) {
+        List<Long> offsets = jdbcTemplate.queryForList(
+                "SELECT last_seq FROM change_consumer_offset WHERE consumer_id = ?", Long.class, consumerId);
+        return offsets.isEmpty() ? null : offsets.get(0);
+    }
+
+    private static ChangeRecord record(long seq) {
+        ChangeRecord record = new ChangeRecord();
+        record.setSeq(seq);
+        record.setOrgId(1L);
+        return record;
+    }
+
+    private static final class RecordingConsumer implements ChangeConsumer {
+        private final List<ChangeRecord> received = new ArrayList<>();
+
+        @Override
+        public String getConsumerName() {
+            return CONSUMER_NAME;
+        }
+
+        @Override
+        public synchronized void onChanges(List<ChangeRecord> records) {
+            received.addAll(records);
+        }
+
+        synchronized List<Long> seqs() {
+            return received.stream().map(ChangeRecord::getSeq).collect(Collectors.toList());
+        }
+
+        void awaitSeq(long seq) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < deadline) {
+                List<Long> seqs = seqs();
+                if (!seqs.isEmpty() && seqs.get(seqs.size() - 1) == seq) {
+                    return;
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            fail("consumer did not reach seq " + seq + ", got " + seqs());
+        }
+    }
+}
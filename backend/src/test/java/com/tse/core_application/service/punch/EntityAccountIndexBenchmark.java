@@ -0,0 +1,186 @@
+package com.tse.core_application.service.punch;
+
+import com.tse.core_application.constants.EntityTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching pending punch requests to the accounts of a manager view: the per-request scan over
+ * every account's entity set that PunchRequestService used before, against building the
+ * inverted EntityAccountIndex once per call and looking each request up. Memberships are
+ * generated in memory, so only the matching is measured.
+ *
+ * Run with {@code main} from the test classpath; surefire does not pick it up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityAccountIndexBenchmark {
+
+    private static final long ORG_ID = 1L;
+    private static final int TEAMS = 50;
+    private static final int PROJECTS = 20;
+    private static final int TEAMS_PER_ACCOUNT = 3;
+    private static final int PROJECTS_PER_ACCOUNT = 2;
+
+    /**
+     * accounts:requests
+     */
+    @Param({"100:20", "1000:200", "5000:1000"})
+    public String size;
+
+    private List<Long> accountIds;
+    private long[][] teams;
+    private long[][] projects;
+    private int[] requestTypes;
+    private long[] requestEntities;
+
+    @Setup
+    public void setUp() {
+        String[] parts = size.split(":");
+        int accountCount = Integer.parseInt(parts[0]);
+        int requestCount = Integer.parseInt(parts[1]);
+
+        Random random = new Random(accountCount);
+        accountIds = new ArrayList<>(accountCount);
+        teams = new long[accountCount][];
+        projects = new long[accountCount][];
+        for (int i = 0; i < accountCount; i++) {
+            accountIds.add(1000L + i);
+            teams[i] = randomIds(random, TEAMS_PER_ACCOUNT, TEAMS, 100L);
+            projects[i] = randomIds(random, PROJECTS_PER_ACCOUNT, PROJECTS, 500L);
+        }
+
+        requestTypes = new int[requestCount];
+        requestEntities = new long[requestCount];
+        for (int r = 0; r < requestCount; r++) {
+            switch (r % 4) {
+                case 0:
+                    requestTypes[r] = EntityTypes.USER;
+                    requestEntities[r] = accountIds.get(random.nextInt(accountCount));
+                    break;
+                case 1:
+                    requestTypes[r] = EntityTypes.TEAM;
+                    requestEntities[r] = 100L + random.nextInt(TEAMS);
+                    break;
+                case 2:
+                    requestTypes[r] = EntityTypes.PROJECT;
+                    requestEntities[r] = 500L + random.nextInt(PROJECTS);
+                    break;
+                default:
+                    requestTypes[r] = EntityTypes.ORG;
+                    requestEntities[r] = ORG_ID;
+            }
+        }
+    }
+
+    /**
+     * Before: an entity set per account, then for every request anyMatch over every account.
+     */
+    @Benchmark
+    public List<List<Long>> scan() {
+        Map<Long, Set<Ref>> accountToEntities = new HashMap<>();
+        for (int i = 0; i < accountIds.size(); i++) {
+            Set<Ref> entities = new HashSet<>();
+            entities.add(new Ref(EntityTypes.USER, accountIds.get(i)));
+            for (long teamId : teams[i]) {
+                entities.add(new Ref(EntityTypes.TEAM, teamId));
+            }
+            for (long projectId : projects[i]) {
+                entities.add(new Ref(EntityTypes.PROJECT, projectId));
+            }
+            entities.add(new Ref(EntityTypes.ORG, ORG_ID));
+            accountToEntities.put(accountIds.get(i), entities);
+        }
+
+        List<List<Long>> result = new ArrayList<>(requestTypes.length);
+        for (int r = 0; r < requestTypes.length; r++) {
+            int type = requestTypes[r];
+            long entity = requestEntities[r];
+            List<Long> appliesTo = new ArrayList<>();
+            for (Long accountId : accountIds) {
+                if (accountToEntities.get(accountId).stream().anyMatch(e -> e.type == type && e.id == entity)) {
+                    appliesTo.add(accountId);
+                }
+            }
+            result.add(appliesTo);
+        }
+        return result;
+    }
+
+    /**
+     * After: the inverted index built once per call, one lookup per request.
+     */
+    @Benchmark
+    public long[][] index() {
+        EntityAccountIndex index = EntityAccountIndex.build(ORG_ID, accountIds,
+                accountId -> teams[(int) (accountId - 1000L)],
+                accountId -> projects[(int) (accountId - 1000L)]);
+
+        long[][] result = new long[requestTypes.length][];
+        for (int r = 0; r < requestTypes.length; r++) {
+            result[r] = index.accountsFor(requestTypes[r], requestEntities[r]);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EntityAccountIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    private static long[] randomIds(Random random, int count, int range, long base) {
+        Set<Long> ids = new HashSet<>();
+        while (ids.size() < count) {
+            ids.add(base + random.nextInt(range));
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static final class Ref {
+        final int type;
+        final long id;
+
+        Ref(int type, long id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Ref)) return false;
+            Ref ref = (Ref) o;
+            return type == ref.type && id == ref.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type + Long.hashCode(id);
+        }
+    }
+}
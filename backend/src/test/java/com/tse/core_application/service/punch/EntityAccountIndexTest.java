@@ -0,0 +1,177 @@
+package com.tse.core_application.service.punch;
+
+import com.tse.core_application.constants.EntityTypes;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Matching punch requests to accounts through the inverted EntityAccountIndex must give the
+ * same account lists, in the same order, as scanning every account's entity set.
+ */
+public class EntityAccountIndexTest {
+
+    private static final long ORG_ID = 1L;
+    private static final int TEAMS = 50;
+    private static final int PROJECTS = 20;
+    private static final int TEAMS_PER_ACCOUNT = 3;
+    private static final int PROJECTS_PER_ACCOUNT = 2;
+
+    @Test
+    public void invertedIndexMatchesScan() {
+        int[][] sizes = {{1, 4}, {100, 20}, {1000, 200}};
+        for (int[] size : sizes) {
+            run(size[0], size[1]);
+        }
+    }
+
+    @Test
+    public void keyRoundTripsTypeAndId() {
+        long key = EntityAccountIndex.key(EntityTypes.PROJECT, 123_456_789L);
+        assertEquals(EntityTypes.PROJECT, EntityAccountIndex.entityTypeOf(key));
+        assertEquals(123_456_789L, EntityAccountIndex.entityIdOf(key));
+        // Same id under another type is another key
+        assertNotEquals(key, EntityAccountIndex.key(EntityTypes.TEAM, 123_456_789L));
+    }
+
+    @Test
+    public void duplicateAndNullAccountsAreIgnored() {
+        EntityAccountIndex index = EntityAccountIndex.build(ORG_ID, Arrays.asList(7L, null, 5L, 7L),
+                accountId -> new long[]{100L},
+                accountId -> new long[0]);
+
+        assertArrayEquals(new long[]{7L, 5L}, index.accountsFor(EntityTypes.ORG, ORG_ID));
+        assertArrayEquals(new long[]{7L, 5L}, index.accountsFor(EntityTypes.TEAM, 100L));
+        assertArrayEquals(new long[]{5L}, index.accountsFor(EntityTypes.USER, 5L));
+        assertArrayEquals(new long[0], index.accountsFor(EntityTypes.TEAM, 101L));
+        // org, two users, one team
+        assertEquals(4, index.entityCount());
+    }
+
+    private void run(int accountCount, int requestCount) {
+        Random random = new Random(accountCount);
+        List<Long> accountIds = new ArrayList<>(accountCount);
+        long[][] teams = new long[accountCount][];
+        long[][] projects = new long[accountCount][];
+        for (int i = 0; i < accountCount; i++) {
+            accountIds.add(1000L + i);
+            teams[i] = randomIds(random, TEAMS_PER_ACCOUNT, TEAMS, 100L);
+            projects[i] = randomIds(random, PROJECTS_PER_ACCOUNT, PROJECTS, 500L);
+        }
+
+        int[] requestTypes = new int[requestCount];
+        long[] requestEntities = new long[requestCount];
+        for (int r = 0; r < requestCount; r++) {
+            switch (r % 4) {
+                case 0:
+                    requestTypes[r] = EntityTypes.USER;
+                    requestEntities[r] = accountIds.get(random.nextInt(accountCount));
+                    break;
+                case 1:
+                    requestTypes[r] = EntityTypes.TEAM;
+                    requestEntities[r] = 100L + random.nextInt(TEAMS);
+                    break;
+                case 2:
+                    requestTypes[r] = EntityTypes.PROJECT;
+                    requestEntities[r] = 500L + random.nextInt(PROJECTS);
+                    break;
+                default:
+                    requestTypes[r] = EntityTypes.ORG;
+                    requestEntities[r] = ORG_ID;
+            }
+        }
+
+        long[][] scanned = scan(accountIds, teams, projects, requestTypes, requestEntities);
+        long[][] indexed = lookup(accountIds, teams, projects, requestTypes, requestEntities);
+
+        for (int r = 0; r < requestCount; r++) {
+            assertArrayEquals(scanned[r], indexed[r], "accounts of request " + r + " with " + accountCount + " accounts");
+        }
+    }
+
+    /**
+     * Reference: per account an entity set, per request a scan over all accounts.
+     */
+    private static long[][] scan(List<Long> accountIds, long[][] teams, long[][] projects,
+                                 int[] requestTypes, long[] requestEntities) {
+        List<Set<Ref>> entitiesByAccount = new ArrayList<>(accountIds.size());
+        for (int i = 0; i < accountIds.size(); i++) {
+            Set<Ref> entities = new HashSet<>();
+            entities.add(new Ref(EntityTypes.USER, accountIds.get(i)));
+            for (long teamId : teams[i]) {
+                entities.add(new Ref(EntityTypes.TEAM, teamId));
+            }
+            for (long projectId : projects[i]) {
+                entities.add(new Ref(EntityTypes.PROJECT, projectId));
+            }
+            entities.add(new Ref(EntityTypes.ORG, ORG_ID));
+            entitiesByAccount.add(entities);
+        }
+
+        long[][] result = new long[requestTypes.length][];
+        for (int r = 0; r < requestTypes.length; r++) {
+            int type = requestTypes[r];
+            long entity = requestEntities[r];
+            List<Long> matched = new ArrayList<>();
+            for (int i = 0; i < accountIds.size(); i++) {
+                if (entitiesByAccount.get(i).stream().anyMatch(e -> e.type == type && e.id == entity)) {
+                    matched.add(accountIds.get(i));
+                }
+            }
+            result[r] = matched.stream().mapToLong(Long::longValue).toArray();
+        }
+        return result;
+    }
+
+    private static long[][] lookup(List<Long> accountIds, long[][] teams, long[][] projects,
+                                   int[] requestTypes, long[] requestEntities) {
+        EntityAccountIndex index = EntityAccountIndex.build(ORG_ID, accountIds,
+                accountId -> teams[(int) (accountId - 1000L)],
+                accountId -> projects[(int) (accountId - 1000L)]);
+
+        long[][] result = new long[requestTypes.length][];
+        for (int r = 0; r < requestTypes.length; r++) {
+            result[r] = index.accountsFor(requestTypes[r], requestEntities[r]);
+        }
+        return result;
+    }
+
+    private static long[] randomIds(Random random, int count, int range, long base) {
+        Set<Long> ids = new HashSet<>();
+        while (ids.size() < count) {
+            ids.add(base + random.nextInt(range));
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static final class Ref {
+        final int type;
+        final long id;
+
+        Ref(int type, long id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Ref)) return false;
+            Ref ref = (Ref) o;
+            return type == ref.type && id == ref.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type + Long.hashCode(id);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.tse.core_application.service.scheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tse.core_application.entity.attendance.AttendanceDay;
+import com.tse.core_application.entity.policy.AttendancePolicy;
+import com.tse.core_application.repository.attendance.AttendanceDayRepository;
+import com.tse.core_application.repository.attendance.AttendanceEventRepository;
+import com.tse.core_application.repository.policy.AttendancePolicyRepository;
+import com.tse.core_application.repository.punch.PunchRequestRepository;
+import com.tse.core_application.service.attendance.DayRollupService;
+import com.tse.core_application.service.attendance.OfficePolicyProvider;
+import com.tse.core_application.service.cluster.ClusterCoordinator;
+import com.tse.core_application.service.membership.MembershipIndex;
+import com.tse.core_application.service.notification.NotificationDispatcher;
+import com.tse.core_application.service.punch.ActivePunchRequestRegistry;
+import com.tse.core_application.service.punch.PunchExpiryQueue;
+import com.tse.core_application.service.push.PushChangeRecorder;
+import com.tse.core_application.service.roster.OrgRosterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * An auto-checkout day only counts as run once every chunk committed: a run cancelled by
+ * SchedulerExecutors or with failed chunks stays unmarked, so the next tick of the catch-up
+ * window closes the remaining days.
+ */
+public class AutoCheckoutRunTest {
+
+    private static final long ORG_ID = 7L;
+    private static final LocalDate DATE = LocalDate.of(2026, 3, 10);
+
+    private AttendanceEventRepository eventRepository;
+    private SchedulerJobRuns schedulerJobRuns;
+    private AttendanceSchedulerService schedulerService;
+    private AttendancePolicy policy;
+
+    @BeforeEach
+    public void setUp() {
+        eventRepository = mock(AttendanceEventRepository.class);
+        AttendanceDayRepository dayRepository = mock(AttendanceDayRepository.class);
+        OfficePolicyProvider officePolicyProvider = mock(OfficePolicyProvider.class);
+        schedulerJobRuns = mock(SchedulerJobRuns.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+        AutoCheckoutBatchProcessor batchProcessor = new AutoCheckoutBatchProcessor(eventRepository,
+                mock(DayRollupService.class), mock(JdbcTemplate.class), new ObjectMapper(), transactionManager);
+        ReflectionTestUtils.setField(batchProcessor, "chunkSize", 2);
+        ReflectionTestUtils.setField(batchProcessor, "maxAttempts", 2);
+        ReflectionTestUtils.setField(batchProcessor, "retryBackoffMs", 1L);
+
+        schedulerService = new AttendanceSchedulerService(mock(AttendancePolicyRepository.class), eventRepository,
+                dayRepository, officePolicyProvider, mock(PunchRequestRepository.class), mock(MembershipIndex.class),
+                mock(PunchExpiryQueue.class), mock(OrgRosterService.class), batchProcessor,
+                mock(ClusterCoordinator.class), mock(NotificationDispatcher.class), mock(SchedulerExecutors.class),
+                mock(PushChangeRecorder.class), mock(ActivePunchRequestRegistry.class), schedulerJobRuns,
+                transactionManager);
+
+        policy = new AttendancePolicy();
+        policy.setOrgId(ORG_ID);
+        policy.setMaxCheckoutAfterEndMin(20);
+
+        when(officePolicyProvider.getOperationalTimezone(ORG_ID)).thenReturn("UTC");
+        when(officePolicyProvider.getOfficeEndTime(ORG_ID)).thenReturn(LocalTime.of(18, 0));
+        when(schedulerJobRuns.dueWindow(any(LocalDateTime.class), any(LocalTime.class)))
+                .thenReturn(DATE.atTime(18, 20));
+        when(dayRepository.findOpenDays(ORG_ID, DATE)).thenReturn(openDays(5));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        // Clear an interrupt a test left on the test thread
+        Thread.interrupted();
+    }
+
+    @Test
+    public void completeRunIsMarked() {
+        when(eventRepository.findByOrgIdAndAccountIdInAndTsUtcBetweenOrderByTsUtcAsc(
+                anyLong(), anyList(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(Collections.emptyList());
+
+        schedulerService.processOrgAutoCheckout(policy);
+
+        verify(schedulerJobRuns).markRun(ORG_ID, AttendanceSchedulerService.AUTO_CHECKOUT_JOB, DATE);
+    }
+
+    @Test
+    public void cancelledRunIsLeftForTheNextTick() {
+        when(eventRepository.findByOrgIdAndAccountIdInAndTsUtcBetweenOrderByTsUtcAsc(
+                anyLong(), anyList(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenAnswer(invocation -> {
+                    // SchedulerExecutors cancels the run with future.cancel(true) during the first chunk
+                    Thread.currentThread().interrupt();
+                    return Collections.emptyList();
+                });
+
+        schedulerService.processOrgAutoCheckout(policy);
+
+        verify(schedulerJobRuns, never()).markRun(anyLong(), anyString(), any(LocalDate.class));
+    }
+
+    @Test
+    public void runWithFailedChunkIsLeftForTheNextTick() {
+        when(eventRepository.findByOrgIdAndAccountIdInAndTsUtcBetweenOrderByTsUtcAsc(
+                eq(ORG_ID), anyList(), any(LocalDateTime.class), any(LocalDateTime.class)))
+                .thenReturn(Collections.emptyList())
+                .thenThrow(new IllegalStateException("statement timeout"))
+                .thenThrow(new IllegalStateException("statement timeout"))
+                .thenReturn(Collections.emptyList());
+
+        schedulerService.processOrgAutoCheckout(policy);
+
+        verify(schedulerJobRuns, never()).markRun(anyLong(), anyString(), any(LocalDate.class));
+    }
+
+    @Test
+    public void progressIsCompleteOnlyWithEveryChunkCommitted() {
+        AutoCheckoutBatchProcessor.Progress progress = new AutoCheckoutBatchProcessor.Progress(ORG_ID, DATE, 5, 3);
+        assertFalse(progress.isComplete());
+        assertEquals(0, progress.getChunksCompleted());
+        assertTrue(new AutoCheckoutBatchProcessor.Progress(ORG_ID, DATE, 0, 0).isComplete());
+    }
+
+    private static List<AttendanceDay> openDays(int count) {
+        List<AttendanceDay> days = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AttendanceDay day = new AttendanceDay();
+            day.setId((long) i + 1);
+            day.setOrgId(ORG_ID);
+            day.setAccountId(10001L + i);
+            day.setDateKey(DATE);
+            day.setFirstInUtc(DATE.atTime(9, 0));
+            days.add(day);
+        }
+        return days;
+    }
+}
@@ -0,0 +1,110 @@
+package com.tse.core_application.service.userfence;
+
+import com.tse.core_application.constants.EntityTypes;
+import com.tse.core_application.entity.assignment.AccountEffectiveFence;
+import com.tse.core_application.entity.assignment.FenceAssignment;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Which fence is an account's default when several of its sources set one, and which fence a
+ * punch falls back to.
+ */
+public class DefaultFencePrecedenceTest {
+
+    private static final long ORG_ID = 7L;
+    private static final long ACCOUNT_ID = 10001L;
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 5, 9, 0);
+
+    @Test
+    public void userDefaultWinsOverEveryOtherSource() {
+        assertEquals(Long.valueOf(101L), EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Arrays.asList(
+                assignment(1L, 201L, EntityTypes.TEAM, 55L, true, T0),
+                assignment(2L, 301L, EntityTypes.PROJECT, 66L, true, T0),
+                assignment(3L, 401L, EntityTypes.ORG, ORG_ID, true, T0),
+                assignment(4L, 101L, EntityTypes.USER, ACCOUNT_ID, true, T0.plusDays(30)))));
+    }
+
+    @Test
+    public void earliestTeamDefaultWinsRegardlessOfMembershipOrder() {
+        assertEquals(Long.valueOf(202L), EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Arrays.asList(
+                // Not a default: never chosen, however specific
+                assignment(1L, 101L, EntityTypes.USER, ACCOUNT_ID, false, T0),
+                assignment(2L, 201L, EntityTypes.TEAM, 55L, true, T0.plusDays(2)),
+                assignment(3L, 202L, EntityTypes.TEAM, 56L, true, T0.plusDays(1)),
+                assignment(4L, 301L, EntityTypes.PROJECT, 66L, true, T0),
+                assignment(5L, 401L, EntityTypes.ORG, ORG_ID, true, T0))));
+    }
+
+    @Test
+    public void projectDefaultWinsOverOrgDefault() {
+        assertEquals(Long.valueOf(301L), EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Arrays.asList(
+                assignment(1L, 201L, EntityTypes.TEAM, 55L, false, T0),
+                assignment(2L, 401L, EntityTypes.ORG, ORG_ID, true, T0),
+                assignment(3L, 301L, EntityTypes.PROJECT, 66L, true, T0.plusDays(5)))));
+    }
+
+    @Test
+    public void tiesGoToTheLowestAssignmentId() {
+        assertEquals(Long.valueOf(203L), EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Arrays.asList(
+                assignment(9L, 201L, EntityTypes.TEAM, 55L, true, T0),
+                assignment(4L, 203L, EntityTypes.TEAM, 57L, true, T0))));
+        assertEquals(Long.valueOf(402L), EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Arrays.asList(
+                assignment(8L, 401L, EntityTypes.ORG, ORG_ID, true, T0),
+                assignment(3L, 402L, EntityTypes.ORG, ORG_ID, true, T0))));
+    }
+
+    @Test
+    public void noDefaultWithoutDefaultAssignments() {
+        assertNull(EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Arrays.asList(
+                assignment(1L, 101L, EntityTypes.USER, ACCOUNT_ID, false, T0),
+                assignment(2L, 401L, EntityTypes.ORG, ORG_ID, false, T0))));
+        // Another account's USER default is not this account's
+        assertNull(EffectiveFenceStore.resolveDefaultFenceId(ACCOUNT_ID, Collections.singletonList(
+                assignment(3L, 102L, EntityTypes.USER, ACCOUNT_ID + 1, true, T0))));
+    }
+
+    @Test
+    public void punchFallsBackToResolvedDefaultThenMostSpecificSource() {
+        AccountEffectiveFence orgDefault = row(401L, AccountEffectiveFence.SOURCE_ORG, true);
+        AccountEffectiveFence user = row(101L, AccountEffectiveFence.SOURCE_USER, false);
+        AccountEffectiveFence teamAndOrg = row(201L, AccountEffectiveFence.SOURCE_TEAM | AccountEffectiveFence.SOURCE_ORG, false);
+        assertEquals(Long.valueOf(401L), EffectiveFenceStore.preferredFence(Arrays.asList(user, teamAndOrg, orgDefault)).getFenceId());
+
+        AccountEffectiveFence otherTeam = row(199L, AccountEffectiveFence.SOURCE_TEAM, false);
+        assertEquals(Long.valueOf(101L), EffectiveFenceStore.preferredFence(Arrays.asList(teamAndOrg, otherTeam, user)).getFenceId());
+        assertEquals(Long.valueOf(199L), EffectiveFenceStore.preferredFence(Arrays.asList(teamAndOrg, otherTeam)).getFenceId());
+        assertNull(EffectiveFenceStore.preferredFence(Collections.emptyList()));
+    }
+
+    private static FenceAssignment assignment(long id, long fenceId, int entityTypeId, long entityId,
+                                              boolean isDefault, LocalDateTime created) {
+        FenceAssignment assignment = new FenceAssignment();
+        assignment.setId(id);
+        assignment.setOrgId(ORG_ID);
+        assignment.setFenceId(fenceId);
+        assignment.setEntityTypeId(entityTypeId);
+        assignment.setEntityId(entityId);
+        assignment.setIsDefault(isDefault);
+        assignment.setCreatedDatetime(created);
+        return assignment;
+    }
+
+    private static AccountEffectiveFence row(long fenceId, int sourceMask, boolean isDefault) {
+        AccountEffectiveFence row = new AccountEffectiveFence();
+        row.setOrgId(ORG_ID);
+        row.setAccountId(ACCOUNT_ID);
+        row.setFenceId(fenceId);
+        row.setSourceMask((short) sourceMask);
+        row.setIsDefaultResolved(isDefault);
+        row.setSources(new ArrayList<>());
+        return row;
+    }
+}